@@ -0,0 +1,75 @@
+package model;
+
+import java.io.File;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the heap used by the rows of a large directory when they are held
+ * as Files objects and when they are held in a FileStore.
+ *
+ * Usage: java model.FileStoreMemoryBenchmark [rows=1000000] [directories=1]
+ * Only javafx.base is needed on the class path. Run with a heap large enough
+ * for the object list, e.g. -Xmx4g.
+ *
+ * @author Thomas Quarshie & Richard Quayson
+ */
+public class FileStoreMemoryBenchmark {
+
+    public static void main(String[] args) {
+        int rowCount = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int directoryCount = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        String base = File.separator + "home" + File.separator + "user" + File.separator + "data";
+        long now = System.currentTimeMillis();
+
+        long baseline = usedHeap();
+        List<Files> objects = new ArrayList<>(rowCount);
+        for (int i = 0; i < rowCount; i++) {
+            String name = "file-" + i + ".txt";
+            String directory = base + File.separator + "dir-" + (i % directoryCount);
+            objects.add(new Files(name, i % 10 == 0 ? "Directory" : "File", directory + File.separator + name,
+                    FileStore.toDateTime(now - i), FileStore.toDateTime(now - i / 2), i * 17L));
+        }
+        long objectBytes = usedHeap() - baseline;
+        int check = objects.size();
+        objects = null;
+
+        baseline = usedHeap();
+        FileStore store = new FileStore(rowCount);
+        for (int i = 0; i < rowCount; i++) {
+            String name = "file-" + i + ".txt";
+            String directory = base + File.separator + "dir-" + (i % directoryCount);
+            store.add(name, i % 10 == 0 ? "Directory" : "File", directory + File.separator + name,
+                    now - i, now - i / 2, i * 17L);
+        }
+        long storeBytes = usedHeap() - baseline;
+        check += store.size();
+
+        FileStoreList list = new FileStoreList();
+        list.appendAll(List.of(store));
+        // what a table touches while scrolled to the middle
+        for (int i = rowCount / 2; i < Math.min(rowCount, rowCount / 2 + 50); i++) {
+            check += list.get(i).getFilename().length();
+        }
+
+        System.out.printf("rows: %,d in %,d directories%n", rowCount, directoryCount);
+        System.out.printf("List<Files>: %,d bytes (%,d per row)%n", objectBytes, objectBytes / rowCount);
+        System.out.printf("FileStore:   %,d bytes (%,d per row)%n", storeBytes, storeBytes / rowCount);
+        System.out.printf("ratio:       %.1fx%n", (double) objectBytes / Math.max(1, storeBytes));
+        System.out.println("(" + check + ")");
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,169 @@
+package controllers;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javafx.application.Platform;
+import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.SimpleObjectProperty;
+import javafx.concurrent.Service;
+import javafx.concurrent.Task;
+import model.FileStore;
+import model.FileStoreList;
+
+/**
+ * Loads the entries of a directory into an observable list in the background.
+ *
+ * The directory is streamed on a worker thread into FileStore batches, so no
+ * Files object is created for the rows the table never shows, and the batches
+ * are handed to the FX thread: at most one Platform.runLater is outstanding at
+ * a time and each one appends the batches gathered so far with a single
+ * change, so the table sees one change event per batch instead of one per row. The first rows are
+ * handed over as soon as they are read. Restarting the service (for another
+ * directory) cancels the running load; rows of a cancelled load are dropped.
+ *
+ * @author Thomas Quarshie & Richard Quayson
+ */
+public class DirectoryLoadService extends Service<Integer> {
+
+    /** Rows handed over one by one at the start, so the table fills immediately. */
+    private static final int FIRST_ROWS = 64;
+
+    /** Maximum number of rows added to the list per FX pulse. */
+    private static final int MAX_ROWS_PER_PULSE = 4096;
+
+    /** Rows are handed over at least this often while a large directory is read. */
+    private static final long FLUSH_INTERVAL_NANOS = 50_000_000L;
+
+    private final FileStoreList target;
+    private final ObjectProperty<Path> directory = new SimpleObjectProperty<>();
+
+    /**
+     * Creates a service that loads into the given list.
+     *
+     * @param target the list the rows are appended to, only touched on the FX thread
+     */
+    public DirectoryLoadService(FileStoreList target) {
+        this.target = target;
+    }
+
+    public Path getDirectory() {
+        return directory.get();
+    }
+
+    public void setDirectory(Path directory) {
+        this.directory.set(directory);
+    }
+
+    public ObjectProperty<Path> directoryProperty() {
+        return directory;
+    }
+
+    @Override
+    protected Task<Integer> createTask() {
+        return new LoadTask(getDirectory(), target);
+    }
+
+    /** Adds the row of an entry, reading its attributes once; false if it vanished or cannot be read. */
+    static boolean addRow(FileStore batch, Path entry) {
+        try {
+            BasicFileAttributes attrs = java.nio.file.Files.readAttributes(entry, BasicFileAttributes.class);
+            Path name = entry.getFileName();
+            batch.add(
+                    name != null ? name.toString() : entry.toString(),
+                    attrs.isDirectory() ? "Directory" : "File",
+                    entry.toString(),
+                    attrs.creationTime().toMillis(),
+                    attrs.lastModifiedTime().toMillis(),
+                    attrs.size());
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Reads one directory and feeds its rows to the FX thread.
+     * The task's value is the number of rows read.
+     */
+    private static final class LoadTask extends Task<Integer> {
+        private final Path directory;
+        private final FileStoreList target;
+        private final ConcurrentLinkedQueue<FileStore> pending = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        LoadTask(Path directory, FileStoreList target) {
+            this.directory = directory;
+            this.target = target;
+        }
+
+        @Override
+        protected Integer call() throws IOException {
+            int count = 0;
+            long lastFlush = System.nanoTime();
+            FileStore batch = new FileStore(1);
+
+            try (DirectoryStream<Path> entries = java.nio.file.Files.newDirectoryStream(directory)) {
+                for (Path entry : entries) {
+                    if (isCancelled()) {
+                        break;
+                    }
+                    if (!addRow(batch, entry)) {
+                        continue;
+                    }
+                    count++;
+
+                    long now = System.nanoTime();
+                    if (count <= FIRST_ROWS || now - lastFlush >= FLUSH_INTERVAL_NANOS
+                            || batch.size() == MAX_ROWS_PER_PULSE) {
+                        pending.add(batch);
+                        batch = new FileStore(count < FIRST_ROWS ? 1 : 1024);
+                        schedule();
+                        lastFlush = now;
+                    }
+                }
+            } finally {
+                if (batch.size() > 0) {
+                    pending.add(batch);
+                }
+                schedule();
+            }
+            updateMessage(count + " entries");
+            return count;
+        }
+
+        /** Makes sure a drain is queued on the FX thread, at most one at a time. */
+        private void schedule() {
+            if (!pending.isEmpty() && scheduled.compareAndSet(false, true)) {
+                Platform.runLater(this::drain);
+            }
+        }
+
+        /** Runs on the FX thread: appends about one pulse worth of rows in one change. */
+        private void drain() {
+            if (isCancelled()) {
+                pending.clear();
+                scheduled.set(false);
+                return;
+            }
+
+            List<FileStore> batches = new ArrayList<>();
+            int rows = 0;
+            FileStore batch;
+            while (rows < MAX_ROWS_PER_PULSE && (batch = pending.poll()) != null) {
+                batches.add(batch);
+                rows += batch.size();
+            }
+            target.appendAll(batches);
+
+            scheduled.set(false);
+            schedule();
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package controllers;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javafx.application.Platform;
+import model.FileStore;
+import model.FileStoreList;
+
+/**
+ * Keeps the table in step with the directory it shows.
+ *
+ * The directory is registered with a WatchService and the paths named by
+ * ENTRY_CREATE, ENTRY_MODIFY and ENTRY_DELETE events are collected in a set,
+ * so a burst of events on one file costs one update. Once events have been
+ * quiet for a moment, or at the latest after a fixed delay while they keep
+ * coming, every collected path is stat'ed on the watcher thread and the
+ * result is applied to the list on the FX thread as one change: existing rows
+ * are updated in place, new rows are appended and vanished rows are removed.
+ * If the WatchService loses events (OVERFLOW) the directory is reloaded.
+ *
+ * While a directory is still being loaded the watcher is paused: events are
+ * collected but not applied, so a file that is both listed and reported is not
+ * added twice.
+ *
+ * @author Thomas Quarshie & Richard Quayson
+ */
+public class DirectoryWatcher implements AutoCloseable {
+
+    /** Changes are applied once events have been quiet this long. */
+    private static final long QUIET_MILLIS = 40;
+
+    /** Changes are applied at least this often while events keep coming. */
+    private static final long MAX_DELAY_MILLIS = 250;
+
+    private final FileStoreList target;
+    private final Runnable reload;
+    private final WatchService watchService;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // all guarded by lock
+    private Path directory;
+    private WatchKey key;
+    private long generation;
+    private boolean paused;
+    private boolean overflowed;
+    private final Set<Path> dirty = new LinkedHashSet<>();
+    private long firstDirty;
+
+    /**
+     * Creates a watcher that applies changes to the given list.
+     *
+     * @param target the list showing the directory, only touched on the FX thread
+     * @param reload called on the FX thread when events were lost and the directory must be reloaded
+     * @throws IOException if no WatchService is available
+     */
+    public DirectoryWatcher(FileStoreList target, Runnable reload) throws IOException {
+        this.target = target;
+        this.reload = reload;
+        this.watchService = FileSystems.getDefault().newWatchService();
+
+        Thread thread = new Thread(this::run, "fm-table-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Starts watching another directory, paused until resume() is called.
+     * Pending changes of the previous directory are dropped.
+     *
+     * @param directory the directory now shown
+     */
+    public void watch(Path directory) {
+        lock.lock();
+        try {
+            if (key != null) {
+                key.cancel();
+                key = null;
+            }
+            generation++;
+            dirty.clear();
+            overflowed = false;
+            paused = true;
+            this.directory = directory;
+            try {
+                key = directory.register(watchService,
+                        StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY,
+                        StandardWatchEventKinds.ENTRY_DELETE);
+            } catch (IOException | ClosedWatchServiceException e) {
+                // the table simply stays as loaded
+                System.err.println("Cannot watch " + directory + ": " + e.getMessage());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Applies the changes collected while paused, and from then on as they come. */
+    public void resume() {
+        lock.lock();
+        try {
+            paused = false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                WatchKey signalled = hasPending()
+                        ? watchService.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS)
+                        : watchService.take();
+                if (signalled != null) {
+                    collect(signalled);
+                }
+                flush(signalled == null);
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // closed
+        }
+    }
+
+    private boolean hasPending() {
+        lock.lock();
+        try {
+            return !dirty.isEmpty() || overflowed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void collect(WatchKey signalled) {
+        List<WatchEvent<?>> events = signalled.pollEvents();
+        lock.lock();
+        try {
+            if (signalled != key) {
+                // an event of a directory no longer shown
+                return;
+            }
+            for (WatchEvent<?> event : events) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    overflowed = true;
+                    dirty.clear();
+                } else if (!overflowed) {
+                    if (dirty.isEmpty()) {
+                        firstDirty = System.nanoTime();
+                    }
+                    dirty.add(directory.resolve((Path) event.context()));
+                }
+            }
+        } finally {
+            signalled.reset();
+            lock.unlock();
+        }
+    }
+
+    /** Stats the collected paths and hands the result to the FX thread. */
+    private void flush(boolean quiet) {
+        List<Path> paths;
+        long token;
+        lock.lock();
+        try {
+            if (paused || (dirty.isEmpty() && !overflowed)) {
+                return;
+            }
+            if (!quiet && !overflowed
+                    && System.nanoTime() - firstDirty < TimeUnit.MILLISECONDS.toNanos(MAX_DELAY_MILLIS)) {
+                return;
+            }
+            token = generation;
+            if (overflowed) {
+                overflowed = false;
+                Platform.runLater(() -> {
+                    if (isCurrent(token)) {
+                        reload.run();
+                    }
+                });
+                return;
+            }
+            paths = new ArrayList<>(dirty);
+            dirty.clear();
+        } finally {
+            lock.unlock();
+        }
+
+        FileStore upserts = new FileStore(paths.size());
+        List<String> removed = new ArrayList<>();
+        for (Path path : paths) {
+            if (!DirectoryLoadService.addRow(upserts, path)) {
+                removed.add(path.toString());
+            }
+        }
+        Platform.runLater(() -> {
+            if (isCurrent(token)) {
+                target.applyChanges(upserts, removed);
+            }
+        });
+    }
+
+    private boolean isCurrent(long token) {
+        lock.lock();
+        try {
+            return generation == token;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package controllers;
 
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
 
 import javafx.application.Application;
 import javafx.fxml.FXMLLoader;
@@ -9,17 +12,18 @@ import javafx.scene.layout.AnchorPane;
 import javafx.scene.layout.BorderPane;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
+import model.FileStoreList;
 import model.Files;
 import views.FileEditDialogController;
 import views.FileOverviewController;
-import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
-import java.time.LocalDateTime;
 
 public class MainApp extends Application {
     private Stage primaryStage;
     private BorderPane rootLayout;
-    private ObservableList<Files> fileData = FXCollections.observableArrayList();
+    private FileStoreList fileData = new FileStoreList();
+    private final DirectoryLoadService directoryLoader = new DirectoryLoadService(fileData);
+    private DirectoryWatcher directoryWatcher;
 
     @Override
     public void start(Stage primaryStage) {
@@ -29,24 +33,45 @@ public class MainApp extends Application {
         initRootLayout();
         showFileOverview();
         
+        // Keep the table in step with changes made to the directory on disk
+        try {
+            directoryWatcher = new DirectoryWatcher(fileData, () -> loadDirectory(directoryLoader.getDirectory()));
+            directoryLoader.setOnSucceeded(event -> directoryWatcher.resume());
+            directoryLoader.setOnFailed(event -> directoryWatcher.resume());
+        } catch (IOException e) {
+            System.err.println("Live updates are not available: " + e.getMessage());
+        }
+        
+        // Show the directory given on the command line, or the home directory
+        List<String> arguments = getParameters().getUnnamed();
+        String directory = arguments.isEmpty() ? System.getProperty("user.home") : arguments.get(0);
+        loadDirectory(Paths.get(directory));
     }
 
     public MainApp() {
-        // Add some sample data
-        fileData.add(new Files("Hans", "Directory"));
-        fileData.add(new Files("Ruth", "Directory"));
-        fileData.add(new Files("Heinz", "Directory"));
-        fileData.add(new Files("Cornelia", "Directory"));
-        fileData.add(new Files("Werner", "Directory"));
-        fileData.add(new Files("Lydia", "Directory"));
-        fileData.add(new Files("Anna", "Directory"));
-        fileData.add(new Files("Stefan", "Directory"));
-        fileData.add(new Files("Martin", "Directory"));
     }
 
     public ObservableList<Files> getFileData() {
         return fileData;
     }
+
+    /**
+     * Replaces the table data with the entries of the given directory. The
+     * directory is read in the background and the rows are appended in
+     * batches, so the window stays responsive for very large directories.
+     * Changes made to the directory afterwards are applied as they happen.
+     * 
+     * @param directory the directory to show
+     */
+    public void loadDirectory(Path directory) {
+        directoryLoader.cancel();
+        if (directoryWatcher != null) {
+            directoryWatcher.watch(directory);
+        }
+        fileData.clear();
+        directoryLoader.setDirectory(directory);
+        directoryLoader.restart();
+    }
     
     public void initRootLayout() {
         try {
@@ -81,6 +106,14 @@ public class MainApp extends Application {
         }
     }
 
+    @Override
+    public void stop() throws IOException {
+        directoryLoader.cancel();
+        if (directoryWatcher != null) {
+            directoryWatcher.close();
+        }
+    }
+
     public Stage getPrimaryStage() {
         return primaryStage;
     }
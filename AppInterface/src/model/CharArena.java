@@ -0,0 +1,90 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * Append-only character storage for the names held by the FileStore.
+ *
+ * Strings are copied into one growing char[] and referred to by offset and
+ * length, which costs two bytes per character instead of a String object,
+ * its array header and a reference per name.
+ *
+ * @author Thomas Quarshie & Richard Quayson
+ */
+final class CharArena {
+    private char[] chars;
+    private int length;
+
+    CharArena(int capacity) {
+        this.chars = new char[Math.max(16, capacity)];
+    }
+
+    /**
+     * Copies a string into the arena.
+     *
+     * @param value the string to store
+     * @return the offset of the copy
+     */
+    int add(String value) {
+        int offset = reserve(value.length());
+        value.getChars(0, value.length(), chars, offset);
+        return offset;
+    }
+
+    private int reserve(int count) {
+        int offset = length;
+        int end = offset + count;
+        if (end < 0) {
+            throw new IllegalStateException("Name storage is full");
+        }
+        if (end > chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(end, (int) Math.min(Integer.MAX_VALUE - 8, chars.length * 2L)));
+        }
+        length = end;
+        return offset;
+    }
+
+    /**
+     * Copies characters stored in another arena into this one.
+     *
+     * @param source the arena holding the characters
+     * @param offset their offset in the source
+     * @param count the number of characters
+     * @return the offset of the copy
+     */
+    int add(CharArena source, int offset, int count) {
+        int start = reserve(count);
+        System.arraycopy(source.chars, offset, chars, start, count);
+        return start;
+    }
+
+    String get(int offset, int count) {
+        return new String(chars, offset, count);
+    }
+
+    boolean matches(int offset, int count, String value) {
+        if (value.length() != count) {
+            return false;
+        }
+        for (int i = 0; i < count; i++) {
+            if (chars[offset + i] != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    void appendTo(StringBuilder builder, int offset, int count) {
+        builder.append(chars, offset, count);
+    }
+
+    /** Number of characters the arena can hold before it grows. */
+    int capacity() {
+        return chars.length;
+    }
+
+    /** Number of characters stored, including ones no longer referenced. */
+    int length() {
+        return length;
+    }
+}
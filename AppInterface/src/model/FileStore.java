@@ -0,0 +1,579 @@
+package model;
+
+import java.io.File;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Column storage for the rows of the file table.
+ *
+ * Instead of one Files object (six properties, three strings and two
+ * LocalDateTime instances) per entry, every column is a primitive array:
+ * sizes and times are longs, types are byte codes into a small table of type
+ * names, and paths are split into their directory, interned once in a
+ * PathTrie, and their last component, stored in a character arena. The file
+ * name is usually the last component of the path and is then not stored a
+ * second time. Times are kept in epoch milliseconds of the system zone.
+ *
+ * Removed rows do not give their characters back to the arena; the store is
+ * meant to be refilled from scratch when another directory is shown.
+ *
+ * @author Thomas Quarshie & Richard Quayson
+ */
+public final class FileStore {
+
+    /** Time value of a row without a date. */
+    public static final long NO_TIME = Long.MIN_VALUE;
+
+    // name offsets: the name is null, or the same characters as the leaf of the path
+    private static final int NULL_NAME = -1;
+    private static final int NAME_IS_LEAF = -2;
+
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+
+    private CharArena chars;
+    private PathTrie directories;
+    private final List<String> types = new ArrayList<>();
+
+    private int[] parents;
+    private int[] leafOffsets;
+    private int[] leafLengths;
+    private int[] nameOffsets;
+    private int[] nameLengths;
+    private byte[] typeCodes;
+    private long[] sizes;
+    private long[] created;
+    private long[] modified;
+    // hash of the full path of every row, so rows can be found without rebuilding their paths
+    private int[] pathHashes;
+    private int count;
+
+    public FileStore() {
+        this(16);
+    }
+
+    /**
+     * Creates a store sized for the given number of rows.
+     *
+     * @param capacity the expected number of rows
+     */
+    public FileStore(int capacity) {
+        allocate(Math.max(1, capacity));
+    }
+
+    private void allocate(int capacity) {
+        count = 0;
+        types.clear();
+        chars = new CharArena(capacity * 16);
+        directories = new PathTrie(chars, File.separatorChar);
+        parents = new int[capacity];
+        leafOffsets = new int[capacity];
+        leafLengths = new int[capacity];
+        nameOffsets = new int[capacity];
+        nameLengths = new int[capacity];
+        typeCodes = new byte[capacity];
+        sizes = new long[capacity];
+        created = new long[capacity];
+        modified = new long[capacity];
+        pathHashes = new int[capacity];
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Appends a row.
+     *
+     * @param filename the name shown in the table
+     * @param type the type label, e.g. "File" or "Directory"
+     * @param filepath the full path of the entry
+     * @param created the creation time in epoch milliseconds, or NO_TIME
+     * @param modified the modification time in epoch milliseconds, or NO_TIME
+     * @param size the size in bytes
+     * @return the index of the row
+     */
+    public int add(String filename, String type, String filepath, long created, long modified, long size) {
+        return insert(count, filename, type, filepath, created, modified, size);
+    }
+
+    /**
+     * Appends the current values of a Files object.
+     *
+     * @param file the row to copy
+     * @return the index of the row
+     */
+    public int add(Files file) {
+        return insert(count, file);
+    }
+
+    /**
+     * Appends a copy of a row of another store.
+     *
+     * @param source the store holding the row
+     * @param row the row to copy
+     * @return the index of the row
+     */
+    public int add(FileStore source, int row) {
+        int index = insert(count, null, null, null, NO_TIME, NO_TIME, 0);
+        replace(index, source, row);
+        return index;
+    }
+
+    /**
+     * Inserts the current values of a Files object, shifting later rows down.
+     *
+     * @param index the index the row gets
+     * @param file the row to copy
+     * @return the index of the row
+     */
+    public int insert(int index, Files file) {
+        return insert(index, file.getFilename(), file.gettype(), file.getfilepath(),
+                toMillis(file.getCreated()), toMillis(file.getModified()), (long) file.getsize());
+    }
+
+    /**
+     * Inserts a row, shifting later rows down.
+     *
+     * @param index the index the row gets, at most size()
+     * @return the index of the row
+     * @see #add(String, String, String, long, long, long)
+     */
+    public int insert(int index, String filename, String type, String filepath, long created, long modified, long size) {
+        if (index < 0 || index > count) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+        }
+        ensureCapacity(count + 1);
+        int moved = count - index;
+        if (moved > 0) {
+            shift(index, index + 1, moved);
+        }
+        count++;
+        nameOffsets[index] = NULL_NAME;
+        setFilepath(index, filepath);
+        setFilename(index, filename);
+        setType(index, type);
+        this.created[index] = created;
+        this.modified[index] = modified;
+        this.sizes[index] = size;
+        return index;
+    }
+
+    /**
+     * Appends every row of another store, for instance a batch filled on a worker thread.
+     *
+     * @param other the rows to append
+     */
+    public void addAll(FileStore other) {
+        if (other.count == 0) {
+            return;
+        }
+        ensureCapacity(count + other.count);
+
+        // each directory of the other store is interned here only once
+        int[] parentIds = new int[other.directories.size()];
+        Arrays.fill(parentIds, -1);
+        parentIds[PathTrie.ROOT] = PathTrie.ROOT;
+        byte[] typeIds = new byte[other.types.size() + 1];
+        for (int t = 0; t < other.types.size(); t++) {
+            typeIds[t + 1] = typeCode(other.types.get(t));
+        }
+
+        for (int i = 0; i < other.count; i++) {
+            int row = count + i;
+            int parent = other.parents[i];
+            if (parentIds[parent] < 0) {
+                parentIds[parent] = directories.intern(other.directories.path(parent));
+            }
+            parents[row] = parentIds[parent];
+            leafOffsets[row] = other.leafOffsets[i] < 0 ? other.leafOffsets[i]
+                    : chars.add(other.chars, other.leafOffsets[i], other.leafLengths[i]);
+            leafLengths[row] = other.leafLengths[i];
+            nameOffsets[row] = other.nameOffsets[i] < 0 ? other.nameOffsets[i]
+                    : chars.add(other.chars, other.nameOffsets[i], other.nameLengths[i]);
+            nameLengths[row] = other.nameLengths[i];
+            typeCodes[row] = typeIds[other.typeCodes[i] & 0xFF];
+        }
+        System.arraycopy(other.sizes, 0, sizes, count, other.count);
+        System.arraycopy(other.created, 0, created, count, other.count);
+        System.arraycopy(other.modified, 0, modified, count, other.count);
+        System.arraycopy(other.pathHashes, 0, pathHashes, count, other.count);
+        count += other.count;
+    }
+
+    /**
+     * Removes a row, shifting later rows up.
+     *
+     * @param index the row to remove
+     */
+    public void remove(int index) {
+        checkIndex(index);
+        int moved = count - index - 1;
+        if (moved > 0) {
+            shift(index + 1, index, moved);
+        }
+        count--;
+    }
+
+    /**
+     * Removes many rows in a single pass over the columns.
+     *
+     * @param indexes the rows to remove, in ascending order without duplicates
+     */
+    public void removeAll(int[] indexes) {
+        if (indexes.length == 0) {
+            return;
+        }
+        int to = indexes[0];
+        checkIndex(to);
+        for (int k = 0; k < indexes.length; k++) {
+            int from = indexes[k] + 1;
+            int end = k + 1 < indexes.length ? indexes[k + 1] : count;
+            if (end < from || end > count) {
+                throw new IllegalArgumentException("Indexes must be ascending and within the store: " + Arrays.toString(indexes));
+            }
+            shift(from, to, end - from);
+            to += end - from;
+        }
+        count = to;
+    }
+
+    /**
+     * Overwrites a row with a row of another store. A path and a name the row already has are
+     * kept, so a row that is only modified adds nothing to the arena.
+     *
+     * @param index the row to overwrite
+     * @param source the store holding the new values
+     * @param row the row of the source
+     */
+    public void replace(int index, FileStore source, int row) {
+        checkIndex(index);
+        String filepath = source.getFilepath(row);
+        if (!hasFilepath(index, filepath)) {
+            nameOffsets[index] = NULL_NAME;
+            setFilepath(index, filepath);
+        }
+        String filename = source.getFilename(row);
+        if (!hasFilename(index, filename)) {
+            setFilename(index, filename);
+        }
+        setType(index, source.getType(row));
+        created[index] = source.created[row];
+        modified[index] = source.modified[row];
+        sizes[index] = source.sizes[row];
+    }
+
+    // whether a row has the path, compared without adding to the arena
+    private boolean hasFilepath(int index, String filepath) {
+        if (filepath == null || leafOffsets[index] < 0) {
+            return filepath == null && leafOffsets[index] < 0;
+        }
+        if (pathHashes[index] != filepath.hashCode()) {
+            return false;
+        }
+        int separator = filepath.lastIndexOf(File.separatorChar);
+        if (!chars.matches(leafOffsets[index], leafLengths[index], filepath.substring(separator + 1))) {
+            return false;
+        }
+        // the directory of a row is interned already, interning it again finds its node
+        return parents[index] == (separator < 0 ? PathTrie.ROOT : directories.intern(filepath.substring(0, separator)));
+    }
+
+    // whether a row has the name
+    private boolean hasFilename(int index, String filename) {
+        int offset = nameOffsets[index];
+        if (filename == null || offset == NULL_NAME) {
+            return filename == null && offset == NULL_NAME;
+        }
+        if (offset == NAME_IS_LEAF) {
+            return chars.matches(leafOffsets[index], leafLengths[index], filename);
+        }
+        return chars.matches(offset, nameLengths[index], filename);
+    }
+
+    /**
+     * Reorders the rows in place; only the columns move, the names stay where they are.
+     *
+     * @param order for every new position the index the row had before, a permutation of 0..size-1
+     */
+    public void permute(int[] order) {
+        if (order.length != count) {
+            throw new IllegalArgumentException("Order of " + order.length + " rows for a store of " + count);
+        }
+        parents = permute(parents, order);
+        leafOffsets = permute(leafOffsets, order);
+        leafLengths = permute(leafLengths, order);
+        nameOffsets = permute(nameOffsets, order);
+        nameLengths = permute(nameLengths, order);
+        pathHashes = permute(pathHashes, order);
+        sizes = permute(sizes, order);
+        created = permute(created, order);
+        modified = permute(modified, order);
+        byte[] codes = new byte[typeCodes.length];
+        for (int i = 0; i < count; i++) {
+            codes[i] = typeCodes[order[i]];
+        }
+        typeCodes = codes;
+    }
+
+    /**
+     * Finds the rows of many paths in a single pass over the store.
+     *
+     * @param filepaths the paths to look for
+     * @return for every path the index of its first row, or -1 if it has none
+     */
+    public int[] indexesOf(List<String> filepaths) {
+        int[] found = new int[filepaths.size()];
+        Arrays.fill(found, -1);
+        if (filepaths.isEmpty()) {
+            return found;
+        }
+        Map<Integer, List<Integer>> byHash = new HashMap<>();
+        for (int k = 0; k < filepaths.size(); k++) {
+            byHash.computeIfAbsent(filepaths.get(k).hashCode(), hash -> new ArrayList<>(1)).add(k);
+        }
+        int remaining = filepaths.size();
+        for (int i = 0; i < count && remaining > 0; i++) {
+            List<Integer> candidates = byHash.get(pathHashes[i]);
+            if (candidates == null || leafOffsets[i] < 0) {
+                continue;
+            }
+            String path = getFilepath(i);
+            for (int k : candidates) {
+                if (found[k] < 0 && filepaths.get(k).equals(path)) {
+                    found[k] = i;
+                    remaining--;
+                }
+            }
+        }
+        return found;
+    }
+
+    /** Removes every row and releases the storage. */
+    public void clear() {
+        // a cleared store is refilled from scratch, start over with small columns
+        allocate(16);
+    }
+
+    public String getFilename(int index) {
+        checkIndex(index);
+        int offset = nameOffsets[index];
+        if (offset == NULL_NAME) {
+            return null;
+        }
+        if (offset == NAME_IS_LEAF) {
+            return chars.get(leafOffsets[index], leafLengths[index]);
+        }
+        return chars.get(offset, nameLengths[index]);
+    }
+
+    public String getType(int index) {
+        checkIndex(index);
+        int code = typeCodes[index] & 0xFF;
+        return code == 0 ? null : types.get(code - 1);
+    }
+
+    public String getFilepath(int index) {
+        checkIndex(index);
+        if (leafOffsets[index] < 0) {
+            return null;
+        }
+        StringBuilder path = new StringBuilder();
+        directories.appendDirectory(path, parents[index]);
+        chars.appendTo(path, leafOffsets[index], leafLengths[index]);
+        return path.toString();
+    }
+
+    public long getCreatedMillis(int index) {
+        checkIndex(index);
+        return created[index];
+    }
+
+    public long getModifiedMillis(int index) {
+        checkIndex(index);
+        return modified[index];
+    }
+
+    public LocalDateTime getCreated(int index) {
+        return toDateTime(getCreatedMillis(index));
+    }
+
+    public LocalDateTime getModified(int index) {
+        return toDateTime(getModifiedMillis(index));
+    }
+
+    public long getSize(int index) {
+        checkIndex(index);
+        return sizes[index];
+    }
+
+    public void setFilename(int index, String filename) {
+        checkIndex(index);
+        if (filename == null) {
+            nameOffsets[index] = NULL_NAME;
+            nameLengths[index] = 0;
+        } else if (leafOffsets[index] >= 0 && chars.matches(leafOffsets[index], leafLengths[index], filename)) {
+            nameOffsets[index] = NAME_IS_LEAF;
+            nameLengths[index] = 0;
+        } else {
+            nameOffsets[index] = chars.add(filename);
+            nameLengths[index] = filename.length();
+        }
+    }
+
+    public void setType(int index, String type) {
+        checkIndex(index);
+        typeCodes[index] = type == null ? 0 : typeCode(type);
+    }
+
+    public void setFilepath(int index, String filepath) {
+        checkIndex(index);
+        // the name may have shared the characters of the old leaf
+        String filename = nameOffsets[index] == NAME_IS_LEAF ? getFilename(index) : null;
+
+        if (filepath == null) {
+            parents[index] = PathTrie.ROOT;
+            leafOffsets[index] = -1;
+            pathHashes[index] = 0;
+            leafLengths[index] = 0;
+        } else {
+            int separator = filepath.lastIndexOf(File.separatorChar);
+            String leaf = filepath.substring(separator + 1);
+            parents[index] = separator < 0 ? PathTrie.ROOT : directories.intern(filepath.substring(0, separator));
+            leafOffsets[index] = chars.add(leaf);
+            pathHashes[index] = filepath.hashCode();
+            leafLengths[index] = leaf.length();
+        }
+        if (filename != null) {
+            setFilename(index, filename);
+        }
+    }
+
+    public void setCreated(int index, LocalDateTime time) {
+        checkIndex(index);
+        created[index] = toMillis(time);
+    }
+
+    public void setModified(int index, LocalDateTime time) {
+        checkIndex(index);
+        modified[index] = toMillis(time);
+    }
+
+    public void setSize(int index, long size) {
+        checkIndex(index);
+        sizes[index] = size;
+    }
+
+    /**
+     * Creates a Files object holding the current values of a row. The object is
+     * a copy: changing it does not change the store.
+     *
+     * @param index the row
+     * @return the values of the row
+     */
+    public Files toFiles(int index) {
+        return new Files(getFilename(index), getType(index), getFilepath(index),
+                getCreated(index), getModified(index), getSize(index));
+    }
+
+    /**
+     * Approximate number of bytes held by the columns and the name storage.
+     *
+     * @return the footprint of the store in bytes
+     */
+    public long footprint() {
+        long rows = parents.length;
+        return rows * (6 * Integer.BYTES + Byte.BYTES + 3 * Long.BYTES) + 2L * chars.capacity()
+                + directories.size() * 3L * Integer.BYTES;
+    }
+
+    /**
+     * Converts a LocalDateTime of the system zone to epoch milliseconds.
+     *
+     * @param time the time, may be null
+     * @return the milliseconds, or NO_TIME for null
+     */
+    public static long toMillis(LocalDateTime time) {
+        return time == null ? NO_TIME : time.atZone(ZONE).toInstant().toEpochMilli();
+    }
+
+    /**
+     * Converts epoch milliseconds to a LocalDateTime of the system zone.
+     *
+     * @param millis the milliseconds, or NO_TIME
+     * @return the time, null for NO_TIME
+     */
+    public static LocalDateTime toDateTime(long millis) {
+        return millis == NO_TIME ? null
+                : LocalDateTime.ofInstant(java.time.Instant.ofEpochMilli(millis), ZONE);
+    }
+
+    private byte typeCode(String type) {
+        int code = types.indexOf(type);
+        if (code < 0) {
+            if (types.size() == 255) {
+                throw new IllegalStateException("Too many file types: " + type);
+            }
+            types.add(type);
+            code = types.size() - 1;
+        }
+        return (byte) (code + 1);
+    }
+
+    private void shift(int from, int to, int length) {
+        System.arraycopy(parents, from, parents, to, length);
+        System.arraycopy(leafOffsets, from, leafOffsets, to, length);
+        System.arraycopy(leafLengths, from, leafLengths, to, length);
+        System.arraycopy(nameOffsets, from, nameOffsets, to, length);
+        System.arraycopy(nameLengths, from, nameLengths, to, length);
+        System.arraycopy(typeCodes, from, typeCodes, to, length);
+        System.arraycopy(sizes, from, sizes, to, length);
+        System.arraycopy(created, from, created, to, length);
+        System.arraycopy(modified, from, modified, to, length);
+        System.arraycopy(pathHashes, from, pathHashes, to, length);
+    }
+
+    private int[] permute(int[] column, int[] order) {
+        int[] permuted = new int[column.length];
+        for (int i = 0; i < count; i++) {
+            permuted[i] = column[order[i]];
+        }
+        return permuted;
+    }
+
+    private long[] permute(long[] column, int[] order) {
+        long[] permuted = new long[column.length];
+        for (int i = 0; i < count; i++) {
+            permuted[i] = column[order[i]];
+        }
+        return permuted;
+    }
+
+    private void ensureCapacity(int rows) {
+        if (rows <= parents.length) {
+            return;
+        }
+        int capacity = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(rows, parents.length * 3L / 2 + 1));
+        parents = Arrays.copyOf(parents, capacity);
+        leafOffsets = Arrays.copyOf(leafOffsets, capacity);
+        leafLengths = Arrays.copyOf(leafLengths, capacity);
+        nameOffsets = Arrays.copyOf(nameOffsets, capacity);
+        nameLengths = Arrays.copyOf(nameLengths, capacity);
+        typeCodes = Arrays.copyOf(typeCodes, capacity);
+        sizes = Arrays.copyOf(sizes, capacity);
+        created = Arrays.copyOf(created, capacity);
+        modified = Arrays.copyOf(modified, capacity);
+        pathHashes = Arrays.copyOf(pathHashes, capacity);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+        }
+    }
+}
@@ -0,0 +1,434 @@
+package model;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javafx.collections.ObservableListBase;
+
+/**
+ * Observable list of Files backed by a FileStore.
+ *
+ * The rows live in the columns of the store; a Files object is only created
+ * when a row is asked for, which for a TableView means the rows it renders.
+ * The objects handed out are kept in a bounded cache so that a visible row
+ * keeps its identity (selection, editing), and changes made through their
+ * properties are written back to the store. Once a row falls out of the
+ * cache its object is detached: it keeps its values but no longer updates
+ * the list, and the next get() of that row returns a fresh object.
+ *
+ * Lookups by object (indexOf, contains, remove(Object)) only find rows whose
+ * object is currently cached; Files has identity equality, so a row can only
+ * be found through an object this list handed out.
+ *
+ * sort() reorders the columns of the store in place and reports a single
+ * permutation, so a sorted table keeps its selection and cached rows; setAll
+ * replaces every row, keeping the cached objects among the new ones bound.
+ *
+ * @author Thomas Quarshie & Richard Quayson
+ */
+public class FileStoreList extends ObservableListBase<Files> {
+
+    /** Number of row objects kept alive, well above what a table shows at once. */
+    private static final int CACHED_ROWS = 1024;
+
+    private FileStore store = new FileStore();
+
+    /** Row objects by row index, in access order. */
+    private final LinkedHashMap<Integer, Row> rows = new LinkedHashMap<>(CACHED_ROWS * 2, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Row> eldest) {
+            if (size() > CACHED_ROWS) {
+                eldest.getValue().index = -1;
+                return true;
+            }
+            return false;
+        }
+    };
+
+    @Override
+    public Files get(int index) {
+        Row row = rows.get(index);
+        if (row == null) {
+            row = bind(store.toFiles(index), index);
+        }
+        return row.file;
+    }
+
+    @Override
+    public int size() {
+        return store.size();
+    }
+
+    /**
+     * Appends the rows of one or more stores with a single change.
+     *
+     * @param batches the rows to append, typically filled on a worker thread
+     */
+    public void appendAll(Collection<FileStore> batches) {
+        int from = store.size();
+        for (FileStore batch : batches) {
+            store.addAll(batch);
+        }
+        if (store.size() > from) {
+            beginChange();
+            nextAdd(from, store.size());
+            endChange();
+        }
+    }
+
+    /**
+     * Applies a set of changes to rows identified by their path, as one change.
+     *
+     * Rows that already exist are updated in place (their cached objects are
+     * updated too, so selection and visible cells stay put), new rows are
+     * appended at the end and removed rows are taken out in a single pass.
+     *
+     * @param upserts the current values of the paths that were created or modified
+     * @param removed the paths that no longer exist
+     */
+    public void applyChanges(FileStore upserts, List<String> removed) {
+        List<String> paths = new ArrayList<>(upserts.size() + removed.size());
+        for (int i = 0; i < upserts.size(); i++) {
+            paths.add(upserts.getFilepath(i));
+        }
+        paths.addAll(removed);
+        int[] found = store.indexesOf(paths);
+
+        beginChange();
+        FileStore added = new FileStore(1);
+        for (int i = 0; i < upserts.size(); i++) {
+            int index = found[i];
+            if (index < 0) {
+                added.add(upserts, i);
+                continue;
+            }
+            store.replace(index, upserts, i);
+            Row row = rows.get(index);
+            if (row != null) {
+                refresh(row);
+            }
+            nextUpdate(index);
+        }
+
+        int[] gone = Arrays.stream(found, upserts.size(), found.length).filter(index -> index >= 0)
+                .sorted().distinct().toArray();
+        if (gone.length > 0) {
+            // report from the last row to the first so every index is valid when it is reported
+            for (int k = gone.length - 1; k >= 0; k--) {
+                nextRemove(gone[k], detach(gone[k]));
+            }
+            store.removeAll(gone);
+            renumber(gone);
+        }
+
+        if (added.size() > 0) {
+            int from = store.size();
+            store.addAll(added);
+            nextAdd(from, store.size());
+        }
+        endChange();
+    }
+
+    @Override
+    public void add(int index, Files file) {
+        store.insert(index, file);
+        shift(index, 1);
+        bind(file, index);
+        beginChange();
+        nextAdd(index, index + 1);
+        endChange();
+    }
+
+    @Override
+    public Files set(int index, Files file) {
+        Files old = detach(index);
+        store.remove(index);
+        store.insert(index, file);
+        bind(file, index);
+        beginChange();
+        nextSet(index, old);
+        endChange();
+        return old;
+    }
+
+    @Override
+    public Files remove(int index) {
+        Files old = detach(index);
+        store.remove(index);
+        shift(index + 1, -1);
+        beginChange();
+        nextRemove(index, old);
+        endChange();
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        if (store.size() == 0) {
+            return;
+        }
+        // the removed rows are reported through a view of the old store, nothing is materialized
+        FileStore removed = store;
+        store = new FileStore();
+        for (Row row : rows.values()) {
+            row.index = -1;
+        }
+        rows.clear();
+        beginChange();
+        nextRemove(0, new RowView(removed));
+        endChange();
+    }
+
+    /**
+     * Replaces every row with the given ones, as a single change. Objects this
+     * list handed out stay bound to their row at its new index.
+     *
+     * @param files the new rows, in order
+     * @return true
+     */
+    @Override
+    public boolean setAll(Collection<? extends Files> files) {
+        List<Files> replacement = new ArrayList<>(files);
+        Map<Files, Row> cached = new IdentityHashMap<>();
+        for (Row row : rows.values()) {
+            cached.put(row.file, row);
+        }
+
+        FileStore removed = store;
+        store = new FileStore(replacement.size());
+        rows.clear();
+        for (int i = 0; i < replacement.size(); i++) {
+            Files file = replacement.get(i);
+            store.add(file);
+            Row row = cached.remove(file);
+            if (row != null) {
+                row.index = i;
+                rows.put(i, row);
+            }
+        }
+        for (Row row : cached.values()) {
+            row.index = -1;
+        }
+
+        beginChange();
+        if (removed.size() > 0) {
+            nextRemove(0, new RowView(removed));
+        }
+        if (store.size() > 0) {
+            nextAdd(0, store.size());
+        }
+        endChange();
+        return true;
+    }
+
+    /**
+     * Sorts the rows in place, as a single permutation. The comparator is
+     * given the cached object of a row where there is one and a copy of the
+     * row otherwise; the sort is stable.
+     *
+     * @param comparator the order of the rows, null for none
+     */
+    @Override
+    public void sort(Comparator<? super Files> comparator) {
+        int size = store.size();
+        if (comparator == null || size < 2) {
+            return;
+        }
+        Files[] values = new Files[size];
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            Row row = rows.get(i);
+            values[i] = row != null ? row.file : store.toFiles(i);
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> comparator.compare(values[a], values[b]));
+
+        // order gives the old row of every position, the change wants the new position of every row
+        int[] oldRows = new int[size];
+        int[] permutation = new int[size];
+        boolean moved = false;
+        for (int i = 0; i < size; i++) {
+            oldRows[i] = order[i];
+            permutation[order[i]] = i;
+            moved |= order[i] != i;
+        }
+        if (!moved) {
+            return;
+        }
+        store.permute(oldRows);
+        List<Row> cached = new ArrayList<>(rows.values());
+        rows.clear();
+        for (Row row : cached) {
+            row.index = permutation[row.index];
+            rows.put(row.index, row);
+        }
+
+        beginChange();
+        nextPermutation(0, size, permutation);
+        endChange();
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        for (Row row : rows.values()) {
+            if (row.file == o) {
+                return row.index;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        return indexOf(o);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) >= 0;
+    }
+
+    /**
+     * The store behind this list, for reading many rows without creating objects.
+     * It must not be modified directly.
+     *
+     * @return the backing store
+     */
+    public FileStore getStore() {
+        return store;
+    }
+
+    /** Caches the object of a row and writes changes of its properties back to the store. */
+    private Row bind(Files file, int index) {
+        Row row = new Row(file, index);
+        file.filenameProperty().addListener((observable, oldValue, newValue) -> {
+            if (row.index >= 0) {
+                store.setFilename(row.index, newValue);
+            }
+        });
+        file.typeProperty().addListener((observable, oldValue, newValue) -> {
+            if (row.index >= 0) {
+                store.setType(row.index, newValue);
+            }
+        });
+        file.filepathProperty().addListener((observable, oldValue, newValue) -> {
+            if (row.index >= 0) {
+                store.setFilepath(row.index, newValue);
+            }
+        });
+        file.createdProperty().addListener((observable, oldValue, newValue) -> {
+            if (row.index >= 0) {
+                store.setCreated(row.index, newValue);
+            }
+        });
+        file.ModifiedProperty().addListener((observable, oldValue, newValue) -> {
+            if (row.index >= 0) {
+                store.setModified(row.index, newValue);
+            }
+        });
+        file.sizeProperty().addListener((observable, oldValue, newValue) -> {
+            if (row.index >= 0) {
+                store.setSize(row.index, newValue.longValue());
+            }
+        });
+        rows.put(index, row);
+        return row;
+    }
+
+    /** Returns the object of a row that is about to be removed, detached from the store. */
+    private Files detach(int index) {
+        Row row = rows.remove(index);
+        if (row == null) {
+            return store.toFiles(index);
+        }
+        row.index = -1;
+        return row.file;
+    }
+
+    /** Moves the cached rows at or after an index by the given distance. */
+    private void shift(int from, int distance) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        Map<Integer, Row> moved = new HashMap<>();
+        Iterator<Row> iterator = rows.values().iterator();
+        while (iterator.hasNext()) {
+            Row row = iterator.next();
+            if (row.index >= from) {
+                iterator.remove();
+                row.index += distance;
+                moved.put(row.index, row);
+            }
+        }
+        rows.putAll(moved);
+    }
+
+    /** Renumbers the cached rows after the given rows were removed. */
+    private void renumber(int[] removed) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        List<Row> cached = new ArrayList<>(rows.values());
+        rows.clear();
+        for (Row row : cached) {
+            // detached rows were already dropped, so the search never finds the row itself
+            row.index -= -Arrays.binarySearch(removed, row.index) - 1;
+            rows.put(row.index, row);
+        }
+    }
+
+    /** Loads the current values of a row into its cached object. */
+    private void refresh(Row row) {
+        int index = row.index;
+        // the listeners would write the same values back, keep them out of it
+        row.index = -1;
+        Files file = row.file;
+        file.setFilename(store.getFilename(index));
+        file.settype(store.getType(index));
+        file.setfilepath(store.getFilepath(index));
+        file.setCreated(store.getCreated(index));
+        file.setModified(store.getModified(index));
+        file.setsize(store.getSize(index));
+        row.index = index;
+    }
+
+    private static final class Row {
+        final Files file;
+        int index;
+
+        Row(Files file, int index) {
+            this.file = file;
+            this.index = index;
+        }
+    }
+
+    /** Read-only rows of a store, created on access. */
+    private static final class RowView extends AbstractList<Files> {
+        private final FileStore store;
+
+        RowView(FileStore store) {
+            this.store = store;
+        }
+
+        @Override
+        public Files get(int index) {
+            return store.toFiles(index);
+        }
+
+        @Override
+        public int size() {
+            return store.size();
+        }
+    }
+}
@@ -45,6 +45,25 @@ public class Files {
 		
 	}
 	
+	/**
+	 * Constructor with the details of an entry on disk.
+	 * 
+	 * @param filename
+	 * @param type
+	 * @param filepath
+	 * @param created
+	 * @param modified
+	 * @param size
+	 */
+	public Files(String filename, String type, String filepath, LocalDateTime created, LocalDateTime modified, float size) {
+		this.filename = new SimpleStringProperty(filename);
+		this.type = new SimpleStringProperty(type);
+		this.filepath = new SimpleStringProperty(filepath);
+		this.created = new SimpleObjectProperty<LocalDateTime>(created);
+		this.modified = new SimpleObjectProperty<LocalDateTime>(modified);
+		this.size = new SimpleFloatProperty(size);
+	}
+	
 	public String getFilename() {
 		return filename.get();
 	}
@@ -0,0 +1,139 @@
+package model;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Interned directory paths for the FileStore.
+ *
+ * Every directory is a node holding the id of its parent and the offset and
+ * length of its own name in a shared character arena, so a directory that
+ * holds a million files is stored once rather than once per file. Node 0 is
+ * the root of the trie and stands for "no directory"; the components of a
+ * path are split on the separator only, so every path rebuilds exactly as it
+ * was interned (the leading separator of an absolute path becomes a node with
+ * an empty name).
+ *
+ * @author Thomas Quarshie & Richard Quayson
+ */
+final class PathTrie {
+
+    /** Id of the root of the trie, the parent of names without a directory. */
+    static final int ROOT = 0;
+
+    private final CharArena names;
+    private final char separator;
+    private int[] parents = new int[64];
+    private int[] nameOffsets = new int[64];
+    private int[] nameLengths = new int[64];
+    private int count = 1;
+
+    /** Child lookup by parent id and name, only consulted while interning. */
+    private final Map<Key, Integer> children = new HashMap<>();
+
+    /** The last path interned, loads add many rows under the same directory. */
+    private String lastPath;
+    private int lastId;
+
+    PathTrie(CharArena names, char separator) {
+        this.names = names;
+        this.separator = separator;
+    }
+
+    /**
+     * Returns the node of a directory path, creating nodes as needed.
+     *
+     * @param path the directory path, null for the root
+     * @return the id of the node
+     */
+    int intern(String path) {
+        if (path == null) {
+            return ROOT;
+        }
+        if (path.equals(lastPath)) {
+            return lastId;
+        }
+
+        int id = ROOT;
+        int start = 0;
+        while (start <= path.length()) {
+            int end = path.indexOf(separator, start);
+            if (end < 0) {
+                end = path.length();
+            }
+            id = child(id, path.substring(start, end));
+            start = end + 1;
+        }
+
+        lastPath = path;
+        lastId = id;
+        return id;
+    }
+
+    /**
+     * Rebuilds the path of a node.
+     *
+     * @param id the id of the node
+     * @return the path, null for the root
+     */
+    String path(int id) {
+        if (id == ROOT) {
+            return null;
+        }
+        StringBuilder path = new StringBuilder();
+        append(path, id);
+        return path.toString();
+    }
+
+    private void append(StringBuilder path, int id) {
+        int parent = parents[id];
+        if (parent != ROOT) {
+            append(path, parent);
+            path.append(separator);
+        }
+        names.appendTo(path, nameOffsets[id], nameLengths[id]);
+    }
+
+    private int child(int parent, String name) {
+        Key key = new Key(parent, name);
+        Integer existing = children.get(key);
+        if (existing != null) {
+            return existing;
+        }
+
+        if (count == parents.length) {
+            int capacity = count * 2;
+            parents = Arrays.copyOf(parents, capacity);
+            nameOffsets = Arrays.copyOf(nameOffsets, capacity);
+            nameLengths = Arrays.copyOf(nameLengths, capacity);
+        }
+        int id = count++;
+        parents[id] = parent;
+        nameOffsets[id] = names.add(name);
+        nameLengths[id] = name.length();
+        children.put(key, id);
+        return id;
+    }
+
+    /**
+     * Appends the path of a node followed by a separator, nothing for the root.
+     *
+     * @param builder the builder to append to
+     * @param id the id of the node
+     */
+    void appendDirectory(StringBuilder builder, int id) {
+        if (id != ROOT) {
+            append(builder, id);
+            builder.append(separator);
+        }
+    }
+
+    /** Number of nodes, including the root. */
+    int size() {
+        return count;
+    }
+
+    private record Key(int parent, String name) {
+    }
+}
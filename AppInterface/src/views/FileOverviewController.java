@@ -83,6 +83,14 @@ public void setMainApp(MainApp mainApp) {
 
     // Add observable list data to the table
     fileTable.setItems(mainApp.getFileData());
+
+    // Sort the rows in place (one permutation) instead of copying and replacing them all
+    fileTable.setSortPolicy(table -> {
+        if (table.getComparator() != null) {
+            table.getItems().sort(table.getComparator());
+        }
+        return true;
+    });
 }
 
 
@@ -8,6 +8,8 @@
 #include <linux/slab.h>
 #include <linux/dcache.h>
 
+#include "fm_frame.h"
+
 
 // Module metadata
 MODULE_AUTHOR("Richard Quayson & Thomas Quarshie");
@@ -19,10 +21,62 @@ MODULE_LICENSE("GPL");
 static struct proc_dir_entry *proc_entry;
 
 
+/**
+ * create_file
+ * this function creates (or truncates) the file at the specified path and writes the content
+ * to it
+ * 
+ * @param file_path: path of the file to create
+ * @param file_content: content to write, not necessarily null-terminated
+ * @param content_len: number of content bytes
+ * @return ssize_t: number of content bytes written, error code otherwise
+*/
+
+static ssize_t create_file(const char *file_path, const char *file_content, size_t content_len) {
+    // create the file and open it
+    struct file *filp = filp_open(file_path, O_CREAT | O_WRONLY | O_TRUNC, 0644);
+    if (IS_ERR(filp)) {
+        printk(KERN_ERR "Failed to create or open file: %ld\n", PTR_ERR(filp));
+        return PTR_ERR(filp);
+    }
+
+    // write the content to the file
+    ssize_t written = kernel_write(filp, file_content, content_len, &filp->f_pos);
+    if (written < 0) {
+        printk(KERN_ERR "Failed to write to file: %ld\n", written);
+    } else {
+        printk(KERN_INFO "File created and content written successfully: %s\n", file_path);
+    }
+
+    // close the file
+    filp_close(filp, NULL);
+
+    return written;
+}
+
+
+/**
+ * create_file_frame
+ * this function creates the file of one frame of a framed request, with the payload as content
+ * 
+ * @param frame: the frame
+ * @return int: 0 if successful, error code otherwise
+*/
+
+static int create_file_frame(const struct fm_frame *frame) {
+    if (frame->flags != 0) {
+        return -EINVAL;
+    }
+    ssize_t written = create_file(frame->path, frame->payload, frame->payload_len);
+    return written < 0 ? written : 0;
+}
+
+
 /**
  * create_file_write
  * this function is called when the /proc/create_file file is written to
- * it creates a file with the specified path and writes the content to it
+ * it creates a file with the specified path and writes the content to it, or the files of a
+ * batch of frames
  * 
  * @param file: file pointer
  * @param user_buffer: user buffer
@@ -36,6 +90,7 @@ static ssize_t create_file_write(struct file *file, const char __user *user_buff
     char *file_path = NULL;
     char *file_content = NULL;
     char *newline_pos = NULL;
+    ssize_t written;
 
     // allocate memory for buffer
     buffer = kzalloc(count + 1, GFP_KERNEL);
@@ -51,6 +106,13 @@ static ssize_t create_file_write(struct file *file, const char __user *user_buff
 
     buffer[count] = '\0'; // null-terminate the buffer
 
+    // a batch of frames creates each file in turn
+    if (fm_is_framed(buffer, count)) {
+        written = fm_frame_batch(buffer, count, FM_OP_CREATE_FILE, create_file_frame);
+        kfree(buffer);
+        return written;
+    }
+
     // locate the newline character ('\n') in the buffer
     newline_pos = strchr(buffer, '\n');
     if (!newline_pos) {
@@ -58,38 +120,21 @@ static ssize_t create_file_write(struct file *file, const char __user *user_buff
         return -EINVAL; // invalid input, expected a newline character
     }
 
-    // split the buffer into file path and content
+    // split the buffer into file path and content, the content length comes from
+    // the write count so that content containing NUL bytes is written in full
     *newline_pos = '\0';
     file_path = buffer;
     file_content = newline_pos + 1;
 
-    // create the file and open it
-    struct file *filp = filp_open(file_path, O_CREAT | O_WRONLY | O_TRUNC, 0644);
-    if (IS_ERR(filp)) {
-        printk(KERN_ERR "Failed to create or open file: %ld\n", PTR_ERR(filp));
-        kfree(buffer);
-        return PTR_ERR(filp);
-    }
-
-    // write the content to the file
-    ssize_t written = kernel_write(filp, file_content, strlen(file_content), &filp->f_pos);
-    if (written < 0) {
-        printk(KERN_ERR "Failed to write to file: %ld\n", written);
-        filp_close(filp, NULL);
-        kfree(buffer);
-        return written;
-    } else {
-        printk(KERN_INFO "File created and content written successfully: %s\n", file_path);
-    }
-
-    // close the file
-    filp_close(filp, NULL);
+    // create the file and write the content to it
+    written = create_file(file_path, file_content, count - (file_content - buffer));
 
     // free allocated memory
     kfree(buffer);
 
-    // return the number of bytes written
-    return written;
+    // the whole request was consumed, like the other modules; a shorter count would make the
+    // writer send the rest of the request again as a request of its own
+    return written < 0 ? written : count;
 }
 
 
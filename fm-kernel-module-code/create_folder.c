@@ -8,6 +8,8 @@
 #include <linux/slab.h>
 #include <linux/dcache.h>
 
+#include "fm_frame.h"
+
 
 // module metadata
 MODULE_AUTHOR("Richard Quayson & Thomas Quarshie");
@@ -20,52 +22,31 @@ static struct proc_dir_entry* proc_entry;
 
 
 /**
- * create_folder_write
- * this function is called when the /proc/create_folder file is written to
- * it creates a folder with the specified path
+ * create_folder
+ * this function creates a folder at the specified path
  * 
- * @param file: file pointer
- * @param user_buffer: user buffer
- * @param count: number of bytes to write
- * @param offset: file offset
- * @return ssize_t: number of bytes written
+ * @param path: path of the folder to create
+ * @return int: 0 if successful, error code otherwise
 */
 
-static ssize_t create_folder_write(struct file *file, const char __user *user_buffer, size_t count, loff_t *offset) {
-    char *buffer;
+static int create_folder(const char *path) {
     char *folder_path = NULL;
     char *parent_path = NULL;
     char *folder_name = NULL;
     struct path dir_path;
     struct qstr qstr;
 
-    // copy data from user space
-    buffer = kzalloc(count + 1, GFP_KERNEL);
-    if (!buffer) {
-        return -ENOMEM;
-    }
-
-    // copy data from user space to kernel space
-    if (copy_from_user(buffer, user_buffer, count)) {
-        kfree(buffer);
-        return -EFAULT;
-    }
-
-    buffer[count] = '\0';
-
     // separate the path into parent directory and folder name
-    folder_path = kzalloc(strlen(buffer) + 2, GFP_KERNEL);      // add 2 for leading '/' and null terminator
+    folder_path = kzalloc(strlen(path) + 2, GFP_KERNEL);        // add 2 for leading '/' and null terminator
     if (!folder_path) {
-        kfree(buffer);
         return -ENOMEM;
     }
 
-    sprintf(folder_path, "/%s", buffer);                        // prepend the '/' to the folder path
+    sprintf(folder_path, "/%s", path);                          // prepend the '/' to the folder path
     
     // find the last '/' in the path to separate parent path and folder name
     char *last_slash = strrchr(folder_path, '/');
     if (last_slash == NULL) {
-        kfree(buffer);
         kfree(folder_path);
         return -EINVAL;                                         // invalid argument since the path must contain '/'
     }
@@ -79,7 +60,6 @@ static ssize_t create_folder_write(struct file *file, const char __user *user_bu
     printk(KERN_INFO "Requested parent directory path: %s\n", parent_path);
     int ret = kern_path(parent_path, LOOKUP_DIRECTORY, &dir_path);
     if (ret != 0) {
-        kfree(buffer);
         kfree(folder_path);
         printk(KERN_ERR "Failed to resolve parent directory path: %d\n", ret);
         return ret;
@@ -98,7 +78,6 @@ static ssize_t create_folder_write(struct file *file, const char __user *user_bu
     if (!new_folder_dentry) {
         new_folder_dentry = d_alloc_name(parent_dentry, folder_name);
         if (!new_folder_dentry) {
-            kfree(buffer);
             kfree(folder_path);
             path_put(&dir_path);
             printk(KERN_ERR "Failed to allocate dentry for the new folder.\n");
@@ -114,16 +93,76 @@ static ssize_t create_folder_write(struct file *file, const char __user *user_bu
     if (ret != 0) {
         printk(KERN_ERR "Failed to create directory: %d\n", ret);
     } else {
-        printk(KERN_INFO "Directory created successfully: %s\n", buffer);
+        printk(KERN_INFO "Directory created successfully: %s\n", path);
     }
 
     // free allocated memory
     path_put(&dir_path);
-    kfree(buffer);
     kfree(folder_path);
 
+    return ret;
+}
+
+
+/**
+ * create_folder_frame
+ * this function creates the folder named by one frame of a framed request
+ * 
+ * @param frame: the frame, which carries no payload
+ * @return int: 0 if successful, error code otherwise
+*/
+
+static int create_folder_frame(const struct fm_frame *frame) {
+    if (frame->payload_len != 0) {
+        return -EINVAL;
+    }
+    return create_folder(frame->path);
+}
+
+
+/**
+ * create_folder_write
+ * this function is called when the /proc/create_folder file is written to
+ * it creates a folder with the specified path, or the folders of a batch of frames
+ * 
+ * @param file: file pointer
+ * @param user_buffer: user buffer
+ * @param count: number of bytes to write
+ * @param offset: file offset
+ * @return ssize_t: number of bytes written
+*/
+
+static ssize_t create_folder_write(struct file *file, const char __user *user_buffer, size_t count, loff_t *offset) {
+    char *buffer;
+    ssize_t ret;
+
+    // copy data from user space
+    buffer = kzalloc(count + 1, GFP_KERNEL);
+    if (!buffer) {
+        return -ENOMEM;
+    }
+
+    // copy data from user space to kernel space
+    if (copy_from_user(buffer, user_buffer, count)) {
+        kfree(buffer);
+        return -EFAULT;
+    }
+
+    buffer[count] = '\0';
+
+    // a batch of frames creates each folder in turn, a text request names a single one
+    if (fm_is_framed(buffer, count)) {
+        ret = fm_frame_batch(buffer, count, FM_OP_CREATE_FOLDER, create_folder_frame);
+    } else {
+        ret = create_folder(buffer);
+        ret = ret == 0 ? count : ret;
+    }
+
+    // free allocated memory
+    kfree(buffer);
+
     // return the number of bytes written
-    return ret == 0 ? count : ret;
+    return ret;
 }
 
 
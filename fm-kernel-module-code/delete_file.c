@@ -9,6 +9,8 @@
 #include <linux/namei.h>
 #include <linux/path.h>
 
+#include "fm_frame.h"
+
 
 // module metadata
 MODULE_AUTHOR("Richard Quayson & Thomas Quarshie");
@@ -57,6 +59,22 @@ static int delete_file(const char *file_path) {
 }
 
 
+/**
+ * delete_file_frame
+ * this function deletes the file named by one frame of a framed request
+ * 
+ * @param frame: the frame, which carries no payload
+ * @return int: 0 if successful, error code otherwise
+*/
+
+static int delete_file_frame(const struct fm_frame *frame) {
+    if (frame->payload_len != 0) {
+        return -EINVAL;
+    }
+    return delete_file(frame->path);
+}
+
+
 /**
  * delete_file_write
  * this function is called when the /proc/delete_file file is written to
@@ -87,6 +105,13 @@ static ssize_t delete_file_write(struct file *file, const char __user *user_buff
     // null-terminate the buffer
     buffer[count] = '\0';
 
+    // a batch of frames deletes each file in turn
+    if (fm_is_framed(buffer, count)) {
+        ssize_t written = fm_frame_batch(buffer, count, FM_OP_DELETE_FILE, delete_file_frame);
+        kfree(buffer);
+        return written;
+    }
+
     // call the function to delete the file
     int ret = delete_file(buffer);
 
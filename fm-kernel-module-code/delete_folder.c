@@ -9,6 +9,8 @@
 #include <linux/namei.h>      
 #include <linux/path.h>       
 
+#include "fm_frame.h"
+
 
 // module metadata
 MODULE_AUTHOR("Richard Quayson & Thomas Quarshie");
@@ -57,6 +59,22 @@ static int delete_folder(const char *folder_path) {
 }
 
 
+/**
+ * delete_folder_frame
+ * this function deletes the folder named by one frame of a framed request
+ * 
+ * @param frame: the frame, which carries no payload
+ * @return int: 0 if successful, error code otherwise
+*/
+
+static int delete_folder_frame(const struct fm_frame *frame) {
+    if (frame->payload_len != 0) {
+        return -EINVAL;
+    }
+    return delete_folder(frame->path);
+}
+
+
 /**
  * delete_folder_write
  * this function is called when the /proc/delete_folder file is written to
@@ -87,6 +105,13 @@ static ssize_t delete_folder_write(struct file *file, const char __user *user_bu
     // null-terminate the buffer
     buffer[count] = '\0';
 
+    // a batch of frames deletes each folder in turn
+    if (fm_is_framed(buffer, count)) {
+        ssize_t written = fm_frame_batch(buffer, count, FM_OP_DELETE_FOLDER, delete_folder_frame);
+        kfree(buffer);
+        return written;
+    }
+
     // call the function to delete the folder
     int ret = delete_folder(buffer);
 
@@ -0,0 +1,196 @@
+#ifndef FM_FRAME_H
+#define FM_FRAME_H
+
+#include <linux/kernel.h>
+#include <linux/limits.h>
+#include <linux/slab.h>
+#include <linux/string.h>
+#include <linux/err.h>
+
+
+/**
+ * framed requests
+ * besides its text request, every module accepts a batch of binary frames in one write:
+ * the magic "FMB1", then one frame per operation, each an 8-byte header followed by the path
+ * and the payload:
+ *
+ *   u8 op | u8 flags | u16 path length | u32 payload length | path | payload
+ *
+ * lengths are little-endian. the payload is the content for create_file and update_file and the
+ * new name for the renames, the folder and delete modules take none. a frame carries the op
+ * code of the module it is written to, anything else is rejected. the frames are performed in
+ * order and the write stops at the first one that fails: it returns the byte offset of that
+ * frame (a short write) if an earlier one was performed, its error code otherwise, and count
+ * when all of them succeed. FrameEncoder.java writes this format and FrameDecoder.java reads it.
+*/
+
+#define FM_FRAME_MAGIC "FMB1"
+#define FM_FRAME_MAGIC_LEN 4
+#define FM_FRAME_HEADER_LEN 8
+
+// op codes, in the order of Operation.Type on the Java side
+#define FM_OP_CREATE_FOLDER 1
+#define FM_OP_RENAME_FOLDER 2
+#define FM_OP_DELETE_FOLDER 3
+#define FM_OP_CREATE_FILE 4
+#define FM_OP_RENAME_FILE 5
+#define FM_OP_UPDATE_FILE 6
+#define FM_OP_DELETE_FILE 7
+
+// frame flags, update_file truncates the file instead of appending
+#define FM_FLAG_OVERWRITE 0x01
+#define FM_FLAG_MASK FM_FLAG_OVERWRITE
+
+
+/**
+ * fm_frame
+ * one parsed frame; the path is a NUL-terminated copy, the payload points into the request
+ * and is not terminated
+*/
+
+struct fm_frame {
+    u8 op;
+    u8 flags;
+    const char *path;
+    size_t path_len;
+    const char *payload;
+    size_t payload_len;
+};
+
+
+/**
+ * fm_is_framed
+ * this function tells whether a request is a batch of frames rather than a text request
+ *
+ * @param buffer: the request, copied from user space
+ * @param count: number of bytes in the request
+ * @return bool: true if the request starts with the magic
+*/
+
+static inline bool fm_is_framed(const char *buffer, size_t count) {
+    return count >= FM_FRAME_MAGIC_LEN && memcmp(buffer, FM_FRAME_MAGIC, FM_FRAME_MAGIC_LEN) == 0;
+}
+
+
+/**
+ * fm_frame_parse
+ * this function reads the frame at an offset of a request and checks it against the bounds of
+ * the request and the op code of the module
+ *
+ * @param buffer: the request
+ * @param count: number of bytes in the request
+ * @param offset: offset of the frame header
+ * @param op: the op code of the module
+ * @param path: PATH_MAX bytes receiving the NUL-terminated path
+ * @param frame: the frame to fill in
+ * @return int: 0 if the frame is valid, error code otherwise
+*/
+
+static inline int fm_frame_parse(const char *buffer, size_t count, size_t offset, u8 op, char *path, struct fm_frame *frame) {
+    const u8 *header = (const u8 *) buffer + offset;
+    size_t available;
+
+    // the header must be complete, and the path and payload must end within the request
+    if (count - offset < FM_FRAME_HEADER_LEN) {
+        return -EINVAL;
+    }
+    available = count - offset - FM_FRAME_HEADER_LEN;
+    frame->op = header[0];
+    frame->flags = header[1];
+    frame->path_len = header[2] | (header[3] << 8);
+    frame->payload_len = header[4] | (header[5] << 8) | (header[6] << 16) | ((u32) header[7] << 24);
+    if (frame->path_len > available || frame->payload_len > available - frame->path_len) {
+        return -EINVAL;
+    }
+
+    if (frame->op != op || (frame->flags & ~FM_FLAG_MASK) || frame->path_len == 0) {
+        return -EINVAL;
+    }
+    if (frame->path_len >= PATH_MAX) {
+        return -ENAMETOOLONG;
+    }
+
+    // copy the path out, it may not contain a NUL of its own
+    memcpy(path, header + FM_FRAME_HEADER_LEN, frame->path_len);
+    if (memchr(path, '\0', frame->path_len)) {
+        return -EINVAL;
+    }
+    path[frame->path_len] = '\0';
+    frame->path = path;
+    frame->payload = (const char *) header + FM_FRAME_HEADER_LEN + frame->path_len;
+    return 0;
+}
+
+
+/**
+ * fm_frame_payload_string
+ * this function returns a NUL-terminated copy of the payload of a frame, for the new name of
+ * the renames; the caller frees it with kfree
+ *
+ * @param frame: the frame
+ * @return char *: the copy, or an ERR_PTR if the payload is empty or contains a NUL
+*/
+
+static inline char *fm_frame_payload_string(const struct fm_frame *frame) {
+    char *copy;
+
+    if (frame->payload_len == 0 || memchr(frame->payload, '\0', frame->payload_len)) {
+        return ERR_PTR(-EINVAL);
+    }
+    copy = kmemdup_nul(frame->payload, frame->payload_len, GFP_KERNEL);
+    return copy ? copy : ERR_PTR(-ENOMEM);
+}
+
+
+/**
+ * fm_frame_batch
+ * this function performs the frames of a framed request one after another, stopping at the
+ * first one that fails
+ *
+ * @param buffer: the request, copied from user space
+ * @param count: number of bytes in the request
+ * @param op: the op code of the module
+ * @param handler: the function performing one frame, returning 0 or an error code
+ * @return ssize_t: count if every frame succeeded, the offset of the failed frame if an earlier
+ *                  one succeeded, the error code of the first frame otherwise
+*/
+
+static inline ssize_t fm_frame_batch(const char *buffer, size_t count, u8 op, int (*handler)(const struct fm_frame *frame)) {
+    size_t offset = FM_FRAME_MAGIC_LEN;
+    struct fm_frame frame;
+    char *path;
+    int ret = 0;
+
+    // a batch without frames is malformed
+    if (count == FM_FRAME_MAGIC_LEN) {
+        return -EINVAL;
+    }
+
+    // one path buffer for the whole batch
+    path = kmalloc(PATH_MAX, GFP_KERNEL);
+    if (!path) {
+        return -ENOMEM;
+    }
+
+    while (offset < count) {
+        ret = fm_frame_parse(buffer, count, offset, op, path, &frame);
+        if (ret == 0) {
+            ret = handler(&frame);
+        }
+        if (ret != 0) {
+            break;
+        }
+        offset += FM_FRAME_HEADER_LEN + frame.path_len + frame.payload_len;
+    }
+
+    kfree(path);
+
+    if (ret == 0) {
+        return count;
+    }
+
+    // the frames before the failed one were performed, report them as a short write
+    return offset > FM_FRAME_MAGIC_LEN ? (ssize_t) offset : ret;
+}
+
+#endif
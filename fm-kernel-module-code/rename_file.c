@@ -7,6 +7,8 @@
 #include <linux/err.h>
 #include <linux/namei.h>
 
+#include "fm_frame.h"
+
 
 // module metadata
 MODULE_AUTHOR("Richard Quayson & Thomas Quarshie");
@@ -19,60 +21,21 @@ static struct proc_dir_entry *proc_entry;
 
 
 /**
- * renamedata
- * data structure to hold information about the rename operation
+ * rename_file
+ * this function renames the file at the specified path, within its parent directory
  * 
- * @param file *file: file pointer
- * @param user_buffer: user buffer
- * @param count: number of bytes to write
- * @param offset: file offset
- * @return ssize_t: number of bytes written
+ * @param current_path: path of the file to rename
+ * @param new_name: the new name, without a directory part
+ * @return int: 0 if successful, error code otherwise
 */
 
-static ssize_t rename_file_write(struct file *file, const char __user *user_buffer, size_t count, loff_t *offset) {
-    char *buffer;
-    char *current_path = NULL;
-    char *new_name = NULL;
-    char *newline_pos = NULL;
+static int rename_file(const char *current_path, const char *new_name) {
     char *new_file_path = NULL;
 
-    // allocate memory for the buffer
-    buffer = kzalloc(count + 1, GFP_KERNEL);
-    if (!buffer) {
-        return -ENOMEM;
-    }
-
-    // copy data from user space to kernel space
-    if (copy_from_user(buffer, user_buffer, count)) {
-        kfree(buffer);
-        return -EFAULT;
-    }
-
-    buffer[count] = '\0';           // null-terminate the buffer
-
-    // locate the newline character ('\n') in the buffer
-    newline_pos = strchr(buffer, '\n');
-    if (!newline_pos) {
-        kfree(buffer);
-        return -EINVAL;             // invalid input, expected a newline character
-    }
-
-    // split the buffer into current path and new name
-    *newline_pos = '\0';
-    current_path = buffer;
-    new_name = newline_pos + 1;
-
-    // remove any trailing newline from new name
-    size_t new_name_length = strlen(new_name);
-    if (new_name[new_name_length - 1] == '\n') {
-        new_name[new_name_length - 1] = '\0';
-    }
-
     // find the last slash to determine the directory part of the current path
     char *last_slash = strrchr(current_path, '/');
     if (!last_slash) {
-        kfree(buffer);
-        return -EINVAL;               // invalid current path
+        return -EINVAL;             // invalid current path
     }
 
     // determine the length of the directory part
@@ -81,7 +44,6 @@ static ssize_t rename_file_write(struct file *file, const char __user *user_buff
     // allocate memory for the new file path
     new_file_path = kzalloc(dir_length + strlen(new_name) + 1, GFP_KERNEL);
     if (!new_file_path) {
-        kfree(buffer);
         return -ENOMEM;
     }
 
@@ -97,7 +59,6 @@ static ssize_t rename_file_write(struct file *file, const char __user *user_buff
     int err = kern_path(current_path, LOOKUP_FOLLOW, &old_path);
     if (err) {
         printk(KERN_ERR "Failed to find the old file path: %d\n", err);
-        kfree(buffer);
         kfree(new_file_path);
         return err;
     }
@@ -113,7 +74,6 @@ static ssize_t rename_file_write(struct file *file, const char __user *user_buff
         printk(KERN_ERR "Old parent directory not found\n");
         path_put(&old_path);
         kfree(new_file_path);
-        kfree(buffer);
         return -EINVAL;
     }
     
@@ -124,7 +84,6 @@ static ssize_t rename_file_write(struct file *file, const char __user *user_buff
         printk(KERN_ERR "Failed to look up the new file name: %ld\n", PTR_ERR(new_dentry));
         path_put(&old_path);
         kfree(new_file_path);
-        kfree(buffer);
         return PTR_ERR(new_dentry);
     }
     
@@ -143,7 +102,6 @@ static ssize_t rename_file_write(struct file *file, const char __user *user_buff
     err = vfs_rename(&rd);
     if (err == 0) {
         printk(KERN_INFO "File renamed successfully: %s -> %s\n", current_path, new_name);
-        err = count;
     } else {
         printk(KERN_ERR "Failed to rename file: %d\n", err);
     }
@@ -152,12 +110,106 @@ static ssize_t rename_file_write(struct file *file, const char __user *user_buff
     path_put(&old_path);
     dput(new_dentry);
     kfree(new_file_path);
-    kfree(buffer);
 
     return err;
 }
 
 
+/**
+ * rename_file_frame
+ * this function performs the rename of one frame of a framed request, whose payload is the
+ * new name
+ * 
+ * @param frame: the frame
+ * @return int: 0 if successful, error code otherwise
+*/
+
+static int rename_file_frame(const struct fm_frame *frame) {
+    if (frame->flags != 0) {
+        return -EINVAL;
+    }
+
+    char *new_name = fm_frame_payload_string(frame);
+    if (IS_ERR(new_name)) {
+        return PTR_ERR(new_name);
+    }
+
+    int err = rename_file(frame->path, new_name);
+    kfree(new_name);
+    return err;
+}
+
+
+/**
+ * rename_file_write
+ * this function is called when the /proc/rename_file file is written to
+ * it takes "path\nnew_name\n", or a batch of frames
+ * 
+ * @param file *file: file pointer
+ * @param user_buffer: user buffer
+ * @param count: number of bytes to write
+ * @param offset: file offset
+ * @return ssize_t: number of bytes written
+*/
+
+static ssize_t rename_file_write(struct file *file, const char __user *user_buffer, size_t count, loff_t *offset) {
+    char *buffer;
+    char *current_path = NULL;
+    char *new_name = NULL;
+    char *newline_pos = NULL;
+    ssize_t ret;
+
+    // allocate memory for the buffer
+    buffer = kzalloc(count + 1, GFP_KERNEL);
+    if (!buffer) {
+        return -ENOMEM;
+    }
+
+    // copy data from user space to kernel space
+    if (copy_from_user(buffer, user_buffer, count)) {
+        kfree(buffer);
+        return -EFAULT;
+    }
+
+    buffer[count] = '\0';           // null-terminate the buffer
+
+    // a batch of frames performs each rename in turn
+    if (fm_is_framed(buffer, count)) {
+        ret = fm_frame_batch(buffer, count, FM_OP_RENAME_FILE, rename_file_frame);
+        kfree(buffer);
+        return ret;
+    }
+
+    // locate the newline character ('\n') in the buffer
+    newline_pos = strchr(buffer, '\n');
+    if (!newline_pos) {
+        kfree(buffer);
+        return -EINVAL;             // invalid input, expected a newline character
+    }
+
+    // split the buffer into current path and new name
+    *newline_pos = '\0';
+    current_path = buffer;
+    new_name = newline_pos + 1;
+
+    // remove any trailing newline from new name
+    size_t new_name_length = strlen(new_name);
+    if (new_name[new_name_length - 1] == '\n') {
+        new_name[new_name_length - 1] = '\0';
+    }
+
+    // rename the file
+    ret = rename_file(current_path, new_name);
+    if (ret == 0) {
+        ret = count;
+    }
+
+    kfree(buffer);
+
+    return ret;
+}
+
+
 /**
  * pops
  * proc_ops structure for the /proc/rename_file file
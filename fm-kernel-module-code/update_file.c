@@ -10,6 +10,8 @@
 #include <linux/file.h> 
 #include <linux/fcntl.h> 
 
+#include "fm_frame.h"
+
 
 // module metadata
 MODULE_AUTHOR("Richard Quayson & Thomas Quarshie");
@@ -21,9 +23,60 @@ MODULE_LICENSE("GPL");
 static struct proc_dir_entry *proc_entry;
 
 
+/**
+ * update_file
+ * this function appends content to, or overwrites, the file at the specified path
+ * 
+ * @param file_path: path of the file to update
+ * @param file_content: content to write, not necessarily null-terminated
+ * @param content_len: number of content bytes
+ * @param overwrite_flag: non-zero to truncate the file first, 0 to append
+ * @return ssize_t: number of content bytes written, error code otherwise
+*/
+
+static ssize_t update_file(const char *file_path, const char *file_content, size_t content_len, int overwrite_flag) {
+    // open the file with the appropriate flags
+    int file_flags = O_WRONLY | ((overwrite_flag) ? O_TRUNC : O_APPEND);
+    struct file *filp = filp_open(file_path, file_flags, 0644);
+    if (IS_ERR(filp)) {
+        printk(KERN_ERR "Failed to open file: %ld\n", PTR_ERR(filp));
+        return PTR_ERR(filp);
+    }
+
+    // write the content to the file
+    ssize_t written = kernel_write(filp, file_content, content_len, &filp->f_pos);
+    if (written < 0) {
+        printk(KERN_ERR "Failed to write to file: %ld\n", written);
+    } else {
+        printk(KERN_INFO "File updated successfully: %s\n", file_path);
+    }
+
+    // close the file
+    filp_close(filp, NULL);
+
+    return written;
+}
+
+
+/**
+ * update_file_frame
+ * this function performs the update of one frame of a framed request, with the payload as
+ * content and FM_FLAG_OVERWRITE as the overwrite flag
+ * 
+ * @param frame: the frame
+ * @return int: 0 if successful, error code otherwise
+*/
+
+static int update_file_frame(const struct fm_frame *frame) {
+    ssize_t written = update_file(frame->path, frame->payload, frame->payload_len, frame->flags & FM_FLAG_OVERWRITE);
+    return written < 0 ? written : 0;
+}
+
+
 /**
  * update_file_write
  * this function is called when the /proc/update_file file is written to
+ * it takes "path|content|flag", or a batch of frames
  * 
  * @param file: file pointer
  * @param user_buffer: user buffer
@@ -39,6 +92,8 @@ static ssize_t update_file_write(struct file *file, const char __user *user_buff
     char *newline_pos = NULL;
     char *overwrite_flag_str = NULL;
     int overwrite_flag;
+    size_t content_len;
+    ssize_t written;
 
     // allocate memory for buffer
     buffer = kzalloc(count + 1, GFP_KERNEL);
@@ -54,6 +109,13 @@ static ssize_t update_file_write(struct file *file, const char __user *user_buff
 
     buffer[count] = '\0';               // null-terminate the buffer
 
+    // a batch of frames performs each update in turn
+    if (fm_is_framed(buffer, count)) {
+        written = fm_frame_batch(buffer, count, FM_OP_UPDATE_FILE, update_file_frame);
+        kfree(buffer);
+        return written;
+    }
+
     // locate the pipe character ('|') in the buffer
     newline_pos = strchr(buffer, '|');
     if (!newline_pos) {
@@ -66,15 +128,21 @@ static ssize_t update_file_write(struct file *file, const char __user *user_buff
     file_path = buffer;
     file_content = newline_pos + 1;
 
-    // locate another pipe character to split content and overwrite flag
-    newline_pos = strchr(file_content, '|');
-    if (!newline_pos) {
+    // locate the last pipe character to split content and overwrite flag, scanning back
+    // from the end of the request so that the content may contain pipes and NUL bytes
+    newline_pos = buffer + count;
+    while (newline_pos > file_content && *(newline_pos - 1) != '|') {
+        newline_pos--;
+    }
+    if (newline_pos == file_content) {
         kfree(buffer);
-        return -EINVAL;                 // invalid input, expected a newline character
+        return -EINVAL;                 // invalid input, expected a pipe before the flag
     }
+    newline_pos--;
 
     *newline_pos = '\0';
     overwrite_flag_str = newline_pos + 1;
+    content_len = newline_pos - file_content;
 
     // convert overwrite_flag_str to int
     if (kstrtoint(overwrite_flag_str, 10, &overwrite_flag) != 0) {
@@ -82,34 +150,15 @@ static ssize_t update_file_write(struct file *file, const char __user *user_buff
         return -EINVAL;                 // invalid overwrite flag input
     }
 
-    // open the file with the appropriate flags
-    int file_flags = O_WRONLY | ((overwrite_flag) ? O_TRUNC : O_APPEND);
-    struct file *filp = filp_open(file_path, file_flags, 0644);
-    if (IS_ERR(filp)) {
-        printk(KERN_ERR "Failed to open file: %ld\n", PTR_ERR(filp));
-        kfree(buffer);
-        return PTR_ERR(filp);
-    }
-
     // write the content to the file
-    ssize_t written = kernel_write(filp, file_content, strlen(file_content), &filp->f_pos);
-    if (written < 0) {
-        printk(KERN_ERR "Failed to write to file: %ld\n", written);
-        filp_close(filp, NULL);
-        kfree(buffer);
-        return written;
-    } else {
-        printk(KERN_INFO "File updated successfully: %s\n", file_path);
-    }
-
-    // close the file
-    filp_close(filp, NULL);
+    written = update_file(file_path, file_content, content_len, overwrite_flag);
 
     // free allocated memory
     kfree(buffer);
 
-    // return the number of bytes written
-    return written;
+    // the whole request was consumed, like the other modules; a shorter count would make the
+    // writer send the rest of the request again as a request of its own
+    return written < 0 ? written : count;
 }
 
 
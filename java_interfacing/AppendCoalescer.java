@@ -0,0 +1,262 @@
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+/**
+ * AppendCoalescer
+ * this class buffers appends (updateFile with overwriteFlag 0) and merges the ones made to the
+ * same path into a single request to /proc/update_file, which the module handles with one
+ * filp_open/kernel_write/filp_close instead of one per append. it is opt-in: install it with
+ * FMKernelModules.setWriteBehind, after which every append goes through it.
+ *
+ * The appends to a path are held until the first of them is maxDelayMillis old or they add up
+ * to maxBytes, and are then sent in the order they were made. An overwrite of a path first
+ * sends the appends still pending for it, as do drain(path), flush() and close(); the other
+ * FMKernelModules mutations and reads of a file drain it the same way, so they see every append
+ * made before them. paths are compared as written, the same file spelled two ways is buffered
+ * twice.
+ *
+ * Buffered appends are sent by a daemon thread when their window ends, so a failure of such a
+ * request cannot reach the caller that made the append: the first one is kept and thrown by the
+ * next flush() or close(). appends still pending when the JVM exits without close() are lost.
+ *
+ * @authors      Richard Quayson & Thomas Quarshie
+ */
+
+public final class AppendCoalescer implements Flushable, Closeable {
+    // how long an append may wait, override with -Dfm.writeBehind.delayMillis
+    public static final long DEFAULT_MAX_DELAY_MILLIS = Long.getLong("fm.writeBehind.delayMillis", 50);
+
+    // pending bytes of a path that trigger a request, override with -Dfm.writeBehind.maxBytes
+    public static final int DEFAULT_MAX_BYTES = Integer.getInteger("fm.writeBehind.maxBytes", ProcStreamWriter.CHUNK_SIZE);
+
+    private final long maxDelayNanos;
+    private final int maxBytes;
+    private final ConcurrentHashMap<String, Pending> pending = new ConcurrentHashMap<>();
+    private final ScheduledThreadPoolExecutor timer;
+    private final AtomicReference<IOException> failure = new AtomicReference<>();
+    private volatile boolean closed;
+
+
+    public AppendCoalescer() {
+        this(DEFAULT_MAX_DELAY_MILLIS, DEFAULT_MAX_BYTES);
+    }
+
+
+    /**
+     * AppendCoalescer
+     * this constructor creates a coalescer with the given windows.
+     *
+     * @param maxDelayMillis how long the first buffered append of a path may wait.
+     * @param maxBytes the pending bytes of a path (UTF-8) at which they are sent at once.
+     */
+
+    public AppendCoalescer(long maxDelayMillis, int maxBytes) {
+        if (maxDelayMillis < 1 || maxBytes < 1) {
+            throw new IllegalArgumentException("the windows must be positive: " + maxDelayMillis + " ms, " + maxBytes + " bytes");
+        }
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.maxBytes = maxBytes;
+        this.timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "fm-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.setRemoveOnCancelPolicy(true);
+    }
+
+
+    /**
+     * update
+     * this method buffers an append, or sends an overwrite after the appends pending for the
+     * path.
+     *
+     * @param filePath the path of the file to update.
+     * @param newData the data to append or write.
+     * @param overwriteFlag 1 to overwrite the file, 0 to append.
+     * @return OperationResult for a buffered append, a success with the bytes buffered, or the
+     *         result of the merged request if the append filled the byte window (its failure is
+     *         not thrown again by flush); for an overwrite, the result of its request.
+     */
+
+    public OperationResult update(String filePath, String newData, int overwriteFlag) {
+        if (closed) {
+            throw new IllegalStateException("The coalescer is closed");
+        }
+        if (overwriteFlag != 0) {
+            drain(filePath);
+            return Operation.updateFile(filePath, newData, overwriteFlag).run();
+        }
+
+        long start = System.nanoTime();
+        int bytes = utf8Length(newData);
+        while (true) {
+            Pending entry = pending.computeIfAbsent(filePath, Pending::new);
+            entry.lock.lock();
+            try {
+                if (entry.retired) {
+                    // flushed and dropped from the map meanwhile, start a new entry
+                    continue;
+                }
+                if (entry.timeout == null) {
+                    entry.timeout = timer.schedule(() -> expire(entry), maxDelayNanos, TimeUnit.NANOSECONDS);
+                }
+                entry.data.append(newData);
+                entry.bytes += bytes;
+                if (entry.bytes >= maxBytes) {
+                    return send(entry);
+                }
+                return OperationResult.success(Operation.Type.UPDATE_FILE, bytes, System.nanoTime() - start);
+            } finally {
+                entry.lock.unlock();
+            }
+        }
+    }
+
+
+    /**
+     * drain
+     * this method sends the appends pending for a path, if there are any. failures are kept for
+     * flush() like those of the timed requests.
+     *
+     * @param filePath the path, as written in the appends.
+     * @return void
+     */
+
+    public void drain(String filePath) {
+        Pending entry = pending.get(filePath);
+        if (entry != null) {
+            entry.lock.lock();
+            try {
+                keep(send(entry));
+            } finally {
+                entry.lock.unlock();
+            }
+        }
+    }
+
+
+    // drain the paths below a folder, before the folder is renamed, deleted or walked
+    public void drainFolder(String folderPath) {
+        String prefix = folderPath.endsWith("/") ? folderPath : folderPath + "/";
+        for (String filePath : pending.keySet()) {
+            if (filePath.startsWith(prefix)) {
+                drain(filePath);
+            }
+        }
+    }
+
+    // the number of paths with appends waiting
+    public int getPendingPaths() {
+        return pending.size();
+    }
+
+
+    /**
+     * flush
+     * this method sends every pending append.
+     *
+     * @return void
+     * @throws IOException the first request that failed since the last flush, if any.
+     */
+
+    @Override
+    public void flush() throws IOException {
+        for (String filePath : pending.keySet()) {
+            drain(filePath);
+        }
+        IOException e = failure.getAndSet(null);
+        if (e != null) {
+            throw e;
+        }
+    }
+
+
+    /**
+     * close
+     * this method sends every pending append and stops the timer; appends made after it throw
+     * IllegalStateException.
+     *
+     * @return void
+     * @throws IOException the first request that failed since the last flush, if any.
+     */
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        try {
+            flush();
+        } finally {
+            timer.shutdownNow();
+        }
+    }
+
+
+    // the time window of the entry has ended
+    private void expire(Pending entry) {
+        entry.lock.lock();
+        try {
+            keep(send(entry));
+        } finally {
+            entry.lock.unlock();
+        }
+    }
+
+    // send the buffered appends as one request and retire the entry, with the entry locked
+    private OperationResult send(Pending entry) {
+        if (entry.retired || entry.bytes == 0) {
+            return null;
+        }
+        entry.retired = true;
+        entry.timeout.cancel(false);
+        OperationResult result = Operation.updateFile(entry.path, entry.data.toString(), 0).run();
+        // dropped only now, so the next appends of the path wait on this lock for the request
+        pending.remove(entry.path, entry);
+        return result;
+    }
+
+    // remember the failure of a request no caller sees, for the next flush
+    private void keep(OperationResult result) {
+        if (result != null && !result.isSuccess()) {
+            failure.compareAndSet(null, result.getError());
+        }
+    }
+
+    private static int utf8Length(String text) {
+        int length = text.length();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= 0x80) {
+                // 2 bytes below 0x800, 3 above, a surrogate pair (4 bytes) counts 2 + 2
+                length += c < 0x800 ? 1 : Character.isSurrogate(c) ? 1 : 2;
+            }
+        }
+        return length;
+    }
+
+
+    /**
+     * Pending
+     * the appends buffered for one path; its lock keeps the requests of the path in order.
+     */
+
+    private static final class Pending {
+        final String path;
+        final ReentrantLock lock = new ReentrantLock();
+        final StringBuilder data = new StringBuilder();
+        int bytes;
+        ScheduledFuture<?> timeout;
+        boolean retired;
+
+        Pending(String path) {
+            this.path = path;
+        }
+    }
+}
@@ -0,0 +1,275 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * BulkIngest
+ * this class creates the folders and files listed in a manifest (see ManifestReader), for jobs
+ * that would otherwise drive the Main menu or the python scripts one operation at a time.
+ *
+ * The manifest is streamed: the reading thread creates folders itself, in manifest order, and
+ * makes sure the parent folder of every file exists (creating missing ancestors) before the
+ * file is handed to a worker, so a file is never created before its folder. Files are created
+ * by a fixed pool of workers fed through a bounded queue; when the queue is full the reading
+ * thread creates the file itself, which holds reading back, so memory stays flat however long
+ * the manifest is. A failed record is reported on standard error and the ingest goes on. On the
+ * kernel modules the requests go through the BULK lane of OperationScheduler.shared().
+ *
+ *   java BulkIngest [--workers N] [--backend proc|nio|auto] [--format csv|jsonl] <manifest | ->
+ *
+ * @authors      Richard Quayson & Thomas Quarshie
+ */
+
+public final class BulkIngest {
+    // number of file workers, override with -Dfm.ingest.workers or --workers
+    public static final int DEFAULT_WORKERS = Integer.getInteger("fm.ingest.workers",
+            Math.max(4, Runtime.getRuntime().availableProcessors() * 2));
+
+    // files waiting for a worker, per worker
+    private static final int QUEUE_PER_WORKER = 64;
+
+    // folders known to exist, remembered so the parent of every file is not checked again
+    private static final int KNOWN_FOLDERS = 4096;
+
+    // failures printed in full, later ones are only counted
+    private static final int MAX_REPORTED_FAILURES = 100;
+
+    private final FsBackend backend;
+    private final int workers;
+    private final Map<String, Boolean> knownFolders = new LinkedHashMap<>(KNOWN_FOLDERS * 2, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > KNOWN_FOLDERS;
+        }
+    };
+
+    private final LongAdder folders = new LongAdder();
+    private final LongAdder files = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final AtomicInteger reported = new AtomicInteger();
+
+
+    public BulkIngest(FsBackend backend, int workers) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("workers must be at least 1: " + workers);
+        }
+        this.backend = backend;
+        this.workers = workers;
+    }
+
+
+    public static void main(String[] args) throws IOException {
+        int workers = DEFAULT_WORKERS;
+        String backendName = FsBackends.DEFAULT;
+        ManifestReader.Format format = null;
+        String manifest = null;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--workers" -> workers = Integer.parseInt(value(args, ++i));
+                case "--backend" -> backendName = value(args, ++i);
+                case "--format" -> format = ManifestReader.Format.valueOf(value(args, ++i).toUpperCase());
+                default -> manifest = args[i];
+            }
+        }
+        if (manifest == null) {
+            System.err.println("Usage: java BulkIngest [--workers N] [--backend proc|nio|auto] [--format csv|jsonl] <manifest | ->");
+            System.exit(2);
+        }
+
+        // the interface methods would print a line per request
+        FMKernelModules.setLog(OperationLog.NONE);
+        FsBackend backend = FsBackends.select(backendName);
+        if (backend instanceof ProcFsBackend) {
+            // leave the modules to the interactive operations first
+            backend = new ProcFsBackend(OperationScheduler.Lane.BULK);
+        }
+        boolean stdin = "-".equals(manifest);
+        if (format == null) {
+            format = stdin ? ManifestReader.Format.CSV : ManifestReader.Format.of(manifest);
+        }
+        BufferedReader reader = stdin
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8), 1 << 16)
+                : Files.newBufferedReader(Paths.get(manifest), StandardCharsets.UTF_8);
+
+        Summary summary;
+        try (ManifestReader records = new ManifestReader(reader, format)) {
+            summary = new BulkIngest(backend, workers).ingest(records);
+        }
+        System.out.println(summary);
+        if (summary.failed() > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static String value(String[] args, int i) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException(args[i - 1] + " needs a value");
+        }
+        return args[i];
+    }
+
+
+    /**
+     * ingest
+     * this method creates everything the manifest lists, returning once every file is done.
+     *
+     * @param records the manifest.
+     * @return Summary the counts and throughput of the ingest.
+     * @throws IOException if the manifest cannot be read; the files handed out are finished first.
+     */
+
+    public Summary ingest(ManifestReader records) throws IOException {
+        long start = System.nanoTime();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(workers * QUEUE_PER_WORKER), runnable -> {
+                    Thread thread = new Thread(runnable, "fm-ingest-worker");
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+
+        try {
+            while (true) {
+                ManifestReader.Entry entry;
+                try {
+                    entry = records.next();
+                } catch (ManifestReader.MalformedEntryException e) {
+                    fail(e.getMessage());
+                    continue;
+                }
+                if (entry == null) {
+                    break;
+                }
+
+                if (entry.folder()) {
+                    try {
+                        ensureFolder(Paths.get(entry.path()).toAbsolutePath().normalize());
+                    } catch (IOException e) {
+                        fail(entry, e);
+                    }
+                    continue;
+                }
+
+                Path parent = Paths.get(entry.path()).toAbsolutePath().normalize().getParent();
+                try {
+                    if (parent != null) {
+                        ensureFolder(parent);
+                    }
+                } catch (IOException e) {
+                    fail(entry, e);
+                    continue;
+                }
+                pool.execute(() -> createFile(entry));
+            }
+        } finally {
+            pool.shutdown();
+            try {
+                pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return new Summary(records.getLine(), folders.sum(), files.sum(), bytes.sum(), failed.sum(), System.nanoTime() - start);
+    }
+
+
+    /**
+     * ensureFolder
+     * this method makes sure a folder exists, creating it and any missing ancestors. it runs on
+     * the reading thread only.
+     *
+     * @param folder the absolute, normalized folder.
+     * @return void
+     * @throws IOException if the folder cannot be created.
+     */
+
+    private void ensureFolder(Path folder) throws IOException {
+        String key = folder.toString();
+        if (knownFolders.get(key) != null) {
+            return;
+        }
+        if (!Files.isDirectory(folder)) {
+            try {
+                backend.createFolder(key);
+                folders.increment();
+            } catch (IOException e) {
+                // the kernel modules report errors as a bare errno, java.nio.file as exception types
+                Errno errno = Errno.of(e);
+                if (errno == Errno.ENOENT && folder.getParent() != null) {
+                    // a missing ancestor, create it first
+                    ensureFolder(folder.getParent());
+                    backend.createFolder(key);
+                    folders.increment();
+                } else if (errno != Errno.EEXIST) {
+                    throw e;
+                }
+            }
+        }
+        knownFolders.put(key, Boolean.TRUE);
+    }
+
+    private void createFile(ManifestReader.Entry entry) {
+        try {
+            if (entry.contentPath() == null) {
+                backend.createFile(entry.path(), "");
+            } else {
+                long size = Files.size(Paths.get(entry.contentPath()));
+                backend.copyFile(entry.contentPath(), entry.path());
+                bytes.add(size);
+            }
+            files.increment();
+        } catch (IOException | RuntimeException e) {
+            fail(entry, e);
+        }
+    }
+
+    private void fail(ManifestReader.Entry entry, Exception e) {
+        String reason = e instanceof IOException ? Errno.of((IOException) e) + " " + e.getMessage() : e.toString();
+        fail("Line " + entry.line() + " of the manifest: " + (entry.folder() ? "folder " : "file ") + entry.path() + ": " + reason);
+    }
+
+    private void fail(String message) {
+        failed.increment();
+        if (reported.incrementAndGet() <= MAX_REPORTED_FAILURES) {
+            System.err.println(message);
+        }
+    }
+
+
+    /**
+     * Summary
+     * the counts of an ingest and how fast it went.
+     */
+
+    public record Summary(long lines, long folders, long files, long bytes, long failed, long elapsedNanos) {
+
+        public double filesPerSecond() {
+            return elapsedNanos == 0 ? 0 : files * 1e9 / elapsedNanos;
+        }
+
+        public double megabytesPerSecond() {
+            return elapsedNanos == 0 ? 0 : bytes * 1e9 / elapsedNanos / (1024 * 1024);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Ingested %d lines in %.3f s: %d folders, %d files (%.0f files/s), %d bytes (%.1f MB/s), %d failed",
+                    lines, elapsedNanos / 1e9, folders, files, filesPerSecond(), bytes, megabytesPerSecond(), failed);
+        }
+    }
+}
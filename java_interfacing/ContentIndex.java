@@ -0,0 +1,1223 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntUnaryOperator;
+
+
+/**
+ * ContentIndex
+ * this class keeps an inverted index of the content of files, so that the files containing a
+ * term, or a phrase, are found without reading any of them. build(root) indexes a tree, and
+ * once the index is installed with FMKernelModules.setContentIndex, the files created, updated,
+ * renamed and deleted through FMKernelModules are indexed again as they change, a file at a
+ * time; the index is never rebuilt as a whole.
+ *
+ * Files are split into terms by a Tokenizer. every indexed file is a document with a number,
+ * and the postings of a term list the documents that contain it with the positions of the term
+ * in them (see Postings). documents are numbered in the order they are indexed, and a file that
+ * changes gets a new number, its old one is only marked deleted; a rename keeps the number.
+ * The postings of the documents indexed last are held in memory, the rest are in IndexSegment
+ * files in the index directory, memory-mapped, each holding a higher range of documents than
+ * the one before. the memory postings are written to a new segment every DEFAULT_FLUSH_DOCUMENTS
+ * documents and by flush(), and once there are more than DEFAULT_MAX_SEGMENTS segments, the
+ * adjacent half with the fewest bytes is merged into one, leaving out the deleted documents. once
+ * more than DEFAULT_MAX_DELETED_PERCENT of the numbers are deleted, all the segments are merged
+ * and the live documents numbered again, so there are not many more numbers than files. the
+ * file "index" names the segments and the documents; it is replaced atomically after every
+ * segment written, so the directory always holds a complete index.
+ *
+ * The FMKernelModules hooks only queue the change. the queue is applied by refresh(), which a
+ * daemon thread runs every DEFAULT_REFRESH_MILLIS, and by flush(); the changed files are read
+ * (after the appends buffered for them are sent, under a shared PathLocks hold) and tokenized in
+ * parallel, on the workers of the index. search() sees the changes once they are refreshed.
+ * Only regular files are indexed; those with a NUL byte among their first bytes are taken for
+ * binary and indexed without terms, and only the first DEFAULT_MAX_FILE_BYTES of a file are
+ * read. a change made around FMKernelModules is not seen until the next build() of a folder
+ * above it.
+ *
+ * Failures of the background refresh are kept and thrown by the next flush() or close(). the
+ * changes refreshed since the last flush are lost if the JVM exits without close(); build()
+ * finds them again.
+ *
+ * @authors      Richard Quayson & Thomas Quarshie
+ */
+
+public final class ContentIndex implements Closeable {
+    // workers that read and tokenize files, override with -Dfm.index.parallelism
+    public static final int DEFAULT_PARALLELISM = Integer.getInteger("fm.index.parallelism",
+            Runtime.getRuntime().availableProcessors());
+
+    // documents held in memory before they are written to a segment, override with -Dfm.index.flushDocs
+    public static final int DEFAULT_FLUSH_DOCUMENTS = Integer.getInteger("fm.index.flushDocs", 20000);
+
+    // postings ints held in memory before they are written to a segment, override with -Dfm.index.flushInts
+    public static final int DEFAULT_FLUSH_INTS = Integer.getInteger("fm.index.flushInts", 8 * 1024 * 1024);
+
+    // segments kept before half of them are merged, override with -Dfm.index.maxSegments
+    public static final int DEFAULT_MAX_SEGMENTS = Integer.getInteger("fm.index.maxSegments", 8);
+
+    // percent of the document numbers deleted before the index is compacted, override with -Dfm.index.maxDeletedPercent
+    public static final int DEFAULT_MAX_DELETED_PERCENT = Integer.getInteger("fm.index.maxDeletedPercent", 33);
+
+    // how often queued changes are applied, override with -Dfm.index.refreshMillis
+    public static final long DEFAULT_REFRESH_MILLIS = Long.getLong("fm.index.refreshMillis", 1000);
+
+    // the bytes of a file that are indexed, override with -Dfm.index.maxFileBytes
+    public static final int DEFAULT_MAX_FILE_BYTES = Integer.getInteger("fm.index.maxFileBytes", 16 * 1024 * 1024);
+
+    private static final String COMMIT = "index";
+    private static final int COMMIT_MAGIC = 0x464D4943;
+    private static final int COMMIT_VERSION = 1;
+
+    // files read per task, and per batch applied to the index
+    private static final int FILES_PER_TASK = 16;
+    private static final int FILES_PER_BATCH = 1024;
+
+    // the bytes searched for a NUL to tell a binary file
+    private static final int BINARY_PROBE = 8000;
+
+    private static final ThreadLocal<CharBuffer> DECODED = ThreadLocal.withInitial(() -> CharBuffer.allocate(8 * 1024));
+
+    private final Path directory;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ReentrantLock refreshLock = new ReentrantLock();
+    private final ConcurrentLinkedQueue<Event> events = new ConcurrentLinkedQueue<>();
+    private final AtomicReference<IOException> failure = new AtomicReference<>();
+    private final ForkJoinPool workers;
+    private final ScheduledThreadPoolExecutor timer;
+    private volatile boolean closed;
+
+    // the documents: the number of each indexed (normalized) path, the path of each number, null
+    // once deleted, and the size and modification time the file had when it was read
+    private final TreeMap<String, Integer> ids = new TreeMap<>();
+    private final ArrayList<String> paths = new ArrayList<>();
+    private long[] sizes = new long[1024];
+    private long[] modified = new long[1024];
+
+    // the segments, oldest first, and the postings of the documents from firstBuffered on
+    private List<IndexSegment> segments = new ArrayList<>();
+    private HashMap<String, TermBuffer> buffer = new HashMap<>();
+    private int firstBuffered;
+    private long bufferedInts;
+    private int nextSegment;
+
+
+    private ContentIndex(Path directory) {
+        this.directory = directory;
+        this.workers = new ForkJoinPool(Math.max(1, DEFAULT_PARALLELISM), pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("fm-index-worker-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+        this.timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "fm-content-index");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+
+    /**
+     * open
+     * this method opens the index kept in a directory, creating an empty one if there is none,
+     * and starts refreshing it in the background.
+     *
+     * @param directory the directory of the index files.
+     * @return ContentIndex the index.
+     * @throws IOException if the directory cannot be created or the index cannot be read.
+     */
+
+    public static ContentIndex open(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        ContentIndex index = new ContentIndex(directory);
+        try {
+            index.load();
+        } catch (IOException | RuntimeException e) {
+            index.workers.shutdownNow();
+            index.timer.shutdownNow();
+            throw e;
+        }
+        index.timer.scheduleWithFixedDelay(index::backgroundRefresh, DEFAULT_REFRESH_MILLIS, DEFAULT_REFRESH_MILLIS, TimeUnit.MILLISECONDS);
+        return index;
+    }
+
+
+    /**
+     * build
+     * this method brings the index of a folder up to date: the files below it that are new or
+     * whose size or modification time changed are indexed, and the indexed files below it that
+     * no longer exist are removed. the index is flushed afterwards.
+     *
+     * @param root the folder to index.
+     * @return void
+     * @throws IOException if the folder cannot be walked or the index cannot be written.
+     */
+
+    public void build(String root) throws IOException {
+        folderChanged(root);
+        flush();
+    }
+
+
+    /**
+     * fileChanged / fileRenamed / fileDeleted / folderChanged / folderRenamed / folderDeleted
+     * these methods queue a change made to the file system, for the next refresh. a folder that
+     * changed is compared with the index like by build().
+     */
+
+    public void fileChanged(String filePath) {
+        queue(new Event(Event.Kind.CHANGED, filePath, null));
+    }
+
+    public void fileRenamed(String currentPath, String newPath) {
+        queue(new Event(Event.Kind.RENAMED, currentPath, newPath));
+    }
+
+    public void fileDeleted(String filePath) {
+        queue(new Event(Event.Kind.DELETED, filePath, null));
+    }
+
+    public void folderChanged(String folderPath) {
+        queue(new Event(Event.Kind.FOLDER_CHANGED, folderPath, null));
+    }
+
+    public void folderRenamed(String currentPath, String newPath) {
+        queue(new Event(Event.Kind.FOLDER_RENAMED, currentPath, newPath));
+    }
+
+    public void folderDeleted(String folderPath) {
+        queue(new Event(Event.Kind.FOLDER_DELETED, folderPath, null));
+    }
+
+
+    /**
+     * record
+     * this method queues the change an operation made, once it succeeded.
+     *
+     * @param operation the operation.
+     * @return void
+     */
+
+    public void record(Operation operation) {
+        String path = operation.getPath();
+        switch (operation.getType()) {
+            case CREATE_FILE:
+            case UPDATE_FILE:   fileChanged(path); break;
+            case RENAME_FILE:   fileRenamed(path, FMKernelModules.sibling(path, operation.getArgument())); break;
+            case DELETE_FILE:   fileDeleted(path); break;
+            case RENAME_FOLDER: folderRenamed(path, FMKernelModules.sibling(path, operation.getArgument())); break;
+            case DELETE_FOLDER: folderDeleted(path); break;
+            default:            break;
+        }
+    }
+
+
+    /**
+     * search
+     * this method finds the files that contain a query: the files with its term, for a single
+     * term, or with its terms one after another, for several. the query is split into terms the
+     * way files are, so case and punctuation do not matter.
+     *
+     * @param query the term or phrase.
+     * @return List<String> the paths of the files, in the order they were indexed.
+     */
+
+    public List<String> search(String query) {
+        return search(query, Integer.MAX_VALUE);
+    }
+
+
+    /**
+     * search
+     * this method finds the files that contain a query, up to a number of them. the postings of
+     * the terms are walked together, each skipping ahead to the document the others are on, and
+     * for a phrase the positions are compared only where all the terms meet.
+     *
+     * @param query the term or phrase.
+     * @param limit the most paths to return.
+     * @return List<String> the paths of the files, in the order they were indexed.
+     */
+
+    public List<String> search(String query, int limit) {
+        List<String> terms = new ArrayList<>();
+        Tokenizer.terms(query, (term, position) -> terms.add(term));
+        List<String> result = new ArrayList<>();
+        if (terms.isEmpty() || limit <= 0) {
+            return result;
+        }
+
+        lock.readLock().lock();
+        try {
+            Postings[] postings = new Postings[terms.size()];
+            for (int i = 0; i < postings.length; i++) {
+                postings[i] = postings(terms.get(i));
+            }
+
+            int doc = 0;
+            while (true) {
+                // move every term to the document, or start over from the one a term skipped to
+                boolean aligned = true;
+                for (Postings term : postings) {
+                    if (!term.advance(doc)) {
+                        return result;
+                    }
+                    if (term.doc() > doc) {
+                        doc = term.doc();
+                        aligned = false;
+                        break;
+                    }
+                }
+                if (!aligned) {
+                    continue;
+                }
+                if (paths.get(doc) != null && isPhrase(postings)) {
+                    result.add(paths.get(doc));
+                    if (result.size() == limit) {
+                        return result;
+                    }
+                }
+                doc++;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+
+    /**
+     * refresh
+     * this method applies the queued changes: files are removed from the index and renamed in
+     * it right away, the changed ones are read and tokenized in parallel, FILES_PER_BATCH at a
+     * time, and then replace their old documents. it returns once the queue is empty.
+     *
+     * @return void
+     * @throws IOException if a segment cannot be written; a file that cannot be read is left
+     *         out of the index, and the first such failure is thrown by the next flush().
+     */
+
+    public void refresh() throws IOException {
+        refreshLock.lock();
+        try {
+            while (!events.isEmpty()) {
+                Map<String, String> dirty = new LinkedHashMap<>();
+                Map<String, String> folders = new LinkedHashMap<>();
+                lock.writeLock().lock();
+                try {
+                    Event event;
+                    while ((event = events.poll()) != null) {
+                        apply(event, dirty, folders);
+                    }
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                for (String folder : folders.keySet()) {
+                    compare(folder, dirty);
+                }
+                index(dirty);
+            }
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+
+    /**
+     * flush
+     * this method refreshes the index, writes the postings held in memory to a segment and
+     * commits the index, so that it is reopened as it is now.
+     *
+     * @return void
+     * @throws IOException if the index cannot be written, or the first failure of the
+     *         background refresh since the last flush.
+     */
+
+    public void flush() throws IOException {
+        refreshLock.lock();
+        try {
+            refresh();
+            writeSegment();
+        } finally {
+            refreshLock.unlock();
+        }
+        IOException e = failure.getAndSet(null);
+        if (e != null) {
+            throw e;
+        }
+    }
+
+
+    /**
+     * close
+     * this method stops the background refresh and flushes the index; changes queued after it
+     * are ignored.
+     *
+     * @return void
+     * @throws IOException as flush().
+     */
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        // a refresh under way is finished by the flush, which waits for it
+        timer.shutdown();
+        try {
+            flush();
+        } finally {
+            workers.shutdown();
+        }
+    }
+
+
+    // the number of files indexed
+    public int getDocumentCount() {
+        lock.readLock().lock();
+        try {
+            return ids.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getSegmentCount() {
+        lock.readLock().lock();
+        try {
+            return segments.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // the changes queued and not yet refreshed
+    public int getPendingChanges() {
+        return events.size();
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+
+    private void queue(Event event) {
+        if (!closed) {
+            events.add(event);
+        }
+    }
+
+    // refresh from the timer, keeping the failure for flush
+    private void backgroundRefresh() {
+        if (events.isEmpty()) {
+            return;
+        }
+        try {
+            refresh();
+        } catch (IOException e) {
+            failure.compareAndSet(null, e);
+        } catch (UncheckedIOException e) {
+            failure.compareAndSet(null, e.getCause());
+        } catch (RuntimeException e) {
+            failure.compareAndSet(null, new IOException("The content index could not be refreshed", e));
+        }
+    }
+
+
+    /**
+     * apply
+     * this method applies a queued change to the documents, with the write lock held. the files
+     * to read are collected in dirty and the folders to compare in folders, by normalized path,
+     * each with the path as it was given, which the write-behind buffer knows it by.
+     *
+     * @param event the change.
+     * @param dirty the files to read.
+     * @param folders the folders to compare.
+     * @return void
+     */
+
+    private void apply(Event event, Map<String, String> dirty, Map<String, String> folders) {
+        String path = PathLocks.normalize(event.path());
+        switch (event.kind()) {
+            case CHANGED:
+                dirty.put(path, event.path());
+                break;
+            case DELETED:
+                dirty.remove(path);
+                delete(path);
+                break;
+            case RENAMED: {
+                String target = PathLocks.normalize(event.newPath());
+                delete(target);
+                Integer id = ids.remove(path);
+                if (id != null) {
+                    ids.put(target, id);
+                    paths.set(id, target);
+                }
+                // a file not indexed yet, or not read since it changed, is read under its new name
+                if (dirty.remove(path) != null || id == null) {
+                    dirty.put(target, event.newPath());
+                }
+                break;
+            }
+            case FOLDER_CHANGED:
+                folders.put(path, event.path());
+                break;
+            case FOLDER_RENAMED: {
+                String target = PathLocks.normalize(event.newPath());
+                SortedMap<String, Integer> below = ids.subMap(prefix(path), prefix(path) + Character.MAX_VALUE);
+                Map<String, Integer> moved = new HashMap<>(below);
+                below.clear();
+                for (Map.Entry<String, Integer> entry : moved.entrySet()) {
+                    String renamed = target + entry.getKey().substring(path.length());
+                    delete(renamed);
+                    ids.put(renamed, entry.getValue());
+                    paths.set(entry.getValue(), renamed);
+                }
+                move(dirty, path, target);
+                move(folders, path, target);
+                break;
+            }
+            case FOLDER_DELETED:
+                for (String deleted : new ArrayList<>(ids.subMap(prefix(path), prefix(path) + Character.MAX_VALUE).keySet())) {
+                    delete(deleted);
+                }
+                move(dirty, path, null);
+                move(folders, path, null);
+                break;
+            default:
+                break;
+        }
+    }
+
+    // the entries below a folder get its new path, or are dropped when it has none
+    private static void move(Map<String, String> entries, String folder, String target) {
+        Map<String, String> moved = new LinkedHashMap<>();
+        for (Iterator<String> it = entries.keySet().iterator(); it.hasNext();) {
+            String path = it.next();
+            if (path.equals(folder) || path.startsWith(prefix(folder))) {
+                it.remove();
+                if (target != null) {
+                    String renamed = target + path.substring(folder.length());
+                    moved.put(renamed, renamed);
+                }
+            }
+        }
+        entries.putAll(moved);
+    }
+
+    private static String prefix(String folder) {
+        return folder.endsWith("/") ? folder : folder + "/";
+    }
+
+    // mark a document deleted, with the write lock held
+    private void delete(String path) {
+        Integer id = ids.remove(path);
+        if (id != null) {
+            paths.set(id, null);
+        }
+    }
+
+
+    /**
+     * compare
+     * this method walks a folder and collects the files below it that are not indexed, or
+     * changed since they were, and removes the indexed files below it that are gone.
+     *
+     * @param folder the normalized path of the folder.
+     * @param dirty the files to read.
+     * @return void
+     * @throws IOException if the folder cannot be walked.
+     */
+
+    private void compare(String folder, Map<String, String> dirty) throws IOException {
+        Map<String, BasicFileAttributes> found = new HashMap<>();
+        Path root = Paths.get(folder);
+        if (Files.isDirectory(root)) {
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                    if (attributes.isRegularFile()) {
+                        found.put(file.toString(), attributes);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    // vanished or unreadable, treated as gone
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+
+        lock.writeLock().lock();
+        try {
+            for (String path : new ArrayList<>(ids.subMap(prefix(folder), prefix(folder) + Character.MAX_VALUE).keySet())) {
+                if (!found.containsKey(path) && !dirty.containsKey(path)) {
+                    delete(path);
+                }
+            }
+            for (Map.Entry<String, BasicFileAttributes> entry : found.entrySet()) {
+                Integer id = ids.get(entry.getKey());
+                BasicFileAttributes attributes = entry.getValue();
+                if (id == null || sizes[id] != attributes.size() || modified[id] != attributes.lastModifiedTime().toMillis()) {
+                    dirty.putIfAbsent(entry.getKey(), entry.getKey());
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+
+    /**
+     * index
+     * this method reads and tokenizes the files, a batch at a time, and replaces their
+     * documents; a file that is gone only loses its document.
+     *
+     * @param dirty the files to read, by normalized path.
+     * @return void
+     * @throws IOException if a segment cannot be written.
+     */
+
+    private void index(Map<String, String> dirty) throws IOException {
+        List<Map.Entry<String, String>> files = new ArrayList<>(dirty.entrySet());
+        for (int from = 0; from < files.size(); from += FILES_PER_BATCH) {
+            List<Map.Entry<String, String>> batch = files.subList(from, Math.min(files.size(), from + FILES_PER_BATCH));
+            Document[] documents = new Document[batch.size()];
+
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (int start = 0; start < batch.size(); start += FILES_PER_TASK) {
+                int first = start;
+                int last = Math.min(batch.size(), start + FILES_PER_TASK);
+                tasks.add(() -> {
+                    for (int i = first; i < last; i++) {
+                        documents[i] = read(batch.get(i).getKey(), batch.get(i).getValue());
+                    }
+                    return null;
+                });
+            }
+            for (Future<Void> task : workers.invokeAll(tasks)) {
+                try {
+                    task.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while indexing", e);
+                } catch (ExecutionException e) {
+                    throw new IOException("The files could not be indexed", e.getCause());
+                }
+            }
+
+            lock.writeLock().lock();
+            try {
+                for (Document document : documents) {
+                    add(document);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            if (paths.size() - firstBuffered >= DEFAULT_FLUSH_DOCUMENTS || bufferedInts >= DEFAULT_FLUSH_INTS) {
+                writeSegment();
+            }
+        }
+    }
+
+
+    /**
+     * read
+     * this method reads a file and splits it into terms. the appends buffered for the file are
+     * sent first, and it is read under a shared hold of its path, so it is read whole.
+     *
+     * @param path the normalized path of the file.
+     * @param givenPath the path as it was given.
+     * @return Document the terms of the file, or a document marked missing if it is gone.
+     */
+
+    private Document read(String path, String givenPath) {
+        Document document = new Document(path);
+        AppendCoalescer coalescer = FMKernelModules.getWriteBehind();
+        if (coalescer != null) {
+            coalescer.drain(givenPath);
+        }
+
+        ByteBuffer content;
+        PathLocks.Hold hold = PathLocks.shared().lockShared(givenPath);
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(Paths.get(path), BasicFileAttributes.class);
+            if (!attributes.isRegularFile()) {
+                document.missing = true;
+                return document;
+            }
+            document.size = attributes.size();
+            document.modified = attributes.lastModifiedTime().toMillis();
+            content = FileContentReader.readRange(Paths.get(path), 0, DEFAULT_MAX_FILE_BYTES);
+        } catch (NoSuchFileException e) {
+            document.missing = true;
+            return document;
+        } catch (IOException e) {
+            failure.compareAndSet(null, e);
+            document.missing = true;
+            return document;
+        } finally {
+            hold.close();
+        }
+
+        for (int i = content.position(); i < Math.min(content.limit(), content.position() + BINARY_PROBE); i++) {
+            if (content.get(i) == 0) {
+                return document;
+            }
+        }
+
+        // decode a piece at a time into a reused buffer, the tokenizer joins terms across pieces
+        CharsetDecoder decoder = Charset.defaultCharset().newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        CharBuffer chars = DECODED.get();
+        Tokenizer tokenizer = new Tokenizer(document::add);
+        CoderResult result;
+        do {
+            result = decoder.decode(content, chars, true);
+            tokenizer.feed(chars.flip());
+            chars.clear();
+        } while (result.isOverflow());
+        decoder.flush(chars);
+        tokenizer.feed(chars.flip());
+        chars.clear();
+        tokenizer.finish();
+        return document;
+    }
+
+
+    // replace the document of a file with the one read, with the write lock held
+    private void add(Document document) {
+        delete(document.path);
+        if (document.missing) {
+            return;
+        }
+        int id = paths.size();
+        if (id == sizes.length) {
+            sizes = Arrays.copyOf(sizes, id * 2);
+            modified = Arrays.copyOf(modified, id * 2);
+        }
+        paths.add(document.path);
+        ids.put(document.path, id);
+        sizes[id] = document.size;
+        modified[id] = document.modified;
+        for (Map.Entry<String, Positions> term : document.terms.entrySet()) {
+            Positions positions = term.getValue();
+            buffer.computeIfAbsent(term.getKey(), key -> new TermBuffer()).add(id, positions);
+            bufferedInts += 2 + positions.count;
+        }
+    }
+
+
+    // the postings of a term in the segments and in memory, with the read lock held
+    private Postings postings(String term) {
+        byte[] bytes = term.getBytes(StandardCharsets.UTF_8);
+        List<Postings> sources = new ArrayList<>(segments.size() + 1);
+        for (IndexSegment segment : segments) {
+            sources.add(segment.postings(bytes));
+        }
+        TermBuffer buffered = buffer.get(term);
+        if (buffered != null) {
+            sources.add(new Postings.Buffered(buffered.data, buffered.size));
+        }
+        return sources.size() == 1 ? sources.get(0) : new Postings.Chained(sources);
+    }
+
+    // whether the terms, all on the same document, follow one another somewhere in it
+    private static boolean isPhrase(Postings[] postings) {
+        if (postings.length == 1) {
+            return true;
+        }
+        int[] starts = postings[0].positions();
+        for (int i = 0; i < postings[0].freq(); i++) {
+            int j = 1;
+            while (j < postings.length && postings[j].hasPosition(starts[i] + j)) {
+                j++;
+            }
+            if (j == postings.length) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * writeSegment
+     * this method writes the postings held in memory to a new segment, in term order, merges
+     * segments if there are too many and commits the index. queries go on while the segment is
+     * written; they switch to it once it is complete.
+     *
+     * @return void
+     * @throws IOException if a segment or the commit cannot be written.
+     */
+
+    private void writeSegment() throws IOException {
+        List<Path> obsolete = new ArrayList<>();
+        IndexSegment written = null;
+        int end;
+        lock.readLock().lock();
+        try {
+            end = paths.size();
+            if (!buffer.isEmpty()) {
+                List<Map.Entry<byte[], TermBuffer>> terms = new ArrayList<>(buffer.size());
+                for (Map.Entry<String, TermBuffer> entry : buffer.entrySet()) {
+                    terms.add(Map.entry(entry.getKey().getBytes(StandardCharsets.UTF_8), entry.getValue()));
+                }
+                terms.sort((a, b) -> Arrays.compareUnsigned(a.getKey(), b.getKey()));
+                Path file = directory.resolve("seg-" + nextSegment++ + ".idx");
+                written = write(file, writer -> {
+                    for (Map.Entry<byte[], TermBuffer> term : terms) {
+                        writer.add(term.getKey(), new Postings.Buffered(term.getValue().data, term.getValue().size), this::isLive);
+                    }
+                });
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (written != null) {
+                List<IndexSegment> updated = new ArrayList<>(segments);
+                updated.add(written);
+                segments = updated;
+            }
+            buffer = new HashMap<>();
+            bufferedInts = 0;
+            firstBuffered = end;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        merge(obsolete);
+        commit();
+        for (Path file : obsolete) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+
+    /**
+     * merge
+     * this method keeps the segments few and the document numbers dense. once more than
+     * DEFAULT_MAX_DELETED_PERCENT of the document numbers are deleted, every segment is merged
+     * into one and the live documents are numbered again from 0, in the same order. otherwise,
+     * while there are more than DEFAULT_MAX_SEGMENTS, the adjacent half of the segments with the
+     * fewest bytes is merged into one, so the old segments are merged again once the newer ones
+     * have grown as large; adjacent segments hold adjacent ranges of documents, so the merged
+     * segment takes their place in the order. it runs under the refresh lock, after the postings
+     * in memory are written, so every document is in a segment.
+     *
+     * @param obsolete receives the files of the merged segments, to delete after the commit.
+     * @return void
+     * @throws IOException if the merged segment cannot be written.
+     */
+
+    private void merge(List<Path> obsolete) throws IOException {
+        if ((long) (paths.size() - ids.size()) * 100 > (long) paths.size() * DEFAULT_MAX_DELETED_PERCENT) {
+            compact(obsolete);
+        }
+        while (segments.size() > Math.max(1, DEFAULT_MAX_SEGMENTS)) {
+            List<IndexSegment> current = segments;
+            int count = current.size() - current.size() / 2;
+            int from = smallest(current, count);
+            List<IndexSegment> merging = current.subList(from, from + count);
+
+            IndexSegment merged;
+            lock.readLock().lock();
+            try {
+                Path file = directory.resolve("seg-" + nextSegment++ + ".idx");
+                merged = write(file, writer -> merge(writer, merging, IntUnaryOperator.identity()));
+            } finally {
+                lock.readLock().unlock();
+            }
+
+            lock.writeLock().lock();
+            try {
+                List<IndexSegment> updated = new ArrayList<>(current.subList(0, from));
+                if (merged != null) {
+                    updated.add(merged);
+                }
+                updated.addAll(current.subList(from + count, current.size()));
+                segments = updated;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            for (IndexSegment segment : merging) {
+                obsolete.add(segment.getPath());
+            }
+        }
+    }
+
+
+    /**
+     * compact
+     * this method merges every segment into one, numbering the live documents again from 0 in
+     * their order, so the postings stay ascending, and drops the deleted documents from the
+     * numbers, the sizes and the modification times.
+     *
+     * @param obsolete receives the files of the merged segments, to delete after the commit.
+     * @return void
+     * @throws IOException if the merged segment cannot be written.
+     */
+
+    private void compact(List<Path> obsolete) throws IOException {
+        List<IndexSegment> current = segments;
+        int[] numbers;
+        IndexSegment merged;
+        lock.readLock().lock();
+        try {
+            numbers = new int[paths.size()];
+            int next = 0;
+            for (int doc = 0; doc < numbers.length; doc++) {
+                numbers[doc] = paths.get(doc) != null ? next++ : -1;
+            }
+            Path file = directory.resolve("seg-" + nextSegment++ + ".idx");
+            merged = write(file, writer -> merge(writer, current, doc -> numbers[doc]));
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        lock.writeLock().lock();
+        try {
+            List<String> live = new ArrayList<>(ids.size());
+            long[] liveSizes = new long[Math.max(1024, ids.size())];
+            long[] liveModified = new long[liveSizes.length];
+            for (int doc = 0; doc < numbers.length; doc++) {
+                if (numbers[doc] >= 0) {
+                    String path = paths.get(doc);
+                    live.add(path);
+                    ids.put(path, numbers[doc]);
+                    liveSizes[numbers[doc]] = sizes[doc];
+                    liveModified[numbers[doc]] = modified[doc];
+                }
+            }
+            paths.clear();
+            paths.addAll(live);
+            paths.trimToSize();
+            sizes = liveSizes;
+            modified = liveModified;
+            firstBuffered = paths.size();
+            segments = merged != null ? new ArrayList<>(List.of(merged)) : new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        for (IndexSegment segment : current) {
+            obsolete.add(segment.getPath());
+        }
+    }
+
+
+    // walk the terms of the segments together in order, chaining the postings of each term
+    private void merge(IndexSegment.Writer writer, List<IndexSegment> merging, IntUnaryOperator renumber) throws IOException {
+        // ordered by term, then by segment, so the postings of a term chain in document order
+        PriorityQueue<Cursor> cursors = new PriorityQueue<>();
+        for (int i = 0; i < merging.size(); i++) {
+            Cursor cursor = new Cursor(i, merging.get(i).terms());
+            if (cursor.terms.next()) {
+                cursors.add(cursor);
+            }
+        }
+        List<Postings> sources = new ArrayList<>();
+        while (!cursors.isEmpty()) {
+            byte[] term = cursors.peek().terms.term();
+            sources.clear();
+            while (!cursors.isEmpty() && Arrays.equals(cursors.peek().terms.term(), term)) {
+                Cursor cursor = cursors.poll();
+                sources.add(cursor.terms.postings());
+                if (cursor.terms.next()) {
+                    cursors.add(cursor);
+                }
+            }
+            writer.add(term, sources.size() == 1 ? sources.get(0) : new Postings.Chained(sources), this::isLive, renumber);
+        }
+    }
+
+    // the first of the count adjacent segments with the fewest bytes, the newest of equals
+    private static int smallest(List<IndexSegment> segments, int count) {
+        int best = 0;
+        long bestBytes = Long.MAX_VALUE;
+        for (int from = 0; from + count <= segments.size(); from++) {
+            long bytes = 0;
+            for (int i = from; i < from + count; i++) {
+                bytes += segments.get(i).getSize();
+            }
+            if (bytes <= bestBytes) {
+                best = from;
+                bestBytes = bytes;
+            }
+        }
+        return best;
+    }
+
+
+    /**
+     * write
+     * this method writes a segment and opens it.
+     *
+     * @param file the segment file.
+     * @param terms adds the terms to the writer.
+     * @return IndexSegment the segment, or null if it has no terms, then no file is left.
+     * @throws IOException if the file cannot be written.
+     */
+
+    private static IndexSegment write(Path file, SegmentContent terms) throws IOException {
+        boolean complete = false;
+        try (IndexSegment.Writer writer = new IndexSegment.Writer(file)) {
+            terms.addTo(writer);
+            if (writer.getTermCount() == 0) {
+                return null;
+            }
+            writer.finish();
+            complete = true;
+        } finally {
+            if (!complete) {
+                Files.deleteIfExists(file);
+            }
+        }
+        return IndexSegment.open(file);
+    }
+
+    // whether a document is still indexed, with a lock held
+    private boolean isLive(int doc) {
+        return doc < paths.size() && paths.get(doc) != null;
+    }
+
+
+    /**
+     * commit
+     * this method writes the list of segments and the documents in them to a new file and
+     * moves it over the commit file. the documents still in memory are written as deleted, so
+     * that build() indexes them again after a reopen.
+     *
+     * @return void
+     * @throws IOException if the file cannot be written.
+     */
+
+    private void commit() throws IOException {
+        Path temporary = directory.resolve(COMMIT + ".tmp");
+        lock.readLock().lock();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), 64 * 1024))) {
+            out.writeInt(COMMIT_MAGIC);
+            out.writeInt(COMMIT_VERSION);
+            out.writeInt(nextSegment);
+            out.writeInt(segments.size());
+            for (IndexSegment segment : segments) {
+                out.writeUTF(segment.getPath().getFileName().toString());
+            }
+            out.writeInt(paths.size());
+            for (int doc = 0; doc < paths.size(); doc++) {
+                String path = doc < firstBuffered ? paths.get(doc) : null;
+                out.writeBoolean(path != null);
+                if (path != null) {
+                    out.writeUTF(path);
+                    out.writeLong(sizes[doc]);
+                    out.writeLong(modified[doc]);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temporary, directory.resolve(COMMIT), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+
+    /**
+     * load
+     * this method reads the commit file, maps its segments and deletes the files in the
+     * directory that it does not name, left by a flush that did not complete.
+     *
+     * @return void
+     * @throws IOException if the commit or a segment cannot be read.
+     */
+
+    private void load() throws IOException {
+        Set<String> referenced = new HashSet<>();
+        referenced.add(COMMIT);
+        Path commit = directory.resolve(COMMIT);
+        if (Files.exists(commit)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(commit), 64 * 1024))) {
+                if (in.readInt() != COMMIT_MAGIC || in.readInt() != COMMIT_VERSION) {
+                    throw new IOException("Not a content index: " + directory);
+                }
+                nextSegment = in.readInt();
+                int segmentCount = in.readInt();
+                for (int i = 0; i < segmentCount; i++) {
+                    String name = in.readUTF();
+                    referenced.add(name);
+                    segments.add(IndexSegment.open(directory.resolve(name)));
+                }
+                int documentCount = in.readInt();
+                sizes = new long[Math.max(1024, documentCount)];
+                modified = new long[sizes.length];
+                for (int doc = 0; doc < documentCount; doc++) {
+                    String path = in.readBoolean() ? in.readUTF() : null;
+                    paths.add(path);
+                    if (path != null) {
+                        ids.put(path, doc);
+                        sizes[doc] = in.readLong();
+                        modified[doc] = in.readLong();
+                    }
+                }
+            }
+        }
+        firstBuffered = paths.size();
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (!referenced.contains(name) && (name.startsWith("seg-") || name.equals(COMMIT + ".tmp"))) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Event
+     * a change queued by the FMKernelModules hooks; newPath is set for renames.
+     */
+
+    private record Event(Kind kind, String path, String newPath) {
+        enum Kind { CHANGED, RENAMED, DELETED, FOLDER_CHANGED, FOLDER_RENAMED, FOLDER_DELETED }
+    }
+
+
+    /**
+     * Document
+     * the terms of a file that was read, each with its positions.
+     */
+
+    private static final class Document {
+        final String path;
+        final HashMap<String, Positions> terms = new HashMap<>();
+        long size;
+        long modified;
+        boolean missing;
+
+        Document(String path) {
+            this.path = path;
+        }
+
+        void add(String term, int position) {
+            terms.computeIfAbsent(term, key -> new Positions()).add(position);
+        }
+    }
+
+
+    /**
+     * Positions
+     * the positions of a term in a file, ascending.
+     */
+
+    private static final class Positions {
+        int[] values = new int[4];
+        int count;
+
+        void add(int position) {
+            if (count == values.length) {
+                values = Arrays.copyOf(values, count * 2);
+            }
+            values[count++] = position;
+        }
+    }
+
+
+    /**
+     * TermBuffer
+     * the postings of a term held in memory, laid out as Postings.Buffered reads them.
+     */
+
+    private static final class TermBuffer {
+        int[] data = new int[8];
+        int size;
+
+        void add(int doc, Positions positions) {
+            int required = size + 2 + positions.count;
+            if (required > data.length) {
+                data = Arrays.copyOf(data, Math.max(required, data.length * 2));
+            }
+            data[size++] = doc;
+            data[size++] = positions.count;
+            System.arraycopy(positions.values, 0, data, size, positions.count);
+            size += positions.count;
+        }
+    }
+
+
+    /**
+     * Cursor
+     * the term a segment being merged is on.
+     */
+
+    private static final class Cursor implements Comparable<Cursor> {
+        final int segment;
+        final IndexSegment.TermIterator terms;
+
+        Cursor(int segment, IndexSegment.TermIterator terms) {
+            this.segment = segment;
+            this.terms = terms;
+        }
+
+        @Override
+        public int compareTo(Cursor other) {
+            int comparison = Arrays.compareUnsigned(terms.term(), other.terms.term());
+            return comparison != 0 ? comparison : Integer.compare(segment, other.segment);
+        }
+    }
+
+
+    @FunctionalInterface
+    private interface SegmentContent {
+        void addTo(IndexSegment.Writer writer) throws IOException;
+    }
+}
@@ -0,0 +1,63 @@
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * DirectBufferPool
+ * this class hands out fixed-size direct ByteBuffers for short-lived I/O, so that reads do not
+ * allocate (and later free) native memory every time. Buffers that are released while the pool
+ * is full are simply dropped.
+ *
+ * @authors      Richard Quayson & Thomas Quarshie
+ */
+
+public class DirectBufferPool {
+    // size of every pooled buffer
+    public static final int BUFFER_SIZE = 64 * 1024;
+
+    // maximum number of idle buffers kept around
+    private static final int MAX_POOLED = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+    private static final ConcurrentLinkedQueue<ByteBuffer> POOL = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger POOLED = new AtomicInteger();
+
+
+    /**
+     * acquire
+     * this method takes a cleared buffer from the pool, allocating one if the pool is empty.
+     *
+     * @return ByteBuffer a direct buffer of BUFFER_SIZE bytes.
+     */
+
+    public static ByteBuffer acquire() {
+        ByteBuffer buffer = POOL.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+        POOLED.decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+
+    /**
+     * release
+     * this method gives a buffer obtained from acquire back to the pool.
+     * the caller must not use the buffer afterwards.
+     *
+     * @param buffer the buffer to give back.
+     * @return void
+     */
+
+    public static void release(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect() || buffer.capacity() != BUFFER_SIZE) {
+            return;
+        }
+        if (POOLED.incrementAndGet() <= MAX_POOLED) {
+            POOL.offer(buffer);
+        } else {
+            POOLED.decrementAndGet();
+        }
+    }
+}
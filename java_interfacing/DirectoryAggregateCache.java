@@ -0,0 +1,319 @@
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+/**
+ * DirectoryAggregateCache
+ * this class remembers the aggregates (size, file count, directory count, last modified) of
+ * every directory it has walked, so that asking again for an unchanged tree costs a map lookup.
+ *
+ * Aggregates are only kept for directories whose whole subtree is registered with a
+ * WatchService. Any event in a watched directory, and every mutation sent through
+ * FMKernelModules, drops the aggregates of the affected path, of the subtree below it and of
+ * its ancestors; siblings and unrelated subtrees stay cached and are reused by the next walk.
+ * A walk marks every directory it is computing as pending, and the same invalidation removes
+ * the pending marks it overlaps, so a walk only keeps the aggregates of directories nothing
+ * changed in or above while it ran; changes elsewhere do not hold it back, and invalidations
+ * take no lock.
+ *
+ * @authors      Richard Quayson & Thomas Quarshie
+ */
+
+public class DirectoryAggregateCache implements AutoCloseable {
+    private static volatile DirectoryAggregateCache shared;
+
+    // aggregates by absolute, normalized directory path; sorted so that subtrees are key ranges
+    private final ConcurrentSkipListMap<String, DirectoryStats> entries = new ConcurrentSkipListMap<>();
+    private final ConcurrentHashMap<Path, WatchKey> watchKeys = new ConcurrentHashMap<>();
+
+    // the directories being walked, each with the mark of its walk; an invalidation removes the
+    // marks it overlaps, and a walk only stores its result if its mark is still there
+    private final ConcurrentSkipListMap<String, Object> pending = new ConcurrentSkipListMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ForkJoinPool pool;
+    private WatchService watcher;
+    private volatile boolean closed;
+
+
+    /**
+     * DirectoryAggregateCache
+     * this constructor creates an empty cache whose walks run on the given pool.
+     *
+     * @param pool the pool to walk directories on.
+     */
+
+    public DirectoryAggregateCache(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+
+    /**
+     * shared
+     * this method returns the cache used by FMKernelModules.
+     *
+     * @return DirectoryAggregateCache the shared cache.
+     */
+
+    public static DirectoryAggregateCache shared() {
+        DirectoryAggregateCache cache = shared;
+        if (cache == null) {
+            synchronized (DirectoryAggregateCache.class) {
+                cache = shared;
+                if (cache == null) {
+                    cache = new DirectoryAggregateCache(ForkJoinPool.commonPool());
+                    shared = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
+
+    /**
+     * get
+     * this method returns the aggregates of a directory, walking only the parts of the tree
+     * that are not cached.
+     *
+     * @param directory the directory.
+     * @return DirectoryStats the aggregates of the tree below the directory.
+     */
+
+    public DirectoryStats get(Path directory) {
+        Path normalized = normalize(directory);
+        DirectoryStats cached = entries.get(normalized.toString());
+        if (cached != null) {
+            return cached;
+        }
+        return DirectorySizeCalculator.calculate(normalized, pool, closed ? null : this);
+    }
+
+
+    /**
+     * invalidate
+     * this method drops the aggregates of a path, of every directory below it and of every
+     * directory above it. call it after changing anything at that path.
+     *
+     * @param path the file or directory that changed.
+     * @return void
+     */
+
+    public void invalidate(Path path) {
+        // pending first: a walk storing its result adds the aggregates before it drops its mark
+        if (pending.isEmpty() && entries.isEmpty()) {
+            // nothing cached or being walked, skip building the keys on the mutation path
+            return;
+        }
+        Path normalized = normalize(path);
+        // the pending marks first, so that a walk storing meanwhile either fails or is removed below
+        remove(pending, normalized);
+        remove(entries, normalized);
+    }
+
+
+    /**
+     * invalidateAll
+     * this method drops every cached aggregate.
+     *
+     * @return void
+     */
+
+    public void invalidateAll() {
+        pending.clear();
+        entries.clear();
+    }
+
+
+    // remove the keys of a path, of the directories below it and of those above it
+    private static void remove(ConcurrentSkipListMap<String, ?> map, Path path) {
+        if (map.isEmpty()) {
+            return;
+        }
+        String key = path.toString();
+        String prefix = key.endsWith("/") ? key : key + "/";
+        map.remove(key);
+        map.subMap(prefix, true, prefix.substring(0, prefix.length() - 1) + '0', false).clear();
+        for (Path ancestor = path.getParent(); ancestor != null; ancestor = ancestor.getParent()) {
+            map.remove(ancestor.toString());
+        }
+    }
+
+
+    /**
+     * size
+     * this method returns the number of directories whose aggregates are cached.
+     *
+     * @return int the number of cached directories.
+     */
+
+    public int size() {
+        return entries.size();
+    }
+
+
+    /**
+     * close
+     * this method stops watching and drops every cached aggregate.
+     *
+     * @return void
+     */
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            closed = true;
+            if (watcher != null) {
+                watcher.close();
+            }
+            watchKeys.clear();
+            pending.clear();
+            entries.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    // the walk's view of the cache
+
+    DirectoryStats lookup(Path directory) {
+        return entries.get(directory.toString());
+    }
+
+    // mark a directory as being walked, before it is listed
+    Object begin(Path directory) {
+        Object mark = new Object();
+        pending.put(directory.toString(), mark);
+        return mark;
+    }
+
+    // keep the result of a walk unless something overlapping it was invalidated since begin
+    void store(Path directory, DirectoryStats stats, Object mark) {
+        String key = directory.toString();
+        if (closed) {
+            pending.remove(key, mark);
+            return;
+        }
+        entries.put(key, stats);
+        if (!pending.remove(key, mark) || closed) {
+            entries.remove(key, stats);
+        }
+    }
+
+    // drop the mark of a walk whose result is not kept
+    void abandon(Path directory, Object mark) {
+        pending.remove(directory.toString(), mark);
+    }
+
+    boolean watch(Path directory) {
+        if (closed) {
+            return false;
+        }
+        WatchKey existing = watchKeys.get(directory);
+        if (existing != null && existing.isValid()) {
+            return true;
+        }
+        try {
+            WatchKey key = directory.register(watcher(),
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+            watchKeys.put(directory, key);
+            return true;
+        } catch (IOException | ClosedWatchServiceException e) {
+            return false;                       // e.g. out of inotify watches, the subtree stays uncached
+        }
+    }
+
+
+    /**
+     * watcher
+     * this method returns the watch service, starting it and its event thread on first use.
+     *
+     * @return WatchService the watch service.
+     * @throws IOException if the watch service cannot be created.
+     */
+
+    private WatchService watcher() throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                throw new ClosedWatchServiceException();
+            }
+            if (watcher == null) {
+                watcher = FileSystems.getDefault().newWatchService();
+                Thread watcherThread = new Thread(this::processEvents, "fm-aggregate-watcher");
+                watcherThread.setDaemon(true);
+                watcherThread.start();
+            }
+            return watcher;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * processEvents
+     * this method turns watch events into invalidations until the watch service is closed.
+     *
+     * @return void
+     */
+
+    private void processEvents() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watcher.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+
+            Path directory = (Path) key.watchable();
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    invalidateAll();
+                } else {
+                    Path child = directory.resolve((Path) event.context());
+                    if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE && watchKeys.containsKey(child)) {
+                        // a watched directory was removed or moved away, its keys would keep reporting the old path
+                        cancelWatches(child);
+                    }
+                    invalidate(child);
+                }
+            }
+
+            // the key is no longer valid once the directory is gone
+            if (!key.reset()) {
+                watchKeys.remove(directory, key);
+                invalidate(directory);
+            }
+        }
+    }
+
+
+    private void cancelWatches(Path directory) {
+        watchKeys.entrySet().removeIf(entry -> {
+            if (entry.getKey().startsWith(directory)) {
+                entry.getValue().cancel();
+                return true;
+            }
+            return false;
+        });
+    }
+
+
+    private static Path normalize(Path path) {
+        return path.toAbsolutePath().normalize();
+    }
+}
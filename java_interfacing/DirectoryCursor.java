@@ -0,0 +1,175 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+
+/**
+ * DirectoryCursor
+ * this class lists a directory page by page over an open DirectoryStream, so that only the
+ * current page is ever held in memory, however many entries the directory has. The cursor
+ * remembers how many entries it has handed out; a listing can be resumed later (even from
+ * another process) by reopening at that position, which is stable as long as the directory
+ * has not changed. The directory handle is closed once the listing is exhausted, or by close().
+ *
+ * @authors      Richard Quayson & Thomas Quarshie
+ */
+
+public class DirectoryCursor implements Iterator<Path>, AutoCloseable {
+    private final Path directory;
+    private final DirectoryStream<Path> stream;
+    private final Iterator<Path> entries;
+    private long position;
+    private boolean closed;
+
+
+    private DirectoryCursor(Path directory) throws IOException {
+        this.directory = directory;
+        this.stream = Files.newDirectoryStream(directory);
+        this.entries = stream.iterator();
+    }
+
+
+    /**
+     * open
+     * this method opens a cursor at the first entry of a directory.
+     *
+     * @param directory the directory to list.
+     * @return DirectoryCursor the cursor.
+     * @throws IOException if the directory cannot be opened.
+     */
+
+    public static DirectoryCursor open(Path directory) throws IOException {
+        return new DirectoryCursor(directory);
+    }
+
+
+    /**
+     * open
+     * this method opens a cursor and skips the entries a previous cursor already handed out.
+     *
+     * @param directory the directory to list.
+     * @param position the position() of the previous cursor.
+     * @return DirectoryCursor the cursor.
+     * @throws IOException if the directory cannot be opened or read.
+     */
+
+    public static DirectoryCursor open(Path directory, long position) throws IOException {
+        DirectoryCursor cursor = new DirectoryCursor(directory);
+        try {
+            while (cursor.position < position && cursor.hasNext()) {
+                cursor.next();
+            }
+        } catch (UncheckedIOException e) {
+            cursor.close();
+            throw e.getCause();
+        }
+        return cursor;
+    }
+
+
+    /**
+     * stream
+     * this method lists a directory as a lazy stream. closing the stream closes the directory.
+     *
+     * @param directory the directory to list.
+     * @return Stream<Path> the entries of the directory.
+     * @throws IOException if the directory cannot be opened.
+     */
+
+    public static Stream<Path> stream(Path directory) throws IOException {
+        DirectoryCursor cursor = open(directory);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(cursor, Spliterator.DISTINCT | Spliterator.NONNULL), false)
+                .onClose(cursor::close);
+    }
+
+
+    /**
+     * nextPage
+     * this method returns up to pageSize further entries. an empty page means the listing is done.
+     *
+     * @param pageSize the maximum number of entries to return.
+     * @return List<Path> the entries of the page.
+     * @throws IOException if the directory cannot be read.
+     */
+
+    public List<Path> nextPage(int pageSize) throws IOException {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("pageSize must be at least 1: " + pageSize);
+        }
+        List<Path> page = new ArrayList<>(Math.min(pageSize, 1024));
+        try {
+            while (page.size() < pageSize && hasNext()) {
+                page.add(next());
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return page;
+    }
+
+
+    @Override
+    public boolean hasNext() {
+        if (closed) {
+            return false;
+        }
+        boolean more;
+        try {
+            more = entries.hasNext();
+        } catch (DirectoryIteratorException e) {
+            throw new UncheckedIOException(e.getCause());
+        }
+        if (!more) {
+            close();
+        }
+        return more;
+    }
+
+    @Override
+    public Path next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        position++;
+        return entries.next();
+    }
+
+
+    // the directory being listed
+    public Path getDirectory() {
+        return directory;
+    }
+
+    // the number of entries handed out so far, pass it to open(directory, position) to resume
+    public long position() {
+        return position;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            try {
+                stream.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,193 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+
+/**
+ * DirectoryDetailsLister
+ * this class lists a directory together with the details (type, size, modified and created
+ * times) of every entry, gathered in the same pass. Entries are read page by page through a
+ * DirectoryCursor and each page is stat'ed in slices on a worker pool while the next page is
+ * being read, so a large directory is listed and described in one shot instead of one
+ * sequential stat per entry afterwards.
+ *
+ * @authors      Richard Quayson & Thomas Quarshie
+ */
+
+public class DirectoryDetailsLister {
+    // number of stat workers of the shared pool, override with -Dfm.list.workers
+    public static final int DEFAULT_WORKERS = Integer.getInteger("fm.list.workers",
+            Math.max(4, Runtime.getRuntime().availableProcessors() * 2));
+
+    // entries read from the directory per page, and per stat task within a page
+    private static final int PAGE_SIZE = 4096;
+    private static final int SLICE_SIZE = 256;
+
+    private static volatile ExecutorService sharedWorkers;
+
+
+    /**
+     * list
+     * this method lists a directory with details, stat'ing on the shared worker pool.
+     *
+     * @param directory the directory to list.
+     * @return List<FileDetails> the details of every entry, in listing order.
+     * @throws IOException if the directory cannot be read.
+     */
+
+    public static List<FileDetails> list(Path directory) throws IOException {
+        return list(directory, sharedWorkers());
+    }
+
+
+    /**
+     * list
+     * this method lists a directory with details, stat'ing on the given workers.
+     * entries that disappear between the listing and the stat are left out.
+     *
+     * @param directory the directory to list.
+     * @param workers the pool to run the stats on.
+     * @return List<FileDetails> the details of every entry, in listing order.
+     * @throws IOException if the directory cannot be read.
+     */
+
+    public static List<FileDetails> list(Path directory, ExecutorService workers) throws IOException {
+        List<Future<FileDetails[]>> slices = new ArrayList<>();
+
+        try (DirectoryCursor cursor = DirectoryCursor.open(directory)) {
+            List<Path> page = cursor.nextPage(PAGE_SIZE);
+
+            // a directory that fits into a single slice is cheaper to stat right here
+            if (page.size() <= SLICE_SIZE && !cursor.hasNext()) {
+                FileDetails[] details = stat(page, 0, page.size());
+                return collect(details);
+            }
+
+            while (!page.isEmpty()) {
+                for (int from = 0; from < page.size(); from += SLICE_SIZE) {
+                    List<Path> entries = page;
+                    int start = from;
+                    int end = Math.min(from + SLICE_SIZE, page.size());
+                    slices.add(workers.submit(() -> stat(entries, start, end)));
+                }
+                page = cursor.nextPage(PAGE_SIZE);
+            }
+        }
+
+        List<FileDetails> result = new ArrayList<>(slices.size() * SLICE_SIZE);
+        try {
+            for (Future<FileDetails[]> slice : slices) {
+                for (FileDetails details : slice.get()) {
+                    if (details != null) {
+                        result.add(details);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            slices.forEach(slice -> slice.cancel(true));
+            throw new IOException("Interrupted while listing " + directory, e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to list " + directory, e.getCause());
+        }
+        return result;
+    }
+
+
+    /**
+     * stat
+     * this method reads the details of many paths in slices on the shared worker pool, as list
+     * does for the entries of a directory, for FMKernelModules.getFileDetails. an interrupt does
+     * not stop it: the slice being waited for is read on the calling thread instead, and the
+     * interrupt is kept for the caller.
+     *
+     * @param paths the paths to read the details of.
+     * @return FileDetails[] the details of each path in the order given, null for the paths that
+     *         do not exist or cannot be read.
+     */
+
+    static FileDetails[] stat(List<Path> paths) {
+        if (paths.size() <= SLICE_SIZE) {
+            return stat(paths, 0, paths.size());
+        }
+        ExecutorService workers = sharedWorkers();
+        List<Future<FileDetails[]>> slices = new ArrayList<>();
+        for (int from = 0; from < paths.size(); from += SLICE_SIZE) {
+            int start = from;
+            int end = Math.min(from + SLICE_SIZE, paths.size());
+            slices.add(workers.submit(() -> stat(paths, start, end)));
+        }
+
+        FileDetails[] details = new FileDetails[paths.size()];
+        boolean interrupted = false;
+        for (int i = 0; i < slices.size(); i++) {
+            int from = i * SLICE_SIZE;
+            FileDetails[] slice;
+            try {
+                slice = slices.get(i).get();
+            } catch (InterruptedException e) {
+                interrupted = true;
+                slice = stat(paths, from, Math.min(from + SLICE_SIZE, paths.size()));
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : new IllegalStateException(e.getCause());
+            }
+            System.arraycopy(slice, 0, details, from, slice.length);
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return details;
+    }
+
+
+    /**
+     * stat
+     * this method reads the details of a slice of entries, leaving null for entries that are gone.
+     */
+
+    private static FileDetails[] stat(List<Path> entries, int from, int to) {
+        FileDetails[] details = new FileDetails[to - from];
+        for (int i = from; i < to; i++) {
+            try {
+                details[i - from] = FileDetails.of(entries.get(i));
+            } catch (IOException e) {
+                // removed since it was listed, or not accessible
+            }
+        }
+        return details;
+    }
+
+    private static List<FileDetails> collect(FileDetails[] details) {
+        List<FileDetails> result = new ArrayList<>(details.length);
+        for (FileDetails entry : details) {
+            if (entry != null) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+
+    private static ExecutorService sharedWorkers() {
+        ExecutorService workers = sharedWorkers;
+        if (workers == null) {
+            synchronized (DirectoryDetailsLister.class) {
+                workers = sharedWorkers;
+                if (workers == null) {
+                    workers = Executors.newFixedThreadPool(DEFAULT_WORKERS, runnable -> {
+                        Thread thread = new Thread(runnable, "fm-list-worker");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    sharedWorkers = workers;
+                }
+            }
+        }
+        return workers;
+    }
+}
@@ -0,0 +1,151 @@
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+
+/**
+ * DirectorySizeCalculator
+ * this class computes the total size, file count, directory count and latest modification time
+ * of a tree in parallel.
+ * Every directory is listed by its own ForkJoin task, so large trees are spread over the pool
+ * by work stealing. Each entry is stat'ed exactly once (one readAttributes call without following
+ * links), and symbolic links are never followed, so link loops cannot be entered.
+ * Directories that cannot be read are skipped.
+ *
+ * @authors      Richard Quayson & Thomas Quarshie
+ */
+
+public class DirectorySizeCalculator {
+
+    /**
+     * calculate
+     * this method walks the tree below a directory on the common ForkJoin pool.
+     *
+     * @param directory the root of the tree.
+     * @return DirectoryStats the aggregates of the tree, the root itself is not counted.
+     */
+
+    public static DirectoryStats calculate(Path directory) {
+        return calculate(directory, ForkJoinPool.commonPool());
+    }
+
+
+    /**
+     * calculate
+     * this method walks the tree below a directory on the given pool.
+     *
+     * @param directory the root of the tree.
+     * @param pool the pool to run the walk on.
+     * @return DirectoryStats the aggregates of the tree, the root itself is not counted.
+     */
+
+    public static DirectoryStats calculate(Path directory, ForkJoinPool pool) {
+        return pool.invoke(new WalkTask(directory, 0, null));
+    }
+
+
+    /**
+     * calculate
+     * this method walks the tree below a directory, reusing the aggregates the cache already holds
+     * for subdirectories and storing the ones it computes for subtrees the cache can keep current.
+     *
+     * @param directory the absolute, normalized root of the tree.
+     * @param pool the pool to run the walk on.
+     * @param cache the cache to consult and fill.
+     * @return DirectoryStats the aggregates of the tree, the root itself is not counted.
+     */
+
+    static DirectoryStats calculate(Path directory, ForkJoinPool pool, DirectoryAggregateCache cache) {
+        return pool.invoke(new WalkTask(directory, 0, cache));
+    }
+
+
+    /**
+     * WalkTask
+     * lists one directory, sums up its regular files and forks one task per subdirectory.
+     */
+
+    private static final class WalkTask extends RecursiveTask<DirectoryStats> {
+        private static final long serialVersionUID = 1L;
+        private final transient Path directory;
+        private final long directoryModified;
+        private final transient DirectoryAggregateCache cache;
+
+        // whether the result covers the whole subtree and every directory in it is watched
+        private boolean cacheable;
+
+        WalkTask(Path directory, long directoryModified, DirectoryAggregateCache cache) {
+            this.directory = directory;
+            this.directoryModified = directoryModified;
+            this.cache = cache;
+        }
+
+        @Override
+        protected DirectoryStats compute() {
+            Object mark = null;
+            if (cache != null) {
+                DirectoryStats cached = cache.lookup(directory);
+                if (cached != null) {
+                    cacheable = true;
+                    return cached;
+                }
+                // watch before listing, so that no change after the listing can be missed
+                mark = cache.begin(directory);
+                cacheable = cache.watch(directory);
+            }
+
+            long totalSize = 0;
+            long fileCount = 0;
+            long directoryCount = 0;
+            long lastModified = directoryModified;
+            List<WalkTask> subtasks = new ArrayList<>();
+
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+                for (Path entry : entries) {
+                    BasicFileAttributes attrs;
+                    try {
+                        attrs = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    } catch (IOException e) {
+                        cacheable = false;
+                        continue;               // removed while listing, or not accessible
+                    }
+
+                    long modified = attrs.lastModifiedTime().toMillis();
+                    if (attrs.isRegularFile()) {
+                        totalSize += attrs.size();
+                        fileCount++;
+                        lastModified = Math.max(lastModified, modified);
+                    } else if (attrs.isDirectory()) {
+                        directoryCount++;
+                        WalkTask subtask = new WalkTask(entry, modified, cache);
+                        subtask.fork();
+                        subtasks.add(subtask);
+                    }
+                }
+            } catch (IOException e) {
+                // the directory cannot be listed, count what was gathered so far
+                cacheable = false;
+            }
+
+            DirectoryStats stats = new DirectoryStats(totalSize, fileCount, directoryCount, lastModified);
+            for (WalkTask subtask : subtasks) {
+                stats = stats.plus(subtask.join());
+                cacheable &= subtask.cacheable;
+            }
+
+            if (cacheable) {
+                cache.store(directory, stats, mark);
+            } else if (cache != null) {
+                cache.abandon(directory, mark);
+            }
+            return stats;
+        }
+    }
+}
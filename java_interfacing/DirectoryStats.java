@@ -0,0 +1,62 @@
+/**
+ * DirectoryStats
+ * this class holds the aggregates gathered while walking a directory tree: the total size of the
+ * regular files in it, the number of those files, the number of directories below the root and
+ * the latest modification time (in epoch milliseconds) seen in the tree.
+ *
+ * @authors      Richard Quayson & Thomas Quarshie
+ */
+
+public final class DirectoryStats {
+    public static final DirectoryStats EMPTY = new DirectoryStats(0, 0, 0, 0);
+
+    private final long totalSize;
+    private final long fileCount;
+    private final long directoryCount;
+    private final long lastModified;
+
+
+    public DirectoryStats(long totalSize, long fileCount, long directoryCount, long lastModified) {
+        this.totalSize = totalSize;
+        this.fileCount = fileCount;
+        this.directoryCount = directoryCount;
+        this.lastModified = lastModified;
+    }
+
+
+    public long getTotalSize() {
+        return totalSize;
+    }
+
+    public long getFileCount() {
+        return fileCount;
+    }
+
+    public long getDirectoryCount() {
+        return directoryCount;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+
+    /**
+     * plus
+     * this method adds the aggregates of another (disjoint) tree to these.
+     *
+     * @param other the aggregates to add.
+     * @return DirectoryStats the combined aggregates.
+     */
+
+    public DirectoryStats plus(DirectoryStats other) {
+        return new DirectoryStats(totalSize + other.totalSize, fileCount + other.fileCount,
+                directoryCount + other.directoryCount, Math.max(lastModified, other.lastModified));
+    }
+
+
+    @Override
+    public String toString() {
+        return totalSize + " bytes in " + fileCount + " files and " + directoryCount + " directories";
+    }
+}
@@ -0,0 +1,107 @@
+import java.io.IOException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * Errno
+ * the Linux error codes the kernel modules return from their write handlers (e.g. EINVAL when
+ * update_file.c cannot parse a request, or the error of filp_open / vfs_rename), and the ones
+ * opening a proc entry may fail with. the JDK reports them as an IOException whose message is
+ * the strerror text, or as one of the java.nio.file exceptions; of() maps either back.
+ *
+ * @authors      Richard Quayson & Thomas Quarshie
+ */
+
+public enum Errno {
+    OK(0, "Success"),
+    EPERM(1, "Operation not permitted"),
+    ENOENT(2, "No such file or directory"),
+    EIO(5, "Input/output error"),
+    ENOMEM(12, "Cannot allocate memory"),
+    EACCES(13, "Permission denied"),
+    EFAULT(14, "Bad address"),
+    EBUSY(16, "Device or resource busy"),
+    EEXIST(17, "File exists"),
+    EXDEV(18, "Invalid cross-device link"),
+    ENOTDIR(20, "Not a directory"),
+    EISDIR(21, "Is a directory"),
+    EINVAL(22, "Invalid argument"),
+    EFBIG(27, "File too large"),
+    ENOSPC(28, "No space left on device"),
+    EROFS(30, "Read-only file system"),
+    ENAMETOOLONG(36, "File name too long"),
+    ENOTEMPTY(39, "Directory not empty"),
+    ELOOP(40, "Too many levels of symbolic links"),
+    // an error that carries no recognizable code
+    UNKNOWN(-1, "Unknown error");
+
+    private static final Map<String, Errno> BY_MESSAGE = new HashMap<>();
+
+    static {
+        for (Errno errno : values()) {
+            BY_MESSAGE.put(errno.message, errno);
+        }
+    }
+
+    private final int code;
+    private final String message;
+
+
+    Errno(int code, String message) {
+        this.code = code;
+        this.message = message;
+    }
+
+
+    // the value of the constant in <errno.h>, 0 for OK and -1 for UNKNOWN
+    public int getCode() {
+        return code;
+    }
+
+    // the text strerror gives for the code
+    public String getMessage() {
+        return message;
+    }
+
+
+    /**
+     * of
+     * this method finds the error code behind an IOException raised while writing a request.
+     *
+     * @param e the exception, or null.
+     * @return Errno the code, OK for null and UNKNOWN if none can be recognized.
+     */
+
+    public static Errno of(IOException e) {
+        if (e == null) {
+            return OK;
+        }
+        if (e instanceof NoSuchFileException) {
+            return ENOENT;
+        }
+        if (e instanceof AccessDeniedException) {
+            return EACCES;
+        }
+        if (e instanceof FileAlreadyExistsException) {
+            return EEXIST;
+        }
+        if (e instanceof DirectoryNotEmptyException) {
+            return ENOTEMPTY;
+        }
+        if (e instanceof NotDirectoryException) {
+            return ENOTDIR;
+        }
+        // other FileSystemExceptions keep the strerror text as their reason, a write that fails
+        // throws a plain IOException whose message is that text
+        String message = e instanceof FileSystemException ? ((FileSystemException) e).getReason() : e.getMessage();
+        Errno errno = message != null ? BY_MESSAGE.get(message) : null;
+        return errno != null ? errno : UNKNOWN;
+    }
+}
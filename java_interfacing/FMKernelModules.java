@@ -1,13 +1,23 @@
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
-import java.io.BufferedReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.Charset;
 import java.nio.file.Files;
-import java.nio.file.attribute.BasicFileAttributes;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 
 /**
@@ -15,6 +25,10 @@ import java.util.Date;
  * this class provides methods to interact with the kernel modules for file and folder operations.
  * It includes methods to create, rename, and delete folders, create, rename, update, and delete files,
  * list files in a directory, get directory information, get file details, and read file content.
+ * The create, rename, update and delete operations return an OperationResult with the number of
+ * bytes the module accepted, the error code it failed with and the latency of the request.
+ * Operations on the same path, or inside a folder being renamed or deleted, are serialized by
+ * PathLocks; operations on unrelated paths run in parallel.
  * @authors      Richard Quayson & Thomas Quarshie
  */
 
@@ -28,23 +42,168 @@ public class FMKernelModules {
     public static String UPDATE_FILE_PROC_FILE = "/proc/update_file";
     public static String DELETE_FILE_PROC_FILE = "/proc/delete_file";
 
+    // renders directory info and file details of the real file system
+    private static final FsBackend LOCAL = new ProcFsBackend();
+
+    // sends the requests of the tree operations through the bulk lane of the scheduler, without
+    // locks of their own, the tree operations hold the locks of the whole tree
+    private static final FsBackend BULK = new ProcFsBackend(OperationScheduler.Lane.BULK, false);
+
+    // where the messages of the operations go, -Dfm.log=none drops them
+    private static volatile OperationLog log = "none".equals(System.getProperty("fm.log")) ? OperationLog.NONE : OperationLog.CONSOLE;
+
+    // buffers the appends of updateFile, off unless set with setWriteBehind
+    private static volatile AppendCoalescer writeBehind;
+
+    // sends requests as binary frames, -Dfm.framing=true turns it on from the start
+    private static volatile boolean framing = Boolean.getBoolean("fm.framing");
+
+    // told about the files the operations change, off unless set with setContentIndex
+    private static volatile ContentIndex contentIndex;
+
+
+    /**
+     * setLog
+     * this method sets where the operations report what they did, e.g. OperationLog.NONE to
+     * stay silent. the counts and latencies of the requests are kept in OperationMetrics.shared()
+     * whatever the log.
+     *
+     * @param operationLog the sink for the messages.
+     * @return void
+     */
+
+    public static void setLog(OperationLog operationLog) {
+        log = Objects.requireNonNull(operationLog, "operationLog");
+    }
+
+    public static OperationLog getLog() {
+        return log;
+    }
+
+
+    /**
+     * setWriteBehind
+     * this method turns on the coalescing of appends: while a coalescer is set, updateFile with
+     * overwriteFlag 0 buffers the data in it, and the appends to a path are merged into one
+     * request (see AppendCoalescer). the operations that must see the appends of a path drain
+     * them first. null turns it off; the coalescer replaced is not flushed, close it.
+     *
+     * @param coalescer the coalescer the appends go through, or null.
+     * @return void
+     */
+
+    public static void setWriteBehind(AppendCoalescer coalescer) {
+        writeBehind = coalescer;
+    }
+
+    public static AppendCoalescer getWriteBehind() {
+        return writeBehind;
+    }
+
+    /**
+     * setFraming
+     * this method chooses the request format: binary frames (see FrameEncoder), which carry any
+     * path and content and let submitBatch pack many operations into one write, or the text
+     * requests. frames need the modules built with fm_frame.h; older ones misread them.
+     *
+     * @param enabled true to send frames, false for text requests.
+     * @return void
+     */
+
+    public static void setFraming(boolean enabled) {
+        framing = enabled;
+    }
+
+    public static boolean isFraming() {
+        return framing;
+    }
+
+    /**
+     * setContentIndex
+     * this method keeps a ContentIndex up to date with the files changed through this class,
+     * submitBatch and FMKernelModulesAsync: while it is set, every create, update, rename and
+     * delete that succeeds queues the change for the index, which reads the files again on its
+     * next refresh. null turns it off; the index replaced is not closed.
+     *
+     * @param index the index to keep up to date, or null.
+     * @return void
+     */
+
+    public static void setContentIndex(ContentIndex index) {
+        contentIndex = index;
+    }
+
+    public static ContentIndex getContentIndex() {
+        return contentIndex;
+    }
+
+    // send the appends still buffered for a file, or for the files below a folder
+    private static void drain(String filePath) {
+        AppendCoalescer coalescer = writeBehind;
+        if (coalescer != null) {
+            coalescer.drain(filePath);
+        }
+    }
+
+    // the path a rename gives, the new name in the same folder
+    static String sibling(String path, String newName) {
+        int slash = path.lastIndexOf('/', path.length() - 2);
+        return slash < 0 ? newName : path.substring(0, slash + 1) + newName;
+    }
+
+    private static void drainFolder(String folderPath) {
+        AppendCoalescer coalescer = writeBehind;
+        if (coalescer != null) {
+            coalescer.drainFolder(folderPath);
+        }
+    }
+
+    // take the paths an operation changes, as the methods below do
+    private static PathLocks.Hold lock(Operation operation) {
+        return switch (operation.getType()) {
+            case RENAME_FOLDER, RENAME_FILE -> PathLocks.shared().lock(operation.getPath(), sibling(operation.getPath(), operation.getArgument()));
+            default -> PathLocks.shared().lock(operation.getPath());
+        };
+    }
+
+    // send the appends buffered for the paths an operation must see, as the methods below do
+    private static void drain(Operation operation) {
+        switch (operation.getType()) {
+            case RENAME_FOLDER, DELETE_FOLDER -> drainFolder(operation.getPath());
+            default -> drain(operation.getPath());
+        }
+    }
+
+    // queue a change for the content index, if one is set
+    private static void index(Consumer<ContentIndex> change) {
+        ContentIndex index = contentIndex;
+        if (index != null) {
+            change.accept(index);
+        }
+    }
+
 
     /**
      * createFolder
      * this method requests the creation of a folder using the kernel module.
      * 
      * @param folderPath the path of the folder to create.
-     * @return void
+     * @return OperationResult the bytes the module accepted, the error code and the latency.
      */
 
-    public static void createFolder(String folderPath) {
-        
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(CREATE_FOLDER_PROC_FILE))) {
+    public static OperationResult createFolder(String folderPath) {
+        PathLocks.Hold hold = PathLocks.shared().lock(folderPath);
+        try {
             // write the folder path to the /proc/create_folder file
-            writer.write(folderPath);
-            System.out.println("Requested the creation of folder: " + folderPath);
-        } catch (IOException e) {
-            System.err.println("An error occurred while requesting the creation of the folder: " + e.getMessage());
+            OperationResult result = Operation.createFolder(folderPath).run();
+            if (result.isSuccess()) {
+                log.info(() -> "Requested the creation of folder: " + folderPath);
+            } else {
+                log.error(() -> "An error occurred while requesting the creation of the folder: " + result.getError().getMessage());
+            }
+            return result;
+        } finally {
+            hold.close();
         }
     }
 
@@ -68,85 +227,73 @@ public class FMKernelModules {
             return files;
         } else {
             // return null if the path is not a directory or does not exist
-            System.out.println("The specified path is not a valid directory: " + folderPath);
+            log.info(() -> "The specified path is not a valid directory: " + folderPath);
             return null;
         }
     }
 
 
     /**
-     * Gets information about a directory.
+     * listFilesWithDetails
+     * this method lists all files in a directory together with their details (type, size,
+     * modified and created times), stat'ing the entries in parallel while the directory is read.
      * 
-     * @param directoryPath The path of the directory to get information from.
-     * @return A string containing the information about the directory.
+     * @param folderPath the path of the directory to list files from.
+     * @return List<FileDetails> the details of the entries, or null if the path is not a directory.
      */
 
-    public static String getDirectoryInfo(String directoryPath) {
-        // create a File object for the given directory path
-        File directory = new File(directoryPath);
-        
-        // create a StringBuilder to accumulate the information
-        StringBuilder info = new StringBuilder();
-        
-        if (directory.exists() && directory.isDirectory()) {
-            // get directory name
-            String directoryName = directory.getName();
-            info.append("Directory Name: ").append(directoryName).append("\n");
-            
-            // calculate total size of files within the directory
-            long totalSize = calculateTotalSize(directory);
-            info.append("Total Size: ").append(totalSize).append(" bytes\n");
-            
-            // get last modified date
-            long lastModified = directory.lastModified();
-            SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-            Date lastModifiedDate = new Date(lastModified);
-            info.append("Date Modified: ").append(dateFormat.format(lastModifiedDate)).append("\n");
-            
-            // get directory path
-            String directoryPathStr = directory.getAbsolutePath();
-            info.append("Directory Path: ").append(directoryPathStr).append("\n");
-            
-            // get directory creation date (requires java.nio.file.Files and java.nio.file.attribute.BasicFileAttributes)
-            try {
-                BasicFileAttributes attrs = Files.readAttributes(directory.toPath(), BasicFileAttributes.class);
-                long creationTime = attrs.creationTime().toMillis();
-                Date creationDate = new Date(creationTime);
-                info.append("Date Created: ").append(dateFormat.format(creationDate)).append("\n");
-            } catch (Exception e) {
-                info.append("Could not retrieve creation date.\n");
-            }
-        } else {
-            info.append("The specified path is not a valid directory: ").append(directoryPath).append("\n");
+    public static List<FileDetails> listFilesWithDetails(String folderPath) {
+        try {
+            return DirectoryDetailsLister.list(Paths.get(folderPath));
+        } catch (IOException | InvalidPathException e) {
+            // return null if the path is not a directory or does not exist
+            log.info(() -> "The specified path is not a valid directory: " + folderPath);
+            return null;
         }
-        
-        return info.toString();
     }
 
 
     /**
-     * calculateTotalSize
-     * this method calculates the total size of files in a directory.
+     * openDirectoryCursor
+     * this method opens a paged listing of a directory. entries are read from the directory as
+     * pages are requested, so memory use is bounded by the page size, not by the directory size.
      * 
-     * @param directory the directory to calculate the total size of files from.
-     * @return long the total size of files in the directory.
+     * @param folderPath the path of the directory to list files from.
+     * @param position the number of entries to skip, i.e. the position() of an earlier cursor, or 0.
+     * @return DirectoryCursor the cursor, to be closed when done.
+     * @throws IOException if the directory cannot be opened.
      */
 
-    private static long calculateTotalSize(File directory) {
-        long totalSize = 0;
-        
-        File[] files = directory.listFiles();
-        if (files != null) {
-            for (File file : files) {
-                if (file.isFile()) {
-                    totalSize += file.length();
-                } else if (file.isDirectory()) {
-                    totalSize += calculateTotalSize(file);
-                }
-            }
-        }
-        
-        return totalSize;
+    public static DirectoryCursor openDirectoryCursor(String folderPath, long position) throws IOException {
+        return DirectoryCursor.open(Paths.get(folderPath), position);
+    }
+
+
+    /**
+     * streamFilesInDirectory
+     * this method lists a directory as a lazy stream; closing the stream closes the directory.
+     * 
+     * @param folderPath the path of the directory to list files from.
+     * @return Stream<Path> the entries of the directory.
+     * @throws IOException if the directory cannot be opened.
+     */
+
+    public static Stream<Path> streamFilesInDirectory(String folderPath) throws IOException {
+        return DirectoryCursor.stream(Paths.get(folderPath));
+    }
+
+
+    /**
+     * Gets information about a directory.
+     * 
+     * @param directoryPath The path of the directory to get information from.
+     * @return A string containing the information about the directory.
+     */
+
+    public static String getDirectoryInfo(String directoryPath) {
+        drainFolder(directoryPath);
+        // sizes and counts are cached per directory and kept current by a WatchService and by the mutations below
+        return LOCAL.getDirectoryInfo(directoryPath);
     }
 
 
@@ -156,20 +303,24 @@ public class FMKernelModules {
      * 
      * @param srcFolderPath the current path of the folder to rename.
      * @param newName the new name for the folder.
-     * @return void
+     * @return OperationResult the bytes the module accepted, the error code and the latency.
      */
 
-    public static void renameFolder(String srcFolderPath, String newName) {
-        
-        // prepare the input data by combining srcFolderPath and newName with a newline separator
-        String inputData = srcFolderPath + "\n" + newName + "\n";
-        
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(RENAME_FOLDER_PROC_FILE))) {
-            // write the input data to the /proc/rename_folder file
-            writer.write(inputData);
-            System.out.println("Requested the renaming of folder from '" + srcFolderPath + "' to '" + newName + "'");
-        } catch (IOException e) {
-            System.err.println("An error occurred while trying to rename the folder: " + e.getMessage());
+    public static OperationResult renameFolder(String srcFolderPath, String newName) {
+        PathLocks.Hold hold = PathLocks.shared().lock(srcFolderPath, sibling(srcFolderPath, newName));
+        try {
+            drainFolder(srcFolderPath);
+            // write the current path and new name, separated by newlines, to the /proc/rename_folder file
+            OperationResult result = Operation.renameFolder(srcFolderPath, newName).run();
+            if (result.isSuccess()) {
+                index(index -> index.folderRenamed(srcFolderPath, sibling(srcFolderPath, newName)));
+                log.info(() -> "Requested the renaming of folder from '" + srcFolderPath + "' to '" + newName + "'");
+            } else {
+                log.error(() -> "An error occurred while trying to rename the folder: " + result.getError().getMessage());
+            }
+            return result;
+        } finally {
+            hold.close();
         }
     }
 
@@ -179,17 +330,79 @@ public class FMKernelModules {
      * this method requests the deletion of a folder using the kernel module.
      * 
      * @param folderPath the path of the folder to delete.
-     * @return void
+     * @return OperationResult the bytes the module accepted, the error code and the latency.
      */
 
-    public static void deleteFolder(String folderPath) {
-        
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(DELETE_FOLDER_PROC_FILE))) {
+    public static OperationResult deleteFolder(String folderPath) {
+        PathLocks.Hold hold = PathLocks.shared().lock(folderPath);
+        try {
+            drainFolder(folderPath);
             // Write the folder path you want to delete to the /proc/delete_folder file
-            writer.write(folderPath);
-            System.out.println("Requested deletion of folder: " + folderPath);
+            OperationResult result = Operation.deleteFolder(folderPath).run();
+            if (result.isSuccess()) {
+                index(index -> index.folderDeleted(folderPath));
+                log.info(() -> "Requested deletion of folder: " + folderPath);
+            } else {
+                log.error(() -> "An error occurred while trying to delete the folder: " + result.getError().getMessage());
+            }
+            return result;
+        } finally {
+            hold.close();
+        }
+    }
+
+    
+    /**
+     * deleteTree
+     * this method deletes a folder and everything below it, one kernel-module request per
+     * entry, in parallel; every folder is deleted once its content is gone. the requests go
+     * through the BULK lane of OperationScheduler.shared(). see TreeOperations.
+     * 
+     * @param folderPath the path of the folder to delete.
+     * @param progress receives the counts as the delete goes on, or null.
+     * @return TreeProgress the number of files and folders deleted.
+     * @throws IOException if the path is not a folder or any entry could not be deleted.
+     */
+
+    public static TreeProgress deleteTree(String folderPath, Consumer<TreeProgress> progress) throws IOException {
+        PathLocks.Hold hold = PathLocks.shared().lock(folderPath);
+        try {
+            drainFolder(folderPath);
+            TreeProgress deleted = TreeOperations.deleteTree(BULK, folderPath, progress);
+            index(index -> index.folderDeleted(folderPath));
+            return deleted;
         } catch (IOException e) {
-            System.err.println("An error occurred while trying to delete the folder: " + e.getMessage());
+            // part of the tree may be left, the index compares it with what remains
+            index(index -> index.folderChanged(folderPath));
+            throw e;
+        } finally {
+            hold.close();
+        }
+    }
+
+
+    /**
+     * copyTree
+     * this method copies a folder and everything below it to a new folder, one kernel-module
+     * request per folder and per chunk of file content, in parallel. the folder requests go
+     * through the BULK lane of OperationScheduler.shared(). see TreeOperations.
+     * 
+     * @param sourcePath the path of the folder to copy.
+     * @param targetPath the path of the folder to create, it must not exist.
+     * @param progress receives the counts as the copy goes on, or null.
+     * @return TreeProgress the number of files, folders and bytes copied.
+     * @throws IOException if the source is not a folder or any entry could not be copied.
+     */
+
+    public static TreeProgress copyTree(String sourcePath, String targetPath, Consumer<TreeProgress> progress) throws IOException {
+        PathLocks.Hold hold = PathLocks.shared().lockForCopy(sourcePath, targetPath);
+        try {
+            drainFolder(sourcePath);
+            return TreeOperations.copyTree(BULK, sourcePath, targetPath, progress);
+        } finally {
+            hold.close();
+            // whatever part of the tree was copied
+            index(index -> index.folderChanged(targetPath));
         }
     }
 
@@ -200,19 +413,73 @@ public class FMKernelModules {
      * 
      * @param filePath the path of the file to create.
      * @param content the content to write to the file.
-     * @return void
+     * @return OperationResult the bytes the module accepted, the error code and the latency.
      */
     
-    public static void createFile(String filePath, String content) {
-        
-        // combine the file path and content into one string, separated by a newline character
-        String inputData = filePath + "\n" + content;
-        
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(CREATE_FILE_PROC_FILE))) {
-            writer.write(inputData);
-            System.out.println("Data written to " + CREATE_FILE_PROC_FILE);
-        } catch (IOException e) {
-            System.err.println("An error occurred while writing to " + CREATE_FILE_PROC_FILE + ": " + e.getMessage());
+    public static OperationResult createFile(String filePath, String content) {
+        PathLocks.Hold hold = PathLocks.shared().lock(filePath);
+        try {
+            drain(filePath);
+            // write the file path and content, separated by a newline character, to the /proc/create_file file
+            OperationResult result = Operation.createFile(filePath, content).run();
+            if (result.isSuccess()) {
+                index(index -> index.fileChanged(filePath));
+                log.info(() -> "Data written to " + CREATE_FILE_PROC_FILE);
+            } else {
+                log.error(() -> "An error occurred while writing to " + CREATE_FILE_PROC_FILE + ": " + result.getError().getMessage());
+            }
+            return result;
+        } finally {
+            hold.close();
+        }
+    }
+
+
+    /**
+     * createFile
+     * this method requests the creation of a file whose content is streamed from an InputStream.
+     * the content is sent in chunks of ProcStreamWriter.CHUNK_SIZE, so it is never held in memory
+     * as a whole and may contain any bytes.
+     * 
+     * @param filePath the path of the file to create.
+     * @param content the stream to read the content from, it is not closed.
+     * @return long the number of content bytes sent.
+     * @throws IOException if the stream cannot be read or a request fails.
+     */
+
+    public static long createFile(String filePath, InputStream content) throws IOException {
+        PathLocks.Hold hold = PathLocks.shared().lock(filePath);
+        try {
+            drain(filePath);
+            return ProcStreamWriter.createFile(filePath, content);
+        } finally {
+            hold.close();
+            // a stream that failed part way may still have changed the file
+            index(index -> index.fileChanged(filePath));
+        }
+    }
+
+    public static long createFile(String filePath, Path source) throws IOException {
+        PathLocks.Hold hold = PathLocks.shared().lock(filePath);
+        try {
+            drain(filePath);
+            return ProcStreamWriter.createFile(filePath, source);
+        } finally {
+            hold.close();
+            // a stream that failed part way may still have changed the file
+            index(index -> index.fileChanged(filePath));
+        }
+    }
+
+    public static long createFile(String filePath, ByteBuffer content) throws IOException {
+        PathLocks.Hold hold = PathLocks.shared().lock(filePath);
+        try {
+            drain(filePath);
+            return ProcStreamWriter.createFile(filePath, content);
+        } finally {
+            hold.close();
+            // a stream that failed part way may still have changed the file
+            index(index -> index.fileChanged(filePath));
         }
     }
 
@@ -226,82 +493,133 @@ public class FMKernelModules {
      */
 
     public static String getFileDetails(String filePath) {
-        // create a File object for the given file path
-        File file = new File(filePath);
-        
-        // create a StringBuilder to accumulate the details
-        StringBuilder details = new StringBuilder();
-        
-        if (file.exists()) {
-            // get file name
-            String fileName = file.getName();
-            details.append("File Name: ").append(fileName).append("\n");
-            
-            // determine file type (file or directory)
-            if (file.isDirectory()) {
-                details.append("File Type: Directory\n");
-            } else if (file.isFile()) {
-                details.append("File Type: File\n");
-            }
-            
-            // get file size in bytes
-            long fileSize = file.length();
-            details.append("File Size: ").append(fileSize).append(" bytes\n");
-            
-            // get last modified date
-            long lastModified = file.lastModified();
-            SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-            Date lastModifiedDate = new Date(lastModified);
-            details.append("Date Modified: ").append(dateFormat.format(lastModifiedDate)).append("\n");
-            
-            // get file path
-            String filePathStr = file.getAbsolutePath();
-            details.append("File Path: ").append(filePathStr).append("\n");
-            
-            // get file creation date (requires java.nio.file.Files and java.nio.file.attribute.BasicFileAttributes)
-            try {
-                BasicFileAttributes attrs = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
-                long creationTime = attrs.creationTime().toMillis();
-                Date creationDate = new Date(creationTime);
-                details.append("Date Created: ").append(dateFormat.format(creationDate)).append("\n");
-            } catch (Exception e) {
-                details.append("Could not retrieve creation date.\n");
+        PathLocks.Hold hold = PathLocks.shared().lockShared(filePath);
+        try {
+            drain(filePath);
+            // stat the file once and render the details
+            return LOCAL.getFileDetails(filePath);
+        } finally {
+            hold.close();
+        }
+    }
+
+
+    /**
+     * getFileDetails
+     * this method retrieves the details of many files, stat'ing them in parallel on the workers
+     * of DirectoryDetailsLister (-Dfm.list.workers). paths that do not exist or cannot be read
+     * are left out of the result.
+     * 
+     * @param paths the paths of the files to get details from.
+     * @return Map<Path, FileDetails> the details of each readable path, in the order given.
+     */
+
+    public static Map<Path, FileDetails> getFileDetails(Collection<Path> paths) {
+        List<Path> input = List.copyOf(paths);
+        FileDetails[] details = DirectoryDetailsLister.stat(input);
+
+        Map<Path, FileDetails> result = new LinkedHashMap<>();
+        for (int i = 0; i < details.length; i++) {
+            // missing or unreadable paths are left out
+            if (details[i] != null) {
+                result.put(input.get(i), details[i]);
             }
-        } else {
-            details.append("The specified file does not exist: ").append(filePath).append("\n");
         }
-        
-        return details.toString();
+        return result;
     }
 
     
     /**
      * readFileContent
-     * this method reads the content of a file.
+     * this method reads the content of a file. the bytes are decoded as they are stored,
+     * line endings are not rewritten.
      * 
      * @param filePath the path of the file to read content from.
      * @return String the content of the file.
-     * @throws IOException if an I/O error occurs.
-     * @return void
+     * @throws IOException if an I/O error occurs or the file is larger than 2 GB.
      */
 
     public static String readFileContent(String filePath) throws IOException {
-        // use StringBuilder to accumulate the file content
-        StringBuilder content = new StringBuilder();
-        
-        // create a FileReader and BufferedReader to read the file
-        try (FileReader fileReader = new FileReader(filePath);
-             BufferedReader bufferedReader = new BufferedReader(fileReader)) {
-            
-            // read the file line by line and append each line to the content
-            String line;
-            while ((line = bufferedReader.readLine()) != null) {
-                content.append(line).append(System.lineSeparator());
+        PathLocks.Hold hold = PathLocks.shared().lockShared(filePath);
+        try {
+            drain(filePath);
+            Path path = Paths.get(filePath);
+            if (Files.size(path) > Integer.MAX_VALUE) {
+                // one buffer holds 2 GB, the rest would be cut off without a word
+                throw new IOException("File is too large to read in one piece, use readRange or readLines instead: " + filePath);
             }
+            // read the whole file (mapped if it is large) and decode it with the platform charset
+            ByteBuffer content = FileContentReader.readRange(path, 0, Integer.MAX_VALUE);
+            return Charset.defaultCharset().decode(content).toString();
+        } finally {
+            hold.close();
+        }
+    }
+
+
+    /**
+     * readRange
+     * this method reads up to length bytes of a file starting at offset, without altering them.
+     * large ranges are memory-mapped rather than copied onto the heap.
+     * 
+     * @param filePath the path of the file to read from.
+     * @param offset the position of the first byte to read.
+     * @param length the maximum number of bytes to read.
+     * @return ByteBuffer the bytes read.
+     * @throws IOException if an I/O error occurs.
+     */
+
+    public static ByteBuffer readRange(String filePath, long offset, int length) throws IOException {
+        PathLocks.Hold hold = PathLocks.shared().lockShared(filePath);
+        try {
+            drain(filePath);
+            return FileContentReader.readRange(Paths.get(filePath), offset, length);
+        } finally {
+            hold.close();
+        }
+    }
+
+
+    /**
+     * mapFile
+     * this method maps a whole file read-only. the path is locked while the file is mapped;
+     * the mapping sees the changes made to the file afterwards.
+     * 
+     * @param filePath the path of the file to map.
+     * @return MappedByteBuffer the content of the file.
+     * @throws IOException if an I/O error occurs or the file is larger than 2 GB.
+     */
+
+    public static MappedByteBuffer mapFile(String filePath) throws IOException {
+        PathLocks.Hold hold = PathLocks.shared().lockShared(filePath);
+        try {
+            drain(filePath);
+            return FileContentReader.mapFile(Paths.get(filePath));
+        } finally {
+            hold.close();
+        }
+    }
+
+
+    /**
+     * readLines
+     * this method returns the lines of a file lazily; the file is never loaded as a whole.
+     * the stream must be closed to release the file. the path is locked while the file is
+     * opened, not while the lines are read, so a change made meanwhile may be seen part way.
+     * 
+     * @param filePath the path of the file to read lines from.
+     * @return Stream<String> the lines of the file.
+     * @throws IOException if an I/O error occurs.
+     */
+
+    public static Stream<String> readLines(String filePath) throws IOException {
+        PathLocks.Hold hold = PathLocks.shared().lockShared(filePath);
+        try {
+            drain(filePath);
+            return FileContentReader.lines(Paths.get(filePath), Charset.defaultCharset());
+        } finally {
+            hold.close();
         }
-        
-        // return the file content as a string
-        return content.toString();
     }
 
     /**
@@ -310,26 +628,29 @@ public class FMKernelModules {
      * 
      * @param currentPath the current path of the file to rename.
      * @param newName the new name for the file.
-     * @return void
+     * @return OperationResult the bytes the module accepted, the error code and the latency.
     */
 
-    public static void renameFile(String currentPath, String newName) {
-        
-        // create the buffer by combining current path and new name with a newline separator
-        String buffer = currentPath + "\n" + newName + "\n";
-        
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(RENAME_FILE_PROC_FILE))) {
-            // write the buffer to the /proc/rename_file file
-            writer.write(buffer);
-            System.out.println("Successfully sent rename request: " + currentPath + " -> " + newName);
-        } catch (IOException e) {
-            if (e instanceof java.nio.file.NoSuchFileException) {
-                System.err.println("Error: Cannot open " + RENAME_FILE_PROC_FILE + ". The proc file may not exist.");
+    public static OperationResult renameFile(String currentPath, String newName) {
+        PathLocks.Hold hold = PathLocks.shared().lock(currentPath, sibling(currentPath, newName));
+        try {
+            drain(currentPath);
+            // write the current path and new name, separated by newlines, to the /proc/rename_file file
+            OperationResult result = Operation.renameFile(currentPath, newName).run();
+            IOException e = result.getError();
+            if (e == null) {
+                index(index -> index.fileRenamed(currentPath, sibling(currentPath, newName)));
+                log.info(() -> "Successfully sent rename request: " + currentPath + " -> " + newName);
+            } else if (e instanceof java.nio.file.NoSuchFileException) {
+                log.error(() -> "Error: Cannot open " + RENAME_FILE_PROC_FILE + ". The proc file may not exist.");
             } else if (e instanceof java.nio.file.AccessDeniedException) {
-                System.err.println("Error: Permission denied. Make sure to run the script with sufficient permissions.");
+                log.error(() -> "Error: Permission denied. Make sure to run the script with sufficient permissions.");
             } else {
-                System.err.println("An error occurred while renaming the file: " + e.getMessage());
+                log.error(() -> "An error occurred while renaming the file: " + e.getMessage());
             }
+            return result;
+        } finally {
+            hold.close();
         }
     }
 
@@ -341,20 +662,75 @@ public class FMKernelModules {
      * @param filePath the path of the file to update.
      * @param newData the new data to write to the file.
      * @param overwriteFlag the flag to determine whether to overwrite the file.
-     * @return void
+     * @return OperationResult the bytes the module accepted, the error code and the latency.
      */
 
-    public static void updateFile(String filePath, String newData, int overwriteFlag) {
-        
-        // prepare the input data in the format: file_path | new_data | overwrite_flag
-        String inputData = filePath + "|" + newData + "|" + overwriteFlag;
-        
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(UPDATE_FILE_PROC_FILE))) {
-            // Write the input data to the /proc/update_file file
-            writer.write(inputData);
-            System.out.println("Appended line to " + filePath + " using kernel module.");
-        } catch (IOException e) {
-            System.err.println("An error occurred while updating the file: " + e.getMessage());
+    public static OperationResult updateFile(String filePath, String newData, int overwriteFlag) {
+        PathLocks.Hold hold = PathLocks.shared().lock(filePath);
+        try {
+            // write the input data in the format file_path|new_data|overwrite_flag to the /proc/update_file file,
+            // or leave it to the coalescer, which drains the path before an overwrite
+            AppendCoalescer coalescer = writeBehind;
+            OperationResult result = coalescer != null ? coalescer.update(filePath, newData, overwriteFlag)
+                    : Operation.updateFile(filePath, newData, overwriteFlag).run();
+            if (result.isSuccess()) {
+                index(index -> index.fileChanged(filePath));
+                log.info(() -> "Appended line to " + filePath + " using kernel module.");
+            } else {
+                log.error(() -> "An error occurred while updating the file: " + result.getError().getMessage());
+            }
+            return result;
+        } finally {
+            hold.close();
+        }
+    }
+
+    
+    /**
+     * updateFile
+     * this method requests the updating of a file with content streamed from an InputStream.
+     * the first chunk truncates the file when overwriteFlag is 1, later chunks are appended.
+     * 
+     * @param filePath the path of the file to update.
+     * @param content the stream to read the content from, it is not closed.
+     * @param overwriteFlag the flag to determine whether to overwrite the file.
+     * @return long the number of content bytes sent.
+     * @throws IOException if the stream cannot be read or a request fails.
+     */
+
+    public static long updateFile(String filePath, InputStream content, int overwriteFlag) throws IOException {
+        PathLocks.Hold hold = PathLocks.shared().lock(filePath);
+        try {
+            drain(filePath);
+            return ProcStreamWriter.updateFile(filePath, content, overwriteFlag);
+        } finally {
+            hold.close();
+            // a stream that failed part way may still have changed the file
+            index(index -> index.fileChanged(filePath));
+        }
+    }
+
+    public static long updateFile(String filePath, Path source, int overwriteFlag) throws IOException {
+        PathLocks.Hold hold = PathLocks.shared().lock(filePath);
+        try {
+            drain(filePath);
+            return ProcStreamWriter.updateFile(filePath, source, overwriteFlag);
+        } finally {
+            hold.close();
+            // a stream that failed part way may still have changed the file
+            index(index -> index.fileChanged(filePath));
+        }
+    }
+
+    public static long updateFile(String filePath, ByteBuffer content, int overwriteFlag) throws IOException {
+        PathLocks.Hold hold = PathLocks.shared().lock(filePath);
+        try {
+            drain(filePath);
+            return ProcStreamWriter.updateFile(filePath, content, overwriteFlag);
+        } finally {
+            hold.close();
+            // a stream that failed part way may still have changed the file
+            index(index -> index.fileChanged(filePath));
         }
     }
 
@@ -364,17 +740,215 @@ public class FMKernelModules {
      * this method requests the deletion of a file using the kernel module.
      * 
      * @param filePath the path of the file to delete.
-     * @return void
+     * @return OperationResult the bytes the module accepted, the error code and the latency.
      */
 
-    public static void deleteFile(String filePath) {
-        
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(DELETE_FILE_PROC_FILE))) {
+    public static OperationResult deleteFile(String filePath) {
+        PathLocks.Hold hold = PathLocks.shared().lock(filePath);
+        try {
+            drain(filePath);
             // write the file path you want to delete to the /proc/delete_file file
-            writer.write(filePath);
-            System.out.println("Requested deletion of file: " + filePath);
-        } catch (IOException e) {
-            System.err.println("An error occurred while trying to delete the file: " + e.getMessage());
+            OperationResult result = Operation.deleteFile(filePath).run();
+            if (result.isSuccess()) {
+                index(index -> index.fileDeleted(filePath));
+                log.info(() -> "Requested deletion of file: " + filePath);
+            } else {
+                log.error(() -> "An error occurred while trying to delete the file: " + result.getError().getMessage());
+            }
+            return result;
+        } finally {
+            hold.close();
+        }
+    }
+
+
+    /**
+     * perform
+     * this method sends one operation the way the methods above send theirs, without the log:
+     * under the PathLocks of the paths it changes, the appends buffered for its path, or below
+     * its folder, are sent first, an append goes through the coalescer while one is set, and the
+     * change is queued for the content index if the operation succeeds.
+     *
+     * @param operation the operation to send.
+     * @return OperationResult the bytes the module accepted, the error code and the latency.
+     */
+
+    static OperationResult perform(Operation operation) {
+        return perform(operation, Operation::run);
+    }
+
+
+    /**
+     * perform
+     * this method sends one operation like perform(operation), with its request written by
+     * send, e.g. through a lane of an OperationScheduler.
+     *
+     * @param operation the operation to send.
+     * @param send writes the request of the operation.
+     * @return OperationResult the bytes the module accepted, the error code and the latency.
+     */
+
+    static OperationResult perform(Operation operation, Function<Operation, OperationResult> send) {
+        PathLocks.Hold hold = lock(operation);
+        try {
+            AppendCoalescer coalescer = writeBehind;
+            OperationResult result;
+            if (coalescer != null && operation.getType() == Operation.Type.UPDATE_FILE) {
+                // the coalescer drains the path itself before an overwrite
+                result = coalescer.update(operation.getPath(), operation.getArgument(), operation.getOverwriteFlag());
+            } else {
+                drain(operation);
+                result = send.apply(operation);
+            }
+            if (result.isSuccess()) {
+                index(index -> index.record(operation));
+            }
+            return result;
+        } finally {
+            hold.close();
+        }
+    }
+
+
+    /**
+     * performLogged
+     * this method sends one operation like perform(operation, send) and reports it to the log,
+     * for ProcFsBackend, whose callers go through the FsBackend methods instead of the ones above.
+     *
+     * @param operation the operation to send.
+     * @param send writes the request of the operation.
+     * @return OperationResult the bytes the module accepted, the error code and the latency.
+     */
+
+    static OperationResult performLogged(Operation operation, Function<Operation, OperationResult> send) {
+        OperationResult result = perform(operation, send);
+        if (result.isSuccess()) {
+            log.info(() -> "Requested " + operation);
+        } else {
+            log.error(() -> "An error occurred while requesting " + operation + ": " + result.getError().getMessage());
+        }
+        return result;
+    }
+
+
+    /**
+     * submitBatch
+     * this method sends a batch of operations to the kernel modules, in submission order, so an
+     * operation may depend on the ones before it (a file created in a folder created earlier in
+     * the batch). nothing is printed per operation. every operation holds the PathLocks of the
+     * paths it changes, and the appends buffered by the coalescer are sent before the operations
+     * that must see them, as perform does. with framing on, every run of adjacent operations on
+     * the same proc entry is packed into batches of about FrameEncoder.DEFAULT_BATCH_BYTES bytes,
+     * each sent in one write.
+     * 
+     * @param operations the operations to send.
+     * @return List<OperationOutcome> the outcome of each operation, in submission order.
+     */
+
+    public static List<OperationOutcome> submitBatch(List<Operation> operations) {
+        OperationOutcome[] outcomes = new OperationOutcome[operations.size()];
+        FrameEncoder frames = null;
+        int next = 0;
+        while (next < operations.size()) {
+            // the run of adjacent operations on the same entry
+            int first = next;
+            String procFile = operations.get(next++).procFile();
+            if (framing) {
+                while (next < operations.size() && operations.get(next).procFile().equals(procFile)) {
+                    next++;
+                }
+            }
+            // a single operation goes through perform, and run frames it with the encoder of its channel
+            if (next - first > 1) {
+                // the run is sent as a whole, it holds the paths of all its operations
+                PathLocks.Hold hold = PathLocks.shared().lock(paths(operations, first, next));
+                try {
+                    for (int i = first; i < next; i++) {
+                        drain(operations.get(i));
+                    }
+                    frames = frames != null ? frames : new FrameEncoder();
+                    submitFramed(procFile, operations, first, next, outcomes, frames);
+                    for (int i = first; i < next; i++) {
+                        Operation operation = outcomes[i].getOperation();
+                        if (outcomes[i].isSuccess()) {
+                            index(index -> index.record(operation));
+                        }
+                    }
+                } finally {
+                    hold.close();
+                }
+                continue;
+            }
+            Operation operation = operations.get(first);
+            outcomes[first] = OperationOutcome.of(operation, perform(operation));
+        }
+        return Arrays.asList(outcomes);
+    }
+
+
+    // the paths a run of operations changes, the targets of renames included
+    private static List<String> paths(List<Operation> operations, int from, int to) {
+        List<String> paths = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            Operation operation = operations.get(i);
+            paths.add(operation.getPath());
+            if (operation.getType() == Operation.Type.RENAME_FOLDER || operation.getType() == Operation.Type.RENAME_FILE) {
+                paths.add(sibling(operation.getPath(), operation.getArgument()));
+            }
+        }
+        return paths;
+    }
+
+
+    /**
+     * submitFramed
+     * this method sends a run of operations on the same entry as batches of frames. a module stops a batch
+     * at the first frame that fails and accepts the bytes before it, so the rest of the batch is
+     * sent again from the failed frame, which then fails on its own with its error code, and the
+     * frames after it are sent on. the latency of a write is shared by the frames it performed.
+     *
+     * @param procFile the proc entry of the run.
+     * @param operations the operations of the batch.
+     * @param from the index of the first operation of the run.
+     * @param to the index after the last one.
+     * @param outcomes where the outcome of each operation is stored.
+     * @param frames the encoder to reuse.
+     * @return void
+     */
+
+    private static void submitFramed(String procFile, List<Operation> operations, int from, int to,
+            OperationOutcome[] outcomes, FrameEncoder frames) {
+        int next = from;
+        while (next < to) {
+            // fill a batch, a frame larger than the batch size goes on its own
+            int first = next;
+            frames.reset();
+            do {
+                frames.add(operations.get(next++));
+            } while (next < to && frames.size() < FrameEncoder.DEFAULT_BATCH_BYTES);
+
+            int frame = 0;
+            while (frame < frames.frames()) {
+                long start = System.nanoTime();
+                try {
+                    int accepted = ProcChannelManager.write(procFile, frames, frame);
+                    int stopped = frames.stoppedAt(frame, accepted);
+                    if (stopped <= frame) {
+                        // the reply ends inside a frame, or accepts nothing: the module does not speak frames
+                        throw new IOException("Unexpected reply to a framed request on " + procFile + ": " + accepted + " bytes");
+                    }
+                    long share = (System.nanoTime() - start) / (stopped - frame);
+                    for (; frame < stopped; frame++) {
+                        Operation operation = operations.get(first + frame);
+                        outcomes[first + frame] = OperationOutcome.of(operation, operation.complete(frames.frameLength(frame), null, share));
+                    }
+                } catch (IOException e) {
+                    // the first frame sent failed, the ones after it are sent next
+                    Operation operation = operations.get(first + frame);
+                    outcomes[first + frame] = OperationOutcome.of(operation, operation.complete(-1, e, System.nanoTime() - start));
+                    frame++;
+                }
+            }
         }
     }
 }
\ No newline at end of file
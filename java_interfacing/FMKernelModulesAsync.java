@@ -0,0 +1,180 @@
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+
+/**
+ * FMKernelModulesAsync
+ * this class provides non-blocking counterparts of the FMKernelModules operations. Every call
+ * returns a CompletableFuture straight away and runs on its own virtual thread, so thousands of
+ * independent operations can be in flight without tying up platform threads. A semaphore caps
+ * how many of them touch the file system at the same time; the rest wait (cheaply) on their
+ * virtual threads. The requests of the mutations are written through the INTERACTIVE lane of an
+ * OperationScheduler, so they go ahead of bulk jobs and share its adaptive concurrency limit.
+ *
+ * Mutations complete with the number of bytes the proc entry accepted and complete
+ * exceptionally with the IOException if the request fails.
+ *
+ * @authors      Richard Quayson & Thomas Quarshie
+ */
+
+public class FMKernelModulesAsync implements AutoCloseable {
+    // default cap on concurrently running operations, override with -Dfm.async.maxConcurrency
+    public static final int DEFAULT_MAX_CONCURRENCY = Integer.getInteger("fm.async.maxConcurrency", 256);
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Semaphore permits;
+    private final int maxConcurrency;
+    private final OperationScheduler scheduler;
+
+
+    /**
+     * FMKernelModulesAsync
+     * this constructor creates an async layer with the default concurrency cap.
+     */
+
+    public FMKernelModulesAsync() {
+        this(DEFAULT_MAX_CONCURRENCY);
+    }
+
+
+    /**
+     * FMKernelModulesAsync
+     * this constructor creates an async layer with the given concurrency cap, on the shared
+     * scheduler.
+     *
+     * @param maxConcurrency the maximum number of operations running at the same time.
+     */
+
+    public FMKernelModulesAsync(int maxConcurrency) {
+        this(maxConcurrency, OperationScheduler.shared());
+    }
+
+
+    /**
+     * FMKernelModulesAsync
+     * this constructor creates an async layer with the given concurrency cap, whose requests
+     * go through the given scheduler; the scheduler is not closed with the layer.
+     *
+     * @param maxConcurrency the maximum number of operations running at the same time.
+     * @param scheduler the scheduler the requests wait in.
+     */
+
+    public FMKernelModulesAsync(int maxConcurrency, OperationScheduler scheduler) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("maxConcurrency must be at least 1: " + maxConcurrency);
+        }
+        this.maxConcurrency = maxConcurrency;
+        this.permits = new Semaphore(maxConcurrency);
+        this.scheduler = Objects.requireNonNull(scheduler, "scheduler");
+    }
+
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+
+    public CompletableFuture<Integer> createFolderAsync(String folderPath) {
+        return submit(Operation.createFolder(folderPath));
+    }
+
+    public CompletableFuture<Integer> renameFolderAsync(String srcFolderPath, String newName) {
+        return submit(Operation.renameFolder(srcFolderPath, newName));
+    }
+
+    public CompletableFuture<Integer> deleteFolderAsync(String folderPath) {
+        return submit(Operation.deleteFolder(folderPath));
+    }
+
+    public CompletableFuture<Integer> createFileAsync(String filePath, String content) {
+        return submit(Operation.createFile(filePath, content));
+    }
+
+    public CompletableFuture<Integer> renameFileAsync(String currentPath, String newName) {
+        return submit(Operation.renameFile(currentPath, newName));
+    }
+
+    public CompletableFuture<Integer> updateFileAsync(String filePath, String newData, int overwriteFlag) {
+        return submit(Operation.updateFile(filePath, newData, overwriteFlag));
+    }
+
+    public CompletableFuture<Integer> deleteFileAsync(String filePath) {
+        return submit(Operation.deleteFile(filePath));
+    }
+
+    public CompletableFuture<String> getDirectoryInfoAsync(String directoryPath) {
+        return supply(() -> FMKernelModules.getDirectoryInfo(directoryPath));
+    }
+
+    public CompletableFuture<String> getFileDetailsAsync(String filePath) {
+        return supply(() -> FMKernelModules.getFileDetails(filePath));
+    }
+
+    public CompletableFuture<String> readFileContentAsync(String filePath) {
+        return supply(() -> FMKernelModules.readFileContent(filePath));
+    }
+
+
+    /**
+     * submit
+     * this method sends an operation to its proc entry on a virtual thread, after the appends
+     * buffered for its path; an append goes through the coalescer of
+     * FMKernelModules.setWriteBehind while one is set, like FMKernelModules.updateFile; the
+     * other requests wait in the INTERACTIVE lane of the scheduler.
+     *
+     * @param operation the operation to send.
+     * @return CompletableFuture<Integer> the number of bytes the proc entry accepted.
+     */
+
+    public CompletableFuture<Integer> submit(Operation operation) {
+        return supply(() -> FMKernelModules.perform(operation,
+                request -> scheduler.run(OperationScheduler.Lane.INTERACTIVE, request)).orThrow());
+    }
+
+
+    /**
+     * supply
+     * this method runs a task on a virtual thread once a concurrency permit is available.
+     * checked exceptions thrown by the task complete the future exceptionally with that exception.
+     *
+     * @param task the task to run.
+     * @return CompletableFuture<T> the result of the task.
+     */
+
+    public <T> CompletableFuture<T> supply(Callable<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        executor.execute(() -> {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                future.completeExceptionally(e);
+                return;
+            }
+            try {
+                future.complete(task.call());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            } finally {
+                permits.release();
+            }
+        });
+        return future;
+    }
+
+
+    /**
+     * close
+     * this method stops accepting operations and waits for the ones in flight to finish.
+     *
+     * @return void
+     */
+
+    @Override
+    public void close() {
+        executor.close();
+    }
+}
@@ -0,0 +1,225 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+
+/**
+ * FileContentReader
+ * this class reads file content without loading whole files onto the heap and without altering
+ * it. Large ranges are memory-mapped, small ones are read through pooled direct buffers, and
+ * lines can be iterated lazily with only the current line in memory.
+ *
+ * @authors      Richard Quayson & Thomas Quarshie
+ */
+
+public class FileContentReader {
+    // ranges of at least this many bytes are mapped instead of copied, override with -Dfm.read.mapThreshold
+    public static final int MAP_THRESHOLD = Integer.getInteger("fm.read.mapThreshold", 1024 * 1024);
+
+
+    /**
+     * readRange
+     * this method returns up to length bytes of a file, starting at offset, exactly as stored.
+     * the range is clamped to the end of the file. ranges of MAP_THRESHOLD bytes or more are
+     * returned as a read-only mapping of the file, smaller ones as a heap buffer.
+     *
+     * @param path the file to read.
+     * @param offset the position of the first byte to read.
+     * @param length the maximum number of bytes to read.
+     * @return ByteBuffer the bytes read, positioned at 0.
+     * @throws IOException if the file cannot be read.
+     */
+
+    public static ByteBuffer readRange(Path path, long offset, int length) throws IOException {
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException("offset and length must not be negative: " + offset + ", " + length);
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            int size = (int) Math.max(0, Math.min(length, channel.size() - offset));
+            if (size >= MAP_THRESHOLD) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+            }
+
+            // copy small ranges through a pooled direct buffer
+            byte[] bytes = new byte[size];
+            ByteBuffer buffer = DirectBufferPool.acquire();
+            try {
+                int read = 0;
+                while (read < size) {
+                    buffer.clear().limit(Math.min(buffer.capacity(), size - read));
+                    int n = channel.read(buffer, offset + read);
+                    if (n < 0) {
+                        break;                  // the file shrank while reading
+                    }
+                    buffer.flip().get(bytes, read, n);
+                    read += n;
+                }
+                return ByteBuffer.wrap(bytes, 0, read).slice();
+            } finally {
+                DirectBufferPool.release(buffer);
+            }
+        }
+    }
+
+
+    /**
+     * mapFile
+     * this method maps a whole file read-only. the mapping stays valid after this method returns
+     * and does not count against the heap.
+     *
+     * @param path the file to map.
+     * @return MappedByteBuffer the mapped content of the file.
+     * @throws IOException if the file cannot be read or is too large to map in one piece.
+     */
+
+    public static MappedByteBuffer mapFile(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File is too large to map in one piece, use readRange instead: " + path);
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+
+
+    /**
+     * lineIterator
+     * this method opens a lazy iterator over the lines of a file. lines are split on '\n' and a
+     * '\r' right before it is dropped; only the current line is held in memory.
+     * the iterator must be closed.
+     *
+     * @param path the file to read.
+     * @param charset the charset to decode the lines with.
+     * @return LineIterator the iterator.
+     * @throws IOException if the file cannot be opened.
+     */
+
+    public static LineIterator lineIterator(Path path, Charset charset) throws IOException {
+        return new LineIterator(FileChannel.open(path, StandardOpenOption.READ), charset);
+    }
+
+
+    /**
+     * lines
+     * this method returns the lines of a file as a lazy stream. closing the stream closes the file.
+     *
+     * @param path the file to read.
+     * @param charset the charset to decode the lines with.
+     * @return Stream<String> the lines of the file.
+     * @throws IOException if the file cannot be opened.
+     */
+
+    public static Stream<String> lines(Path path, Charset charset) throws IOException {
+        LineIterator iterator = lineIterator(path, charset);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(iterator::close);
+    }
+
+
+    /**
+     * LineIterator
+     * a lazy iterator over the lines of a file, reading through a pooled direct buffer.
+     * I/O errors during iteration are thrown as UncheckedIOException.
+     */
+
+    public static final class LineIterator implements Iterator<String>, Closeable {
+        private final FileChannel channel;
+        private final Charset charset;
+        private ByteBuffer buffer = DirectBufferPool.acquire();
+        private byte[] line = new byte[256];
+        private int lineLength;
+        private String next;
+        private boolean endOfFile;
+
+        private LineIterator(FileChannel channel, Charset charset) {
+            this.channel = channel;
+            this.charset = charset;
+            this.buffer.flip();               // start out empty
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null && !endOfFile) {
+                try {
+                    next = readLine();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            String current = next;
+            next = null;
+            return current;
+        }
+
+        @Override
+        public void close() {
+            endOfFile = true;
+            next = null;
+            if (buffer != null) {
+                DirectBufferPool.release(buffer);
+                buffer = null;
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private String readLine() throws IOException {
+            if (buffer == null) {
+                return null;
+            }
+            lineLength = 0;
+            while (true) {
+                if (!buffer.hasRemaining()) {
+                    buffer.clear();
+                    int n = channel.read(buffer);
+                    buffer.flip();
+                    if (n < 0) {
+                        endOfFile = true;
+                        return lineLength > 0 ? decode(lineLength) : null;
+                    }
+                }
+                while (buffer.hasRemaining()) {
+                    byte b = buffer.get();
+                    if (b == '\n') {
+                        int length = lineLength > 0 && line[lineLength - 1] == '\r' ? lineLength - 1 : lineLength;
+                        return decode(length);
+                    }
+                    if (lineLength == line.length) {
+                        line = Arrays.copyOf(line, line.length * 2);
+                    }
+                    line[lineLength++] = b;
+                }
+            }
+        }
+
+        private String decode(int length) {
+            return new String(line, 0, length, charset);
+        }
+    }
+}
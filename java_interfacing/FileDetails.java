@@ -0,0 +1,121 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+
+/**
+ * FileDetails
+ * this record holds the details of a file or directory, gathered with a single readAttributes
+ * call. The values are kept raw (bytes, epoch milliseconds) so callers do not have to parse
+ * them back out of text; format() renders them the way getFileDetails always has.
+ *
+ * @authors      Richard Quayson & Thomas Quarshie
+ */
+
+public record FileDetails(Path path, String name, Type type, long size, long lastModified, long created) {
+
+    /**
+     * Type
+     * the kind of entry the details describe.
+     */
+
+    public enum Type {
+        FILE("File"),
+        DIRECTORY("Directory"),
+        OTHER("Other");
+
+        private final String label;
+
+        Type(String label) {
+            this.label = label;
+        }
+
+        public String label() {
+            return label;
+        }
+    }
+
+    // the date format used when rendering details
+    private static final DateTimeFormatter DATE_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneId.systemDefault());
+
+
+    /**
+     * of
+     * this method reads the details of a path with one stat call (links are followed).
+     *
+     * @param path the file or directory.
+     * @return FileDetails the details, with an absolute path.
+     * @throws IOException if the path does not exist or cannot be read.
+     */
+
+    public static FileDetails of(Path path) throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+        return of(path, attrs);
+    }
+
+
+    /**
+     * of
+     * this method builds the details of a path from attributes that were already read.
+     *
+     * @param path the file or directory.
+     * @param attrs the attributes of the path.
+     * @return FileDetails the details, with an absolute path.
+     */
+
+    public static FileDetails of(Path path, BasicFileAttributes attrs) {
+        Path absolute = path.toAbsolutePath();
+        Path fileName = absolute.getFileName();
+        Type type = attrs.isDirectory() ? Type.DIRECTORY : attrs.isRegularFile() ? Type.FILE : Type.OTHER;
+        return new FileDetails(absolute, fileName != null ? fileName.toString() : absolute.toString(), type,
+                attrs.size(), attrs.lastModifiedTime().toMillis(), attrs.creationTime().toMillis());
+    }
+
+
+    public boolean isDirectory() {
+        return type == Type.DIRECTORY;
+    }
+
+    public boolean isFile() {
+        return type == Type.FILE;
+    }
+
+
+    /**
+     * formatDate
+     * this method renders epoch milliseconds as "yyyy-MM-dd HH:mm:ss" in the system time zone.
+     *
+     * @param epochMillis the time to render.
+     * @return String the rendered time.
+     */
+
+    public static String formatDate(long epochMillis) {
+        return DATE_FORMAT.format(Instant.ofEpochMilli(epochMillis));
+    }
+
+
+    /**
+     * format
+     * this method renders the details as the text getFileDetails returns.
+     *
+     * @return String the rendered details.
+     */
+
+    public String format() {
+        StringBuilder details = new StringBuilder(256);
+        details.append("File Name: ").append(name).append("\n");
+        if (type != Type.OTHER) {
+            details.append("File Type: ").append(type.label()).append("\n");
+        }
+        details.append("File Size: ").append(size).append(" bytes\n");
+        details.append("Date Modified: ").append(formatDate(lastModified)).append("\n");
+        details.append("File Path: ").append(path).append("\n");
+        details.append("Date Created: ").append(formatDate(created)).append("\n");
+        return details.toString();
+    }
+}
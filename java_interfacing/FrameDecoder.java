@@ -0,0 +1,218 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+
+/**
+ * FrameDecoder
+ * this class reads the framed requests FrameEncoder writes, with the checks and the replies of
+ * fm_frame.h, so that the format can be exercised without the kernel modules: decode() splits a
+ * batch into its frames, and apply() performs a batch on an FsBackend (e.g. a MemoryFsBackend)
+ * the way a module performs it on the file system.
+ *
+ * As in the modules, a malformed frame fails with EINVAL (ENAMETOOLONG for a path of PATH_MAX
+ * bytes or more), reported as an IOException with the strerror text, which Errno.of recognizes.
+ *
+ * @authors      Richard Quayson & Thomas Quarshie
+ */
+
+public final class FrameDecoder {
+    // PATH_MAX of the modules, the terminating NUL included
+    public static final int PATH_MAX = 4096;
+
+
+    private FrameDecoder() {
+    }
+
+
+    /**
+     * Frame
+     * one decoded frame; the payload is null for the types that take none.
+     */
+
+    public record Frame(Operation.Type type, int flags, String path, String payload) {
+
+        // the operation the frame was encoded from
+        public Operation toOperation() {
+            switch (type) {
+                case CREATE_FOLDER: return Operation.createFolder(path);
+                case RENAME_FOLDER: return Operation.renameFolder(path, payload);
+                case DELETE_FOLDER: return Operation.deleteFolder(path);
+                case CREATE_FILE:   return Operation.createFile(path, payload);
+                case RENAME_FILE:   return Operation.renameFile(path, payload);
+                case UPDATE_FILE:   return Operation.updateFile(path, payload, (flags & FrameEncoder.FLAG_OVERWRITE) != 0 ? 1 : 0);
+                case DELETE_FILE:   return Operation.deleteFile(path);
+                default:            throw new IllegalStateException("Unknown operation type: " + type);
+            }
+        }
+    }
+
+
+    /**
+     * isFramed
+     * this method tells whether a request is a batch of frames rather than a text request.
+     *
+     * @param request the request, between its position and its limit.
+     * @return boolean true if the request starts with the magic.
+     */
+
+    public static boolean isFramed(ByteBuffer request) {
+        return request.remaining() >= FrameEncoder.MAGIC_LENGTH
+                && request.duplicate().order(ByteOrder.LITTLE_ENDIAN).getInt(request.position()) == FrameEncoder.MAGIC;
+    }
+
+
+    /**
+     * decode
+     * this method splits a batch into its frames, without consuming the buffer.
+     *
+     * @param batch the batch, between its position and its limit.
+     * @return List<Frame> the frames, in order.
+     * @throws IOException EINVAL or ENAMETOOLONG for the first malformed frame, or EINVAL if the
+     *         request is not a batch or holds no frames.
+     */
+
+    public static List<Frame> decode(ByteBuffer batch) throws IOException {
+        List<Frame> frames = new ArrayList<>();
+        int offset = start(batch);
+        while (offset < batch.remaining()) {
+            Frame frame = parse(batch, offset, null);
+            frames.add(frame);
+            offset += frameLength(batch, offset);
+        }
+        return frames;
+    }
+
+
+    /**
+     * apply
+     * this method performs a batch the way the module of the given type does: frame by frame,
+     * stopping at the first one that fails. the buffer is consumed up to the bytes accepted.
+     *
+     * @param batch the batch, between its position and its limit.
+     * @param type the type of the module the batch is written to; frames of another type fail.
+     * @param backend where the operations are performed.
+     * @return int the size of the batch if every frame succeeded, or the offset of the failed
+     *         frame if an earlier one succeeded, as the short write the module returns.
+     * @throws IOException the failure of the first frame.
+     */
+
+    public static int apply(ByteBuffer batch, Operation.Type type, FsBackend backend) throws IOException {
+        Objects.requireNonNull(type, "type");
+        Objects.requireNonNull(backend, "backend");
+        int offset = start(batch);
+        while (offset < batch.remaining()) {
+            try {
+                perform(parse(batch, offset, type), backend);
+            } catch (IOException e) {
+                if (offset == FrameEncoder.MAGIC_LENGTH) {
+                    throw e;
+                }
+                // the frames before this one were performed, report them as a short write
+                batch.position(batch.position() + offset);
+                return offset;
+            }
+            offset += frameLength(batch, offset);
+        }
+        int accepted = batch.remaining();
+        batch.position(batch.limit());
+        return accepted;
+    }
+
+
+    // check the magic and that a frame follows, returning the offset of the first frame
+    private static int start(ByteBuffer batch) throws IOException {
+        if (!isFramed(batch) || batch.remaining() == FrameEncoder.MAGIC_LENGTH) {
+            throw error(Errno.EINVAL);
+        }
+        return FrameEncoder.MAGIC_LENGTH;
+    }
+
+    // read the frame at an offset, with the checks of fm_frame_parse and of the module of the type
+    private static Frame parse(ByteBuffer batch, int offset, Operation.Type expected) throws IOException {
+        ByteBuffer bytes = batch.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int base = batch.position() + offset;
+        int available = batch.remaining() - offset - FrameEncoder.HEADER_LENGTH;
+        if (available < 0) {
+            throw error(Errno.EINVAL);
+        }
+        int op = bytes.get(base) & 0xFF;
+        int flags = bytes.get(base + 1) & 0xFF;
+        int pathLength = bytes.getShort(base + 2) & 0xFFFF;
+        long payloadLength = bytes.getInt(base + 4) & 0xFFFFFFFFL;
+        if (pathLength > available || payloadLength > available - pathLength) {
+            throw error(Errno.EINVAL);
+        }
+
+        Operation.Type type = FrameEncoder.type(op);
+        if (type == null || (expected != null && type != expected)
+                || (flags & ~FrameEncoder.FLAG_OVERWRITE) != 0 || pathLength == 0) {
+            throw error(Errno.EINVAL);
+        }
+        if (pathLength >= PATH_MAX) {
+            throw error(Errno.ENAMETOOLONG);
+        }
+        String path = string(bytes, base + FrameEncoder.HEADER_LENGTH, pathLength);
+        if (path.indexOf('\0') >= 0) {
+            throw error(Errno.EINVAL);
+        }
+        String payload = string(bytes, base + FrameEncoder.HEADER_LENGTH + pathLength, (int) payloadLength);
+
+        // what the frame handlers of the modules accept
+        switch (type) {
+            case CREATE_FOLDER:
+            case DELETE_FOLDER:
+            case DELETE_FILE:
+                if (payloadLength != 0) {
+                    throw error(Errno.EINVAL);
+                }
+                return new Frame(type, flags, path, null);
+            case RENAME_FOLDER:
+            case RENAME_FILE:
+                if (flags != 0 || payload.isEmpty() || payload.indexOf('\0') >= 0) {
+                    throw error(Errno.EINVAL);
+                }
+                return new Frame(type, flags, path, payload);
+            case CREATE_FILE:
+                if (flags != 0) {
+                    throw error(Errno.EINVAL);
+                }
+                return new Frame(type, flags, path, payload);
+            default:
+                return new Frame(type, flags, path, payload);
+        }
+    }
+
+    private static int frameLength(ByteBuffer batch, int offset) {
+        ByteBuffer bytes = batch.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int base = batch.position() + offset;
+        return FrameEncoder.HEADER_LENGTH + (bytes.getShort(base + 2) & 0xFFFF) + bytes.getInt(base + 4);
+    }
+
+    private static void perform(Frame frame, FsBackend backend) throws IOException {
+        switch (frame.type()) {
+            case CREATE_FOLDER: backend.createFolder(frame.path()); break;
+            case RENAME_FOLDER: backend.renameFolder(frame.path(), frame.payload()); break;
+            case DELETE_FOLDER: backend.deleteFolder(frame.path()); break;
+            case CREATE_FILE:   backend.createFile(frame.path(), frame.payload()); break;
+            case RENAME_FILE:   backend.renameFile(frame.path(), frame.payload()); break;
+            case UPDATE_FILE:   backend.updateFile(frame.path(), frame.payload(), frame.flags() & FrameEncoder.FLAG_OVERWRITE); break;
+            case DELETE_FILE:   backend.deleteFile(frame.path()); break;
+            default:            throw new IllegalStateException("Unknown operation type: " + frame.type());
+        }
+    }
+
+    private static String string(ByteBuffer bytes, int index, int length) {
+        byte[] chars = new byte[length];
+        bytes.get(index, chars);
+        return new String(chars, StandardCharsets.UTF_8);
+    }
+
+    private static IOException error(Errno errno) {
+        return new IOException(errno.getMessage());
+    }
+}
@@ -0,0 +1,296 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Objects;
+
+
+/**
+ * FrameEncoder
+ * this class lays operations out as binary frames, the request format every kernel module
+ * accepts besides its text one (see fm_frame.h). a batch starts with the magic "FMB1" and holds
+ * any number of frames for the same proc entry, each an 8-byte header followed by the path and
+ * the payload, all in one write:
+ *
+ *   u8 op | u8 flags | u16 path length | u32 payload length | path | payload
+ *
+ * lengths are little-endian and count UTF-8 bytes, so paths and payloads may contain any
+ * character, '\n' and '|' included. the op code is the Operation.Type ordinal plus one, the
+ * payload is the content of creates and updates and the new name of renames, and the only flag
+ * is FLAG_OVERWRITE for updates.
+ *
+ * An encoder owns one direct buffer and encodes the characters into it itself, so once the
+ * buffer has grown to the size of the batches, reset() and add() allocate nothing. it is not
+ * thread-safe; ProcChannelManager keeps one per proc entry.
+ *
+ * @authors      Richard Quayson & Thomas Quarshie
+ */
+
+public final class FrameEncoder {
+    // "FMB1" read as a little-endian int
+    public static final int MAGIC = 0x31424D46;
+    public static final int MAGIC_LENGTH = 4;
+    public static final int HEADER_LENGTH = 8;
+
+    // truncate the file instead of appending, for UPDATE_FILE
+    public static final int FLAG_OVERWRITE = 0x01;
+
+    // the longest path a frame can carry; the modules reject those of PATH_MAX (4096) bytes or more
+    public static final int MAX_PATH_BYTES = 0xFFFF;
+
+    // bytes after which FMKernelModules.submitBatch starts a new batch, override with -Dfm.framing.batchBytes
+    public static final int DEFAULT_BATCH_BYTES = Integer.getInteger("fm.framing.batchBytes", 64 * 1024);
+
+    private static final int INITIAL_CAPACITY = 8 * 1024;
+
+    private ByteBuffer buffer;
+    private int size;
+    private int[] offsets = new int[16];
+    private int frames;
+
+
+    public FrameEncoder() {
+        this(INITIAL_CAPACITY);
+    }
+
+
+    /**
+     * FrameEncoder
+     * this constructor creates an empty batch.
+     *
+     * @param capacity the initial size of the buffer, it grows on demand.
+     */
+
+    public FrameEncoder(int capacity) {
+        buffer = ByteBuffer.allocateDirect(Math.max(capacity, MAGIC_LENGTH + HEADER_LENGTH)).order(ByteOrder.LITTLE_ENDIAN);
+        reset();
+    }
+
+
+    /**
+     * reset
+     * this method empties the batch, keeping the buffer.
+     *
+     * @return FrameEncoder this encoder.
+     */
+
+    public FrameEncoder reset() {
+        buffer.clear();
+        buffer.putInt(0, MAGIC);
+        size = MAGIC_LENGTH;
+        frames = 0;
+        return this;
+    }
+
+
+    /**
+     * add
+     * this method appends the frame of an operation.
+     *
+     * @param operation the operation.
+     * @return int the index of the frame in the batch.
+     */
+
+    public int add(Operation operation) {
+        Operation.Type type = operation.getType();
+        int flags = type == Operation.Type.UPDATE_FILE && operation.getOverwriteFlag() != 0 ? FLAG_OVERWRITE : 0;
+        return add(type, operation.getPath(), operation.getArgument(), flags);
+    }
+
+
+    /**
+     * add
+     * this method appends a frame. the lengths are measured first, so that the characters are
+     * encoded straight into place.
+     *
+     * @param type the kind of request, which selects the op code.
+     * @param path the path the request is about.
+     * @param payload the content or new name, null for none.
+     * @param flags the frame flags, FLAG_OVERWRITE or 0.
+     * @return int the index of the frame in the batch.
+     * @throws IllegalArgumentException if the path is longer than MAX_PATH_BYTES or the frame
+     *         does not fit in a buffer.
+     */
+
+    public int add(Operation.Type type, CharSequence path, CharSequence payload, int flags) {
+        Objects.requireNonNull(type, "type");
+        int pathBytes = utf8Length(path);
+        int payloadBytes = payload == null ? 0 : utf8Length(payload);
+        if (pathBytes > MAX_PATH_BYTES) {
+            throw new IllegalArgumentException("The path is too long for a frame: " + pathBytes + " bytes");
+        }
+        long frameEnd = (long) size + HEADER_LENGTH + pathBytes + payloadBytes;
+        if (frameEnd > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("The frame does not fit in a batch: " + payloadBytes + " payload bytes");
+        }
+        ensureCapacity((int) frameEnd);
+
+        if (frames == offsets.length) {
+            offsets = Arrays.copyOf(offsets, frames * 2);
+        }
+        offsets[frames] = size;
+
+        buffer.clear();
+        buffer.put(size, (byte) opCode(type));
+        buffer.put(size + 1, (byte) flags);
+        buffer.putShort(size + 2, (short) pathBytes);
+        buffer.putInt(size + 4, payloadBytes);
+        int position = putUtf8(path, size + HEADER_LENGTH);
+        if (payload != null) {
+            putUtf8(payload, position);
+        }
+        size = (int) frameEnd;
+        return frames++;
+    }
+
+
+    // the number of frames in the batch
+    public int frames() {
+        return frames;
+    }
+
+    // the number of bytes in the batch, the magic included
+    public int size() {
+        return size;
+    }
+
+    // the offset of a frame within the batch
+    public int frameOffset(int frame) {
+        Objects.checkIndex(frame, frames);
+        return offsets[frame];
+    }
+
+    public int frameLength(int frame) {
+        Objects.checkIndex(frame, frames);
+        return (frame + 1 < frames ? offsets[frame + 1] : size) - offsets[frame];
+    }
+
+
+    /**
+     * stoppedAt
+     * this method tells how far a write of batch(fromFrame) got, from the bytes the module
+     * accepted: all of it, or up to the frame that failed.
+     *
+     * @param fromFrame the first frame the write sent.
+     * @param accepted the bytes the module accepted.
+     * @return int the index of the first frame not performed, frames() if all were, -1 if the
+     *         reply does not end on a frame boundary.
+     */
+
+    public int stoppedAt(int fromFrame, int accepted) {
+        int offset = start(fromFrame) + accepted;
+        if (offset == size) {
+            return frames;
+        }
+        int frame = Arrays.binarySearch(offsets, 0, frames, offset);
+        return frame >= 0 ? frame : -1;
+    }
+
+
+    /**
+     * batch
+     * this method returns the buffer positioned on the request that sends the frames from the
+     * given one on. for a later frame the magic is written over the last four bytes of the frame
+     * before it, which must have been sent already; the batch cannot be sent from an earlier frame
+     * afterwards. the buffer stays owned by the encoder and is valid until the next call.
+     *
+     * @param fromFrame the first frame to send, 0 for the whole batch.
+     * @return ByteBuffer the request, between its position and its limit.
+     */
+
+    public ByteBuffer batch(int fromFrame) {
+        int start = start(fromFrame);
+        buffer.clear();
+        buffer.putInt(start, MAGIC);
+        buffer.limit(size).position(start);
+        return buffer;
+    }
+
+
+    /**
+     * opCode / type
+     * these methods map an operation type to the op code of its frames and back.
+     */
+
+    public static int opCode(Operation.Type type) {
+        return type.ordinal() + 1;
+    }
+
+    public static Operation.Type type(int opCode) {
+        Operation.Type[] types = Operation.Type.values();
+        return opCode >= 1 && opCode <= types.length ? types[opCode - 1] : null;
+    }
+
+
+    // the offset of the request that sends the frames from the given one on
+    private int start(int fromFrame) {
+        Objects.checkIndex(fromFrame, Math.max(frames, 1));
+        return fromFrame == 0 ? 0 : offsets[fromFrame] - MAGIC_LENGTH;
+    }
+
+    // grow the buffer to hold the given number of bytes, keeping the frames written so far
+    private void ensureCapacity(int required) {
+        if (buffer.capacity() >= required) {
+            return;
+        }
+        int capacity = buffer.capacity();
+        while (capacity < required) {
+            capacity = capacity > (Integer.MAX_VALUE - 8) / 2 ? Integer.MAX_VALUE - 8 : capacity * 2;
+        }
+        ByteBuffer grown = ByteBuffer.allocateDirect(capacity).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.clear().limit(size);
+        grown.put(buffer);
+        buffer = grown;
+    }
+
+    // encode text as UTF-8 at an index, an unpaired surrogate becomes '?' as with the JDK encoder
+    private int putUtf8(CharSequence text, int index) {
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                buffer.put(index++, (byte) c);
+            } else if (c < 0x800) {
+                buffer.put(index++, (byte) (0xC0 | c >> 6));
+                buffer.put(index++, (byte) (0x80 | c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                buffer.put(index++, (byte) (0xF0 | codePoint >> 18));
+                buffer.put(index++, (byte) (0x80 | codePoint >> 12 & 0x3F));
+                buffer.put(index++, (byte) (0x80 | codePoint >> 6 & 0x3F));
+                buffer.put(index++, (byte) (0x80 | codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                buffer.put(index++, (byte) '?');
+            } else {
+                buffer.put(index++, (byte) (0xE0 | c >> 12));
+                buffer.put(index++, (byte) (0x80 | c >> 6 & 0x3F));
+                buffer.put(index++, (byte) (0x80 | c & 0x3F));
+            }
+        }
+        return index;
+    }
+
+    // the number of bytes putUtf8 writes for the text
+    static int utf8Length(CharSequence text) {
+        int length = text.length();
+        long bytes = length;
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                continue;
+            }
+            if (c < 0x800) {
+                bytes += 1;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                // 4 bytes for the two chars
+                bytes += 2;
+                i++;
+            } else if (!Character.isSurrogate(c)) {
+                bytes += 2;
+            }
+        }
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("The text is too long for a frame: " + bytes + " bytes");
+        }
+        return (int) bytes;
+    }
+}
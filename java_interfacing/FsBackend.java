@@ -0,0 +1,168 @@
+import java.io.IOException;
+import java.nio.file.InvalidPathException;
+import java.util.List;
+
+
+/**
+ * FsBackend
+ * this interface is the set of file system operations the programs are written against. the
+ * operations mirror the kernel modules: a rename takes the new name of the entry (it stays in
+ * its folder), createFile replaces an existing file, updateFile appends to or overwrites an
+ * existing file and deleteFolder only removes empty folders. FsBackends picks the
+ * implementation at startup: the kernel modules (ProcFsBackend), java.nio.file directly
+ * (NioFsBackend) or a tree held in memory (MemoryFsBackend).
+ *
+ * @authors      Richard Quayson & Thomas Quarshie
+ */
+
+public interface FsBackend {
+
+    /**
+     * name
+     * this method returns the short name of the backend, as accepted by FsBackends.create.
+     *
+     * @return String the name.
+     */
+
+    String name();
+
+
+    /**
+     * isAvailable
+     * this method tells whether the backend can be used on this machine right now.
+     *
+     * @return boolean true if the operations can be performed.
+     */
+
+    boolean isAvailable();
+
+
+    void createFolder(String folderPath) throws IOException;
+
+    void renameFolder(String srcFolderPath, String newName) throws IOException;
+
+    void deleteFolder(String folderPath) throws IOException;
+
+    void createFile(String filePath, String content) throws IOException;
+
+    void renameFile(String currentPath, String newName) throws IOException;
+
+    void updateFile(String filePath, String newData, int overwriteFlag) throws IOException;
+
+    void deleteFile(String filePath) throws IOException;
+
+
+    /**
+     * copyFile
+     * this method creates a file, or replaces an existing one, with the bytes of another file;
+     * the content is copied as it is, it is not decoded.
+     *
+     * @param sourcePath the file to copy.
+     * @param targetPath the file to create.
+     * @return void
+     * @throws IOException if the source cannot be read or the target cannot be written.
+     */
+
+    void copyFile(String sourcePath, String targetPath) throws IOException;
+
+
+    /**
+     * listFiles
+     * this method lists a directory together with the details of every entry.
+     *
+     * @param folderPath the directory to list.
+     * @return List<FileDetails> the details of the entries.
+     * @throws IOException if the path is not a readable directory.
+     */
+
+    List<FileDetails> listFiles(String folderPath) throws IOException;
+
+
+    /**
+     * getDetails
+     * this method reads the details of a file or directory.
+     *
+     * @param path the file or directory.
+     * @return FileDetails the details.
+     * @throws IOException if the path does not exist or cannot be read.
+     */
+
+    FileDetails getDetails(String path) throws IOException;
+
+
+    /**
+     * getDirectoryStats
+     * this method returns the aggregates (size, file and directory counts) of a directory tree.
+     *
+     * @param folderPath the root of the tree.
+     * @return DirectoryStats the aggregates.
+     * @throws IOException if the directory cannot be read.
+     */
+
+    DirectoryStats getDirectoryStats(String folderPath) throws IOException;
+
+
+    /**
+     * readFileContent
+     * this method reads the content of a file, decoded with the platform charset.
+     *
+     * @param filePath the file to read.
+     * @return String the content.
+     * @throws IOException if the file cannot be read.
+     */
+
+    String readFileContent(String filePath) throws IOException;
+
+
+    /**
+     * getDirectoryInfo
+     * this method renders the information about a directory as FMKernelModules.getDirectoryInfo
+     * always has.
+     *
+     * @param directoryPath the path of the directory.
+     * @return String the information, or a message if the path is not a directory.
+     */
+
+    default String getDirectoryInfo(String directoryPath) {
+        FileDetails directory;
+        DirectoryStats stats;
+        try {
+            directory = getDetails(directoryPath);
+            stats = directory.isDirectory() ? getDirectoryStats(directoryPath) : null;
+        } catch (IOException | InvalidPathException e) {
+            directory = null;
+            stats = null;
+        }
+
+        if (directory == null || stats == null) {
+            return "The specified path is not a valid directory: " + directoryPath + "\n";
+        }
+
+        StringBuilder info = new StringBuilder();
+        info.append("Directory Name: ").append(directory.name()).append("\n");
+        info.append("Total Size: ").append(stats.getTotalSize()).append(" bytes\n");
+        info.append("File Count: ").append(stats.getFileCount()).append("\n");
+        info.append("Directory Count: ").append(stats.getDirectoryCount()).append("\n");
+        info.append("Date Modified: ").append(FileDetails.formatDate(directory.lastModified())).append("\n");
+        info.append("Directory Path: ").append(directory.path()).append("\n");
+        info.append("Date Created: ").append(FileDetails.formatDate(directory.created())).append("\n");
+        return info.toString();
+    }
+
+
+    /**
+     * getFileDetails
+     * this method renders the details of a file as FMKernelModules.getFileDetails always has.
+     *
+     * @param filePath the path of the file.
+     * @return String the details, or a message if the file does not exist.
+     */
+
+    default String getFileDetails(String filePath) {
+        try {
+            return getDetails(filePath).format();
+        } catch (IOException | InvalidPathException e) {
+            return "The specified file does not exist: " + filePath + "\n";
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ * FsBackends
+ * this class picks the FsBackend the programs run on. the choice is made once at startup, from
+ * the name given on the command line or in the fm.backend system property: "proc" for the
+ * kernel modules, "nio" for java.nio.file, "memory" for an in-memory tree, or "auto" (the
+ * default), which uses the kernel modules when they are loaded and falls back to java.nio.file
+ * when they are not.
+ *
+ * @authors      Richard Quayson & Thomas Quarshie
+ */
+
+public final class FsBackends {
+    public static final String AUTO = "auto";
+
+    // the backend name to use when none is given, override with -Dfm.backend
+    public static final String DEFAULT = System.getProperty("fm.backend", AUTO);
+
+
+    private FsBackends() {
+    }
+
+
+    /**
+     * create
+     * this method creates a backend by name, without checking that it is available.
+     *
+     * @param name "proc", "nio" or "memory".
+     * @return FsBackend the backend.
+     * @throws IllegalArgumentException if the name is unknown.
+     */
+
+    public static FsBackend create(String name) {
+        switch (name) {
+            case ProcFsBackend.NAME:
+                return new ProcFsBackend();
+            case NioFsBackend.NAME:
+                return new NioFsBackend();
+            case MemoryFsBackend.NAME:
+                return new MemoryFsBackend();
+            default:
+                throw new IllegalArgumentException("Unknown backend: " + name
+                        + " (expected " + AUTO + ", " + ProcFsBackend.NAME + ", " + NioFsBackend.NAME
+                        + " or " + MemoryFsBackend.NAME + ")");
+        }
+    }
+
+
+    /**
+     * select
+     * this method picks the backend named by the fm.backend system property.
+     *
+     * @return FsBackend the backend to use.
+     */
+
+    public static FsBackend select() {
+        return select(DEFAULT);
+    }
+
+
+    /**
+     * select
+     * this method picks a backend by name. with "auto", and when the named backend is not
+     * available, the first available one of proc and nio is used and the fallback is reported
+     * on standard error.
+     *
+     * @param name the backend to use, or "auto".
+     * @return FsBackend the backend to use.
+     * @throws IllegalArgumentException if the name is unknown.
+     */
+
+    public static FsBackend select(String name) {
+        if (!AUTO.equals(name)) {
+            FsBackend backend = create(name);
+            if (backend.isAvailable()) {
+                return backend;
+            }
+            System.err.println("The " + name + " backend is not available.");
+        }
+
+        FsBackend proc = new ProcFsBackend();
+        if (proc.isAvailable()) {
+            return proc;
+        }
+        System.err.println("The kernel modules are not loaded, using the " + NioFsBackend.NAME + " backend.");
+        return new NioFsBackend();
+    }
+}
@@ -0,0 +1,341 @@
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+
+
+/**
+ * IndexSegment
+ * this class is one immutable file of a ContentIndex: a sorted term dictionary and the postings
+ * of each term, for a range of documents. The file is memory-mapped, so a lookup is a binary
+ * search over the dictionary and the postings are decoded straight from the page cache; nothing
+ * is loaded when a segment is opened.
+ *
+ * The layout, big-endian:
+ *
+ *   header       int magic "FMIX", int version, int term count, int document count,
+ *                long dictionary offset, long index offset
+ *   postings     per term, the encoded Postings
+ *   dictionary   per term, u16 length, the UTF-8 bytes, long postings offset, int documents
+ *   index        per term, the int offset of its dictionary entry
+ *
+ * terms are sorted by their UTF-8 bytes, unsigned. segments are written once by a Writer and
+ * then only read.
+ *
+ * @authors      Richard Quayson & Thomas Quarshie
+ */
+
+public final class IndexSegment {
+    private static final int MAGIC = 0x464D4958;
+    private static final int VERSION = 1;
+    private static final int HEADER_LENGTH = 32;
+
+    private final Path path;
+    private final MappedByteBuffer buffer;
+    private final int termCount;
+    private final int documentCount;
+    private final int indexOffset;
+
+
+    private IndexSegment(Path path, MappedByteBuffer buffer) throws IOException {
+        this.path = path;
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_LENGTH || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not an index segment: " + path);
+        }
+        this.termCount = buffer.getInt(8);
+        this.documentCount = buffer.getInt(12);
+        this.indexOffset = (int) buffer.getLong(24);
+    }
+
+
+    /**
+     * open
+     * this method maps a segment file read-only.
+     *
+     * @param path the segment file.
+     * @return IndexSegment the segment.
+     * @throws IOException if the file cannot be mapped or is not a segment.
+     */
+
+    public static IndexSegment open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Index segment larger than 2 GB: " + path);
+            }
+            return new IndexSegment(path, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+
+    public Path getPath() {
+        return path;
+    }
+
+    public int getTermCount() {
+        return termCount;
+    }
+
+    // the documents the segment has postings for, deleted ones included
+    public int getDocumentCount() {
+        return documentCount;
+    }
+
+    public long getSize() {
+        return buffer.capacity();
+    }
+
+
+    /**
+     * postings
+     * this method looks a term up.
+     *
+     * @param term the UTF-8 bytes of the term.
+     * @return Postings the postings of the term, empty if the segment does not have it.
+     */
+
+    public Postings postings(byte[] term) {
+        int low = 0;
+        int high = termCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int entry = buffer.getInt(indexOffset + middle * 4);
+            int comparison = compare(entry, term);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return postingsAt(entry);
+            }
+        }
+        return Postings.empty();
+    }
+
+
+    /**
+     * terms
+     * this method walks the dictionary in term order, for merging segments.
+     *
+     * @return TermIterator an iterator positioned before the first term.
+     */
+
+    TermIterator terms() {
+        return new TermIterator();
+    }
+
+
+    // compare the term of a dictionary entry with a term, as unsigned bytes
+    private int compare(int entry, byte[] term) {
+        int length = buffer.getShort(entry) & 0xFFFF;
+        int common = Math.min(length, term.length);
+        for (int i = 0; i < common; i++) {
+            int difference = (buffer.get(entry + 2 + i) & 0xFF) - (term[i] & 0xFF);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return length - term.length;
+    }
+
+    private Postings postingsAt(int entry) {
+        int length = buffer.getShort(entry) & 0xFFFF;
+        int postingsOffset = (int) buffer.getLong(entry + 2 + length);
+        int documents = buffer.getInt(entry + 2 + length + 8);
+        return new Postings.Encoded(buffer, postingsOffset, documents);
+    }
+
+
+    /**
+     * TermIterator
+     * the terms of the segment in order, each with its postings.
+     */
+
+    final class TermIterator {
+        private int next;
+        private byte[] term;
+        private int entry;
+
+        boolean next() {
+            if (next >= termCount) {
+                return false;
+            }
+            entry = buffer.getInt(indexOffset + next++ * 4);
+            term = new byte[buffer.getShort(entry) & 0xFFFF];
+            buffer.get(entry + 2, term);
+            return true;
+        }
+
+        byte[] term() {
+            return term;
+        }
+
+        Postings postings() {
+            return postingsAt(entry);
+        }
+    }
+
+
+    /**
+     * Writer
+     * writes a segment, one term at a time in ascending term order.
+     */
+
+    static final class Writer implements Closeable {
+        private final Path path;
+        private final FileChannel channel;
+        private final DataOutputStream postings;
+        private final DataOutputStream dictionary;
+        private final Path dictionaryPath;
+        private int[] entries = new int[1024];
+        private byte[] previous;
+        private int termCount;
+        private int dictionarySize;
+        private long postingsSize = HEADER_LENGTH;
+        private int maxDocument = -1;
+        private int minDocument = Integer.MAX_VALUE;
+
+        Writer(Path path) throws IOException {
+            this.path = path;
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            channel.position(HEADER_LENGTH);
+            this.postings = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024));
+            this.dictionaryPath = path.resolveSibling(path.getFileName() + ".dict");
+            this.dictionary = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(dictionaryPath), 64 * 1024));
+        }
+
+        /**
+         * add
+         * this method writes the postings of a term, leaving out the documents that are no
+         * longer live; a term left without documents is not written.
+         *
+         * @param term the UTF-8 bytes of the term, greater than the previous one.
+         * @param source the postings of the term.
+         * @param live whether a document is still indexed.
+         * @return void
+         * @throws IOException if the file cannot be written.
+         */
+
+        void add(byte[] term, Postings source, IntPredicate live) throws IOException {
+            add(term, source, live, IntUnaryOperator.identity());
+        }
+
+        /**
+         * add
+         * this method writes the postings of a term like add(term, source, live), each live
+         * document under a new number, for a merge that renumbers the documents.
+         *
+         * @param term the UTF-8 bytes of the term, greater than the previous one.
+         * @param source the postings of the term.
+         * @param live whether a document is still indexed.
+         * @param renumber the number a live document is written with, ascending as the documents are.
+         * @return void
+         * @throws IOException if the file cannot be written.
+         */
+
+        void add(byte[] term, Postings source, IntPredicate live, IntUnaryOperator renumber) throws IOException {
+            if (previous != null && Arrays.compareUnsigned(previous, term) >= 0) {
+                throw new IllegalArgumentException("Terms out of order");
+            }
+            long offset = postingsSize;
+            int documents = 0;
+            int last = -1;
+            while (source.next()) {
+                if (!live.test(source.doc())) {
+                    continue;
+                }
+                int doc = renumber.applyAsInt(source.doc());
+                writeVarint(last < 0 ? doc : doc - last);
+                writeVarint(source.freq());
+                int[] positions = source.positions();
+                int position = 0;
+                for (int i = 0; i < source.freq(); i++) {
+                    writeVarint(positions[i] - position);
+                    position = positions[i];
+                }
+                last = doc;
+                documents++;
+                minDocument = Math.min(minDocument, doc);
+                maxDocument = Math.max(maxDocument, doc);
+            }
+            if (documents == 0) {
+                return;
+            }
+            if (postingsSize > Integer.MAX_VALUE / 2) {
+                throw new IOException("Index segment too large: " + path);
+            }
+
+            if (termCount == entries.length) {
+                entries = Arrays.copyOf(entries, termCount * 2);
+            }
+            entries[termCount++] = dictionarySize;
+            dictionary.writeShort(term.length);
+            dictionary.write(term);
+            dictionary.writeLong(offset);
+            dictionary.writeInt(documents);
+            dictionarySize += 2 + term.length + 12;
+            previous = term;
+        }
+
+        // the number of terms written so far
+        int getTermCount() {
+            return termCount;
+        }
+
+        /**
+         * finish
+         * this method appends the dictionary and the index and writes the header.
+         *
+         * @return void
+         * @throws IOException if the file cannot be written.
+         */
+
+        void finish() throws IOException {
+            long dictionaryOffset = postingsSize;
+            dictionary.close();
+            Files.copy(dictionaryPath, postings);
+            long indexOffset = dictionaryOffset + dictionarySize;
+            for (int i = 0; i < termCount; i++) {
+                postings.writeInt((int) (dictionaryOffset + entries[i]));
+            }
+            postings.flush();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            header.putInt(MAGIC).putInt(VERSION).putInt(termCount)
+                    .putInt(maxDocument < 0 ? 0 : maxDocument - minDocument + 1)
+                    .putLong(dictionaryOffset).putLong(indexOffset).flip();
+            channel.write(header, 0);
+            channel.force(false);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                dictionary.close();
+                postings.close();
+            } finally {
+                Files.deleteIfExists(dictionaryPath);
+            }
+        }
+
+        private void writeVarint(int value) throws IOException {
+            while ((value & ~0x7F) != 0) {
+                postings.write((value & 0x7F) | 0x80);
+                value >>>= 7;
+                postingsSize++;
+            }
+            postings.write(value);
+            postingsSize++;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * LatencyHistogram
+ * this class counts latencies in nanoseconds in log-linear buckets, the layout HdrHistogram
+ * uses: values below SUB_BUCKETS get a bucket each, and every further power of two is split
+ * into SUB_BUCKETS / 2 equal buckets, so a value is known to within 1 / 64 (1.6%) of itself.
+ * recording is a few shifts and an atomic increment, with no allocation, and may be done from
+ * any number of threads. values above MAX_VALUE (about 68 seconds) are counted as MAX_VALUE.
+ *
+ * @authors      Richard Quayson & Thomas Quarshie
+ */
+
+public final class LatencyHistogram {
+    static final int SUB_BUCKET_BITS = 7;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    static final int HALF_SUB_BUCKETS = SUB_BUCKETS / 2;
+
+    // the largest value told apart from larger ones, 2^36 - 1 ns
+    public static final long MAX_VALUE = (1L << 36) - 1;
+    static final int BUCKETS = indexOf(MAX_VALUE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder total = new LongAdder();
+
+
+    /**
+     * record
+     * this method counts one latency.
+     *
+     * @param nanos the latency in nanoseconds, negative values are counted as 0.
+     * @return void
+     */
+
+    public void record(long nanos) {
+        long value = Math.min(Math.max(nanos, 0), MAX_VALUE);
+        counts.incrementAndGet(indexOf(value));
+        total.add(value);
+    }
+
+
+    /**
+     * snapshot
+     * this method copies the counts. recording may go on meanwhile, so a snapshot taken under
+     * load may miss the latest values but is never torn within a bucket.
+     *
+     * @return Snapshot the counts recorded so far.
+     */
+
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+        }
+        return new Snapshot(copy, total.sum());
+    }
+
+
+    /**
+     * reset
+     * this method forgets every recorded value.
+     *
+     * @return void
+     */
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        total.reset();
+    }
+
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        // shift the value down until it falls in [HALF_SUB_BUCKETS, SUB_BUCKETS)
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        return SUB_BUCKETS + (shift - 1) * HALF_SUB_BUCKETS + (int) (value >>> shift) - HALF_SUB_BUCKETS;
+    }
+
+    // the largest value counted in the bucket
+    static long highestValueOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / HALF_SUB_BUCKETS + 1;
+        long subBucket = (index - SUB_BUCKETS) % HALF_SUB_BUCKETS + HALF_SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+
+    /**
+     * Snapshot
+     * the counts of a histogram at one point in time. snapshots are immutable; the difference
+     * of two snapshots of the same histogram describes the values recorded in between.
+     */
+
+    public static final class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(new long[BUCKETS], 0);
+
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+
+
+        private Snapshot(long[] counts, long sum) {
+            long count = 0;
+            for (long c : counts) {
+                count += c;
+            }
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+        }
+
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        public long getMax() {
+            for (int i = BUCKETS - 1; i >= 0; i--) {
+                if (counts[i] != 0) {
+                    return highestValueOf(i);
+                }
+            }
+            return 0;
+        }
+
+
+        /**
+         * valueAt
+         * this method returns the value below or at which the given fraction of the recorded
+         * values lie, rounded up to the end of its bucket.
+         *
+         * @param quantile the fraction, e.g. 0.99 for the 99th percentile.
+         * @return long the value in nanoseconds, 0 if nothing was recorded.
+         */
+
+        public long valueAt(double quantile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(Math.min(Math.max(quantile, 0), 1) * count));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return highestValueOf(i);
+                }
+            }
+            return getMax();
+        }
+
+
+        /**
+         * minus
+         * this method returns the values recorded after an earlier snapshot of the same histogram.
+         *
+         * @param earlier the earlier snapshot.
+         * @return Snapshot the counts recorded in between.
+         */
+
+        public Snapshot minus(Snapshot earlier) {
+            long[] difference = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                // a reset in between leaves the later counts as they are
+                difference[i] = Math.max(0, counts[i] - earlier.counts[i]);
+            }
+            return new Snapshot(difference, Math.max(0, sum - earlier.sum));
+        }
+    }
+}
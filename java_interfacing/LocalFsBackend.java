@@ -0,0 +1,70 @@
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+
+/**
+ * LocalFsBackend
+ * this class holds the read side shared by the backends that work on the real file system:
+ * listings with details are stat'ed in parallel, directory aggregates come from the shared
+ * DirectoryAggregateCache and file content is read (or mapped) by FileContentReader.
+ * subclasses only decide how mutations reach the disk.
+ *
+ * @authors      Richard Quayson & Thomas Quarshie
+ */
+
+public abstract class LocalFsBackend implements FsBackend {
+
+    @Override
+    public List<FileDetails> listFiles(String folderPath) throws IOException {
+        Path directory = Paths.get(folderPath);
+        if (!getDetails(folderPath).isDirectory()) {
+            throw new NotDirectoryException(folderPath);
+        }
+        return DirectoryDetailsLister.list(directory);
+    }
+
+    @Override
+    public FileDetails getDetails(String path) throws IOException {
+        return FileDetails.of(Paths.get(path));
+    }
+
+    @Override
+    public DirectoryStats getDirectoryStats(String folderPath) throws IOException {
+        FileDetails directory = getDetails(folderPath);
+        if (!directory.isDirectory()) {
+            throw new NotDirectoryException(folderPath);
+        }
+        return DirectoryAggregateCache.shared().get(directory.path());
+    }
+
+    @Override
+    public String readFileContent(String filePath) throws IOException {
+        // read the whole file (mapped if it is large) and decode it with the platform charset
+        return Charset.defaultCharset().decode(FileContentReader.readRange(Paths.get(filePath), 0, Integer.MAX_VALUE)).toString();
+    }
+
+
+    /**
+     * sibling
+     * this method resolves the new path of an entry renamed within its folder.
+     *
+     * @param path the current path of the entry.
+     * @param newName the new name of the entry.
+     * @return Path the new path.
+     */
+
+    static Path sibling(Path path, String newName) {
+        Path parent = path.toAbsolutePath().getParent();
+        return parent == null ? Paths.get(newName) : parent.resolve(newName);
+    }
+
+
+    @Override
+    public String toString() {
+        return name();
+    }
+}
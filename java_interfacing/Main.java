@@ -1,12 +1,18 @@
-import java.io.File;
 import java.io.IOException;
+import java.nio.file.InvalidPathException;
 import java.util.Scanner;
 
 
 /**
  * Main
  * this class tests the functionalities defined in the FMKernelModules class
- * by providing a menu to the user to choose the operation to perform on the file system
+ * by providing a menu to the user to choose the operation to perform on the file system.
+ * the operations go through an FsBackend, chosen at startup: pass "proc", "nio", "memory"
+ * or "auto" as the first argument (or set -Dfm.backend); by default the kernel modules are
+ * used when they are loaded and java.nio.file otherwise. with --script (and a file, or - for the
+ * standard input) no menu is shown: the commands are read one per line and run by ScriptRunner.
+ *
+ *   java Main [backend] [--script <file | ->]
  * 
  * @authors         Richard Quayson & Thomas Quarshie      
  */
@@ -14,6 +20,29 @@ import java.util.Scanner;
 public class Main {
 
     public static void main(String[] args) throws IOException {
+        String backendName = FsBackends.DEFAULT;
+        String script = null;
+        for (int i = 0; i < args.length; i++) {
+            if ("--script".equals(args[i])) {
+                script = i + 1 < args.length ? args[++i] : "-";
+            } else {
+                backendName = args[i];
+            }
+        }
+
+        // pick the backend the operations are performed with
+        FsBackend backend = FsBackends.select(backendName);
+        if (script != null) {
+            // no menu, the results are the only output
+            ScriptRunner.run(backend, script);
+            return;
+        }
+        System.out.println("Using the " + backend.name() + " backend.");
+        if (System.getProperty("fm.log") == null) {
+            // the menu prints the outcome of every operation itself
+            FMKernelModules.setLog(OperationLog.NONE);
+        }
+
         // Create a Scanner object to read input from the user
         Scanner scanner = new Scanner(System.in);
         
@@ -48,22 +77,27 @@ public class Main {
                 case 1: // create folder
                     System.out.print("Enter the folder path to create: ");
                     String createFolderPath = scanner.nextLine();
-                    FMKernelModules.createFolder(createFolderPath);
+                    try {
+                        backend.createFolder(createFolderPath);
+                        System.out.println("Requested the creation of folder: " + createFolderPath);
+                    } catch (IOException e) {
+                        System.err.println("An error occurred while requesting the creation of the folder: " + e.getMessage());
+                    }
                     break;
                     
                 case 2: // list files in directory
                     System.out.print("Enter the directory path to list files from: ");
                     String listFolderPath = scanner.nextLine();
-                    File[] files = FMKernelModules.listFilesInDirectory(listFolderPath);
-                    if (files != null) {
-                        for (File file : files) {
+                    try {
+                        // the types were read while listing, no further stat calls per entry
+                        for (FileDetails file : backend.listFiles(listFolderPath)) {
                             if (file.isFile()) {
-                                System.out.println("File: " + file.getName());
+                                System.out.println("File: " + file.name());
                             } else if (file.isDirectory()) {
-                                System.out.println("Directory: " + file.getName());
+                                System.out.println("Directory: " + file.name());
                             }
                         }
-                    } else {
+                    } catch (IOException | InvalidPathException e) {
                         System.out.println("The specified path is not a valid directory.");
                     }
                     break;
@@ -71,7 +105,7 @@ public class Main {
                 case 3: // get directory info
                     System.out.print("Enter the directory path to get info from: ");
                     String directoryPath = scanner.nextLine();
-                    String directoryInfo = FMKernelModules.getDirectoryInfo(directoryPath);
+                    String directoryInfo = backend.getDirectoryInfo(directoryPath);
                     System.out.println(directoryInfo);
                     break;
                     
@@ -80,13 +114,23 @@ public class Main {
                     String oldFolderPath = scanner.nextLine();
                     System.out.print("Enter the new folder name: ");
                     String newFolderName = scanner.nextLine();
-                    FMKernelModules.renameFolder(oldFolderPath, newFolderName);
+                    try {
+                        backend.renameFolder(oldFolderPath, newFolderName);
+                        System.out.println("Requested the renaming of folder from '" + oldFolderPath + "' to '" + newFolderName + "'");
+                    } catch (IOException e) {
+                        System.err.println("An error occurred while trying to rename the folder: " + e.getMessage());
+                    }
                     break;
                     
                 case 5: // delete folder
                     System.out.print("Enter the folder path to delete: ");
                     String deleteFolderPath = scanner.nextLine();
-                    FMKernelModules.deleteFolder(deleteFolderPath);
+                    try {
+                        backend.deleteFolder(deleteFolderPath);
+                        System.out.println("Requested deletion of folder: " + deleteFolderPath);
+                    } catch (IOException e) {
+                        System.err.println("An error occurred while trying to delete the folder: " + e.getMessage());
+                    }
                     break;
                     
                 case 6: // create file
@@ -94,13 +138,18 @@ public class Main {
                     String createFilePath = scanner.nextLine();
                     System.out.print("Enter the file content: ");
                     String createFileContent = scanner.nextLine();
-                    FMKernelModules.createFile(createFilePath, createFileContent);
+                    try {
+                        backend.createFile(createFilePath, createFileContent);
+                        System.out.println("Requested the creation of file: " + createFilePath);
+                    } catch (IOException e) {
+                        System.err.println("An error occurred while creating the file: " + e.getMessage());
+                    }
                     break;
                     
                 case 7: // get file details
                     System.out.print("Enter the file path to get details from: ");
                     String filePath = scanner.nextLine();
-                    String fileDetails = FMKernelModules.getFileDetails(filePath);
+                    String fileDetails = backend.getFileDetails(filePath);
                     System.out.println(fileDetails);
                     break;
                     
@@ -109,7 +158,12 @@ public class Main {
                     String oldFilePath = scanner.nextLine();
                     System.out.print("Enter the new file name: ");
                     String newFileName = scanner.nextLine();
-                    FMKernelModules.renameFile(oldFilePath, newFileName);
+                    try {
+                        backend.renameFile(oldFilePath, newFileName);
+                        System.out.println("Successfully sent rename request: " + oldFilePath + " -> " + newFileName);
+                    } catch (IOException e) {
+                        System.err.println("An error occurred while renaming the file: " + e.getMessage());
+                    }
                     break;
                     
                 case 9: // update file
@@ -120,19 +174,29 @@ public class Main {
                     System.out.print("Do you want to overwrite the file? Enter 0 for append and 1 for overwrite: ");
                     int overwriteFlag = scanner.nextInt();
                     scanner.nextLine();             // consume newline character
-                    FMKernelModules.updateFile(updateFilePath, updateFileData, overwriteFlag);
+                    try {
+                        backend.updateFile(updateFilePath, updateFileData, overwriteFlag);
+                        System.out.println((overwriteFlag == 1 ? "Overwrote " : "Appended line to ") + updateFilePath + ".");
+                    } catch (IOException e) {
+                        System.err.println("An error occurred while updating the file: " + e.getMessage());
+                    }
                     break;
                     
                 case 10: // delete file
                     System.out.print("Enter the file path to delete: ");
                     String deleteFilePath = scanner.nextLine();
-                    FMKernelModules.deleteFile(deleteFilePath);
+                    try {
+                        backend.deleteFile(deleteFilePath);
+                        System.out.println("Requested deletion of file: " + deleteFilePath);
+                    } catch (IOException e) {
+                        System.err.println("An error occurred while trying to delete the file: " + e.getMessage());
+                    }
                     break;
                     
                 case 11: // read file content
                     System.out.print("Enter the file path to read content from: ");
                     String readFilePath = scanner.nextLine();
-                    String fileContent = FMKernelModules.readFileContent(readFilePath);
+                    String fileContent = backend.readFileContent(readFilePath);
                     System.out.println("File Content:");
                     System.out.println(fileContent);
                     break;
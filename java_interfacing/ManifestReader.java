@@ -0,0 +1,262 @@
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+
+
+/**
+ * ManifestReader
+ * this class reads the records of an ingest manifest one line at a time, so a manifest of any
+ * length is read in constant memory. two formats are understood:
+ *
+ *   CSV    type,path[,contentPath]          e.g. file,/data/a/b.txt,/staging/b.txt
+ *   JSONL  {"type": "...", "path": "...", "contentPath": "..."}
+ *
+ * the type is "folder" or "file"; contentPath names the file whose bytes the new file gets, the
+ * file is created empty without it. CSV fields may be quoted ("a,b" with "" for a quote), a
+ * first line starting with "type," is a header. blank lines and lines starting with # are
+ * skipped in both formats.
+ *
+ * @authors      Richard Quayson & Thomas Quarshie
+ */
+
+public final class ManifestReader implements Closeable {
+
+    /**
+     * Format
+     * the layouts a manifest may be written in.
+     */
+
+    public enum Format {
+        CSV,
+        JSONL;
+
+        // JSONL for .jsonl, .ndjson and .json names, CSV otherwise
+        public static Format of(String fileName) {
+            String name = fileName.toLowerCase();
+            return name.endsWith(".jsonl") || name.endsWith(".ndjson") || name.endsWith(".json") ? JSONL : CSV;
+        }
+    }
+
+
+    /**
+     * Entry
+     * one record of the manifest, with the line it was read from.
+     */
+
+    public record Entry(long line, boolean folder, String path, String contentPath) {
+    }
+
+
+    private final BufferedReader reader;
+    private final Format format;
+    private long line;
+
+
+    public ManifestReader(BufferedReader reader, Format format) {
+        this.reader = reader;
+        this.format = format;
+    }
+
+
+    /**
+     * next
+     * this method reads the next record.
+     *
+     * @return Entry the record, or null at the end of the manifest.
+     * @throws MalformedEntryException if the line is not a valid record (the message gives the
+     *         line number), the next call goes on with the following line.
+     * @throws IOException if the manifest cannot be read.
+     */
+
+    public Entry next() throws IOException {
+        String text;
+        while ((text = reader.readLine()) != null) {
+            line++;
+            String trimmed = text.strip();
+            if (trimmed.isEmpty() || trimmed.startsWith("#") || (line == 1 && format == Format.CSV && trimmed.startsWith("type,"))) {
+                continue;
+            }
+            String[] fields = format == Format.CSV ? csv(trimmed) : json(trimmed);
+            return entry(fields);
+        }
+        return null;
+    }
+
+    public long getLine() {
+        return line;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+
+    private Entry entry(String[] fields) throws IOException {
+        String type = fields[0];
+        String path = fields[1];
+        String contentPath = fields[2] == null || fields[2].isEmpty() ? null : fields[2];
+        if (path == null || path.isEmpty()) {
+            throw malformed("missing path");
+        }
+        if ("folder".equals(type)) {
+            if (contentPath != null) {
+                throw malformed("a folder has no content");
+            }
+            return new Entry(line, true, path, null);
+        }
+        if ("file".equals(type)) {
+            return new Entry(line, false, path, contentPath);
+        }
+        throw malformed("unknown type '" + type + "', expected folder or file");
+    }
+
+    // type, path and content path of a CSV line
+    private String[] csv(String text) throws IOException {
+        String[] fields = new String[3];
+        StringBuilder field = new StringBuilder();
+        int count = 0;
+        boolean quoted = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < text.length() && text.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"' && field.length() == 0) {
+                quoted = true;
+            } else if (c == ',') {
+                if (count == 2) {
+                    throw malformed("more than 3 fields");
+                }
+                fields[count++] = field.toString();
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw malformed("unterminated quote");
+        }
+        fields[count++] = field.toString();
+        if (count < 2) {
+            throw malformed("expected type,path[,contentPath]");
+        }
+        return fields;
+    }
+
+    // type, path and content path of a flat JSON object of strings
+    private String[] json(String text) throws IOException {
+        String[] fields = new String[3];
+        int[] position = { 0 };
+        expect(text, position, '{');
+        if (peek(text, position) == '}') {
+            throw malformed("empty object");
+        }
+        while (true) {
+            String key = string(text, position);
+            expect(text, position, ':');
+            String value = string(text, position);
+            switch (key) {
+                case "type" -> fields[0] = value;
+                case "path" -> fields[1] = value;
+                case "contentPath" -> fields[2] = value;
+                default -> throw malformed("unknown key '" + key + "'");
+            }
+            char c = peek(text, position);
+            position[0]++;
+            if (c == '}') {
+                break;
+            }
+            if (c != ',') {
+                throw malformed("expected , or }");
+            }
+        }
+        if (position[0] != text.length()) {
+            throw malformed("text after the object");
+        }
+        return fields;
+    }
+
+    private String string(String text, int[] position) throws IOException {
+        expect(text, position, '"');
+        StringBuilder value = new StringBuilder();
+        for (int i = position[0]; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"') {
+                position[0] = i + 1;
+                return value.toString();
+            }
+            if (c != '\\') {
+                value.append(c);
+                continue;
+            }
+            if (++i == text.length()) {
+                break;
+            }
+            switch (text.charAt(i)) {
+                case '"', '\\', '/' -> value.append(text.charAt(i));
+                case 'b' -> value.append('\b');
+                case 'f' -> value.append('\f');
+                case 'n' -> value.append('\n');
+                case 'r' -> value.append('\r');
+                case 't' -> value.append('\t');
+                case 'u' -> {
+                    if (i + 4 >= text.length()) {
+                        throw malformed("short \\u escape");
+                    }
+                    try {
+                        value.append((char) Integer.parseInt(text.substring(i + 1, i + 5), 16));
+                    } catch (NumberFormatException e) {
+                        throw malformed("bad \\u escape");
+                    }
+                    i += 4;
+                }
+                default -> throw malformed("bad escape \\" + text.charAt(i));
+            }
+        }
+        throw malformed("unterminated string");
+    }
+
+    private void expect(String text, int[] position, char expected) throws IOException {
+        if (peek(text, position) != expected) {
+            throw malformed("expected " + expected);
+        }
+        position[0]++;
+    }
+
+    // the next character that is not white space, the position is left on it
+    private char peek(String text, int[] position) throws IOException {
+        while (position[0] < text.length() && Character.isWhitespace(text.charAt(position[0]))) {
+            position[0]++;
+        }
+        if (position[0] == text.length()) {
+            throw malformed("unexpected end of line");
+        }
+        return text.charAt(position[0]);
+    }
+
+    private MalformedEntryException malformed(String reason) {
+        return new MalformedEntryException("Line " + line + " of the manifest: " + reason);
+    }
+
+
+    /**
+     * MalformedEntryException
+     * thrown by next() for a line that is not a valid record; reading may go on with the
+     * next line.
+     */
+
+    public static final class MalformedEntryException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        MalformedEntryException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,398 @@
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+/**
+ * MemoryFsBackend
+ * this class keeps a file system tree in memory and applies the operations to it, following the
+ * rules of the kernel modules (see FsBackend). nothing touches the disk, so it serves to measure
+ * the cost of the interface itself and to run the programs where writing is not wanted. paths
+ * are made absolute and normalized; the tree starts with an empty root directory.
+ *
+ * @authors      Richard Quayson & Thomas Quarshie
+ */
+
+public class MemoryFsBackend implements FsBackend {
+    public static final String NAME = "memory";
+
+    private final Node root = Node.directory("");
+    private final ReentrantLock lock = new ReentrantLock();
+
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return true;
+    }
+
+
+    /**
+     * createFolder
+     * this method creates an empty folder; its parent must exist.
+     *
+     * @param folderPath the path of the folder.
+     * @return void
+     * @throws IOException if the parent is missing or the name is taken.
+     */
+
+    @Override
+    public void createFolder(String folderPath) throws IOException {
+        String[] names = split(folderPath);
+        lock.lock();
+        try {
+            Node parent = parentOf(names, folderPath);
+            String name = last(names, folderPath);
+            if (parent.children.containsKey(name)) {
+                throw new FileAlreadyExistsException(folderPath);
+            }
+            parent.children.put(name, Node.directory(name));
+            parent.touch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void renameFolder(String srcFolderPath, String newName) throws IOException {
+        rename(srcFolderPath, newName, true);
+    }
+
+    @Override
+    public void deleteFolder(String folderPath) throws IOException {
+        String[] names = split(folderPath);
+        lock.lock();
+        try {
+            Node parent = parentOf(names, folderPath);
+            Node folder = child(parent, last(names, folderPath), folderPath);
+            if (folder.content != null) {
+                throw new NotDirectoryException(folderPath);
+            }
+            if (!folder.children.isEmpty()) {
+                throw new DirectoryNotEmptyException(folderPath);
+            }
+            parent.children.remove(folder.name);
+            parent.touch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void createFile(String filePath, String content) throws IOException {
+        byte[] bytes = content.getBytes(Charset.defaultCharset());
+        String[] names = split(filePath);
+        lock.lock();
+        try {
+            Node parent = parentOf(names, filePath);
+            String name = last(names, filePath);
+            Node file = parent.children.get(name);
+            if (file == null) {
+                parent.children.put(name, Node.file(name, bytes));
+                parent.touch();
+            } else if (file.content == null) {
+                throw new IOException("Is a directory: " + filePath);
+            } else {
+                // an existing file is truncated, like O_CREAT | O_TRUNC
+                file.content = bytes;
+                file.size = bytes.length;
+                file.touch();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void renameFile(String currentPath, String newName) throws IOException {
+        rename(currentPath, newName, false);
+    }
+
+    @Override
+    public void updateFile(String filePath, String newData, int overwriteFlag) throws IOException {
+        byte[] bytes = newData.getBytes(Charset.defaultCharset());
+        lock.lock();
+        try {
+            Node file = find(filePath);
+            if (file.content == null) {
+                throw new IOException("Is a directory: " + filePath);
+            }
+            if (overwriteFlag != 0) {
+                file.content = bytes;
+                file.size = bytes.length;
+            } else {
+                // the content grows geometrically, so a run of appends costs linear time
+                if (file.size + bytes.length > file.content.length) {
+                    file.content = Arrays.copyOf(file.content, Math.max(file.size + bytes.length, file.content.length * 2));
+                }
+                System.arraycopy(bytes, 0, file.content, file.size, bytes.length);
+                file.size += bytes.length;
+            }
+            file.touch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void deleteFile(String filePath) throws IOException {
+        String[] names = split(filePath);
+        lock.lock();
+        try {
+            Node parent = parentOf(names, filePath);
+            Node file = child(parent, last(names, filePath), filePath);
+            if (file.content == null) {
+                throw new IOException("Is a directory: " + filePath);
+            }
+            parent.children.remove(file.name);
+            parent.touch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void copyFile(String sourcePath, String targetPath) throws IOException {
+        String[] names = split(targetPath);
+        lock.lock();
+        try {
+            Node source = find(sourcePath);
+            if (source.content == null) {
+                throw new IOException("Is a directory: " + sourcePath);
+            }
+            byte[] bytes = Arrays.copyOf(source.content, source.size);
+            Node parent = parentOf(names, targetPath);
+            String name = last(names, targetPath);
+            Node target = parent.children.get(name);
+            if (target == null) {
+                parent.children.put(name, Node.file(name, bytes));
+                parent.touch();
+            } else if (target.content == null) {
+                throw new IOException("Is a directory: " + targetPath);
+            } else {
+                target.content = bytes;
+                target.size = bytes.length;
+                target.touch();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    @Override
+    public List<FileDetails> listFiles(String folderPath) throws IOException {
+        Path folder = absolute(folderPath);
+        lock.lock();
+        try {
+            Node directory = find(folderPath);
+            if (directory.content != null) {
+                throw new NotDirectoryException(folderPath);
+            }
+            List<FileDetails> entries = new ArrayList<>(directory.children.size());
+            for (Node child : directory.children.values()) {
+                entries.add(child.details(folder.resolve(child.name)));
+            }
+            return entries;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public FileDetails getDetails(String path) throws IOException {
+        Path absolute = absolute(path);
+        lock.lock();
+        try {
+            return find(path).details(absolute);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public DirectoryStats getDirectoryStats(String folderPath) throws IOException {
+        lock.lock();
+        try {
+            Node directory = find(folderPath);
+            if (directory.content != null) {
+                throw new NotDirectoryException(folderPath);
+            }
+            return directory.stats();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String readFileContent(String filePath) throws IOException {
+        lock.lock();
+        try {
+            Node file = find(filePath);
+            if (file.content == null) {
+                throw new IOException("Is a directory: " + filePath);
+            }
+            return new String(file.content, 0, file.size, Charset.defaultCharset());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    @Override
+    public String toString() {
+        return name();
+    }
+
+
+    private void rename(String currentPath, String newName, boolean folder) throws IOException {
+        if (newName.isEmpty() || newName.contains("/") || newName.equals(".") || newName.equals("..")) {
+            throw new IOException("Invalid name: " + newName);
+        }
+        String[] names = split(currentPath);
+        lock.lock();
+        try {
+            Node parent = parentOf(names, currentPath);
+            Node entry = child(parent, last(names, currentPath), currentPath);
+            if (folder != (entry.content == null)) {
+                throw folder ? new NotDirectoryException(currentPath) : new IOException("Is a directory: " + currentPath);
+            }
+            Node target = parent.children.get(newName);
+            if (target != null && target != entry) {
+                // like rename(2): a file replaces a file, a folder replaces an empty folder
+                if ((target.content == null) != (entry.content == null)) {
+                    throw new FileAlreadyExistsException(newName);
+                }
+                if (target.content == null && !target.children.isEmpty()) {
+                    throw new DirectoryNotEmptyException(newName);
+                }
+            }
+            parent.children.remove(entry.name);
+            entry.name = newName;
+            parent.children.put(newName, entry);
+            parent.touch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** finds the node of a path, called with the lock held. */
+    private Node find(String path) throws IOException {
+        Node node = root;
+        for (String name : split(path)) {
+            if (node.content != null) {
+                throw new NotDirectoryException(path);
+            }
+            node = child(node, name, path);
+        }
+        return node;
+    }
+
+    /** finds the folder holding the last name of a path, called with the lock held. */
+    private Node parentOf(String[] names, String path) throws IOException {
+        Node node = root;
+        for (int i = 0; i < names.length - 1; i++) {
+            node = child(node, names[i], path);
+            if (node.content != null) {
+                throw new NotDirectoryException(path);
+            }
+        }
+        return node;
+    }
+
+    private static Node child(Node directory, String name, String path) throws IOException {
+        Node child = directory.children.get(name);
+        if (child == null) {
+            throw new NoSuchFileException(path);
+        }
+        return child;
+    }
+
+    private static String last(String[] names, String path) throws IOException {
+        if (names.length == 0) {
+            throw new FileAlreadyExistsException(path);
+        }
+        return names[names.length - 1];
+    }
+
+    private static Path absolute(String path) {
+        return Paths.get(path).toAbsolutePath().normalize();
+    }
+
+    private static String[] split(String path) {
+        Path absolute = absolute(path);
+        String[] names = new String[absolute.getNameCount()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = absolute.getName(i).toString();
+        }
+        return names;
+    }
+
+
+    /**
+     * Node
+     * a file (content is not null, its first size bytes are the file) or a directory (children)
+     * of the tree.
+     */
+
+    private static final class Node {
+        String name;
+        byte[] content;
+        int size;
+        final TreeMap<String, Node> children;
+        final long created;
+        long lastModified;
+
+        private Node(String name, byte[] content, TreeMap<String, Node> children) {
+            this.name = name;
+            this.content = content;
+            this.size = content == null ? 0 : content.length;
+            this.children = children;
+            this.created = System.currentTimeMillis();
+            this.lastModified = created;
+        }
+
+        static Node directory(String name) {
+            return new Node(name, null, new TreeMap<>());
+        }
+
+        static Node file(String name, byte[] content) {
+            return new Node(name, content, null);
+        }
+
+        void touch() {
+            lastModified = System.currentTimeMillis();
+        }
+
+        FileDetails details(Path path) {
+            Path fileName = path.getFileName();
+            return new FileDetails(path, fileName != null ? fileName.toString() : path.toString(),
+                    content == null ? FileDetails.Type.DIRECTORY : FileDetails.Type.FILE,
+                    size, lastModified, created);
+        }
+
+        DirectoryStats stats() {
+            DirectoryStats stats = new DirectoryStats(0, 0, 0, lastModified);
+            for (Node child : children.values()) {
+                stats = stats.plus(child.content != null
+                        ? new DirectoryStats(child.size, 1, 0, child.lastModified)
+                        : child.stats().plus(new DirectoryStats(0, 0, 1, 0)));
+            }
+            return stats;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+
+/**
+ * MetricsSnapshot
+ * this class holds the stats of every kind of operation at one point in time, as returned by
+ * OperationMetrics.snapshot. the difference of two snapshots describes the interval between
+ * them; periodic snapshots are delivered that way.
+ *
+ * @authors      Richard Quayson & Thomas Quarshie
+ */
+
+public final class MetricsSnapshot {
+    private final long timestamp;
+    private final long intervalMillis;
+    private final Map<Operation.Type, OperationStats> stats;
+
+
+    MetricsSnapshot(long timestamp, long intervalMillis, EnumMap<Operation.Type, OperationStats> stats) {
+        this.timestamp = timestamp;
+        this.intervalMillis = intervalMillis;
+        this.stats = Collections.unmodifiableMap(stats);
+    }
+
+
+    // when the snapshot was taken, in epoch milliseconds
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    // the length of the interval described, or -1 if the stats count from the start
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    public Map<Operation.Type, OperationStats> getStats() {
+        return stats;
+    }
+
+    public OperationStats get(Operation.Type type) {
+        return stats.get(type);
+    }
+
+
+    /**
+     * minus
+     * this method returns what was recorded after an earlier snapshot.
+     *
+     * @param earlier the earlier snapshot.
+     * @return MetricsSnapshot the stats of the interval between the two snapshots.
+     */
+
+    public MetricsSnapshot minus(MetricsSnapshot earlier) {
+        EnumMap<Operation.Type, OperationStats> difference = new EnumMap<>(Operation.Type.class);
+        for (Map.Entry<Operation.Type, OperationStats> entry : stats.entrySet()) {
+            difference.put(entry.getKey(), entry.getValue().minus(earlier.get(entry.getKey())));
+        }
+        return new MetricsSnapshot(timestamp, timestamp - earlier.timestamp, difference);
+    }
+
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        for (OperationStats operation : stats.values()) {
+            if (operation.getCount() > 0) {
+                text.append(operation).append('\n');
+            }
+        }
+        return text.length() == 0 ? "no operations\n" : text.toString();
+    }
+}
@@ -0,0 +1,131 @@
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+
+
+/**
+ * NioFsBackend
+ * this class performs the mutations directly with java.nio.file, without the kernel modules,
+ * following the same rules the modules apply (see FsBackend). it is the fallback when the
+ * modules are not loaded, and the baseline to measure the cost of the module path against.
+ *
+ * @authors      Richard Quayson & Thomas Quarshie
+ */
+
+public class NioFsBackend extends LocalFsBackend {
+    public static final String NAME = "nio";
+
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return true;
+    }
+
+
+    @Override
+    public void createFolder(String folderPath) throws IOException {
+        Path folder = Paths.get(folderPath);
+        try {
+            Files.createDirectory(folder);
+        } finally {
+            invalidate(folder);
+        }
+    }
+
+    @Override
+    public void renameFolder(String srcFolderPath, String newName) throws IOException {
+        Path folder = Paths.get(srcFolderPath);
+        if (!Files.readAttributes(folder, BasicFileAttributes.class).isDirectory()) {
+            throw new NotDirectoryException(srcFolderPath);
+        }
+        rename(folder, newName);
+    }
+
+    @Override
+    public void deleteFolder(String folderPath) throws IOException {
+        Path folder = Paths.get(folderPath);
+        if (!Files.readAttributes(folder, BasicFileAttributes.class).isDirectory()) {
+            throw new NotDirectoryException(folderPath);
+        }
+        try {
+            // like rmdir, a folder that is not empty is refused
+            Files.delete(folder);
+        } finally {
+            invalidate(folder);
+        }
+    }
+
+    @Override
+    public void createFile(String filePath, String content) throws IOException {
+        Path file = Paths.get(filePath);
+        try {
+            Files.writeString(file, content, Charset.defaultCharset(),
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        } finally {
+            invalidate(file);
+        }
+    }
+
+    @Override
+    public void renameFile(String currentPath, String newName) throws IOException {
+        rename(Paths.get(currentPath), newName);
+    }
+
+    @Override
+    public void updateFile(String filePath, String newData, int overwriteFlag) throws IOException {
+        Path file = Paths.get(filePath);
+        try {
+            // the file must exist, it is not created
+            Files.writeString(file, newData, Charset.defaultCharset(), StandardOpenOption.WRITE,
+                    overwriteFlag != 0 ? StandardOpenOption.TRUNCATE_EXISTING : StandardOpenOption.APPEND);
+        } finally {
+            invalidate(file);
+        }
+    }
+
+    @Override
+    public void deleteFile(String filePath) throws IOException {
+        Path file = Paths.get(filePath);
+        try {
+            Files.delete(file);
+        } finally {
+            invalidate(file);
+        }
+    }
+
+
+    @Override
+    public void copyFile(String sourcePath, String targetPath) throws IOException {
+        Path target = Paths.get(targetPath);
+        try {
+            Files.copy(Paths.get(sourcePath), target, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            invalidate(target);
+        }
+    }
+
+
+    private static void rename(Path source, String newName) throws IOException {
+        try {
+            Files.move(source, sibling(source, newName), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            // dropping the source drops its folder too, which covers the new name
+            invalidate(source);
+        }
+    }
+
+    private static void invalidate(Path path) {
+        DirectoryAggregateCache.shared().invalidate(path);
+    }
+}
@@ -0,0 +1,279 @@
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Objects;
+
+
+/**
+ * Operation
+ * this class describes a single kernel-module request (create, rename, update or delete of a
+ * file or folder), so that requests can be built up front and handed to
+ * FMKernelModules.submitBatch. It knows which proc entry the request targets and how the
+ * request is laid out for that entry.
+ *
+ * @authors      Richard Quayson & Thomas Quarshie
+ */
+
+public final class Operation {
+
+    /**
+     * Type
+     * the kinds of requests understood by the kernel modules, one per proc entry.
+     */
+
+    public enum Type {
+        CREATE_FOLDER,
+        RENAME_FOLDER,
+        DELETE_FOLDER,
+        CREATE_FILE,
+        RENAME_FILE,
+        UPDATE_FILE,
+        DELETE_FILE
+    }
+
+    private final Type type;
+    private final String path;
+    private final String argument;
+    private final int overwriteFlag;
+
+
+    private Operation(Type type, String path, String argument, int overwriteFlag) {
+        this.type = type;
+        this.path = Objects.requireNonNull(path, "path");
+        this.argument = argument;
+        this.overwriteFlag = overwriteFlag;
+    }
+
+
+    /**
+     * createFolder
+     * this method describes the creation of a folder.
+     *
+     * @param folderPath the path of the folder to create.
+     * @return Operation the operation.
+     */
+
+    public static Operation createFolder(String folderPath) {
+        return new Operation(Type.CREATE_FOLDER, folderPath, null, 0);
+    }
+
+
+    /**
+     * renameFolder
+     * this method describes the renaming of a folder.
+     *
+     * @param srcFolderPath the current path of the folder to rename.
+     * @param newName the new name for the folder.
+     * @return Operation the operation.
+     */
+
+    public static Operation renameFolder(String srcFolderPath, String newName) {
+        return new Operation(Type.RENAME_FOLDER, srcFolderPath, Objects.requireNonNull(newName, "newName"), 0);
+    }
+
+
+    /**
+     * deleteFolder
+     * this method describes the deletion of a folder.
+     *
+     * @param folderPath the path of the folder to delete.
+     * @return Operation the operation.
+     */
+
+    public static Operation deleteFolder(String folderPath) {
+        return new Operation(Type.DELETE_FOLDER, folderPath, null, 0);
+    }
+
+
+    /**
+     * createFile
+     * this method describes the creation of a file with the given content.
+     *
+     * @param filePath the path of the file to create.
+     * @param content the content to write to the file.
+     * @return Operation the operation.
+     */
+
+    public static Operation createFile(String filePath, String content) {
+        return new Operation(Type.CREATE_FILE, filePath, Objects.requireNonNull(content, "content"), 0);
+    }
+
+
+    /**
+     * renameFile
+     * this method describes the renaming of a file.
+     *
+     * @param currentPath the current path of the file to rename.
+     * @param newName the new name for the file.
+     * @return Operation the operation.
+     */
+
+    public static Operation renameFile(String currentPath, String newName) {
+        return new Operation(Type.RENAME_FILE, currentPath, Objects.requireNonNull(newName, "newName"), 0);
+    }
+
+
+    /**
+     * updateFile
+     * this method describes an append to, or an overwrite of, a file.
+     *
+     * @param filePath the path of the file to update.
+     * @param newData the data to write to the file.
+     * @param overwriteFlag 1 to overwrite the file, 0 to append to it.
+     * @return Operation the operation.
+     */
+
+    public static Operation updateFile(String filePath, String newData, int overwriteFlag) {
+        return new Operation(Type.UPDATE_FILE, filePath, Objects.requireNonNull(newData, "newData"), overwriteFlag);
+    }
+
+
+    /**
+     * deleteFile
+     * this method describes the deletion of a file.
+     *
+     * @param filePath the path of the file to delete.
+     * @return Operation the operation.
+     */
+
+    public static Operation deleteFile(String filePath) {
+        return new Operation(Type.DELETE_FILE, filePath, null, 0);
+    }
+
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    // the new name for renames, the content for creates and updates, null otherwise
+    public String getArgument() {
+        return argument;
+    }
+
+    public int getOverwriteFlag() {
+        return overwriteFlag;
+    }
+
+
+    /**
+     * procFile
+     * this method returns the proc entry the operation is written to. it is resolved on every
+     * call, so changes to the FMKernelModules proc-path fields take effect immediately.
+     *
+     * @return String the path of the proc entry.
+     */
+
+    public String procFile() {
+        switch (type) {
+            case CREATE_FOLDER: return FMKernelModules.CREATE_FOLDER_PROC_FILE;
+            case RENAME_FOLDER: return FMKernelModules.RENAME_FOLDER_PROC_FILE;
+            case DELETE_FOLDER: return FMKernelModules.DELETE_FOLDER_PROC_FILE;
+            case CREATE_FILE:   return FMKernelModules.CREATE_FILE_PROC_FILE;
+            case RENAME_FILE:   return FMKernelModules.RENAME_FILE_PROC_FILE;
+            case UPDATE_FILE:   return FMKernelModules.UPDATE_FILE_PROC_FILE;
+            case DELETE_FILE:   return FMKernelModules.DELETE_FILE_PROC_FILE;
+            default:            throw new IllegalStateException("Unknown operation type: " + type);
+        }
+    }
+
+
+    /**
+     * request
+     * this method lays the operation out in the text format expected by its kernel module:
+     * the bare path for creates and deletes of folders and deletes of files,
+     * "path\nnewName\n" for renames, "path\ncontent" for file creation and
+     * "path|data|flag" for updates. with FMKernelModules.setFraming the operation is sent as a
+     * binary frame instead (see FrameEncoder).
+     *
+     * @return String the request to write to the proc entry.
+     */
+
+    public String request() {
+        switch (type) {
+            case RENAME_FOLDER:
+            case RENAME_FILE:
+                return path + "\n" + argument + "\n";
+            case CREATE_FILE:
+                return path + "\n" + argument;
+            case UPDATE_FILE:
+                return path + "|" + argument + "|" + overwriteFlag;
+            default:
+                return path;
+        }
+    }
+
+
+    /**
+     * execute
+     * this method sends the operation to its proc entry, records it in the shared
+     * OperationMetrics and drops the cached directory aggregates the operation may have changed.
+     *
+     * @return int the number of bytes the proc entry accepted.
+     * @throws IOException if the proc entry cannot be opened or rejects the request.
+     */
+
+    public int execute() throws IOException {
+        return run().orThrow();
+    }
+
+
+    /**
+     * run
+     * this method sends the operation like execute, but reports a failure in the result
+     * instead of throwing it.
+     *
+     * @return OperationResult the bytes accepted, the error code and the latency of the request.
+     */
+
+    public OperationResult run() {
+        long start = System.nanoTime();
+        try {
+            int written = FMKernelModules.isFraming()
+                    ? ProcChannelManager.writeFramed(procFile(), this)
+                    : ProcChannelManager.write(procFile(), request());
+            return complete(written, null, System.nanoTime() - start);
+        } catch (IOException e) {
+            return complete(-1, e, System.nanoTime() - start);
+        } catch (RuntimeException e) {
+            OperationMetrics.shared().recordFailure(type, System.nanoTime() - start);
+            DirectoryAggregateCache.shared().invalidate(Paths.get(path));
+            throw e;
+        }
+    }
+
+
+    /**
+     * complete
+     * this method records the outcome of a request carrying the operation, sent by run or as a
+     * frame of a batch, in the shared OperationMetrics and drops the cached directory aggregates
+     * the operation may have changed.
+     *
+     * @param written the bytes the proc entry accepted for the operation.
+     * @param error the error it failed with, null if it succeeded.
+     * @param latencyNanos the time the request took.
+     * @return OperationResult the result of the operation.
+     */
+
+    OperationResult complete(int written, IOException error, long latencyNanos) {
+        try {
+            if (error == null) {
+                OperationMetrics.shared().recordSuccess(type, latencyNanos, written);
+                return OperationResult.success(type, written, latencyNanos);
+            }
+            OperationMetrics.shared().recordFailure(type, latencyNanos);
+            return OperationResult.failure(type, error, latencyNanos);
+        } finally {
+            // renames stay within the parent folder, so the source path covers both names
+            DirectoryAggregateCache.shared().invalidate(Paths.get(path));
+        }
+    }
+
+
+    @Override
+    public String toString() {
+        return type + " " + path + (argument != null && type != Type.CREATE_FILE && type != Type.UPDATE_FILE ? " -> " + argument : "");
+    }
+}
@@ -0,0 +1,44 @@
+import java.util.function.Supplier;
+
+
+/**
+ * OperationLog
+ * this interface receives the messages FMKernelModules reports for every operation. messages
+ * are passed as suppliers and are only built by sinks that print them, so with NONE nothing
+ * is formatted on the request path. CONSOLE prints to standard output and standard error, as
+ * FMKernelModules always did; pick the sink with FMKernelModules.setLog or -Dfm.log=none.
+ *
+ * @authors      Richard Quayson & Thomas Quarshie
+ */
+
+public interface OperationLog {
+
+    // prints information to standard output and errors to standard error
+    OperationLog CONSOLE = new OperationLog() {
+        @Override
+        public void info(Supplier<String> message) {
+            System.out.println(message.get());
+        }
+
+        @Override
+        public void error(Supplier<String> message) {
+            System.err.println(message.get());
+        }
+    };
+
+    // drops every message
+    OperationLog NONE = new OperationLog() {
+        @Override
+        public void info(Supplier<String> message) {
+        }
+
+        @Override
+        public void error(Supplier<String> message) {
+        }
+    };
+
+
+    void info(Supplier<String> message);
+
+    void error(Supplier<String> message);
+}
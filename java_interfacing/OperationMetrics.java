@@ -0,0 +1,247 @@
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+
+/**
+ * OperationMetrics
+ * this class counts, per kind of operation, the requests sent to the kernel modules, the
+ * failed ones and the bytes the proc entries accepted, and keeps a LatencyHistogram of how long
+ * the requests took. Operation.execute and the streamed writes record into the shared instance,
+ * which is registered with the platform MBean server (see OBJECT_NAME, disable with
+ * -Dfm.metrics.jmx=false). recording takes no locks and allocates nothing.
+ *
+ * The stats are read with snapshot(), or delivered every period to a consumer with schedule(),
+ * each delivery covering the interval since the previous one.
+ *
+ * @authors      Richard Quayson & Thomas Quarshie
+ */
+
+public final class OperationMetrics implements OperationMetricsMXBean {
+    public static final String OBJECT_NAME = "fm:type=OperationMetrics";
+
+    private static final Operation.Type[] TYPES = Operation.Type.values();
+    private static volatile OperationMetrics shared;
+    private static ScheduledExecutorService scheduler;
+
+    private final LongAdder[] counts = adders();
+    private final LongAdder[] errors = adders();
+    private final LongAdder[] bytesWritten = adders();
+    private final LatencyHistogram[] latencies = new LatencyHistogram[TYPES.length];
+
+
+    /**
+     * OperationMetrics
+     * this constructor creates metrics with nothing recorded, not registered over JMX.
+     */
+
+    public OperationMetrics() {
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new LatencyHistogram();
+        }
+    }
+
+
+    /**
+     * shared
+     * this method returns the metrics the kernel-module requests are recorded in.
+     *
+     * @return OperationMetrics the shared metrics.
+     */
+
+    public static OperationMetrics shared() {
+        OperationMetrics metrics = shared;
+        if (metrics == null) {
+            synchronized (OperationMetrics.class) {
+                metrics = shared;
+                if (metrics == null) {
+                    metrics = new OperationMetrics();
+                    if (!"false".equals(System.getProperty("fm.metrics.jmx"))) {
+                        register(metrics);
+                    }
+                    shared = metrics;
+                }
+            }
+        }
+        return metrics;
+    }
+
+
+    /**
+     * recordSuccess
+     * this method counts a request the proc entry accepted.
+     *
+     * @param type the kind of operation.
+     * @param nanos how long the request took.
+     * @param bytes the number of bytes the proc entry accepted.
+     * @return void
+     */
+
+    public void recordSuccess(Operation.Type type, long nanos, long bytes) {
+        int i = type.ordinal();
+        counts[i].increment();
+        bytesWritten[i].add(bytes);
+        latencies[i].record(nanos);
+    }
+
+
+    /**
+     * recordFailure
+     * this method counts a request that could not be sent or that the proc entry rejected.
+     *
+     * @param type the kind of operation.
+     * @param nanos how long the request took until it failed.
+     * @return void
+     */
+
+    public void recordFailure(Operation.Type type, long nanos) {
+        int i = type.ordinal();
+        counts[i].increment();
+        errors[i].increment();
+        latencies[i].record(nanos);
+    }
+
+
+    /**
+     * snapshot
+     * this method returns the stats recorded since the start or the last reset.
+     *
+     * @return MetricsSnapshot the stats of every kind of operation.
+     */
+
+    public MetricsSnapshot snapshot() {
+        EnumMap<Operation.Type, OperationStats> stats = new EnumMap<>(Operation.Type.class);
+        for (Operation.Type type : TYPES) {
+            stats.put(type, stats(type));
+        }
+        return new MetricsSnapshot(System.currentTimeMillis(), -1, stats);
+    }
+
+
+    /**
+     * stats
+     * this method returns the stats of one kind of operation.
+     *
+     * @param type the kind of operation.
+     * @return OperationStats the stats recorded since the start or the last reset.
+     */
+
+    public OperationStats stats(Operation.Type type) {
+        int i = type.ordinal();
+        long count = counts[i].sum();
+        long failed = errors[i].sum();
+        long bytes = bytesWritten[i].sum();
+        return new OperationStats(type, count, failed, bytes, latencies[i].snapshot());
+    }
+
+
+    /**
+     * schedule
+     * this method hands the stats of every period to a consumer, on a shared daemon thread.
+     * each snapshot covers the interval since the previous one (the first, since the call).
+     *
+     * @param period the time between two snapshots.
+     * @param unit the unit of the period.
+     * @param consumer receives the snapshots, e.g. snapshot -> System.out.print(snapshot).
+     * @return ScheduledFuture<?> cancel it to stop the snapshots.
+     */
+
+    public ScheduledFuture<?> schedule(long period, TimeUnit unit, Consumer<MetricsSnapshot> consumer) {
+        MetricsSnapshot[] previous = { snapshot() };
+        return scheduler().scheduleAtFixedRate(() -> {
+            MetricsSnapshot current = snapshot();
+            MetricsSnapshot interval = current.minus(previous[0]);
+            previous[0] = current;
+            consumer.accept(interval);
+        }, period, period, unit);
+    }
+
+
+    @Override
+    public Map<String, OperationStats> getOperations() {
+        Map<String, OperationStats> operations = new LinkedHashMap<>();
+        for (Operation.Type type : TYPES) {
+            operations.put(type.name(), stats(type));
+        }
+        return operations;
+    }
+
+    @Override
+    public long getTotalCount() {
+        return sum(counts);
+    }
+
+    @Override
+    public long getTotalErrors() {
+        return sum(errors);
+    }
+
+    @Override
+    public long getTotalBytesWritten() {
+        return sum(bytesWritten);
+    }
+
+
+    /**
+     * reset
+     * this method forgets everything recorded so far. requests recorded while resetting may
+     * be partly kept.
+     *
+     * @return void
+     */
+
+    @Override
+    public void reset() {
+        for (int i = 0; i < TYPES.length; i++) {
+            counts[i].reset();
+            errors[i].reset();
+            bytesWritten[i].reset();
+            latencies[i].reset();
+        }
+    }
+
+
+    private static void register(OperationMetrics metrics) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            // already registered by another class loader, the metrics are still recorded
+        }
+    }
+
+    private static synchronized ScheduledExecutorService scheduler() {
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "fm-metrics");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return scheduler;
+    }
+
+    private static LongAdder[] adders() {
+        LongAdder[] adders = new LongAdder[TYPES.length];
+        for (int i = 0; i < adders.length; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    private static long sum(LongAdder[] adders) {
+        long total = 0;
+        for (LongAdder adder : adders) {
+            total += adder.sum();
+        }
+        return total;
+    }
+}
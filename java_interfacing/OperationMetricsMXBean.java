@@ -0,0 +1,24 @@
+import java.util.Map;
+
+
+/**
+ * OperationMetricsMXBean
+ * the management interface of OperationMetrics, registered with the platform MBean server
+ * under OperationMetrics.OBJECT_NAME.
+ *
+ * @authors      Richard Quayson & Thomas Quarshie
+ */
+
+public interface OperationMetricsMXBean {
+
+    // the stats of every kind of operation, keyed by Operation.Type name
+    Map<String, OperationStats> getOperations();
+
+    long getTotalCount();
+
+    long getTotalErrors();
+
+    long getTotalBytesWritten();
+
+    void reset();
+}
@@ -0,0 +1,60 @@
+import java.io.IOException;
+
+
+/**
+ * OperationOutcome
+ * this class holds the result of one operation submitted through FMKernelModules.submitBatch:
+ * either the number of bytes the proc entry accepted, or the error that stopped it, together
+ * with the OperationResult of the request.
+ *
+ * @authors      Richard Quayson & Thomas Quarshie
+ */
+
+public final class OperationOutcome {
+    private final Operation operation;
+    private final OperationResult result;
+
+
+    private OperationOutcome(Operation operation, OperationResult result) {
+        this.operation = operation;
+        this.result = result;
+    }
+
+    static OperationOutcome of(Operation operation, OperationResult result) {
+        return new OperationOutcome(operation, result);
+    }
+
+
+    public Operation getOperation() {
+        return operation;
+    }
+
+    public OperationResult getResult() {
+        return result;
+    }
+
+    public boolean isSuccess() {
+        return result.isSuccess();
+    }
+
+    // the bytes of the operation the proc entry accepted, its frame alone when it was sent in a
+    // framed batch (see OperationResult), -1 if the operation failed
+    public int getBytesWritten() {
+        return result.getBytesWritten();
+    }
+
+    // the error that stopped the operation, null if it succeeded
+    public IOException getError() {
+        return result.getError();
+    }
+
+    public Errno getErrno() {
+        return result.getErrno();
+    }
+
+
+    @Override
+    public String toString() {
+        return operation + (isSuccess() ? ": ok (" + getBytesWritten() + " bytes)" : ": failed (" + getError().getMessage() + ")");
+    }
+}
@@ -0,0 +1,97 @@
+import java.io.IOException;
+
+
+/**
+ * OperationResult
+ * this class holds what happened to one request sent to a kernel module: the number of bytes
+ * the proc entry accepted, the error code it failed with (Errno.OK if it did not) and how long
+ * the request took. the FMKernelModules operations return it, so that callers can tell whether
+ * an operation worked without stat'ing the path again. a successful result is a single small
+ * object with no references to other new ones, which the JIT removes entirely when the caller
+ * does not keep it.
+ *
+ * What the bytes count depends on how the request was sent. every module answers a text request
+ * with its whole length, so a text request counts the bytes of the request, path and separators
+ * included, for files as for folders. with framing, Operation.run counts the batch it wrote,
+ * the 4-byte magic and the frame, while an operation of a submitBatch batch counts only its own
+ * frame, as the magic and the write are shared by the batch. an append buffered by an
+ * AppendCoalescer counts the bytes of its data.
+ *
+ * @authors      Richard Quayson & Thomas Quarshie
+ */
+
+public final class OperationResult {
+    private final Operation.Type type;
+    private final int bytesWritten;
+    private final long latencyNanos;
+    private final Errno errno;
+    private final IOException error;
+
+
+    private OperationResult(Operation.Type type, int bytesWritten, long latencyNanos, Errno errno, IOException error) {
+        this.type = type;
+        this.bytesWritten = bytesWritten;
+        this.latencyNanos = latencyNanos;
+        this.errno = errno;
+        this.error = error;
+    }
+
+    static OperationResult success(Operation.Type type, int bytesWritten, long latencyNanos) {
+        return new OperationResult(type, bytesWritten, latencyNanos, Errno.OK, null);
+    }
+
+    static OperationResult failure(Operation.Type type, IOException error, long latencyNanos) {
+        return new OperationResult(type, -1, latencyNanos, Errno.of(error), error);
+    }
+
+
+    public Operation.Type getType() {
+        return type;
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    // the number of bytes the proc entry accepted (see above for what they count), -1 if the request failed
+    public int getBytesWritten() {
+        return bytesWritten;
+    }
+
+    public long getLatencyNanos() {
+        return latencyNanos;
+    }
+
+    // the error code of the failure, Errno.OK if the request succeeded
+    public Errno getErrno() {
+        return errno;
+    }
+
+    // the exception the request failed with, null if it succeeded
+    public IOException getError() {
+        return error;
+    }
+
+
+    /**
+     * orThrow
+     * this method turns a failed result back into its exception.
+     *
+     * @return int the number of bytes the proc entry accepted.
+     * @throws IOException the error of the request, if it failed.
+     */
+
+    public int orThrow() throws IOException {
+        if (error != null) {
+            throw error;
+        }
+        return bytesWritten;
+    }
+
+
+    @Override
+    public String toString() {
+        return type + (isSuccess() ? ": ok (" + bytesWritten + " bytes" : ": " + errno + " (" + error.getMessage())
+                + ", " + latencyNanos / 1000 + " us)";
+    }
+}
@@ -0,0 +1,567 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+
+/**
+ * OperationScheduler
+ * this class sits in front of the kernel modules and decides when each Operation is written to
+ * its proc entry, so that a bulk job cannot make the interactive operations of the user wait
+ * behind thousands of its own requests.
+ *
+ * Operations are submitted to one of two lanes, INTERACTIVE or BULK, each a bounded FIFO queue.
+ * submit() blocks while the lane is full, which holds a bulk producer back to the pace of the
+ * kernel; trySubmit() returns at once with a future failed with RejectedExecutionException
+ * instead, and the rejection is counted. queued interactive operations always start before
+ * queued bulk ones, and one slot of the concurrency limit is kept free of bulk operations, so an
+ * interactive operation waits for at most the requests already in flight.
+ *
+ * The concurrency limit adapts to the latency of the requests: every window of completed
+ * operations the mean latency is compared with the baseline, the lowest latency seen (which
+ * drifts slowly up when the latency stays high at the lowest limit). above TOLERANCE times
+ * the baseline the modules are saturated and the limit shrinks by BACKOFF; otherwise, if the
+ * limit was reached during the window, it grows by one. the queue depths, rejections and the
+ * current limit are registered over JMX under OBJECT_NAME for the shared instance (disable with
+ * -Dfm.metrics.jmx=false).
+ *
+ * FMKernelModulesAsync sends its operations through the INTERACTIVE lane of the shared
+ * scheduler; FMKernelModules.deleteTree and copyTree, and BulkIngest on the kernel modules, send
+ * theirs through the BULK lane.
+ *
+ * @authors      Richard Quayson & Thomas Quarshie
+ */
+
+public final class OperationScheduler implements OperationSchedulerMXBean, AutoCloseable {
+    public static final String OBJECT_NAME = "fm:type=OperationScheduler";
+
+    // lane capacities, override with -Dfm.scheduler.interactiveQueue and -Dfm.scheduler.bulkQueue
+    public static final int DEFAULT_INTERACTIVE_CAPACITY = Integer.getInteger("fm.scheduler.interactiveQueue", 256);
+    public static final int DEFAULT_BULK_CAPACITY = Integer.getInteger("fm.scheduler.bulkQueue", 4096);
+
+    // bounds of the concurrency limit, override with -Dfm.scheduler.minLimit and -Dfm.scheduler.maxLimit
+    public static final int DEFAULT_MIN_LIMIT = Integer.getInteger("fm.scheduler.minLimit", 1);
+    public static final int DEFAULT_MAX_LIMIT = Integer.getInteger("fm.scheduler.maxLimit", 64);
+
+    // a window latency above TOLERANCE x baseline shrinks the limit to BACKOFF x limit
+    static final double TOLERANCE = 2.0;
+    static final double BACKOFF = 0.9;
+
+    // completions per window, at least, and the weight of a window in the baseline drift
+    private static final int MIN_WINDOW = 16;
+    private static final int BASELINE_DRIFT = 64;
+
+    private static volatile OperationScheduler shared;
+
+
+    /**
+     * Lane
+     * the queues operations wait in; INTERACTIVE operations are started first.
+     */
+
+    public enum Lane {
+        INTERACTIVE,
+        BULK
+    }
+
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition interactiveNotFull = lock.newCondition();
+    private final Condition bulkNotFull = lock.newCondition();
+    private final ArrayDeque<Task> interactive = new ArrayDeque<>();
+    private final ArrayDeque<Task> bulk = new ArrayDeque<>();
+    private final int interactiveCapacity;
+    private final int bulkCapacity;
+
+    // guarded by lock
+    private final AdaptiveLimit limit;
+    private int inFlight;
+    private boolean closed;
+    private long interactiveRejections;
+    private long bulkRejections;
+    private long completed;
+
+
+    public OperationScheduler() {
+        this(DEFAULT_INTERACTIVE_CAPACITY, DEFAULT_BULK_CAPACITY, DEFAULT_MIN_LIMIT, DEFAULT_MAX_LIMIT);
+    }
+
+
+    /**
+     * OperationScheduler
+     * this constructor creates a scheduler, not registered over JMX, starting at the lowest
+     * limit that leaves a slot for interactive operations.
+     *
+     * @param interactiveCapacity the operations the interactive lane holds.
+     * @param bulkCapacity the operations the bulk lane holds.
+     * @param minLimit the lowest concurrency limit.
+     * @param maxLimit the highest concurrency limit.
+     */
+
+    public OperationScheduler(int interactiveCapacity, int bulkCapacity, int minLimit, int maxLimit) {
+        if (interactiveCapacity < 1 || bulkCapacity < 1 || minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Invalid capacities or limits: " + interactiveCapacity + ", " + bulkCapacity
+                    + ", " + minLimit + ".." + maxLimit);
+        }
+        this.interactiveCapacity = interactiveCapacity;
+        this.bulkCapacity = bulkCapacity;
+        this.limit = new AdaptiveLimit(minLimit, maxLimit);
+    }
+
+
+    /**
+     * shared
+     * this method returns the scheduler shared by the whole program.
+     *
+     * @return OperationScheduler the shared scheduler.
+     */
+
+    public static OperationScheduler shared() {
+        OperationScheduler scheduler = shared;
+        if (scheduler == null) {
+            synchronized (OperationScheduler.class) {
+                scheduler = shared;
+                if (scheduler == null) {
+                    scheduler = new OperationScheduler();
+                    if (!"false".equals(System.getProperty("fm.metrics.jmx"))) {
+                        register(scheduler);
+                    }
+                    shared = scheduler;
+                }
+            }
+        }
+        return scheduler;
+    }
+
+
+    /**
+     * submit
+     * this method queues an operation, waiting while its lane is full.
+     *
+     * @param lane the lane to queue the operation in.
+     * @param operation the operation to send.
+     * @return CompletableFuture<OperationResult> the result of the request; failed with
+     *         RejectedExecutionException if the scheduler is closed, or InterruptedException if
+     *         the caller was interrupted while waiting.
+     */
+
+    public CompletableFuture<OperationResult> submit(Lane lane, Operation operation) {
+        return submit(new Task(lane, operation));
+    }
+
+    private CompletableFuture<OperationResult> submit(Task task) {
+        Lane lane = task.lane;
+        lock.lock();
+        try {
+            while (!closed && isFull(lane)) {
+                (lane == Lane.INTERACTIVE ? interactiveNotFull : bulkNotFull).await();
+            }
+            enqueue(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            task.future.completeExceptionally(e);
+        } finally {
+            lock.unlock();
+        }
+        return task.future;
+    }
+
+
+    /**
+     * trySubmit
+     * this method queues an operation if its lane has room.
+     *
+     * @param lane the lane to queue the operation in.
+     * @param operation the operation to send.
+     * @return CompletableFuture<OperationResult> the result of the request; failed at once with
+     *         RejectedExecutionException if the lane is full or the scheduler is closed.
+     */
+
+    public CompletableFuture<OperationResult> trySubmit(Lane lane, Operation operation) {
+        Task task = new Task(lane, operation);
+        lock.lock();
+        try {
+            if (!closed && isFull(lane)) {
+                if (lane == Lane.INTERACTIVE) {
+                    interactiveRejections++;
+                } else {
+                    bulkRejections++;
+                }
+                task.future.completeExceptionally(new RejectedExecutionException("The " + lane + " lane is full"));
+            } else {
+                enqueue(task);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return task.future;
+    }
+
+
+    /**
+     * run
+     * this method sends an operation like Operation.run, through a lane: it waits in the lane,
+     * then for its request. a rejection by a closed scheduler is reported in the result like a
+     * failed request, and so is an interrupt while the operation is still queued, which takes it
+     * out of its lane. once the operation has started, an interrupt no longer stops it: the
+     * request is waited for and the interrupt is kept for the caller, so the result reported is
+     * always the one of what was sent.
+     *
+     * @param lane the lane to queue the operation in.
+     * @param operation the operation to send.
+     * @return OperationResult the bytes accepted, the error code and the latency of the request.
+     */
+
+    public OperationResult run(Lane lane, Operation operation) {
+        long start = System.nanoTime();
+        Task task = new Task(lane, operation);
+        try {
+            return submit(task).get();
+        } catch (InterruptedException e) {
+            if (withdraw(task)) {
+                Thread.currentThread().interrupt();
+                return operation.complete(-1, interrupted(e), System.nanoTime() - start);
+            }
+            try {
+                return task.future.join();
+            } catch (CompletionException joined) {
+                return failed(operation, joined.getCause(), start);
+            } finally {
+                Thread.currentThread().interrupt();
+            }
+        } catch (ExecutionException e) {
+            return failed(operation, e.getCause(), start);
+        }
+    }
+
+    // take a task out of its lane if it has not started, failing its future
+    private boolean withdraw(Task task) {
+        lock.lock();
+        try {
+            if (!(task.lane == Lane.INTERACTIVE ? interactive : bulk).removeFirstOccurrence(task)) {
+                return false;
+            }
+            (task.lane == Lane.INTERACTIVE ? interactiveNotFull : bulkNotFull).signal();
+        } finally {
+            lock.unlock();
+        }
+        task.future.cancel(false);
+        return true;
+    }
+
+    // the result of an operation whose future failed, rethrowing what is not an IOException
+    private static OperationResult failed(Operation operation, Throwable cause, long start) {
+        if (cause instanceof InterruptedException) {
+            return operation.complete(-1, interrupted(cause), System.nanoTime() - start);
+        }
+        if (cause instanceof RuntimeException && !(cause instanceof RejectedExecutionException)) {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return operation.complete(-1, new IOException(cause.getMessage(), cause), System.nanoTime() - start);
+    }
+
+    private static InterruptedIOException interrupted(Throwable cause) {
+        InterruptedIOException e = new InterruptedIOException("Interrupted while waiting for the scheduler");
+        e.initCause(cause);
+        return e;
+    }
+
+
+    // with the lock held
+    private boolean isFull(Lane lane) {
+        return lane == Lane.INTERACTIVE ? interactive.size() >= interactiveCapacity : bulk.size() >= bulkCapacity;
+    }
+
+    // with the lock held
+    private void enqueue(Task task) {
+        if (closed) {
+            task.future.completeExceptionally(new RejectedExecutionException("The scheduler is closed"));
+            return;
+        }
+        (task.lane == Lane.INTERACTIVE ? interactive : bulk).add(task);
+        dispatch();
+    }
+
+    // start queued operations while the limit allows, with the lock held
+    private void dispatch() {
+        while (true) {
+            Task task;
+            if (!interactive.isEmpty() && inFlight < limit.get()) {
+                task = interactive.poll();
+                interactiveNotFull.signal();
+            } else if (!bulk.isEmpty() && inFlight < bulkLimit()) {
+                task = bulk.poll();
+                bulkNotFull.signal();
+            } else {
+                if (!interactive.isEmpty() || !bulk.isEmpty()) {
+                    // operations are waiting for a slot, the limit is what holds them back
+                    limit.saturated();
+                }
+                return;
+            }
+            inFlight++;
+            executor.execute(task);
+        }
+    }
+
+    // the slots bulk operations may take, one is left for interactive ones above a limit of 1
+    private int bulkLimit() {
+        return Math.max(1, limit.get() - 1);
+    }
+
+    // a request has returned, with the lock not held
+    private void completed(OperationResult result) {
+        lock.lock();
+        try {
+            inFlight--;
+            completed++;
+            if (result.isSuccess()) {
+                // a rejected request returns early, its latency says nothing about the load
+                limit.sample(result.getLatencyNanos());
+            }
+            dispatch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    @Override
+    public int getInteractiveQueueDepth() {
+        lock.lock();
+        try {
+            return interactive.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int getBulkQueueDepth() {
+        lock.lock();
+        try {
+            return bulk.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long getInteractiveRejections() {
+        lock.lock();
+        try {
+            return interactiveRejections;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long getBulkRejections() {
+        lock.lock();
+        try {
+            return bulkRejections;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int getConcurrencyLimit() {
+        lock.lock();
+        try {
+            return limit.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long getCompleted() {
+        lock.lock();
+        try {
+            return completed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long getBaselineLatencyMicros() {
+        lock.lock();
+        try {
+            return limit.baselineNanos / 1000;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long getWindowLatencyMicros() {
+        lock.lock();
+        try {
+            return limit.windowMeanNanos / 1000;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * close
+     * this method stops accepting operations, fails the ones still queued with
+     * RejectedExecutionException and waits for the ones in flight to finish.
+     *
+     * @return void
+     */
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            for (ArrayDeque<Task> lane : List.of(interactive, bulk)) {
+                Task task;
+                while ((task = lane.poll()) != null) {
+                    task.future.completeExceptionally(new RejectedExecutionException("The scheduler is closed"));
+                }
+            }
+            interactiveNotFull.signalAll();
+            bulkNotFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        executor.close();
+    }
+
+
+    private static void register(OperationScheduler scheduler) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(scheduler, new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            // already registered by another class loader, the scheduler still works
+        }
+    }
+
+
+    /**
+     * AdaptiveLimit
+     * the concurrency limit and the latency windows that move it; not thread-safe, the
+     * scheduler uses it with its lock held.
+     */
+
+    static final class AdaptiveLimit {
+        private final int minLimit;
+        private final int maxLimit;
+        private int limit;
+        private long baselineNanos;
+        private long windowMeanNanos;
+        private long windowSum;
+        private int windowCount;
+        private boolean windowSaturated;
+
+        // starts at the lowest limit that leaves a slot for interactive operations
+        AdaptiveLimit(int minLimit, int maxLimit) {
+            this.minLimit = minLimit;
+            this.maxLimit = maxLimit;
+            this.limit = Math.min(maxLimit, Math.max(minLimit, 2));
+        }
+
+        int get() {
+            return limit;
+        }
+
+        // operations were kept waiting by the limit during this window
+        void saturated() {
+            windowSaturated = true;
+        }
+
+        // add the latency of a request, and move the limit once the window is complete
+        void sample(long latencyNanos) {
+            windowSum += latencyNanos;
+            if (++windowCount < Math.max(MIN_WINDOW, limit)) {
+                return;
+            }
+            long mean = windowSum / windowCount;
+            windowMeanNanos = mean;
+            if (baselineNanos == 0 || mean < baselineNanos) {
+                baselineNanos = mean;
+            } else if (mean > baselineNanos * TOLERANCE && limit > minLimit) {
+                // overloaded, fewer requests at a time should bring the latency back
+                limit = Math.max(minLimit, Math.min(limit - 1, (int) (limit * BACKOFF)));
+                windowSaturated = false;
+            } else if (mean > baselineNanos * TOLERANCE) {
+                // slow even at the lowest limit, the baseline follows the lasting change slowly
+                baselineNanos += Math.max(1, (mean - baselineNanos) / BASELINE_DRIFT);
+            }
+            if (windowSaturated && mean <= baselineNanos * TOLERANCE) {
+                limit = Math.min(maxLimit, limit + 1);
+            }
+            windowSum = 0;
+            windowCount = 0;
+            windowSaturated = false;
+        }
+    }
+
+
+    /**
+     * Task
+     * a queued operation and the future its result completes.
+     */
+
+    private final class Task implements Runnable {
+        final Lane lane;
+        final Operation operation;
+        final CompletableFuture<OperationResult> future = new CompletableFuture<>();
+
+        Task(Lane lane, Operation operation) {
+            this.lane = lane;
+            this.operation = operation;
+        }
+
+        @Override
+        public void run() {
+            OperationResult result;
+            try {
+                result = operation.run();
+            } catch (RuntimeException e) {
+                lock.lock();
+                try {
+                    inFlight--;
+                    dispatch();
+                } finally {
+                    lock.unlock();
+                }
+                future.completeExceptionally(e);
+                return;
+            }
+            completed(result);
+            future.complete(result);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+/**
+ * OperationSchedulerMXBean
+ * the management interface of OperationScheduler, registered with the platform MBean server
+ * under OperationScheduler.OBJECT_NAME.
+ *
+ * @authors      Richard Quayson & Thomas Quarshie
+ */
+
+public interface OperationSchedulerMXBean {
+
+    int getInteractiveQueueDepth();
+
+    int getBulkQueueDepth();
+
+    // operations submitted to a full lane and turned away
+    long getInteractiveRejections();
+
+    long getBulkRejections();
+
+    int getInFlight();
+
+    // the number of operations allowed in flight at the moment
+    int getConcurrencyLimit();
+
+    long getCompleted();
+
+    // the latency the limit is measured against, and the mean of the last window, in microseconds
+    long getBaselineLatencyMicros();
+
+    long getWindowLatencyMicros();
+}
@@ -0,0 +1,99 @@
+/**
+ * OperationStats
+ * this class holds what OperationMetrics recorded for one kind of operation: how many requests
+ * were sent, how many failed, how many bytes the proc entries accepted and how long the
+ * requests took. latencies are in nanoseconds; percentiles are rounded up to the precision of
+ * LatencyHistogram. the getters make it readable as composite data over JMX.
+ *
+ * @authors      Richard Quayson & Thomas Quarshie
+ */
+
+public final class OperationStats {
+    private final Operation.Type type;
+    private final long count;
+    private final long errors;
+    private final long bytesWritten;
+    private final LatencyHistogram.Snapshot latencies;
+
+
+    OperationStats(Operation.Type type, long count, long errors, long bytesWritten, LatencyHistogram.Snapshot latencies) {
+        this.type = type;
+        this.count = count;
+        this.errors = errors;
+        this.bytesWritten = bytesWritten;
+        this.latencies = latencies;
+    }
+
+
+    public String getType() {
+        return type.name();
+    }
+
+    // the number of requests sent, failed ones included
+    public long getCount() {
+        return count;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    public double getMeanNanos() {
+        return latencies.getMean();
+    }
+
+    public long getP50Nanos() {
+        return latencies.valueAt(0.50);
+    }
+
+    public long getP99Nanos() {
+        return latencies.valueAt(0.99);
+    }
+
+    public long getP999Nanos() {
+        return latencies.valueAt(0.999);
+    }
+
+    public long getMaxNanos() {
+        return latencies.getMax();
+    }
+
+
+    /**
+     * latencyAt
+     * this method returns any percentile of the latencies, see LatencyHistogram.Snapshot.valueAt.
+     *
+     * @param quantile the fraction, e.g. 0.9 for the 90th percentile.
+     * @return long the latency in nanoseconds.
+     */
+
+    public long latencyAt(double quantile) {
+        return latencies.valueAt(quantile);
+    }
+
+
+    /**
+     * minus
+     * this method returns what was recorded after earlier stats of the same operation.
+     *
+     * @param earlier the earlier stats.
+     * @return OperationStats the stats of the requests sent in between.
+     */
+
+    public OperationStats minus(OperationStats earlier) {
+        return new OperationStats(type, Math.max(0, count - earlier.count), Math.max(0, errors - earlier.errors),
+                Math.max(0, bytesWritten - earlier.bytesWritten), latencies.minus(earlier.latencies));
+    }
+
+
+    @Override
+    public String toString() {
+        return String.format("%-13s count=%d errors=%d bytes=%d mean=%.1fus p50=%.1fus p99=%.1fus p999=%.1fus max=%.1fus",
+                type, count, errors, bytesWritten, getMeanNanos() / 1e3, getP50Nanos() / 1e3,
+                getP99Nanos() / 1e3, getP999Nanos() / 1e3, getMaxNanos() / 1e3);
+    }
+}
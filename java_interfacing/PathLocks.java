@@ -0,0 +1,264 @@
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+
+/**
+ * PathLocks
+ * this class serializes the FMKernelModules operations that touch the same path, while those on
+ * unrelated paths run in parallel. every path maps to one of a fixed number of read-write locks
+ * (stripes) by the hash of its normalized form.
+ *
+ * The locks are hierarchical: an operation takes its own path exclusively (or shared, for a
+ * read) and every folder above it shared, so a rename or delete of a folder, which takes the
+ * folder exclusively, waits for the operations inside it and keeps new ones out until it is
+ * done. the root is not locked, it is never renamed. the stripes of an operation are taken in
+ * ascending order, so two operations can never wait on each other; two paths that share a stripe
+ * merely exclude each other, which with DEFAULT_STRIPES stripes is rare. a thread must close
+ * its hold before it takes another one, holds do not nest.
+ *
+ *   PathLocks.Hold hold = PathLocks.shared().lock(path);
+ *   try {
+ *       ...
+ *   } finally {
+ *       hold.close();
+ *   }
+ *
+ * @authors      Richard Quayson & Thomas Quarshie
+ */
+
+public final class PathLocks {
+    // number of stripes, rounded up to a power of two, override with -Dfm.locks.stripes
+    public static final int DEFAULT_STRIPES = Integer.getInteger("fm.locks.stripes", 1024);
+
+    private static final PathLocks SHARED = new PathLocks(DEFAULT_STRIPES);
+
+    private final ReentrantReadWriteLock[] stripes;
+    private final int mask;
+
+
+    /**
+     * PathLocks
+     * this constructor creates a lock manager with its own stripes.
+     *
+     * @param stripeCount the number of stripes, rounded up to a power of two.
+     */
+
+    public PathLocks(int stripeCount) {
+        if (stripeCount < 1 || stripeCount > 1 << 20) {
+            throw new IllegalArgumentException("stripeCount must be between 1 and 2^20: " + stripeCount);
+        }
+        int size = Integer.highestOneBit(stripeCount);
+        size = size < stripeCount ? size << 1 : size;
+        stripes = new ReentrantReadWriteLock[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new ReentrantReadWriteLock();
+        }
+        mask = size - 1;
+    }
+
+
+    // the locks FMKernelModules takes
+    public static PathLocks shared() {
+        return SHARED;
+    }
+
+
+    /**
+     * lock
+     * this method takes a path exclusively, and the folders above it shared, waiting as long
+     * as needed; for operations that change a file, or a folder and everything in it.
+     *
+     * @param path the path the operation changes.
+     * @return Hold the locks taken, to be closed when the operation is done.
+     */
+
+    public Hold lock(String path) {
+        Hold hold = new Hold();
+        add(hold, path, true);
+        return hold.acquire();
+    }
+
+
+    /**
+     * lock
+     * this method takes two paths exclusively, and the folders above them shared, for
+     * operations that change two paths at once (the source and target of a rename).
+     *
+     * @param path the first path the operation changes.
+     * @param otherPath the second path the operation changes.
+     * @return Hold the locks taken, to be closed when the operation is done.
+     */
+
+    public Hold lock(String path, String otherPath) {
+        Hold hold = new Hold();
+        add(hold, path, true);
+        add(hold, otherPath, true);
+        return hold.acquire();
+    }
+
+
+    /**
+     * lock
+     * this method takes many paths exclusively, and the folders above them shared, for a batch
+     * of operations that change them all; the stripes are taken in ascending order, like those
+     * of a single path.
+     *
+     * @param paths the paths the operations change.
+     * @return Hold the locks taken, to be closed when the operations are done.
+     */
+
+    public Hold lock(Collection<String> paths) {
+        Hold hold = new Hold();
+        for (String path : paths) {
+            add(hold, path, true);
+        }
+        return hold.acquire();
+    }
+
+
+    /**
+     * lockForCopy
+     * this method takes a source path shared and a target path exclusively, with the folders
+     * above both shared, for operations that read one tree and write another.
+     *
+     * @param sourcePath the path the operation reads.
+     * @param targetPath the path the operation changes.
+     * @return Hold the locks taken, to be closed when the operation is done.
+     */
+
+    public Hold lockForCopy(String sourcePath, String targetPath) {
+        Hold hold = new Hold();
+        add(hold, sourcePath, false);
+        add(hold, targetPath, true);
+        return hold.acquire();
+    }
+
+
+    /**
+     * lockShared
+     * this method takes a path and the folders above it shared, for operations that only read
+     * the path; they run alongside each other, but not alongside a change of the path.
+     *
+     * @param path the path the operation reads.
+     * @return Hold the locks taken, to be closed when the operation is done.
+     */
+
+    public Hold lockShared(String path) {
+        Hold hold = new Hold();
+        add(hold, path, false);
+        return hold.acquire();
+    }
+
+
+    /**
+     * add
+     * this method adds the stripes of a path and of the folders above it to a hold. the hash of
+     * every prefix is built in one pass over the path, without taking substrings.
+     *
+     * @param hold the hold to add to.
+     * @param path the path, normalized here if needed.
+     * @param exclusive whether the path itself is taken exclusively.
+     * @return void
+     */
+
+    private void add(Hold hold, String path, boolean exclusive) {
+        String normalized = normalize(path);
+        int hash = 0;
+        // from 1, the root is not locked; each '/' ends the path of a folder above
+        for (int i = 1; i < normalized.length(); i++) {
+            char c = normalized.charAt(i);
+            if (c == '/') {
+                hold.add(stripe(hash), false);
+            }
+            hash = 31 * hash + c;
+        }
+        if (normalized.length() > 1) {
+            hold.add(stripe(hash), exclusive);
+        }
+    }
+
+    private int stripe(int hash) {
+        // spread the high bits, the low ones of path hashes are alike
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    /**
+     * normalize
+     * this method returns the absolute path without "." and ".." segments, duplicate or
+     * trailing separators; a path that is already like that is returned as is.
+     *
+     * @param path the path to normalize.
+     * @return String the normalized path.
+     */
+
+    static String normalize(String path) {
+        if (path.startsWith("/") && (path.length() == 1 || !path.endsWith("/")) && !path.contains("//")
+                && !path.contains("/./") && !path.contains("/../") && !path.endsWith("/.") && !path.endsWith("/..")) {
+            return path;
+        }
+        return Paths.get(path).toAbsolutePath().normalize().toString();
+    }
+
+
+    /**
+     * Hold
+     * the stripes an operation takes, in ascending order, each once; closing it releases them.
+     */
+
+    public final class Hold implements AutoCloseable {
+        private int[] indices = new int[8];
+        private boolean[] exclusive = new boolean[8];
+        private int count;
+
+        private Hold() {
+        }
+
+        // add a stripe, keeping the indices sorted; a stripe taken both ways is taken exclusively
+        private void add(int index, boolean exclusiveMode) {
+            int i = count;
+            while (i > 0 && indices[i - 1] > index) {
+                i--;
+            }
+            if (i > 0 && indices[i - 1] == index) {
+                exclusive[i - 1] |= exclusiveMode;
+                return;
+            }
+            if (count == indices.length) {
+                indices = Arrays.copyOf(indices, count * 2);
+                exclusive = Arrays.copyOf(exclusive, count * 2);
+            }
+            System.arraycopy(indices, i, indices, i + 1, count - i);
+            System.arraycopy(exclusive, i, exclusive, i + 1, count - i);
+            indices[i] = index;
+            exclusive[i] = exclusiveMode;
+            count++;
+        }
+
+        private Hold acquire() {
+            for (int i = 0; i < count; i++) {
+                ReentrantReadWriteLock stripe = stripes[indices[i]];
+                if (exclusive[i]) {
+                    stripe.writeLock().lock();
+                } else {
+                    stripe.readLock().lock();
+                }
+            }
+            return this;
+        }
+
+        @Override
+        public void close() {
+            for (int i = count - 1; i >= 0; i--) {
+                ReentrantReadWriteLock stripe = stripes[indices[i]];
+                if (exclusive[i]) {
+                    stripe.writeLock().unlock();
+                } else {
+                    stripe.readLock().unlock();
+                }
+            }
+            count = 0;
+        }
+    }
+}
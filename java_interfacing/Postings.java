@@ -0,0 +1,201 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * Postings
+ * this class walks the postings of one term: the documents that contain it, in ascending
+ * document order, each with the positions of the term in the document. ContentIndex reads them
+ * from the segments on disk (IndexSegment) and from the postings still in memory, and chains
+ * those of a term together, since every source holds a higher range of documents than the one
+ * before it.
+ *
+ * Postings are encoded as a sequence of documents, each the gap from the previous document
+ * (the first one in full), the number of positions and the gaps between the positions.
+ *
+ * @authors      Richard Quayson & Thomas Quarshie
+ */
+
+public abstract class Postings {
+    // the current document, its number of positions and the positions, valid after next()
+    protected int doc = -1;
+    protected int freq;
+    protected int[] positions = new int[16];
+
+
+    Postings() {
+    }
+
+
+    /**
+     * next
+     * this method moves to the next document.
+     *
+     * @return boolean false once there are no more documents.
+     */
+
+    public abstract boolean next();
+
+
+    /**
+     * advance
+     * this method moves to the first document at or after a target.
+     *
+     * @param target the document to move to.
+     * @return boolean false if there is none.
+     */
+
+    public boolean advance(int target) {
+        while (doc < target) {
+            if (!next()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    public int doc() {
+        return doc;
+    }
+
+    public int freq() {
+        return freq;
+    }
+
+    // the positions of the current document are positions()[0 .. freq() - 1], ascending
+    public int[] positions() {
+        return positions;
+    }
+
+    // whether the term occurs at a position of the current document
+    public boolean hasPosition(int position) {
+        return Arrays.binarySearch(positions, 0, freq, position) >= 0;
+    }
+
+
+    protected void ensurePositions(int count) {
+        if (positions.length < count) {
+            positions = new int[Math.max(count, positions.length * 2)];
+        }
+    }
+
+
+    // the postings of no documents
+    static Postings empty() {
+        return new Postings() {
+            @Override
+            public boolean next() {
+                return false;
+            }
+        };
+    }
+
+
+    /**
+     * Encoded
+     * postings in the encoded form, read from a buffer (a segment mapped from disk).
+     */
+
+    static final class Encoded extends Postings {
+        private final ByteBuffer buffer;
+        private int index;
+        private int remaining;
+
+        Encoded(ByteBuffer buffer, int offset, int docCount) {
+            this.buffer = buffer;
+            this.index = offset;
+            this.remaining = docCount;
+        }
+
+        @Override
+        public boolean next() {
+            if (remaining == 0) {
+                return false;
+            }
+            remaining--;
+            int gap = readVarint();
+            doc = doc < 0 ? gap : doc + gap;
+            freq = readVarint();
+            ensurePositions(freq);
+            int position = 0;
+            for (int i = 0; i < freq; i++) {
+                position += readVarint();
+                positions[i] = position;
+            }
+            return true;
+        }
+
+        private int readVarint() {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = buffer.get(index++);
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Buffered
+     * postings not yet written to disk, held as ints: document, number of positions, positions.
+     */
+
+    static final class Buffered extends Postings {
+        private final int[] data;
+        private final int size;
+        private int index;
+
+        Buffered(int[] data, int size) {
+            this.data = data;
+            this.size = size;
+        }
+
+        @Override
+        public boolean next() {
+            if (index >= size) {
+                return false;
+            }
+            doc = data[index++];
+            freq = data[index++];
+            ensurePositions(freq);
+            System.arraycopy(data, index, positions, 0, freq);
+            index += freq;
+            return true;
+        }
+    }
+
+
+    /**
+     * Chained
+     * the postings of several sources one after another, for sources of ascending documents.
+     */
+
+    static final class Chained extends Postings {
+        private final List<Postings> sources;
+        private int current;
+
+        Chained(List<Postings> sources) {
+            this.sources = sources;
+        }
+
+        @Override
+        public boolean next() {
+            while (current < sources.size()) {
+                Postings source = sources.get(current);
+                if (source.next()) {
+                    doc = source.doc;
+                    freq = source.freq;
+                    positions = source.positions;
+                    return true;
+                }
+                current++;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,457 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+
+/**
+ * ProcChannelManager
+ * this class keeps reusable FileChannels open on the /proc entries of the kernel modules, so
+ * that requests do not pay for an open, a charset encoder, a fresh buffer and a close every
+ * time. Every entry has a small pool of channels, each with its own direct ByteBuffer and
+ * encoders: a request takes an idle channel (or opens one when all are busy), encodes into its
+ * buffer, sends it with a single write() call, which is what the kernel modules treat as one
+ * request, and gives the channel back. requests on the same entry therefore run in parallel,
+ * each on a channel of its own, and up to CHANNELS_PER_ENTRY channels stay open per entry.
+ * Framed requests are encoded by the FrameEncoder of the channel, or one of the caller's. a
+ * channel keeps at most MAX_RETAINED_CAPACITY bytes of buffer; a larger request is encoded into
+ * a buffer of its own, which is released with it.
+ *
+ * Entries are keyed by the proc path string, so pointing the public *_PROC_FILE fields of
+ * FMKernelModules at temp files or FIFOs is enough to run everything without the modules. where
+ * the replies matter, e.g. the short writes of a framed batch, emulate() puts a Module in place
+ * of the entry, which answers every write itself.
+ * When a module is reloaded its proc entry is recreated; a failed write on a stale handle
+ * reopens the entry and is retried once.
+ *
+ * @authors      Richard Quayson & Thomas Quarshie
+ */
+
+public class ProcChannelManager {
+    // initial capacity of the per-entry request buffer, it grows on demand
+    private static final int INITIAL_BUFFER_CAPACITY = 8 * 1024;
+
+    // the most a channel keeps of its buffers, a larger request is encoded into a buffer of its own
+    private static final int MAX_RETAINED_CAPACITY = Math.max(INITIAL_BUFFER_CAPACITY, ProcStreamWriter.CHUNK_SIZE);
+
+    // idle channels kept open per proc entry, override with -Dfm.proc.channelsPerEntry
+    public static final int CHANNELS_PER_ENTRY = Math.max(1, Integer.getInteger("fm.proc.channelsPerEntry",
+            Math.max(4, Runtime.getRuntime().availableProcessors() * 2)));
+
+    // the channels of every proc path
+    private static final ConcurrentHashMap<String, ProcEntry> ENTRIES = new ConcurrentHashMap<>();
+
+
+    /**
+     * write
+     * this method encodes the request as UTF-8 and sends it to the proc entry in a single write.
+     *
+     * @param procFile the path of the proc entry to write to.
+     * @param data the request to send.
+     * @return int the number of bytes the proc entry accepted.
+     * @throws IOException if the entry cannot be opened or rejects the request.
+     */
+
+    public static int write(String procFile, CharSequence data) throws IOException {
+        ProcEntry entry = entryFor(procFile);
+        ProcChannel channel = entry.acquire();
+        try {
+            return channel.write(data);
+        } finally {
+            entry.release(channel);
+        }
+    }
+
+
+    /**
+     * write
+     * this method concatenates the given buffers and sends them to the proc entry in a single write.
+     * the buffers are consumed, i.e. their positions are advanced to their limits.
+     *
+     * @param procFile the path of the proc entry to write to.
+     * @param parts the buffers making up the request, in order.
+     * @return int the number of bytes the proc entry accepted.
+     * @throws IOException if the entry cannot be opened or rejects the request.
+     */
+
+    public static int write(String procFile, ByteBuffer... parts) throws IOException {
+        ProcEntry entry = entryFor(procFile);
+        ProcChannel channel = entry.acquire();
+        try {
+            return channel.write(parts);
+        } finally {
+            entry.release(channel);
+        }
+    }
+
+
+    /**
+     * write
+     * this method sends frames of a batch to the proc entry in a single write, straight from the
+     * buffer of the encoder (see FrameEncoder.batch).
+     *
+     * @param procFile the path of the proc entry to write to.
+     * @param frames the batch.
+     * @param fromFrame the first frame to send.
+     * @return int the number of bytes the proc entry accepted, less than the bytes sent if the
+     *         module stopped at a failed frame.
+     * @throws IOException if the entry cannot be opened or rejects the first frame sent.
+     */
+
+    public static int write(String procFile, FrameEncoder frames, int fromFrame) throws IOException {
+        ProcEntry entry = entryFor(procFile);
+        ProcChannel channel = entry.acquire();
+        try {
+            return channel.send(frames.batch(fromFrame));
+        } finally {
+            entry.release(channel);
+        }
+    }
+
+
+    /**
+     * writeFramed
+     * this method sends an operation to its proc entry as a batch of one frame, encoded with the
+     * encoder of the channel it is sent on.
+     *
+     * @param procFile the path of the proc entry to write to.
+     * @param operation the operation.
+     * @return int the number of bytes the proc entry accepted.
+     * @throws IOException if the entry cannot be opened or rejects the request.
+     */
+
+    public static int writeFramed(String procFile, Operation operation) throws IOException {
+        ProcEntry entry = entryFor(procFile);
+        ProcChannel channel = entry.acquire();
+        try {
+            return channel.writeFramed(operation);
+        } finally {
+            entry.release(channel);
+        }
+    }
+
+
+    /**
+     * emulate
+     * this method answers the writes to a proc path with a Module instead of the file, until
+     * closeAll() or emulate(procFile, null); the channels open on the path are not used again.
+     *
+     * @param procFile the path of the proc entry.
+     * @param module what answers the writes, or null to write to the file again.
+     * @return void
+     */
+
+    public static void emulate(String procFile, Module module) {
+        ProcEntry entry = entryFor(procFile);
+        entry.module = module;
+        entry.close();
+    }
+
+
+    /**
+     * reopen
+     * this method closes the cached channels of a proc entry, so that the next requests reopen
+     * it; channels busy with a request are closed when they are given back. call it after
+     * reloading a kernel module.
+     *
+     * @param procFile the path of the proc entry.
+     * @return void
+     */
+
+    public static void reopen(String procFile) {
+        ProcEntry entry = ENTRIES.get(procFile);
+        if (entry != null) {
+            entry.close();
+        }
+    }
+
+
+    /**
+     * closeAll
+     * this method closes and forgets every cached channel.
+     *
+     * @return void
+     */
+
+    public static void closeAll() {
+        for (ProcEntry entry : ENTRIES.values()) {
+            entry.close();
+        }
+        ENTRIES.clear();
+    }
+
+
+    /**
+     * entryFor
+     * this method returns the channel pool of a proc entry, creating it if needed.
+     *
+     * @param procFile the path of the proc entry.
+     * @return ProcEntry the channels of the entry.
+     */
+
+    private static ProcEntry entryFor(String procFile) {
+        Objects.requireNonNull(procFile, "procFile");
+        ProcEntry entry = ENTRIES.get(procFile);
+        if (entry == null) {
+            entry = ENTRIES.computeIfAbsent(procFile, ProcEntry::new);
+        }
+        return entry;
+    }
+
+
+    /**
+     * Module
+     * what stands in for a kernel module behind an emulated proc entry.
+     */
+
+    public interface Module {
+
+        /**
+         * write
+         * this method performs a request the way the module does on a write() to its entry.
+         *
+         * @param request the request, consumed up to the bytes accepted.
+         * @return int the number of bytes accepted, fewer than sent for a short write.
+         * @throws IOException the failure the write would return.
+         */
+
+        int write(ByteBuffer request) throws IOException;
+    }
+
+
+    /**
+     * ProcEntry
+     * the idle channels of a single proc entry, in a fixed array of slots that requests take
+     * them from and put them back in without locking or allocating. closing the entry starts a
+     * new generation; channels of an older one are closed instead of being reused.
+     */
+
+    private static final class ProcEntry {
+        private final Path path;
+        private final AtomicReferenceArray<ProcChannel> idle = new AtomicReferenceArray<>(CHANNELS_PER_ENTRY);
+        private volatile int generation;
+        private volatile Module module;
+
+        ProcEntry(String procFile) {
+            this.path = Paths.get(procFile);
+        }
+
+        // an idle channel of the current generation, or a new one when there is none
+        ProcChannel acquire() {
+            int start = slot();
+            for (int i = 0; i < CHANNELS_PER_ENTRY; i++) {
+                int index = (start + i) % CHANNELS_PER_ENTRY;
+                if (idle.get(index) != null) {
+                    ProcChannel channel = idle.getAndSet(index, null);
+                    if (channel != null) {
+                        if (channel.generation == generation) {
+                            return channel;
+                        }
+                        channel.close();
+                    }
+                }
+            }
+            return new ProcChannel(path, generation, module);
+        }
+
+        // keep the channel for the next request, or close it if every slot is taken
+        void release(ProcChannel channel) {
+            if (channel.generation == generation) {
+                int start = slot();
+                for (int i = 0; i < CHANNELS_PER_ENTRY; i++) {
+                    if (idle.compareAndSet((start + i) % CHANNELS_PER_ENTRY, null, channel)) {
+                        return;
+                    }
+                }
+            }
+            channel.close();
+        }
+
+        void close() {
+            generation++;
+            for (int i = 0; i < CHANNELS_PER_ENTRY; i++) {
+                ProcChannel channel = idle.getAndSet(i, null);
+                if (channel != null) {
+                    channel.close();
+                }
+            }
+        }
+
+        // the slot a thread looks at first, so that threads spread over the slots
+        private static int slot() {
+            return (int) (Thread.currentThread().threadId() % CHANNELS_PER_ENTRY);
+        }
+    }
+
+
+    /**
+     * ProcChannel
+     * an open channel on a proc entry, with its request buffer and encoders. a channel is used
+     * by one request at a time, the one that took it from its ProcEntry.
+     */
+
+    private static final class ProcChannel {
+        private final Path path;
+        private final int generation;
+        // answers the requests instead of the file, null for a real entry
+        private final Module module;
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private ByteBuffer buffer = ByteBuffer.allocateDirect(INITIAL_BUFFER_CAPACITY);
+        // created on the first framed request
+        private FrameEncoder frames;
+        private FileChannel channel;
+        private Object fileKey;
+
+        ProcChannel(Path path, int generation, Module module) {
+            this.path = path;
+            this.generation = generation;
+            this.module = module;
+        }
+
+        int write(CharSequence data) throws IOException {
+            return send(encode(data));
+        }
+
+        int write(ByteBuffer... parts) throws IOException {
+            int size = 0;
+            for (ByteBuffer part : parts) {
+                size += part.remaining();
+            }
+            ByteBuffer request = reserve(size);
+            request.clear();
+            for (ByteBuffer part : parts) {
+                request.put(part);
+            }
+            request.flip();
+            return send(request);
+        }
+
+        int writeFramed(Operation operation) throws IOException {
+            if (frames == null) {
+                frames = new FrameEncoder(INITIAL_BUFFER_CAPACITY);
+            }
+            frames.reset().add(operation);
+            try {
+                return send(frames.batch(0));
+            } finally {
+                if (frames.size() > MAX_RETAINED_CAPACITY) {
+                    // the encoder grew for this request, the next one starts a small one
+                    frames = null;
+                }
+            }
+        }
+
+        void close() {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    // nothing useful to do, the handle is dropped either way
+                }
+                channel = null;
+                fileKey = null;
+            }
+        }
+
+        // encode the request, into the reusable buffer when it fits in what the channel keeps
+        private ByteBuffer encode(CharSequence data) throws CharacterCodingException {
+            long worst = (long) data.length() * 3;
+            ByteBuffer request = reserve(worst <= MAX_RETAINED_CAPACITY ? (int) worst : FrameEncoder.utf8Length(data));
+            CharBuffer chars = CharBuffer.wrap(data);
+            request.clear();
+            encoder.reset();
+            CoderResult result = encoder.encode(chars, request, true);
+            if (!result.isUnderflow()) {
+                result.throwException();
+            }
+            result = encoder.flush(request);
+            if (!result.isUnderflow()) {
+                result.throwException();
+            }
+            request.flip();
+            return request;
+        }
+
+        // the reusable buffer, grown to the size if it stays within MAX_RETAINED_CAPACITY, or a
+        // buffer for this request alone, released with it
+        private ByteBuffer reserve(int size) {
+            if (size > MAX_RETAINED_CAPACITY) {
+                return ByteBuffer.allocateDirect(size);
+            }
+            if (buffer.capacity() < size) {
+                int capacity = buffer.capacity();
+                while (capacity < size) {
+                    capacity = Math.min(MAX_RETAINED_CAPACITY, capacity * 2);
+                }
+                buffer = ByteBuffer.allocateDirect(capacity);
+            }
+            return buffer;
+        }
+
+        // send a request in one write, reopening once if the entry was recreated
+        int send(ByteBuffer request) throws IOException {
+            if (module != null) {
+                return module.write(request);
+            }
+            boolean reopened = channel == null || !channel.isOpen();
+            if (reopened) {
+                open();
+            }
+            int start = request.position();
+            try {
+                return channel.write(request);
+            } catch (IOException e) {
+                if (reopened || !isStale()) {
+                    throw e;
+                }
+                close();
+                open();
+                request.position(start);
+                return channel.write(request);
+            }
+        }
+
+        private void open() throws IOException {
+            close();
+            // the modules ignore the offset; appending keeps the requests of every channel of a
+            // stand-in file, where separate positions would overwrite each other
+            channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            try {
+                fileKey = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+            } catch (IOException e) {
+                fileKey = null;
+            }
+        }
+
+        // a handle is stale when the entry it was opened on has since been removed or recreated
+        private boolean isStale() {
+            if (!channel.isOpen()) {
+                return true;
+            }
+            try {
+                Object currentKey = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+                return fileKey != null && !fileKey.equals(currentKey);
+            } catch (NoSuchFileException e) {
+                return true;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,145 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.function.Function;
+
+
+/**
+ * ProcFsBackend
+ * this class performs the mutations through the kernel modules, by writing requests to their
+ * /proc entries (the FMKernelModules.*_PROC_FILE paths) through Operation. a request that the
+ * module accepts has been performed by the time the write returns. every operation is sent like
+ * the FMKernelModules ones (see FMKernelModules.perform): under the PathLocks of its paths, after
+ * the appends buffered for them, with the change queued for the content index and reported to
+ * the log. a backend created with a lane sends its operations through that lane of
+ * OperationScheduler.shared(); copyFile streams the content through ProcStreamWriter either way.
+ *
+ * @authors      Richard Quayson & Thomas Quarshie
+ */
+
+public class ProcFsBackend extends LocalFsBackend {
+    public static final String NAME = "proc";
+
+    // the scheduler lane the operations go through, null to write them directly
+    private final OperationScheduler.Lane lane;
+
+    // false for the tree operations of FMKernelModules, which hold the locks of the whole tree
+    private final boolean perform;
+
+
+    public ProcFsBackend() {
+        this(null);
+    }
+
+
+    /**
+     * ProcFsBackend
+     * this constructor creates a backend whose operations wait in a lane of the shared
+     * scheduler, e.g. BULK for jobs that must not hold up the interactive operations.
+     *
+     * @param lane the lane of OperationScheduler.shared(), or null to write the requests directly.
+     */
+
+    public ProcFsBackend(OperationScheduler.Lane lane) {
+        this(lane, true);
+    }
+
+
+    /**
+     * ProcFsBackend
+     * this constructor creates a backend that may leave out the locks, the draining, the index
+     * and the log, for a caller that does all of them around the whole job.
+     *
+     * @param lane the lane of OperationScheduler.shared(), or null to write the requests directly.
+     * @param perform whether the operations are sent through FMKernelModules.perform.
+     */
+
+    ProcFsBackend(OperationScheduler.Lane lane, boolean perform) {
+        this.lane = lane;
+        this.perform = perform;
+    }
+
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+
+    /**
+     * isAvailable
+     * this method tells whether all the kernel modules are loaded, i.e. every proc entry exists
+     * and can be written to.
+     *
+     * @return boolean true if the modules can be used.
+     */
+
+    @Override
+    public boolean isAvailable() {
+        for (String procFile : new String[] {
+                FMKernelModules.CREATE_FOLDER_PROC_FILE, FMKernelModules.RENAME_FOLDER_PROC_FILE,
+                FMKernelModules.DELETE_FOLDER_PROC_FILE, FMKernelModules.CREATE_FILE_PROC_FILE,
+                FMKernelModules.RENAME_FILE_PROC_FILE, FMKernelModules.UPDATE_FILE_PROC_FILE,
+                FMKernelModules.DELETE_FILE_PROC_FILE }) {
+            if (!Files.isWritable(Paths.get(procFile))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    @Override
+    public void createFolder(String folderPath) throws IOException {
+        send(Operation.createFolder(folderPath));
+    }
+
+    @Override
+    public void renameFolder(String srcFolderPath, String newName) throws IOException {
+        send(Operation.renameFolder(srcFolderPath, newName));
+    }
+
+    @Override
+    public void deleteFolder(String folderPath) throws IOException {
+        send(Operation.deleteFolder(folderPath));
+    }
+
+    @Override
+    public void createFile(String filePath, String content) throws IOException {
+        send(Operation.createFile(filePath, content));
+    }
+
+    @Override
+    public void renameFile(String currentPath, String newName) throws IOException {
+        send(Operation.renameFile(currentPath, newName));
+    }
+
+    @Override
+    public void updateFile(String filePath, String newData, int overwriteFlag) throws IOException {
+        send(Operation.updateFile(filePath, newData, overwriteFlag));
+    }
+
+    @Override
+    public void deleteFile(String filePath) throws IOException {
+        send(Operation.deleteFile(filePath));
+    }
+
+    @Override
+    public void copyFile(String sourcePath, String targetPath) throws IOException {
+        // streamed through /proc/create_file and /proc/update_file in chunks
+        if (perform) {
+            FMKernelModules.createFile(targetPath, Paths.get(sourcePath));
+        } else {
+            ProcStreamWriter.createFile(targetPath, Paths.get(sourcePath));
+        }
+    }
+
+
+    // write the request of an operation, directly or through the lane
+    private void send(Operation operation) throws IOException {
+        Function<Operation, OperationResult> request = lane == null
+                ? Operation::run
+                : queued -> OperationScheduler.shared().run(lane, queued);
+        (perform ? FMKernelModules.performLogged(operation, request) : request.apply(operation)).orThrow();
+    }
+}
@@ -0,0 +1,248 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+
+/**
+ * ProcStreamWriter
+ * this class sends file content to the kernel modules in bounded chunks, so that creating or
+ * updating a file never needs the whole payload on the heap. The first chunk creates or
+ * truncates the file (through /proc/create_file, or /proc/update_file with the overwrite flag
+ * set) and every later chunk is appended through /proc/update_file. Only one chunk buffer is
+ * held at a time, whatever the size of the payload.
+ *
+ * @authors      Richard Quayson & Thomas Quarshie
+ */
+
+public class ProcStreamWriter {
+    // size of each chunk sent to the kernel modules, override with -Dfm.stream.chunkSize
+    public static final int CHUNK_SIZE = Integer.getInteger("fm.stream.chunkSize", 64 * 1024);
+
+    // trailers of update requests: path|data|flag
+    private static final byte[] APPEND_TRAILER = "|0".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] OVERWRITE_TRAILER = "|1".getBytes(StandardCharsets.US_ASCII);
+
+
+    /**
+     * createFile
+     * this method creates (or truncates) a file and writes the content read from the stream.
+     *
+     * @param filePath the path of the file to create.
+     * @param content the stream to read the content from, it is not closed.
+     * @return long the number of content bytes sent.
+     * @throws IOException if the stream cannot be read or a request fails.
+     */
+
+    public static long createFile(String filePath, InputStream content) throws IOException {
+        return write(filePath, Channels.newChannel(content), true, true);
+    }
+
+
+    /**
+     * createFile
+     * this method creates (or truncates) a file and writes the content of another file into it.
+     *
+     * @param filePath the path of the file to create.
+     * @param source the file to read the content from.
+     * @return long the number of content bytes sent.
+     * @throws IOException if the source cannot be read or a request fails.
+     */
+
+    public static long createFile(String filePath, Path source) throws IOException {
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            return write(filePath, channel, true, true);
+        }
+    }
+
+
+    /**
+     * createFile
+     * this method creates (or truncates) a file and writes the remaining bytes of the buffer.
+     * the buffer is sent in chunks without being copied and its position is advanced to its limit.
+     *
+     * @param filePath the path of the file to create.
+     * @param content the content to write.
+     * @return long the number of content bytes sent.
+     * @throws IOException if a request fails.
+     */
+
+    public static long createFile(String filePath, ByteBuffer content) throws IOException {
+        return write(filePath, content, true, true);
+    }
+
+
+    /**
+     * updateFile
+     * this method appends the content read from the stream to a file, or overwrites the file with it.
+     *
+     * @param filePath the path of the file to update.
+     * @param content the stream to read the content from, it is not closed.
+     * @param overwriteFlag 1 to overwrite the file, 0 to append to it.
+     * @return long the number of content bytes sent.
+     * @throws IOException if the stream cannot be read or a request fails.
+     */
+
+    public static long updateFile(String filePath, InputStream content, int overwriteFlag) throws IOException {
+        return write(filePath, Channels.newChannel(content), false, overwriteFlag != 0);
+    }
+
+
+    /**
+     * updateFile
+     * this method appends the content of another file to a file, or overwrites the file with it.
+     *
+     * @param filePath the path of the file to update.
+     * @param source the file to read the content from.
+     * @param overwriteFlag 1 to overwrite the file, 0 to append to it.
+     * @return long the number of content bytes sent.
+     * @throws IOException if the source cannot be read or a request fails.
+     */
+
+    public static long updateFile(String filePath, Path source, int overwriteFlag) throws IOException {
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            return write(filePath, channel, false, overwriteFlag != 0);
+        }
+    }
+
+
+    /**
+     * updateFile
+     * this method appends the remaining bytes of the buffer to a file, or overwrites the file with them.
+     * the buffer is sent in chunks without being copied and its position is advanced to its limit.
+     *
+     * @param filePath the path of the file to update.
+     * @param content the content to write.
+     * @param overwriteFlag 1 to overwrite the file, 0 to append to it.
+     * @return long the number of content bytes sent.
+     * @throws IOException if a request fails.
+     */
+
+    public static long updateFile(String filePath, ByteBuffer content, int overwriteFlag) throws IOException {
+        return write(filePath, content, false, overwriteFlag != 0);
+    }
+
+
+    /**
+     * write
+     * this method reads the channel chunk by chunk and sends every chunk as its own request.
+     * a chunk is filled completely before it is sent, so only the last one may be short.
+     * the cached directory aggregates of the file are dropped afterwards.
+     *
+     * @param filePath the path of the file to write.
+     * @param content the channel to read the content from.
+     * @param create whether the first chunk goes through /proc/create_file.
+     * @param truncate whether the first chunk truncates the file.
+     * @return long the number of content bytes sent.
+     * @throws IOException if the channel cannot be read or a request fails.
+     */
+
+    private static long write(String filePath, ReadableByteChannel content, boolean create, boolean truncate) throws IOException {
+        Requests requests = new Requests(filePath);
+        try {
+            ByteBuffer chunk = ByteBuffer.allocate(CHUNK_SIZE);
+            long sent = 0;
+            boolean first = true;
+
+            while (true) {
+                chunk.clear();
+                boolean endOfStream = false;
+                while (chunk.hasRemaining()) {
+                    if (content.read(chunk) < 0) {
+                        endOfStream = true;
+                        break;
+                    }
+                }
+                chunk.flip();
+
+                // an empty stream still creates or truncates the file, otherwise empty chunks are skipped
+                if (chunk.hasRemaining() || first) {
+                    sent += chunk.remaining();
+                    requests.send(chunk, first, create, truncate);
+                    first = false;
+                }
+                if (endOfStream) {
+                    return sent;
+                }
+            }
+        } finally {
+            DirectoryAggregateCache.shared().invalidate(Paths.get(filePath));
+        }
+    }
+
+
+    /**
+     * write
+     * this method sends the remaining bytes of the buffer as consecutive slices of CHUNK_SIZE.
+     *
+     * @param filePath the path of the file to write.
+     * @param content the content to write.
+     * @param create whether the first chunk goes through /proc/create_file.
+     * @param truncate whether the first chunk truncates the file.
+     * @return long the number of content bytes sent.
+     * @throws IOException if a request fails.
+     */
+
+    private static long write(String filePath, ByteBuffer content, boolean create, boolean truncate) throws IOException {
+        Requests requests = new Requests(filePath);
+        try {
+            long sent = 0;
+            boolean first = true;
+
+            while (content.hasRemaining() || first) {
+                int length = Math.min(CHUNK_SIZE, content.remaining());
+                ByteBuffer chunk = content.slice(content.position(), length);
+                requests.send(chunk, first, create, truncate);
+                content.position(content.position() + length);
+                sent += length;
+                first = false;
+            }
+            return sent;
+        } finally {
+            DirectoryAggregateCache.shared().invalidate(Paths.get(filePath));
+        }
+    }
+
+
+    /**
+     * Requests
+     * the encoded path prefixes of one file, reused for every chunk sent for it.
+     */
+
+    private static final class Requests {
+        private final ByteBuffer createPrefix;
+        private final ByteBuffer updatePrefix;
+
+        Requests(String filePath) {
+            this.createPrefix = StandardCharsets.UTF_8.encode(filePath + "\n");
+            this.updatePrefix = StandardCharsets.UTF_8.encode(filePath + "|");
+        }
+
+        void send(ByteBuffer chunk, boolean first, boolean create, boolean truncate) throws IOException {
+            // every chunk is a request of its own in the metrics
+            Operation.Type type = first && create ? Operation.Type.CREATE_FILE : Operation.Type.UPDATE_FILE;
+            long start = System.nanoTime();
+            try {
+                int written;
+                if (type == Operation.Type.CREATE_FILE) {
+                    // path\ncontent
+                    written = ProcChannelManager.write(FMKernelModules.CREATE_FILE_PROC_FILE, createPrefix.duplicate(), chunk);
+                } else {
+                    // path|content|flag, only the first chunk may truncate
+                    byte[] trailer = first && truncate ? OVERWRITE_TRAILER : APPEND_TRAILER;
+                    written = ProcChannelManager.write(FMKernelModules.UPDATE_FILE_PROC_FILE, updatePrefix.duplicate(), chunk, ByteBuffer.wrap(trailer));
+                }
+                OperationMetrics.shared().recordSuccess(type, System.nanoTime() - start, written);
+            } catch (IOException | RuntimeException e) {
+                OperationMetrics.shared().recordFailure(type, System.nanoTime() - start);
+                throw e;
+            }
+        }
+    }
+}
@@ -0,0 +1,465 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * ScriptRunner
+ * this class runs the Main operations non-interactively, from a stream of commands, one per line:
+ *
+ *   create-folder <path>                    rename-folder <path> <newName>    delete-folder <path>
+ *   create-file <path> [content]            rename-file <path> <newName>      delete-file <path>
+ *   update-file <path> append|overwrite <data>
+ *   list <path>    dir-info <path>    file-details <path>    read <path>
+ *
+ * arguments are separated by spaces; an argument holding spaces is written in double quotes,
+ * with \" \\ \n and \t escapes. blank lines and lines starting with # are skipped.
+ *
+ * every command prints one JSON object on a line of its own, in input order, e.g.
+ *
+ *   {"line":3,"command":"create-file","path":"/tmp/a","ok":true,"errno":"OK","micros":41}
+ *   {"line":4,"command":"delete-file","path":"/tmp/b","ok":false,"errno":"ENOENT","error":"..."}
+ *
+ * queries add their result ("entries", "details", "content"). The reading and the execution
+ * are pipelined: the input is parsed on the calling thread and handed over in batches to a
+ * thread that runs the commands in order and writes the results through one buffered writer,
+ * which is flushed only when no more input is waiting, so a tool that sends one command and
+ * waits for the answer gets it at once, and a long pipe is not slowed down by a write per line.
+ *
+ * @authors      Richard Quayson & Thomas Quarshie
+ */
+
+public final class ScriptRunner {
+    // commands handed over to the executing thread at a time, and batches waiting for it
+    private static final int BATCH_SIZE = 256;
+    private static final int QUEUED_BATCHES = 4;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // how long the reading thread waits on a full queue before it checks the executor is alive
+    private static final long HAND_OVER_MILLIS = 100;
+
+    // marks the end of the input on the queue
+    private static final List<Command> END = List.of();
+
+    private final FsBackend backend;
+    private final Writer out;
+    private final StringBuilder json = new StringBuilder(256);
+    private long commands;
+    private long failed;
+
+
+    public ScriptRunner(FsBackend backend, Writer out) {
+        this.backend = backend;
+        this.out = out;
+    }
+
+
+    /**
+     * run
+     * this method runs a script from a file, or from the standard input when the path is "-".
+     * the process exits with 1 if any command failed.
+     *
+     * @param backend the backend the commands are run through.
+     * @param script the script to run, or "-".
+     * @return void
+     * @throws IOException if the script cannot be read.
+     */
+
+    public static void run(FsBackend backend, String script) throws IOException {
+        // the interface methods would print a line per request
+        FMKernelModules.setLog(OperationLog.NONE);
+        BufferedReader reader = "-".equals(script)
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8), BUFFER_SIZE)
+                : Files.newBufferedReader(Paths.get(script), StandardCharsets.UTF_8);
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(FileDescriptor.out), StandardCharsets.UTF_8), BUFFER_SIZE);
+
+        ScriptRunner runner = new ScriptRunner(backend, out);
+        long start = System.nanoTime();
+        try (reader) {
+            runner.run(reader);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.err.printf("%d commands, %d failed in %.3f s (%.0f commands/s)%n",
+                runner.commands, runner.failed, seconds, seconds == 0 ? 0 : runner.commands / seconds);
+        if (runner.failed > 0) {
+            System.exit(1);
+        }
+    }
+
+
+    /**
+     * run
+     * this method runs every command of a script and writes the results, returning once all of
+     * them are written.
+     *
+     * @param reader the script.
+     * @return long the number of commands that failed.
+     * @throws IOException if the script cannot be read or the results cannot be written.
+     */
+
+    public long run(BufferedReader reader) throws IOException {
+        BlockingQueue<List<Command>> queue = new ArrayBlockingQueue<>(QUEUED_BATCHES);
+        Throwable[] executorError = new Throwable[1];
+        Thread executor = new Thread(() -> {
+            try {
+                execute(queue);
+            } catch (Throwable e) {
+                executorError[0] = e;
+                // keep taking batches, so the reading thread is never stuck on a full queue
+                drain(queue);
+            }
+        }, "fm-script-executor");
+        executor.start();
+
+        try {
+            List<Command> batch = new ArrayList<>(BATCH_SIZE);
+            long line = 0;
+            String text;
+            while ((text = reader.readLine()) != null) {
+                line++;
+                String trimmed = text.strip();
+                if (!trimmed.isEmpty() && !trimmed.startsWith("#")) {
+                    batch.add(Command.parse(line, trimmed));
+                }
+                // hand over a full batch, or whatever there is once the input runs dry
+                if (!batch.isEmpty() && (batch.size() == BATCH_SIZE || !reader.ready())) {
+                    if (!put(queue, batch, executor)) {
+                        break;
+                    }
+                    batch = new ArrayList<>(BATCH_SIZE);
+                }
+            }
+            if (!batch.isEmpty()) {
+                put(queue, batch, executor);
+            }
+        } finally {
+            put(queue, END, executor);
+            try {
+                executor.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (executorError[0] instanceof IOException) {
+            throw (IOException) executorError[0];
+        }
+        if (executorError[0] != null) {
+            throw new IOException("The script executor failed", executorError[0]);
+        }
+        return failed;
+    }
+
+
+    /**
+     * put
+     * this method hands a batch over to the executing thread, waiting while the queue is full
+     * for as long as that thread is alive.
+     *
+     * @param queue the batches waiting for the executing thread.
+     * @param batch the batch to hand over.
+     * @param executor the executing thread.
+     * @return boolean false if the executing thread has stopped and the batch was not taken.
+     * @throws IOException if the reading thread is interrupted.
+     */
+
+    private static boolean put(BlockingQueue<List<Command>> queue, List<Command> batch, Thread executor) throws IOException {
+        try {
+            while (!queue.offer(batch, HAND_OVER_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (!executor.isAlive()) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while running the script", e);
+        }
+    }
+
+    private static void drain(BlockingQueue<List<Command>> queue) {
+        try {
+            while (queue.take() != END) {
+                // discarded, the results cannot be written
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // run the batches in order on the executing thread
+    private void execute(BlockingQueue<List<Command>> queue) throws IOException {
+        try {
+            while (true) {
+                List<Command> batch = queue.take();
+                if (batch == END) {
+                    break;
+                }
+                for (Command command : batch) {
+                    execute(command);
+                }
+                if (queue.isEmpty()) {
+                    // nothing more to run right now, let the caller see the results
+                    out.flush();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            out.flush();
+        }
+    }
+
+
+    /**
+     * execute
+     * this method runs one command and writes its result line.
+     *
+     * @param command the command to run.
+     * @return void
+     * @throws IOException if the result cannot be written.
+     */
+
+    private void execute(Command command) throws IOException {
+        commands++;
+        json.setLength(0);
+        json.append("{\"line\":").append(command.line).append(",\"command\":");
+        quote(command.name);
+        if (command.path != null) {
+            json.append(",\"path\":");
+            quote(command.path);
+        }
+
+        if (command.syntaxError != null) {
+            failed++;
+            json.append(",\"ok\":false,\"errno\":\"").append(Errno.EINVAL).append("\",\"error\":");
+            quote(command.syntaxError);
+        } else {
+            long start = System.nanoTime();
+            int mark = json.length();
+            try {
+                json.append(",\"ok\":true,\"errno\":\"OK\"");
+                perform(command);
+            } catch (IOException | InvalidPathException e) {
+                failed++;
+                json.setLength(mark);
+                Errno errno = e instanceof IOException ? Errno.of((IOException) e) : Errno.EINVAL;
+                json.append(",\"ok\":false,\"errno\":\"").append(errno).append("\",\"error\":");
+                quote(String.valueOf(e.getMessage()));
+            } catch (RuntimeException | Error e) {
+                // a bug or a broken backend fails this command, not the ones after it
+                failed++;
+                json.setLength(mark);
+                json.append(",\"ok\":false,\"errno\":\"").append(Errno.EIO).append("\",\"error\":");
+                quote(e.toString());
+            }
+            json.append(",\"micros\":").append((System.nanoTime() - start) / 1000);
+        }
+        json.append("}\n");
+        out.append(json);
+    }
+
+    // send the request, or append the answer of a query to the result line
+    private void perform(Command command) throws IOException {
+        String[] args = command.args;
+        switch (command.name) {
+            case "create-folder" -> backend.createFolder(command.path);
+            case "rename-folder" -> backend.renameFolder(command.path, args[0]);
+            case "delete-folder" -> backend.deleteFolder(command.path);
+            case "create-file" -> backend.createFile(command.path, args.length > 0 ? args[0] : "");
+            case "rename-file" -> backend.renameFile(command.path, args[0]);
+            case "update-file" -> backend.updateFile(command.path, args[1], "overwrite".equals(args[0]) ? 1 : 0);
+            case "delete-file" -> backend.deleteFile(command.path);
+            case "list" -> {
+                List<FileDetails> entries = backend.listFiles(command.path);
+                json.append(",\"entries\":[");
+                for (int i = 0; i < entries.size(); i++) {
+                    json.append(i == 0 ? "" : ",");
+                    details(entries.get(i));
+                }
+                json.append(']');
+            }
+            case "dir-info" -> {
+                FileDetails directory = backend.getDetails(command.path);
+                if (!directory.isDirectory()) {
+                    throw new NotDirectoryException(command.path);
+                }
+                DirectoryStats stats = backend.getDirectoryStats(command.path);
+                json.append(",\"details\":");
+                details(directory);
+                json.append(",\"totalSize\":").append(stats.getTotalSize())
+                        .append(",\"fileCount\":").append(stats.getFileCount())
+                        .append(",\"directoryCount\":").append(stats.getDirectoryCount());
+            }
+            case "file-details" -> {
+                json.append(",\"details\":");
+                details(backend.getDetails(command.path));
+            }
+            case "read" -> {
+                String content = backend.readFileContent(command.path);
+                json.append(",\"content\":");
+                quote(content);
+            }
+            default -> throw new IllegalStateException(command.name);
+        }
+    }
+
+    private void details(FileDetails details) {
+        json.append("{\"name\":");
+        quote(details.name());
+        json.append(",\"type\":\"").append(details.type().name().toLowerCase())
+                .append("\",\"size\":").append(details.size())
+                .append(",\"lastModified\":").append(details.lastModified())
+                .append(",\"created\":").append(details.created()).append('}');
+    }
+
+    // a JSON string
+    private void quote(String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> json.append("\\\"");
+                case '\\' -> json.append("\\\\");
+                case '\n' -> json.append("\\n");
+                case '\r' -> json.append("\\r");
+                case '\t' -> json.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+                }
+            }
+        }
+        json.append('"');
+    }
+
+
+    /**
+     * Command
+     * one parsed line of a script; a line that could not be parsed keeps the reason, and is
+     * reported as failed in its place.
+     */
+
+    private static final class Command {
+        final long line;
+        final String name;
+        final String path;
+        final String[] args;
+        final String syntaxError;
+
+        private Command(long line, String name, String path, String[] args, String syntaxError) {
+            this.line = line;
+            this.name = name;
+            this.path = path;
+            this.args = args;
+            this.syntaxError = syntaxError;
+        }
+
+        static Command parse(long line, String text) {
+            List<String> words = new ArrayList<>(4);
+            String error = split(text, words);
+            String name = words.isEmpty() ? "" : words.get(0);
+            String path = words.size() > 1 ? words.get(1) : null;
+            String[] args = words.size() > 2 ? words.subList(2, words.size()).toArray(new String[0]) : new String[0];
+            if (error == null) {
+                error = check(name, path, args);
+            }
+            return new Command(line, name, path, args, error);
+        }
+
+        // the reason the arguments do not fit the command, null if they do
+        private static String check(String name, String path, String[] args) {
+            int min;
+            int max;
+            String usage;
+            switch (name) {
+                case "create-folder", "delete-folder", "delete-file", "list", "dir-info", "file-details", "read" -> {
+                    min = max = 0;
+                    usage = name + " <path>";
+                }
+                case "rename-folder", "rename-file" -> {
+                    min = max = 1;
+                    usage = name + " <path> <newName>";
+                }
+                case "create-file" -> {
+                    min = 0;
+                    max = 1;
+                    usage = "create-file <path> [content]";
+                }
+                case "update-file" -> {
+                    min = max = 2;
+                    usage = "update-file <path> append|overwrite <data>";
+                }
+                default -> {
+                    return "Unknown command '" + name + "'";
+                }
+            }
+            if (path == null || args.length < min || args.length > max) {
+                return "Usage: " + usage;
+            }
+            if ("update-file".equals(name) && !"append".equals(args[0]) && !"overwrite".equals(args[0])) {
+                return "Usage: " + usage;
+            }
+            return null;
+        }
+
+        // the space-separated, possibly quoted words of a line, returns an error or null
+        private static String split(String text, List<String> words) {
+            StringBuilder word = new StringBuilder();
+            int i = 0;
+            while (i < text.length()) {
+                char c = text.charAt(i);
+                if (c == ' ' || c == '\t') {
+                    i++;
+                    continue;
+                }
+                word.setLength(0);
+                if (c != '"') {
+                    int end = i;
+                    while (end < text.length() && text.charAt(end) != ' ' && text.charAt(end) != '\t') {
+                        end++;
+                    }
+                    words.add(text.substring(i, end));
+                    i = end;
+                    continue;
+                }
+                // a quoted word
+                i++;
+                while (true) {
+                    if (i == text.length()) {
+                        return "Unterminated quote";
+                    }
+                    c = text.charAt(i++);
+                    if (c == '"') {
+                        break;
+                    }
+                    if (c == '\\' && i < text.length()) {
+                        c = text.charAt(i++);
+                        c = c == 'n' ? '\n' : c == 't' ? '\t' : c;
+                    }
+                    word.append(c);
+                }
+                words.add(word.toString());
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+import java.nio.CharBuffer;
+
+
+/**
+ * Tokenizer
+ * this class splits text into the terms ContentIndex indexes: runs of letters and digits,
+ * lowercased, numbered by their position in the text. everything else separates terms, and
+ * terms longer than MAX_TERM_LENGTH chars are cut there. the text may be fed in pieces (e.g.
+ * as it is decoded), a term split between two pieces is still one term.
+ *
+ * @authors      Richard Quayson & Thomas Quarshie
+ */
+
+public final class Tokenizer {
+    public static final int MAX_TERM_LENGTH = 64;
+
+    private final TermConsumer consumer;
+    private final StringBuilder term = new StringBuilder(MAX_TERM_LENGTH);
+    private int position;
+    private char pendingHigh;
+
+
+    /**
+     * TermConsumer
+     * receives the terms of a text, in order.
+     */
+
+    @FunctionalInterface
+    public interface TermConsumer {
+        void accept(String term, int position);
+    }
+
+
+    public Tokenizer(TermConsumer consumer) {
+        this.consumer = consumer;
+    }
+
+
+    /**
+     * feed
+     * this method tokenizes the next piece of the text.
+     *
+     * @param text the piece, consumed up to its limit.
+     * @return void
+     */
+
+    public void feed(CharBuffer text) {
+        while (text.hasRemaining()) {
+            char c = text.get();
+            if (pendingHigh != 0) {
+                char high = pendingHigh;
+                pendingHigh = 0;
+                if (Character.isLowSurrogate(c)) {
+                    accept(Character.toCodePoint(high, c));
+                    continue;
+                }
+                end();
+            }
+            if (Character.isHighSurrogate(c)) {
+                // the low half may come with the next piece
+                pendingHigh = c;
+            } else {
+                accept(c);
+            }
+        }
+    }
+
+    public void feed(CharSequence text) {
+        feed(CharBuffer.wrap(text));
+    }
+
+
+    /**
+     * finish
+     * this method ends the text, passing on the last term.
+     *
+     * @return int the number of terms in the text.
+     */
+
+    public int finish() {
+        pendingHigh = 0;
+        end();
+        return position;
+    }
+
+
+    /**
+     * terms
+     * this method tokenizes a whole text, e.g. a query.
+     *
+     * @param text the text.
+     * @param consumer receives the terms.
+     * @return int the number of terms.
+     */
+
+    public static int terms(CharSequence text, TermConsumer consumer) {
+        Tokenizer tokenizer = new Tokenizer(consumer);
+        tokenizer.feed(text);
+        return tokenizer.finish();
+    }
+
+
+    private void accept(int codePoint) {
+        if (!Character.isLetterOrDigit(codePoint)) {
+            end();
+        } else if (term.length() < MAX_TERM_LENGTH) {
+            term.appendCodePoint(Character.toLowerCase(codePoint));
+        }
+    }
+
+    private void end() {
+        if (term.length() > 0) {
+            consumer.accept(term.toString(), position++);
+            term.setLength(0);
+        }
+    }
+}
@@ -0,0 +1,372 @@
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+
+/**
+ * TreeOperations
+ * this class deletes and copies whole directory trees, sending one request per entry through an
+ * FsBackend (the kernel modules, from FMKernelModules.deleteTree and copyTree).
+ *
+ * The tree is walked on a ForkJoin pool: every directory is listed by its own task, and its
+ * files are handed out in batches of FILES_PER_TASK, so both deep and wide trees spread over the
+ * workers by work stealing. The tasks are CountedCompleters: a directory is finished (deleted,
+ * or counted as copied) by whichever worker completes its last child, without any thread
+ * waiting for it. A directory below which something failed is left in place. Symbolic links
+ * are never followed; a delete removes the link, a copy skips it.
+ *
+ * Progress is reported to an optional consumer as TreeProgress counts, at most every
+ * PROGRESS_INTERVAL_MILLIS while the walk runs and once more when it is done.
+ *
+ * @authors      Richard Quayson & Thomas Quarshie
+ */
+
+public final class TreeOperations {
+    // number of workers of the shared pool, override with -Dfm.tree.parallelism
+    public static final int DEFAULT_PARALLELISM = Integer.getInteger("fm.tree.parallelism",
+            Math.max(4, Runtime.getRuntime().availableProcessors() * 2));
+
+    public static final long PROGRESS_INTERVAL_MILLIS = 100;
+
+    // files handled per task, and failures kept as suppressed exceptions of the one thrown
+    static final int FILES_PER_TASK = 64;
+    private static final int MAX_SUPPRESSED = 15;
+
+    private static volatile ForkJoinPool sharedPool;
+
+
+    private TreeOperations() {
+    }
+
+
+    /**
+     * deleteTree
+     * this method deletes a directory and everything below it, on the shared pool.
+     *
+     * @param backend the backend the requests are sent through.
+     * @param folderPath the directory to delete.
+     * @param progress receives the counts as the delete goes on, or null.
+     * @return TreeProgress the final counts.
+     * @throws IOException if the path is not a directory, or if any entry could not be deleted:
+     *         the first failure is the cause, up to MAX_SUPPRESSED more are suppressed.
+     */
+
+    public static TreeProgress deleteTree(FsBackend backend, String folderPath, Consumer<TreeProgress> progress) throws IOException {
+        return deleteTree(backend, folderPath, progress, sharedPool());
+    }
+
+    public static TreeProgress deleteTree(FsBackend backend, String folderPath, Consumer<TreeProgress> progress,
+            ForkJoinPool pool) throws IOException {
+        Path root = directory(backend, folderPath);
+        Run run = new Run(backend, progress);
+        pool.invoke(new DirectoryTask(null, run, root, null));
+        return run.finish("delete", root);
+    }
+
+
+    /**
+     * copyTree
+     * this method copies a directory and everything below it to a new directory, on the shared
+     * pool. the target must not exist yet, and must not lie inside the source.
+     *
+     * @param backend the backend the requests are sent through.
+     * @param sourcePath the directory to copy.
+     * @param targetPath the directory to create.
+     * @param progress receives the counts as the copy goes on, or null.
+     * @return TreeProgress the final counts.
+     * @throws IOException if the source is not a directory, or if any entry could not be
+     *         copied: the first failure is the cause, up to MAX_SUPPRESSED more are suppressed.
+     */
+
+    public static TreeProgress copyTree(FsBackend backend, String sourcePath, String targetPath,
+            Consumer<TreeProgress> progress) throws IOException {
+        return copyTree(backend, sourcePath, targetPath, progress, sharedPool());
+    }
+
+    public static TreeProgress copyTree(FsBackend backend, String sourcePath, String targetPath,
+            Consumer<TreeProgress> progress, ForkJoinPool pool) throws IOException {
+        Path source = directory(backend, sourcePath);
+        Path target = Paths.get(targetPath).toAbsolutePath().normalize();
+        if (target.startsWith(source)) {
+            throw new IOException("Cannot copy " + source + " into itself: " + target);
+        }
+        Run run = new Run(backend, progress);
+        pool.invoke(new DirectoryTask(null, run, source, target));
+        return run.finish("copy", source);
+    }
+
+
+    private static Path directory(FsBackend backend, String folderPath) throws IOException {
+        if (!(backend instanceof LocalFsBackend)) {
+            // the tree is walked on the disk, a backend of its own cannot be walked
+            throw new IllegalArgumentException("The " + backend.name() + " backend does not work on the local file system");
+        }
+        Path directory = Paths.get(folderPath).toAbsolutePath().normalize();
+        if (!Files.readAttributes(directory, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS).isDirectory()) {
+            throw new NotDirectoryException(folderPath);
+        }
+        return directory;
+    }
+
+    private static ForkJoinPool sharedPool() {
+        ForkJoinPool pool = sharedPool;
+        if (pool == null) {
+            synchronized (TreeOperations.class) {
+                pool = sharedPool;
+                if (pool == null) {
+                    // the workers block on requests, so the pool is kept apart from the common pool
+                    pool = new ForkJoinPool(DEFAULT_PARALLELISM, forkJoinPool -> {
+                        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+                        thread.setName("fm-tree-worker-" + thread.getPoolIndex());
+                        return thread;
+                    }, null, false);
+                    sharedPool = pool;
+                }
+            }
+        }
+        return pool;
+    }
+
+
+    /**
+     * Run
+     * the backend, counters and failures of one tree operation, shared by all of its tasks.
+     */
+
+    private static final class Run {
+        private final FsBackend backend;
+        private final Consumer<TreeProgress> listener;
+        private final long start = System.nanoTime();
+        private final AtomicLong nextReport = new AtomicLong(start);
+        private final LongAdder files = new LongAdder();
+        private final LongAdder directories = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final LongAdder skipped = new LongAdder();
+        private final AtomicInteger kept = new AtomicInteger();
+        private final ConcurrentLinkedQueue<IOException> failures = new ConcurrentLinkedQueue<>();
+
+        Run(FsBackend backend, Consumer<TreeProgress> listener) {
+            this.backend = backend;
+            this.listener = listener;
+        }
+
+        // delete (target null) or copy one file, true if it worked
+        boolean file(Path file, Path target, long size) {
+            try {
+                if (target == null) {
+                    backend.deleteFile(file.toString());
+                } else {
+                    backend.copyFile(file.toString(), target.toString());
+                    bytes.add(size);
+                }
+                files.increment();
+                report();
+                return true;
+            } catch (IOException e) {
+                failed(e);
+                return false;
+            }
+        }
+
+        void directoryDone() {
+            directories.increment();
+            report();
+        }
+
+        void skipped() {
+            skipped.increment();
+        }
+
+        void failed(IOException e) {
+            failed.increment();
+            if (kept.getAndIncrement() <= MAX_SUPPRESSED) {
+                failures.add(e);
+            }
+            report();
+        }
+
+        // hand the counts to the listener if the interval has passed, from one worker only
+        private void report() {
+            if (listener == null) {
+                return;
+            }
+            long now = System.nanoTime();
+            long next = nextReport.get();
+            if (now >= next && nextReport.compareAndSet(next, now + PROGRESS_INTERVAL_MILLIS * 1_000_000)) {
+                listener.accept(progress(now, false));
+            }
+        }
+
+        private TreeProgress progress(long now, boolean done) {
+            return new TreeProgress(files.sum(), directories.sum(), bytes.sum(), failed.sum(), skipped.sum(), now - start, done);
+        }
+
+        TreeProgress finish(String operation, Path root) throws IOException {
+            TreeProgress progress = progress(System.nanoTime(), true);
+            if (listener != null) {
+                listener.accept(progress);
+            }
+            IOException first = failures.poll();
+            if (first != null) {
+                IOException e = new IOException("Failed to " + operation + " " + progress.getFailed() + " entries of " + root, first);
+                for (IOException other : failures) {
+                    e.addSuppressed(other);
+                }
+                throw e;
+            }
+            return progress;
+        }
+    }
+
+
+    /**
+     * DirectoryTask
+     * lists one directory (after creating its copy), forks a task per subdirectory and per
+     * batch of files, and finishes the directory once they have all completed.
+     */
+
+    private static final class DirectoryTask extends CountedCompleter<Void> {
+        private static final long serialVersionUID = 1L;
+        private final transient Run run;
+        private final transient Path directory;
+        private final transient Path target;
+        private final transient DirectoryTask parent;
+
+        // set when an entry below could not be handled, or the copy could not be created
+        private volatile boolean incomplete;
+        private boolean abandoned;
+
+        DirectoryTask(DirectoryTask parent, Run run, Path directory, Path target) {
+            super(parent);
+            this.parent = parent;
+            this.run = run;
+            this.directory = directory;
+            this.target = target;
+        }
+
+        @Override
+        public void compute() {
+            if (target != null) {
+                try {
+                    run.backend.createFolder(target.toString());
+                } catch (IOException e) {
+                    // nothing below can be copied without the folder
+                    run.failed(e);
+                    incomplete = true;
+                    abandoned = true;
+                    tryComplete();
+                    return;
+                }
+            }
+
+            FileBatch batch = new FileBatch(this);
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+                for (Path entry : entries) {
+                    BasicFileAttributes attrs;
+                    try {
+                        attrs = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    } catch (IOException e) {
+                        run.failed(e);
+                        incomplete = true;
+                        continue;
+                    }
+
+                    Path entryTarget = target != null ? target.resolve(entry.getFileName().toString()) : null;
+                    if (attrs.isDirectory()) {
+                        addToPendingCount(1);
+                        new DirectoryTask(this, run, entry, entryTarget).fork();
+                    } else if (target != null && !attrs.isRegularFile()) {
+                        run.skipped();
+                    } else if (batch.add(entry, entryTarget, attrs.size())) {
+                        addToPendingCount(1);
+                        batch.fork();
+                        batch = new FileBatch(this);
+                    }
+                }
+            } catch (IOException e) {
+                run.failed(e);
+                incomplete = true;
+            }
+
+            // the last, partial batch is handled right here
+            batch.run();
+            tryComplete();
+        }
+
+        @Override
+        public void onCompletion(CountedCompleter<?> caller) {
+            if (!abandoned) {
+                if (target != null) {
+                    run.directoryDone();
+                } else if (!incomplete) {
+                    try {
+                        run.backend.deleteFolder(directory.toString());
+                        run.directoryDone();
+                    } catch (IOException e) {
+                        run.failed(e);
+                        incomplete = true;
+                    }
+                }
+            }
+            if (incomplete && parent != null) {
+                parent.incomplete = true;
+            }
+        }
+    }
+
+
+    /**
+     * FileBatch
+     * deletes or copies up to FILES_PER_TASK files of a directory.
+     */
+
+    private static final class FileBatch extends CountedCompleter<Void> {
+        private static final long serialVersionUID = 1L;
+        private final transient DirectoryTask directory;
+        private final transient Path[] files = new Path[FILES_PER_TASK];
+        private final transient Path[] targets = new Path[FILES_PER_TASK];
+        private final long[] sizes = new long[FILES_PER_TASK];
+        private int count;
+
+        FileBatch(DirectoryTask directory) {
+            super(directory);
+            this.directory = directory;
+        }
+
+        // add a file, true once the batch is full
+        boolean add(Path file, Path target, long size) {
+            files[count] = file;
+            targets[count] = target;
+            sizes[count] = size;
+            return ++count == FILES_PER_TASK;
+        }
+
+        void run() {
+            for (int i = 0; i < count; i++) {
+                if (!directory.run.file(files[i], targets[i], sizes[i])) {
+                    directory.incomplete = true;
+                }
+            }
+        }
+
+        @Override
+        public void compute() {
+            run();
+            tryComplete();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/**
+ * TreeProgress
+ * this class holds the counts of a deleteTree or copyTree at one point in time: the files and
+ * directories done so far, the bytes of the files copied, the entries that failed and the ones
+ * skipped (entries that are neither files nor directories, e.g. links, are not copied). the
+ * last progress reported by a tree operation has isDone() set.
+ *
+ * @authors      Richard Quayson & Thomas Quarshie
+ */
+
+public final class TreeProgress {
+    private final long files;
+    private final long directories;
+    private final long bytes;
+    private final long failed;
+    private final long skipped;
+    private final long elapsedNanos;
+    private final boolean done;
+
+
+    TreeProgress(long files, long directories, long bytes, long failed, long skipped, long elapsedNanos, boolean done) {
+        this.files = files;
+        this.directories = directories;
+        this.bytes = bytes;
+        this.failed = failed;
+        this.skipped = skipped;
+        this.elapsedNanos = elapsedNanos;
+        this.done = done;
+    }
+
+
+    // the files (and other non-directory entries) deleted or copied
+    public long getFiles() {
+        return files;
+    }
+
+    public long getDirectories() {
+        return directories;
+    }
+
+    // the bytes of the files copied, 0 for a delete
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    public long getSkipped() {
+        return skipped;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public boolean isDone() {
+        return done;
+    }
+
+    // the entries done per second so far
+    public double getEntriesPerSecond() {
+        return elapsedNanos == 0 ? 0 : (files + directories) * 1e9 / elapsedNanos;
+    }
+
+
+    @Override
+    public String toString() {
+        return String.format("%d files, %d directories, %d bytes, %d failed, %d skipped in %.3f s (%.0f entries/s)%s",
+                files, directories, bytes, failed, skipped, elapsedNanos / 1e9, getEntriesPerSecond(), done ? ", done" : "");
+    }
+}
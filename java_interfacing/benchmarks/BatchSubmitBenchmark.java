@@ -0,0 +1,95 @@
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * BatchSubmitBenchmark
+ * this class compares the throughput of FMKernelModules.submitBatch with the one-call-per-op
+ * path (and with the original open-a-writer-per-request code) against stand-in proc files. the
+ * batch creates all its folders in one run and then all its files in another, so submitBatch
+ * has long runs on one proc entry to pack; it is measured with text requests and with framing.
+ *
+ * usage: java BatchSubmitBenchmark [operations] [rounds]
+ *
+ * @authors      Richard Quayson & Thomas Quarshie
+ */
+
+public class BatchSubmitBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int operations = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        ProcStandIn standIn = ProcStandIn.install();
+        PrintStream console = System.out;
+        try {
+            // the per-call methods print once per request, keep that out of the measurement
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+            // a run of folders, then a run of files, one in each folder
+            List<Operation> batch = new ArrayList<>(operations);
+            int folders = (operations + 1) / 2;
+            for (int i = 0; i < folders; i++) {
+                batch.add(Operation.createFolder("/tmp/ingest/folder-" + i));
+            }
+            for (int i = 0; batch.size() < operations; i++) {
+                batch.add(Operation.createFile("/tmp/ingest/folder-" + i + "/file.txt", "content " + i));
+            }
+
+            for (int round = 1; round <= rounds; round++) {
+                long openPerCall = time(() -> {
+                    for (Operation operation : batch) {
+                        try (BufferedWriter writer = new BufferedWriter(new FileWriter(operation.procFile()))) {
+                            writer.write(operation.request());
+                        }
+                    }
+                });
+                long perCall = time(() -> {
+                    for (Operation operation : batch) {
+                        if (operation.getType() == Operation.Type.CREATE_FOLDER) {
+                            FMKernelModules.createFolder(operation.getPath());
+                        } else {
+                            FMKernelModules.createFile(operation.getPath(), operation.getArgument());
+                        }
+                    }
+                });
+                long batched = time(() -> FMKernelModules.submitBatch(batch));
+                long framed;
+                FMKernelModules.setFraming(true);
+                try {
+                    framed = time(() -> FMKernelModules.submitBatch(batch));
+                } finally {
+                    FMKernelModules.setFraming(false);
+                }
+
+                console.printf("round %d: open-per-call %,.0f ops/s, per-call %,.0f ops/s, submitBatch %,.0f ops/s, "
+                        + "submitBatch framed %,.0f ops/s%n", round, rate(operations, openPerCall), rate(operations, perCall),
+                        rate(operations, batched), rate(operations, framed));
+            }
+        } finally {
+            FMKernelModules.setFraming(false);
+            System.setOut(console);
+            standIn.uninstall();
+        }
+    }
+
+
+    private interface Body {
+        void run() throws IOException;
+    }
+
+    private static long time(Body body) throws IOException {
+        long start = System.nanoTime();
+        body.run();
+        return System.nanoTime() - start;
+    }
+
+    private static double rate(int operations, long nanos) {
+        return operations / (nanos / 1e9);
+    }
+}
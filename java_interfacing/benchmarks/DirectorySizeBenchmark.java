@@ -0,0 +1,103 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+
+
+/**
+ * DirectorySizeBenchmark
+ * this class compares the ForkJoin DirectorySizeCalculator with the single-threaded
+ * File.listFiles() recursion getDirectoryInfo used before, on a synthetic tree.
+ *
+ * usage: java DirectorySizeBenchmark [files] [filesPerDirectory] [rounds] [treeDirectory]
+ * the tree is generated below treeDirectory (a temp directory by default) unless it already
+ * exists there, and is only removed when it was generated in a temp directory.
+ *
+ * @authors      Richard Quayson & Thomas Quarshie
+ */
+
+public class DirectorySizeBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int files = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int filesPerDirectory = args.length > 1 ? Integer.parseInt(args[1]) : 1_000;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        boolean temporary = args.length <= 3;
+        Path root = temporary ? Files.createTempDirectory("fm-tree") : Paths.get(args[3]);
+
+        try {
+            if (!Files.isDirectory(root.resolve("d0"))) {
+                long start = System.nanoTime();
+                generate(root, files, filesPerDirectory);
+                System.out.printf("generated %,d files in %.1f s%n", files, (System.nanoTime() - start) / 1e9);
+            }
+
+            for (int round = 1; round <= rounds; round++) {
+                long start = System.nanoTime();
+                long legacySize = legacyTotalSize(root.toFile());
+                long legacy = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                DirectoryStats stats = DirectorySizeCalculator.calculate(root);
+                long forkJoin = System.nanoTime() - start;
+
+                System.out.printf("round %d: listFiles recursion %.0f ms (%d bytes), ForkJoin %.0f ms (%s)%n",
+                        round, legacy / 1e6, legacySize, forkJoin / 1e6, stats);
+            }
+        } finally {
+            if (temporary) {
+                delete(root);
+            }
+        }
+    }
+
+
+    // the tree is two levels deep: d<i>/e<j>/f<k>, with filesPerDirectory files per leaf directory
+    private static void generate(Path root, int files, int filesPerDirectory) throws IOException {
+        byte[] content = new byte[128];
+        int leaves = (files + filesPerDirectory - 1) / filesPerDirectory;
+        int fanOut = Math.max(1, (int) Math.sqrt(leaves));
+        int created = 0;
+        for (int leaf = 0; leaf < leaves; leaf++) {
+            Path directory = Files.createDirectories(root.resolve("d" + leaf / fanOut).resolve("e" + leaf % fanOut));
+            for (int k = 0; k < filesPerDirectory && created < files; k++, created++) {
+                Files.write(directory.resolve("f" + k), content);
+            }
+        }
+    }
+
+    private static long legacyTotalSize(File directory) {
+        long totalSize = 0;
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isFile()) {
+                    totalSize += file.length();
+                } else if (file.isDirectory()) {
+                    totalSize += legacyTotalSize(file);
+                }
+            }
+        }
+        return totalSize;
+    }
+
+    private static void delete(Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
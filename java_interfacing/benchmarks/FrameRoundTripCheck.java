@@ -0,0 +1,182 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+
+/**
+ * FrameRoundTripCheck
+ * this class checks the framed requests end to end without the kernel modules. the proc entries
+ * are emulated (see ProcChannelManager.emulate) by FrameDecoder.apply on a MemoryFsBackend, which
+ * performs a batch frame by frame and answers with the short write of a module that stopped at
+ * a failed frame, so FMKernelModules.submitBatch has to resend the rest of every batch.
+ *
+ *   round trip   every operation FrameEncoder writes decodes back to the same operation
+ *   short write  submitBatch with framing gives every operation the result, and leaves the
+ *                tree, that the operations sent one at a time give
+ *
+ * the run fails (exit status 1) at the first difference.
+ *
+ * usage: java FrameRoundTripCheck [operations]
+ *
+ * @authors      Richard Quayson & Thomas Quarshie
+ */
+
+public class FrameRoundTripCheck {
+
+    public static void main(String[] args) throws IOException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 2_000;
+        List<Operation> operations = operations(count);
+        FMKernelModules.setLog(OperationLog.NONE);
+
+        // round trip, with paths and content the text requests cannot carry
+        FrameEncoder frames = new FrameEncoder();
+        for (Operation operation : operations) {
+            frames.add(operation);
+        }
+        List<FrameDecoder.Frame> decoded = FrameDecoder.decode(frames.batch(0));
+        check(decoded.size() == operations.size(), "decoded " + decoded.size() + " frames of " + operations.size());
+        for (int i = 0; i < operations.size(); i++) {
+            check(same(decoded.get(i).toOperation(), operations.get(i)), "frame " + i + " decoded as " + decoded.get(i));
+        }
+        System.out.printf("round trip: %,d frames, %,d bytes%n", operations.size(), frames.size());
+
+        // the same operations, one at a time on one tree and as framed batches on another
+        MemoryFsBackend expected = new MemoryFsBackend();
+        List<Errno> expectedErrors = new ArrayList<>();
+        for (Operation operation : operations) {
+            expectedErrors.add(perform(operation, expected));
+        }
+
+        MemoryFsBackend actual = new MemoryFsBackend();
+        List<String> entries = emulate(actual);
+        List<OperationOutcome> outcomes;
+        try {
+            FMKernelModules.setFraming(true);
+            outcomes = FMKernelModules.submitBatch(operations);
+        } finally {
+            FMKernelModules.setFraming(false);
+            ProcChannelManager.closeAll();
+        }
+
+        int failed = 0;
+        for (int i = 0; i < operations.size(); i++) {
+            OperationOutcome outcome = outcomes.get(i);
+            Errno errno = outcome.isSuccess() ? Errno.OK : Errno.of(outcome.getError());
+            check(errno == expectedErrors.get(i), "operation " + i + " (" + operations.get(i) + ") gave " + errno
+                    + ", one at a time " + expectedErrors.get(i));
+            if (outcome.isSuccess()) {
+                // a frame of a batch reports its own length, the magic is not counted
+                FrameEncoder single = new FrameEncoder().reset();
+                single.add(operations.get(i));
+                check(outcome.getBytesWritten() == single.frameLength(0), "operation " + i + " reported "
+                        + outcome.getBytesWritten() + " bytes, its frame has " + single.frameLength(0));
+            } else {
+                failed++;
+            }
+        }
+        String tree = dump(actual, "/");
+        check(tree.equals(dump(expected, "/")), "the trees differ:\n" + tree + "\nexpected:\n" + dump(expected, "/"));
+        System.out.printf("short write: %,d operations over %d entries, %,d failed frames resent past, same results and tree%n",
+                operations.size(), entries.size(), failed);
+    }
+
+
+    // runs of operations of one type on a few folders, so that batches are packed, with frames
+    // failing in the middle of them (a name taken, a file or folder missing, a folder not empty)
+    private static List<Operation> operations(int count) {
+        List<Operation> operations = new ArrayList<>(count);
+        for (int round = 0; operations.size() < count; round++) {
+            for (int i = round % 2; i < 9; i += 2) {
+                operations.add(Operation.createFolder("/d" + i % 7));
+            }
+            for (int i = 0; i < 40; i++) {
+                operations.add(Operation.createFile(file(round + i), "content " + i + "\n\0|0"));
+            }
+            for (int i = 0; i < 30; i++) {
+                operations.add(Operation.updateFile(file(round * 3 + i), i % 4 == 0 ? "overwritten " + i : " appended|1", i % 4 == 0 ? 1 : 0));
+            }
+            for (int i = 0; i < 10; i++) {
+                operations.add(Operation.renameFile(file(round * 5 + i), "r" + i % 3));
+            }
+            for (int i = 0; i < 20; i++) {
+                operations.add(Operation.deleteFile(i % 2 == 0 ? file(round + i) : "/d" + i % 7 + "/r" + i % 3));
+            }
+            for (int i = round % 3; i < 7; i += 3) {
+                operations.add(Operation.deleteFolder("/d" + i));
+            }
+        }
+        return operations.subList(0, count);
+    }
+
+    // a file name with the separators of the text requests in it
+    private static String file(int i) {
+        return "/d" + i % 7 + "/f|" + i % 13 + "\nline";
+    }
+
+    // stand every proc entry in for by its module, returning the entries
+    private static List<String> emulate(FsBackend backend) {
+        List<String> entries = new ArrayList<>();
+        for (Operation.Type type : Operation.Type.values()) {
+            String procFile = procFile(type);
+            ProcChannelManager.emulate(procFile, request -> FrameDecoder.apply(request, type, backend));
+            entries.add(procFile);
+        }
+        return entries;
+    }
+
+    private static String procFile(Operation.Type type) {
+        return switch (type) {
+            case CREATE_FOLDER -> FMKernelModules.CREATE_FOLDER_PROC_FILE;
+            case RENAME_FOLDER -> FMKernelModules.RENAME_FOLDER_PROC_FILE;
+            case DELETE_FOLDER -> FMKernelModules.DELETE_FOLDER_PROC_FILE;
+            case CREATE_FILE -> FMKernelModules.CREATE_FILE_PROC_FILE;
+            case RENAME_FILE -> FMKernelModules.RENAME_FILE_PROC_FILE;
+            case UPDATE_FILE -> FMKernelModules.UPDATE_FILE_PROC_FILE;
+            case DELETE_FILE -> FMKernelModules.DELETE_FILE_PROC_FILE;
+        };
+    }
+
+    private static Errno perform(Operation operation, FsBackend backend) {
+        try {
+            switch (operation.getType()) {
+                case CREATE_FOLDER -> backend.createFolder(operation.getPath());
+                case RENAME_FOLDER -> backend.renameFolder(operation.getPath(), operation.getArgument());
+                case DELETE_FOLDER -> backend.deleteFolder(operation.getPath());
+                case CREATE_FILE -> backend.createFile(operation.getPath(), operation.getArgument());
+                case RENAME_FILE -> backend.renameFile(operation.getPath(), operation.getArgument());
+                case UPDATE_FILE -> backend.updateFile(operation.getPath(), operation.getArgument(), operation.getOverwriteFlag());
+                case DELETE_FILE -> backend.deleteFile(operation.getPath());
+            }
+            return Errno.OK;
+        } catch (IOException e) {
+            return Errno.of(e);
+        }
+    }
+
+    private static boolean same(Operation a, Operation b) {
+        return a.getType() == b.getType() && a.getPath().equals(b.getPath())
+                && Objects.equals(a.getArgument(), b.getArgument()) && a.getOverwriteFlag() == b.getOverwriteFlag();
+    }
+
+    // the paths, types and contents below a folder, one per line
+    private static String dump(FsBackend backend, String folder) throws IOException {
+        StringBuilder tree = new StringBuilder();
+        for (FileDetails entry : backend.listFiles(folder)) {
+            String path = (folder.equals("/") ? "" : folder) + "/" + entry.name();
+            if (entry.isDirectory()) {
+                tree.append(path).append("/\n").append(dump(backend, path));
+            } else {
+                tree.append(path).append(" = ").append(backend.readFileContent(path)).append('\n');
+            }
+        }
+        return tree.toString();
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            System.out.println("FAILED: " + message);
+            System.exit(1);
+        }
+    }
+}
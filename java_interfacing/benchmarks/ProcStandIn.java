@@ -0,0 +1,74 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+
+/**
+ * ProcStandIn
+ * this class points the proc-path fields of FMKernelModules at regular files in a temporary
+ * directory, so the request path can be exercised without loading the kernel modules.
+ * every request written to an entry is appended to its stand-in file.
+ *
+ * @authors      Richard Quayson & Thomas Quarshie
+ */
+
+public class ProcStandIn {
+    private final Path directory;
+
+
+    private ProcStandIn(Path directory) {
+        this.directory = directory;
+    }
+
+
+    /**
+     * install
+     * this method creates the stand-in files and points FMKernelModules at them.
+     *
+     * @return ProcStandIn the installed stand-in.
+     * @throws IOException if the temporary files cannot be created.
+     */
+
+    public static ProcStandIn install() throws IOException {
+        Path directory = Files.createTempDirectory("fm-proc");
+        FMKernelModules.CREATE_FOLDER_PROC_FILE = Files.createFile(directory.resolve("create_folder")).toString();
+        FMKernelModules.RENAME_FOLDER_PROC_FILE = Files.createFile(directory.resolve("rename_folder")).toString();
+        FMKernelModules.DELETE_FOLDER_PROC_FILE = Files.createFile(directory.resolve("delete_folder")).toString();
+        FMKernelModules.CREATE_FILE_PROC_FILE = Files.createFile(directory.resolve("create_file")).toString();
+        FMKernelModules.RENAME_FILE_PROC_FILE = Files.createFile(directory.resolve("rename_file")).toString();
+        FMKernelModules.UPDATE_FILE_PROC_FILE = Files.createFile(directory.resolve("update_file")).toString();
+        FMKernelModules.DELETE_FILE_PROC_FILE = Files.createFile(directory.resolve("delete_file")).toString();
+        return new ProcStandIn(directory);
+    }
+
+
+    /**
+     * directory
+     * this method returns the directory holding the stand-in files.
+     *
+     * @return Path the directory.
+     */
+
+    public Path directory() {
+        return directory;
+    }
+
+
+    /**
+     * uninstall
+     * this method closes the cached channels and removes the stand-in files.
+     *
+     * @return void
+     * @throws IOException if a file cannot be removed.
+     */
+
+    public void uninstall() throws IOException {
+        ProcChannelManager.closeAll();
+        try (var entries = Files.list(directory)) {
+            for (Path entry : (Iterable<Path>) entries::iterator) {
+                Files.delete(entry);
+            }
+        }
+        Files.delete(directory);
+    }
+}
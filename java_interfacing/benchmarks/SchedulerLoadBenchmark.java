@@ -0,0 +1,158 @@
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * SchedulerLoadBenchmark
+ * this class shows the adaptive concurrency limit of OperationScheduler following the load.
+ * /proc/create_file is stood in for by a named pipe whose reader plays the kernel module: in the
+ * fast phases it takes the requests as they come, in the slow phase it sleeps before every
+ * read, so the pipe fills up and every write waits on it, as on a saturated module. bulk
+ * producers keep the BULK lane full throughout and a trickle of interactive operations measures
+ * what a user would wait.
+ *
+ * the limit is printed as it moves; the run fails (exit status 1) unless it grew above its start
+ * in the first fast phase and stayed lower on average in the slow one.
+ *
+ * usage: java SchedulerLoadBenchmark [phaseSeconds] [producers] [slowReadMicros]
+ *
+ * @authors      Richard Quayson & Thomas Quarshie
+ */
+
+public class SchedulerLoadBenchmark {
+    // a pipe holds 64 KB, one read takes at most this much of it, a few requests
+    private static final int READ_SIZE = 256;
+
+    private static volatile long readDelayMicros;
+    private static volatile boolean running = true;
+
+
+    public static void main(String[] args) throws Exception {
+        int phaseSeconds = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        int producers = args.length > 1 ? Integer.parseInt(args[1]) : 128;
+        long slowReadMicros = args.length > 2 ? Long.parseLong(args[2]) : 1_000;
+
+        ProcStandIn standIn = ProcStandIn.install();
+        FMKernelModules.setLog(OperationLog.NONE);
+        Path pipe = standIn.directory().resolve("create_file_pipe");
+        Process mkfifo = new ProcessBuilder("mkfifo", pipe.toString()).inheritIO().start();
+        if (mkfifo.waitFor() != 0) {
+            throw new IOException("mkfifo failed for " + pipe);
+        }
+        FMKernelModules.CREATE_FILE_PROC_FILE = pipe.toString();
+
+        Thread module = new Thread(() -> consume(pipe), "fm-module-stand-in");
+        module.setDaemon(true);
+        module.start();
+
+        LongAdder bulkDone = new LongAdder();
+        LongAdder interactiveDone = new LongAdder();
+        LongAdder interactiveNanos = new LongAdder();
+        try (OperationScheduler scheduler = new OperationScheduler(256, 4096, 1, 64);
+                ExecutorService load = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int p = 0; p < producers; p++) {
+                int producer = p;
+                load.execute(() -> {
+                    for (long i = 0; running; i++) {
+                        scheduler.run(OperationScheduler.Lane.BULK,
+                                Operation.createFile("/tmp/bulk/p" + producer + "/f" + i, "bulk content " + i));
+                        bulkDone.increment();
+                    }
+                });
+            }
+            load.execute(() -> {
+                for (long i = 0; running; i++) {
+                    long start = System.nanoTime();
+                    scheduler.run(OperationScheduler.Lane.INTERACTIVE, Operation.createFile("/tmp/user/f" + i, "typed"));
+                    interactiveNanos.add(System.nanoTime() - start);
+                    interactiveDone.increment();
+                    sleep(10_000);
+                }
+            });
+
+            int start = scheduler.getConcurrencyLimit();
+            double[] fast = phase("fast", 0, phaseSeconds, scheduler, bulkDone, interactiveDone, interactiveNanos);
+            double[] slow = phase("slow", slowReadMicros, phaseSeconds, scheduler, bulkDone, interactiveDone, interactiveNanos);
+            double[] again = phase("fast", 0, phaseSeconds, scheduler, bulkDone, interactiveDone, interactiveNanos);
+
+            running = false;
+            readDelayMicros = 0;
+            boolean grew = fast[1] > start;
+            boolean shrank = slow[0] < fast[0] && slow[0] < again[0];
+            System.out.printf("mean limit (highest): fast %.1f (%.0f), slow %.1f (%.0f), fast again %.1f (%.0f), starting from %d%n",
+                    fast[0], fast[1], slow[0], slow[1], again[0], again[1], start);
+            System.out.println(grew && shrank ? "OK: the limit followed the load"
+                    : "FAILED: the limit " + (grew ? "did not shrink under the slow module" : "did not grow under the fast module"));
+            if (!(grew && shrank)) {
+                standIn.uninstall();
+                System.exit(1);
+            }
+        }
+        standIn.uninstall();
+    }
+
+
+    /**
+     * phase
+     * this method runs the load against the module at one speed, printing the scheduler every
+     * quarter of a second.
+     *
+     * @return double[] the mean limit over the phase and the highest it reached.
+     */
+
+    private static double[] phase(String name, long delayMicros, int seconds, OperationScheduler scheduler,
+            LongAdder bulkDone, LongAdder interactiveDone, LongAdder interactiveNanos) {
+        readDelayMicros = delayMicros;
+        int highest = 0;
+        long sum = 0;
+        long lastBulk = bulkDone.sum();
+        long lastInteractive = interactiveDone.sum();
+        long lastNanos = interactiveNanos.sum();
+        for (int tick = 0; tick < seconds * 4; tick++) {
+            sleep(250_000);
+            int limit = scheduler.getConcurrencyLimit();
+            highest = Math.max(highest, limit);
+            sum += limit;
+            long bulk = bulkDone.sum();
+            long interactive = interactiveDone.sum();
+            long nanos = interactiveNanos.sum();
+            System.out.printf("%-4s limit %2d  in flight %2d  bulk queue %4d  window %,7d us  bulk %,8.0f ops/s  interactive wait %,7.0f us%n",
+                    name, limit, scheduler.getInFlight(), scheduler.getBulkQueueDepth(), scheduler.getWindowLatencyMicros(),
+                    (bulk - lastBulk) * 4.0, interactive == lastInteractive ? 0 : (nanos - lastNanos) / 1e3 / (interactive - lastInteractive));
+            lastBulk = bulk;
+            lastInteractive = interactive;
+            lastNanos = nanos;
+        }
+        return new double[] { sum / (seconds * 4.0), highest };
+    }
+
+
+    // the kernel module: read the pipe, slowly while readDelayMicros is set
+    private static void consume(Path pipe) {
+        byte[] buffer = new byte[READ_SIZE];
+        try (InputStream in = new FileInputStream(pipe.toFile())) {
+            while (in.read(buffer) >= 0) {
+                long delay = readDelayMicros;
+                if (delay > 0) {
+                    sleep(delay);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("The module stand-in stopped: " + e.getMessage());
+        }
+    }
+
+    private static void sleep(long micros) {
+        try {
+            TimeUnit.MICROSECONDS.sleep(micros);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package fm.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * AppendBenchmark
+ * this class measures log-style appends through FMKernelModules.updateFile, sent one request
+ * per append or merged by an AppendCoalescer installed with setWriteBehind.
+ *
+ * @authors      Richard Quayson & Thomas Quarshie
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AppendBenchmark {
+    // size of every appended line, in characters
+    private static final int LINE_SIZE = 80;
+
+    // direct: a request per append; writeBehind: appends merged per path
+    @Param({"direct", "writeBehind"})
+    public String mode;
+
+    // number of files the appends are spread over
+    @Param({"1", "64"})
+    public int paths;
+
+    private ProcEmulator emulator;
+    private Object coalescer;
+    private String[] files;
+    private String line;
+    private int next;
+
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        emulator = ProcEmulator.install();
+        files = new String[paths];
+        for (int i = 0; i < paths; i++) {
+            files[i] = "/tmp/fm-bench/log-" + i + ".txt";
+        }
+        line = "x".repeat(LINE_SIZE - 1) + "\n";
+        if ("writeBehind".equals(mode)) {
+            coalescer = (Object) Kernel.NEW_APPEND_COALESCER.invokeExact(50L, 64 * 1024);
+            Kernel.SET_WRITE_BEHIND.invokeExact(coalescer);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Throwable {
+        if (coalescer != null) {
+            Kernel.SET_WRITE_BEHIND.invokeExact((Object) null);
+            Kernel.CLOSE_APPEND_COALESCER.invokeExact(coalescer);
+        }
+        emulator.close();
+    }
+
+
+    @Benchmark
+    public void append() throws Throwable {
+        next = next + 1 == paths ? 0 : next + 1;
+        Kernel.UPDATE_FILE.invokeExact(files[next], line, 0);
+    }
+}
@@ -0,0 +1,101 @@
+package fm.jmh;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * BackendBenchmark
+ * this class runs the same operations through each FsBackend, to measure what the kernel module
+ * path costs over java.nio.file and over the in-memory tree. the proc backend writes to the
+ * ProcEmulator stand-ins, so its numbers are the user-space share of the module path.
+ *
+ * @authors      Richard Quayson & Thomas Quarshie
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BackendBenchmark {
+
+    @Param({"proc", "nio", "memory"})
+    public String backend;
+
+    // size of the content sent with every request, in characters
+    @Param({"16", "4096"})
+    public int payloadSize;
+
+    private ProcEmulator emulator;
+    private Object fs;
+    private Path root;
+    private String filePath;
+    private String appendedPath;
+    private String payload;
+
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        emulator = ProcEmulator.install();
+        fs = (Object) Kernel.CREATE_BACKEND.invokeExact(backend);
+        root = Files.createTempDirectory("fm-backend");
+        // the in-memory tree starts empty, give it the folders of the temporary directory
+        if ("memory".equals(backend)) {
+            Path folder = root.getRoot();
+            for (Path name : root) {
+                folder = folder.resolve(name);
+                Kernel.BACKEND_CREATE_FOLDER.invokeExact(fs, folder.toString());
+            }
+        }
+        filePath = root.resolve("file.txt").toString();
+        appendedPath = root.resolve("appended.txt").toString();
+        payload = "x".repeat(payloadSize);
+        Kernel.BACKEND_CREATE_FILE.invokeExact(fs, appendedPath, "");
+    }
+
+    // keep the appended file from growing across iterations
+    @Setup(Level.Iteration)
+    public void truncate() throws Throwable {
+        Kernel.BACKEND_UPDATE_FILE.invokeExact(fs, appendedPath, "", 1);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Trees.delete(root);
+        emulator.close();
+    }
+
+
+    @Benchmark
+    public void createAndDeleteFile() throws Throwable {
+        Kernel.BACKEND_CREATE_FILE.invokeExact(fs, filePath, payload);
+        Kernel.BACKEND_DELETE_FILE.invokeExact(fs, filePath);
+    }
+
+    @Benchmark
+    public void updateFileAppend() throws Throwable {
+        Kernel.BACKEND_UPDATE_FILE.invokeExact(fs, appendedPath, payload, 0);
+    }
+
+    @Benchmark
+    public void updateFileOverwrite() throws Throwable {
+        Kernel.BACKEND_UPDATE_FILE.invokeExact(fs, appendedPath, payload, 1);
+    }
+}
@@ -0,0 +1,122 @@
+package fm.jmh;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * ContentIndexBenchmark
+ * this class measures finding the files that contain a term or a phrase, with a ContentIndex
+ * built over a tree of text files, against reading every file with readFileContent.
+ *
+ * @authors      Richard Quayson & Thomas Quarshie
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContentIndexBenchmark {
+    // number of files in the tree
+    @Param({"1000", "10000"})
+    public int files;
+
+    // words of every file
+    private static final int WORDS_PER_FILE = 200;
+    private static final int VOCABULARY = 5000;
+
+    private Path root;
+    private Path indexDirectory;
+    private Object index;
+    private List<String> paths;
+    private String rareTerm;
+    private String commonTerm;
+    private String phrase;
+
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        // words drawn with a skew, so a few are in most files and most are in a few
+        String[] words = new String[VOCABULARY];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = "w" + Integer.toString(i, 36);
+        }
+        Random random = new Random(42);
+        root = Files.createTempDirectory("fm-index-tree");
+        paths = new ArrayList<>(files);
+        for (int f = 0; f < files; f++) {
+            Path folder = Files.createDirectories(root.resolve("d" + f / 100));
+            StringBuilder content = new StringBuilder();
+            for (int w = 0; w < WORDS_PER_FILE; w++) {
+                int word = (int) Math.min(VOCABULARY - 1, Math.abs(random.nextGaussian()) * VOCABULARY / 6);
+                content.append(words[word]).append(w % 12 == 11 ? ".\n" : " ");
+            }
+            Path file = folder.resolve("f" + f + ".txt");
+            Files.writeString(file, content);
+            paths.add(file.toString());
+        }
+        commonTerm = words[1];
+        rareTerm = words[VOCABULARY / 2];
+        phrase = words[1] + " " + words[2];
+
+        indexDirectory = Files.createTempDirectory("fm-index");
+        index = (Object) Kernel.OPEN_CONTENT_INDEX.invokeExact(indexDirectory);
+        Kernel.BUILD_CONTENT_INDEX.invokeExact(index, root.toString());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Throwable {
+        Kernel.CLOSE_CONTENT_INDEX.invokeExact(index);
+        Trees.delete(root);
+        Trees.delete(indexDirectory);
+    }
+
+
+    @Benchmark
+    public List<?> rareTerm() throws Throwable {
+        return (List<?>) Kernel.SEARCH_CONTENT_INDEX.invokeExact(index, rareTerm);
+    }
+
+    @Benchmark
+    public List<?> commonTerm() throws Throwable {
+        return (List<?>) Kernel.SEARCH_CONTENT_INDEX.invokeExact(index, commonTerm);
+    }
+
+    @Benchmark
+    public List<?> phrase() throws Throwable {
+        return (List<?>) Kernel.SEARCH_CONTENT_INDEX.invokeExact(index, phrase);
+    }
+
+    // the files found without an index, by reading each of them
+    @Benchmark
+    public List<String> scan() throws Throwable {
+        List<String> found = new ArrayList<>();
+        for (String path : paths) {
+            String content = (String) Kernel.READ_FILE_CONTENT.invokeExact(path);
+            if (content.contains(rareTerm + " ") || content.contains(rareTerm + ".")) {
+                found.add(path);
+            }
+        }
+        return found;
+    }
+}
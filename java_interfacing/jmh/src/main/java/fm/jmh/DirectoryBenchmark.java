@@ -0,0 +1,97 @@
+package fm.jmh;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * DirectoryBenchmark
+ * this class measures the read-side operations on trees of different shapes and sizes:
+ * listFilesInDirectory and getDirectoryInfo on the root of the tree (the latter both with the
+ * aggregate cache warm and with it emptied before every call), and getFileDetails on the files
+ * of the tree.
+ *
+ * @authors      Richard Quayson & Thomas Quarshie
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DirectoryBenchmark {
+
+    @Param({"FLAT", "DEEP", "BALANCED"})
+    public String shape;
+
+    // number of files in the tree
+    @Param({"1000", "100000"})
+    public int files;
+
+    private ProcEmulator emulator;
+    private Path root;
+    private String rootPath;
+    private String[] filePaths;
+    private int next;
+
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        emulator = ProcEmulator.install();
+        root = Files.createTempDirectory("fm-tree");
+        rootPath = root.toString();
+        List<Path> created = Trees.build(root, Trees.Shape.valueOf(shape), files, 64);
+        // a fixed sample, spread over the whole tree
+        filePaths = new String[Math.min(1024, created.size())];
+        for (int i = 0; i < filePaths.length; i++) {
+            filePaths[i] = created.get((int) ((long) i * created.size() / filePaths.length)).toString();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Trees.delete(root);
+        emulator.close();
+    }
+
+
+    @Benchmark
+    public File[] listFilesInDirectory() throws Throwable {
+        return (File[]) Kernel.LIST_FILES_IN_DIRECTORY.invokeExact(rootPath);
+    }
+
+    @Benchmark
+    public String getDirectoryInfo() throws Throwable {
+        return (String) Kernel.GET_DIRECTORY_INFO.invokeExact(rootPath);
+    }
+
+    @Benchmark
+    public String getDirectoryInfoUncached() throws Throwable {
+        Kernel.invalidateDirectoryAggregates();
+        return (String) Kernel.GET_DIRECTORY_INFO.invokeExact(rootPath);
+    }
+
+    @Benchmark
+    public String getFileDetails() throws Throwable {
+        next = (next + 1) % filePaths.length;
+        return (String) Kernel.GET_FILE_DETAILS.invokeExact(filePaths[next]);
+    }
+}
@@ -0,0 +1,75 @@
+package fm.jmh;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * FramingBenchmark
+ * this class measures FMKernelModules.submitBatch on a batch of updates, sent as one text request
+ * per operation or packed into binary frames (FMKernelModules.setFraming).
+ *
+ * @authors      Richard Quayson & Thomas Quarshie
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FramingBenchmark {
+    // text: a request per operation; frames: the batch packed into framed writes
+    @Param({"text", "frames"})
+    public String format;
+
+    // number of operations in the batch
+    @Param({"1", "256"})
+    public int operations;
+
+    // size of the data of every update, in characters
+    @Param({"64", "4096"})
+    public int payloadSize;
+
+    private ProcEmulator emulator;
+    private List<Object> batch;
+
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        emulator = ProcEmulator.install();
+        Kernel.SET_FRAMING.invokeExact("frames".equals(format));
+        String data = "x".repeat(payloadSize);
+        batch = new ArrayList<>(operations);
+        for (int i = 0; i < operations; i++) {
+            batch.add((Object) Kernel.UPDATE_OPERATION.invokeExact("/tmp/fm-bench/file-" + i + ".txt", data, 0));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Throwable {
+        Kernel.SET_FRAMING.invokeExact(false);
+        emulator.close();
+    }
+
+
+    @Benchmark
+    public List<?> submitBatch() throws Throwable {
+        return (List<?>) Kernel.SUBMIT_BATCH.invokeExact((List<?>) batch);
+    }
+}
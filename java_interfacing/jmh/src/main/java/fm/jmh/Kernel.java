@@ -0,0 +1,196 @@
+package fm.jmh;
+
+import java.io.File;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+
+/**
+ * Kernel
+ * this class gives the benchmarks access to FMKernelModules. the interface classes live in the
+ * default package, which cannot be imported from a named package, so every operation is bound
+ * once to a static final MethodHandle; invokeExact on such a handle is inlined by the JIT like a
+ * direct call, so the indirection does not show up in the measurements.
+ *
+ * @authors      Richard Quayson & Thomas Quarshie
+ */
+
+final class Kernel {
+    private static final Class<?> MODULES = load("FMKernelModules");
+    private static final Class<?> AGGREGATE_CACHE = load("DirectoryAggregateCache");
+    private static final Class<?> CHANNELS = load("ProcChannelManager");
+    private static final Class<?> BACKEND = load("FsBackend");
+
+    // FMKernelModules operations; the OperationResult of the mutations is dropped, as by a
+    // caller that ignores it, so its allocation can be eliminated like in such a caller
+    static final MethodHandle CREATE_FILE = mutation("createFile", String.class, String.class);
+    static final MethodHandle UPDATE_FILE = mutation("updateFile", String.class, String.class, int.class);
+    static final MethodHandle RENAME_FILE = mutation("renameFile", String.class, String.class);
+    static final MethodHandle DELETE_FILE = mutation("deleteFile", String.class);
+    static final MethodHandle LIST_FILES_IN_DIRECTORY = find(MODULES, "listFilesInDirectory", File[].class, String.class);
+    static final MethodHandle GET_DIRECTORY_INFO = find(MODULES, "getDirectoryInfo", String.class, String.class);
+    static final MethodHandle GET_FILE_DETAILS = find(MODULES, "getFileDetails", String.class, String.class);
+    static final MethodHandle READ_FILE_CONTENT = find(MODULES, "readFileContent", String.class, String.class);
+
+    // FsBackend operations, on a backend created by name with FsBackends.create
+    static final MethodHandle CREATE_BACKEND = find(load("FsBackends"), "create", BACKEND, String.class)
+            .asType(MethodType.methodType(Object.class, String.class));
+    static final MethodHandle BACKEND_CREATE_FOLDER = backendMethod("createFolder", String.class);
+    static final MethodHandle BACKEND_CREATE_FILE = backendMethod("createFile", String.class, String.class);
+    static final MethodHandle BACKEND_UPDATE_FILE = backendMethod("updateFile", String.class, String.class, int.class);
+    static final MethodHandle BACKEND_DELETE_FILE = backendMethod("deleteFile", String.class);
+
+    // AppendCoalescer, as Object: a new coalescer with given windows, installing it, closing it
+    private static final Class<?> COALESCER = load("AppendCoalescer");
+    static final MethodHandle NEW_APPEND_COALESCER = constructor(COALESCER, long.class, int.class)
+            .asType(MethodType.methodType(Object.class, long.class, int.class));
+    static final MethodHandle SET_WRITE_BEHIND = find(MODULES, "setWriteBehind", void.class, COALESCER)
+            .asType(MethodType.methodType(void.class, Object.class));
+    static final MethodHandle CLOSE_APPEND_COALESCER = findVirtual(COALESCER, "close", void.class)
+            .asType(MethodType.methodType(void.class, Object.class));
+
+    // PathLocks, as Object: new lock managers, taking a path exclusively, releasing the hold
+    private static final Class<?> PATH_LOCKS = load("PathLocks");
+    static final MethodHandle NEW_PATH_LOCKS = constructor(PATH_LOCKS, int.class)
+            .asType(MethodType.methodType(Object.class, int.class));
+    static final MethodHandle LOCK_PATH = findVirtual(PATH_LOCKS, "lock", load("PathLocks$Hold"), String.class)
+            .asType(MethodType.methodType(Object.class, Object.class, String.class));
+    static final MethodHandle RELEASE_PATH = findVirtual(load("PathLocks$Hold"), "close", void.class)
+            .asType(MethodType.methodType(void.class, Object.class));
+
+    // request framing: switching it, building update operations (as Object), sending a batch of them
+    static final MethodHandle SET_FRAMING = find(MODULES, "setFraming", void.class, boolean.class);
+    static final MethodHandle UPDATE_OPERATION = find(load("Operation"), "updateFile", load("Operation"), String.class, String.class, int.class)
+            .asType(MethodType.methodType(Object.class, String.class, String.class, int.class));
+    static final MethodHandle SUBMIT_BATCH = find(MODULES, "submitBatch", List.class, List.class);
+
+    // ContentIndex, as Object: opening one in a directory, building it over a folder, searching, closing
+    private static final Class<?> CONTENT_INDEX = load("ContentIndex");
+    static final MethodHandle OPEN_CONTENT_INDEX = find(CONTENT_INDEX, "open", CONTENT_INDEX, Path.class)
+            .asType(MethodType.methodType(Object.class, Path.class));
+    static final MethodHandle BUILD_CONTENT_INDEX = findVirtual(CONTENT_INDEX, "build", void.class, String.class)
+            .asType(MethodType.methodType(void.class, Object.class, String.class));
+    static final MethodHandle SEARCH_CONTENT_INDEX = findVirtual(CONTENT_INDEX, "search", List.class, String.class)
+            .asType(MethodType.methodType(List.class, Object.class, String.class));
+    static final MethodHandle CLOSE_CONTENT_INDEX = findVirtual(CONTENT_INDEX, "close", void.class)
+            .asType(MethodType.methodType(void.class, Object.class));
+
+    // TreeOperations on a given pool, with the backend as Object and the final counts dropped
+    static final MethodHandle DELETE_TREE = treeOperation("deleteTree", String.class);
+    static final MethodHandle COPY_TREE = treeOperation("copyTree", String.class, String.class);
+
+    // drops every cached directory aggregate, so getDirectoryInfo has to walk the tree again
+    private static final MethodHandle SHARED_CACHE = find(AGGREGATE_CACHE, "shared", AGGREGATE_CACHE)
+            .asType(MethodType.methodType(Object.class));
+    private static final MethodHandle INVALIDATE_ALL = findVirtual(AGGREGATE_CACHE, "invalidateAll", void.class)
+            .asType(MethodType.methodType(void.class, Object.class));
+    private static final MethodHandle CLOSE_CHANNELS = find(CHANNELS, "closeAll", void.class);
+
+
+    private Kernel() {
+    }
+
+
+    /**
+     * invalidateDirectoryAggregates
+     * this method empties the shared directory aggregate cache.
+     *
+     * @return void
+     */
+
+    static void invalidateDirectoryAggregates() throws Throwable {
+        Object cache = (Object) SHARED_CACHE.invokeExact();
+        INVALIDATE_ALL.invokeExact(cache);
+    }
+
+
+    /**
+     * closeChannels
+     * this method closes the channels cached for the proc entries.
+     *
+     * @return void
+     */
+
+    static void closeChannels() {
+        try {
+            CLOSE_CHANNELS.invokeExact();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            // closeAll declares no checked exceptions
+            throw new IllegalStateException(e);
+        }
+    }
+
+
+    /**
+     * procFile / setProcFile
+     * these methods read and replace one of the *_PROC_FILE fields of FMKernelModules.
+     */
+
+    static String procFile(String field) throws ReflectiveOperationException {
+        return (String) MODULES.getField(field).get(null);
+    }
+
+    static void setProcFile(String field, String path) throws ReflectiveOperationException {
+        MODULES.getField(field).set(null, path);
+    }
+
+
+    private static MethodHandle mutation(String name, Class<?>... parameters) {
+        MethodHandle method = find(MODULES, name, load("OperationResult"), parameters);
+        return method.asType(method.type().changeReturnType(void.class));
+    }
+
+    private static MethodHandle treeOperation(String name, Class<?>... paths) {
+        Class<?>[] parameters = new Class<?>[paths.length + 3];
+        parameters[0] = BACKEND;
+        System.arraycopy(paths, 0, parameters, 1, paths.length);
+        parameters[paths.length + 1] = Consumer.class;
+        parameters[paths.length + 2] = ForkJoinPool.class;
+        MethodHandle method = find(load("TreeOperations"), name, load("TreeProgress"), parameters);
+        return method.asType(method.type().changeParameterType(0, Object.class).changeReturnType(void.class));
+    }
+
+    private static MethodHandle backendMethod(String name, Class<?>... parameters) {
+        MethodHandle method = findVirtual(BACKEND, name, void.class, parameters);
+        return method.asType(method.type().changeParameterType(0, Object.class));
+    }
+
+    private static Class<?> load(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(name + " is not on the class path", e);
+        }
+    }
+
+    private static MethodHandle find(Class<?> owner, String name, Class<?> returnType, Class<?>... parameters) {
+        try {
+            return MethodHandles.publicLookup().findStatic(owner, name, MethodType.methodType(returnType, parameters));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Missing " + owner.getName() + "." + name, e);
+        }
+    }
+
+    private static MethodHandle constructor(Class<?> owner, Class<?>... parameters) {
+        try {
+            return MethodHandles.publicLookup().findConstructor(owner, MethodType.methodType(void.class, parameters));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Missing constructor of " + owner.getName(), e);
+        }
+    }
+
+    private static MethodHandle findVirtual(Class<?> owner, String name, Class<?> returnType, Class<?>... parameters) {
+        try {
+            return MethodHandles.publicLookup().findVirtual(owner, name, MethodType.methodType(returnType, parameters));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Missing " + owner.getName() + "." + name, e);
+        }
+    }
+}
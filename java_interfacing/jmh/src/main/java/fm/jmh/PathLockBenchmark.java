@@ -0,0 +1,101 @@
+package fm.jmh;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.infra.ThreadParams;
+
+
+/**
+ * PathLockBenchmark
+ * this class measures the contention of PathLocks: several threads each lock a path, do a
+ * fixed amount of work and release it. a share of the operations goes to one path all threads
+ * use, the rest to paths of their own. "global" is a single stripe, i.e. every operation
+ * serialized, for comparison.
+ *
+ * @authors      Richard Quayson & Thomas Quarshie
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class PathLockBenchmark {
+    private static final int PATHS_PER_THREAD = 256;
+    private static final String SHARED_PATH = "/tmp/fm-bench/shared/log.txt";
+
+    // striped: PathLocks with the default stripes; global: a single stripe
+    @Param({"striped", "global"})
+    public String mode;
+
+    // percentage of the operations on the path all threads share
+    @Param({"0", "10", "100"})
+    public int samePathPercent;
+
+    // work done while holding the lock, in Blackhole.consumeCPU tokens
+    @Param({"100"})
+    public int work;
+
+    private Object locks;
+
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        locks = (Object) Kernel.NEW_PATH_LOCKS.invokeExact("global".equals(mode) ? 1 : 1024);
+    }
+
+
+    /**
+     * Worker
+     * the paths of one thread.
+     */
+
+    @State(Scope.Thread)
+    public static class Worker {
+        String[] paths;
+        int next;
+
+        @Setup(Level.Trial)
+        public void setUp(ThreadParams thread) {
+            paths = new String[PATHS_PER_THREAD];
+            for (int i = 0; i < PATHS_PER_THREAD; i++) {
+                paths[i] = "/tmp/fm-bench/worker-" + thread.getThreadIndex() + "/file-" + i + ".txt";
+            }
+        }
+    }
+
+
+    @Benchmark
+    public void lockAndWork(Worker worker) throws Throwable {
+        String path;
+        if (samePathPercent > 0 && ThreadLocalRandom.current().nextInt(100) < samePathPercent) {
+            path = SHARED_PATH;
+        } else {
+            worker.next = (worker.next + 1) & (PATHS_PER_THREAD - 1);
+            path = worker.paths[worker.next];
+        }
+        Object hold = (Object) Kernel.LOCK_PATH.invokeExact(locks, path);
+        try {
+            Blackhole.consumeCPU(work);
+        } finally {
+            Kernel.RELEASE_PATH.invokeExact(hold);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package fm.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * PathRequestBenchmark
+ * this class measures the operations whose request is made of paths only, renameFile and
+ * deleteFile, for paths at different depths of a tree.
+ *
+ * @authors      Richard Quayson & Thomas Quarshie
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PathRequestBenchmark {
+    private static final int PATHS = 1024;
+
+    // number of directories above the file the request names
+    @Param({"1", "8", "32"})
+    public int depth;
+
+    private ProcEmulator emulator;
+    private String[] paths;
+    private String[] newNames;
+    private int next;
+
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        emulator = ProcEmulator.install();
+        StringBuilder parent = new StringBuilder("/tmp/fm-bench");
+        for (int level = 1; level < depth; level++) {
+            parent.append("/level-").append(level);
+        }
+        paths = new String[PATHS];
+        newNames = new String[PATHS];
+        for (int i = 0; i < PATHS; i++) {
+            paths[i] = parent + "/file-" + i + ".txt";
+            newNames[i] = "renamed-" + i + ".txt";
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        emulator.close();
+    }
+
+
+    @Benchmark
+    public void renameFile() throws Throwable {
+        int i = nextIndex();
+        Kernel.RENAME_FILE.invokeExact(paths[i], newNames[i]);
+    }
+
+    @Benchmark
+    public void deleteFile() throws Throwable {
+        Kernel.DELETE_FILE.invokeExact(paths[nextIndex()]);
+    }
+
+
+    private int nextIndex() {
+        next = (next + 1) & (PATHS - 1);
+        return next;
+    }
+}
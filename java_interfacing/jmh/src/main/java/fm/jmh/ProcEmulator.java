@@ -0,0 +1,98 @@
+package fm.jmh;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * ProcEmulator
+ * this class stands in for the /proc entries of the kernel modules, so the benchmarks run on any
+ * linux box without loading the modules. every *_PROC_FILE field of FMKernelModules is pointed at
+ * an entry of a temporary directory. by default the entries are links to /dev/null: like a proc
+ * entry, a write is accepted whole in a single call and nothing piles up on disk, so what is
+ * measured is the user-space path of an operation up to and including the write(2). with
+ * -Dfm.jmh.sink=file the entries are regular files instead, which adds the page-cache copy of
+ * every request (and grows the files for as long as the benchmark runs).
+ *
+ * the console output of the interface methods is discarded while the emulator is installed.
+ *
+ * @authors      Richard Quayson & Thomas Quarshie
+ */
+
+final class ProcEmulator implements AutoCloseable {
+    private static final String[] FIELDS = {
+            "CREATE_FOLDER_PROC_FILE", "RENAME_FOLDER_PROC_FILE", "DELETE_FOLDER_PROC_FILE",
+            "CREATE_FILE_PROC_FILE", "RENAME_FILE_PROC_FILE", "UPDATE_FILE_PROC_FILE", "DELETE_FILE_PROC_FILE"
+    };
+
+    private final Path directory;
+    private final Map<String, String> replaced = new LinkedHashMap<>();
+    private final PrintStream console = System.out;
+
+
+    private ProcEmulator(Path directory) {
+        this.directory = directory;
+    }
+
+
+    /**
+     * install
+     * this method creates the stand-in entries and points FMKernelModules at them.
+     *
+     * @return ProcEmulator the installed emulator, close it to restore the real entries.
+     * @throws Exception if the entries cannot be created.
+     */
+
+    static ProcEmulator install() throws Exception {
+        boolean files = "file".equals(System.getProperty("fm.jmh.sink"));
+        ProcEmulator emulator = new ProcEmulator(Files.createTempDirectory("fm-proc"));
+
+        for (String field : FIELDS) {
+            // e.g. CREATE_FILE_PROC_FILE -> create_file
+            String name = field.substring(0, field.length() - "_PROC_FILE".length()).toLowerCase();
+            Path entry = emulator.directory.resolve(name);
+            if (files) {
+                Files.createFile(entry);
+            } else {
+                Files.createSymbolicLink(entry, Paths.get("/dev/null"));
+            }
+            emulator.replaced.put(field, Kernel.procFile(field));
+            Kernel.setProcFile(field, entry.toString());
+        }
+
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        return emulator;
+    }
+
+
+    /**
+     * close
+     * this method restores the real entries and the console, and removes the stand-ins.
+     *
+     * @return void
+     * @throws IOException if the stand-ins cannot be removed.
+     * @throws ReflectiveOperationException if the entries cannot be restored.
+     */
+
+    @Override
+    public void close() throws IOException, ReflectiveOperationException {
+        System.setOut(console);
+        Kernel.closeChannels();
+        for (Map.Entry<String, String> field : replaced.entrySet()) {
+            Kernel.setProcFile(field.getKey(), field.getValue());
+        }
+        Trees.delete(directory);
+    }
+
+
+    // the directory holding the stand-in entries
+    Path directory() {
+        return directory;
+    }
+}
@@ -0,0 +1,70 @@
+package fm.jmh;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * ReadContentBenchmark
+ * this class measures readFileContent for files of different sizes, below and above the
+ * threshold where FileContentReader switches from copying to mapping the file.
+ *
+ * @authors      Richard Quayson & Thomas Quarshie
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReadContentBenchmark {
+
+    // size of the file read, in bytes
+    @Param({"64", "65536", "1048576", "16777216"})
+    public int fileSize;
+
+    private Path file;
+    private String filePath;
+
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        byte[] content = new byte[fileSize];
+        // text with line breaks, like the files the interface shows
+        Arrays.fill(content, (byte) 'a');
+        for (int i = 79; i < content.length; i += 80) {
+            content[i] = '\n';
+        }
+        file = Files.createTempFile("fm-read", ".txt");
+        Files.write(file, content);
+        filePath = file.toString();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(file);
+    }
+
+
+    @Benchmark
+    public String readFileContent() throws Throwable {
+        return (String) Kernel.READ_FILE_CONTENT.invokeExact(filePath);
+    }
+}
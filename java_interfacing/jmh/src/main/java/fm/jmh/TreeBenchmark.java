@@ -0,0 +1,100 @@
+package fm.jmh;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * TreeBenchmark
+ * this class measures deleteTree and copyTree on trees of 100k files and more, with the pool at
+ * one worker (a serial walk) and at several. every call is a single shot on a fresh tree: the
+ * nio backend really deletes and copies, the proc backend sends its requests to the
+ * ProcEmulator stand-ins, so it measures the walk and the request path without the kernel work.
+ *
+ * @authors      Richard Quayson & Thomas Quarshie
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class TreeBenchmark {
+
+    @Param({"proc", "nio"})
+    public String backend;
+
+    // number of files in the (balanced) tree
+    @Param({"100000"})
+    public int files;
+
+    // workers of the pool the tree is walked on
+    @Param({"1", "16"})
+    public int parallelism;
+
+    // no progress reports, the calls are timed as a whole
+    private static final Consumer<Object> NO_PROGRESS = null;
+
+    private ProcEmulator emulator;
+    private ForkJoinPool pool;
+    private Object fs;
+    private Path root;
+    private Path tree;
+    private Path copy;
+
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        emulator = ProcEmulator.install();
+        pool = new ForkJoinPool(parallelism);
+        fs = (Object) Kernel.CREATE_BACKEND.invokeExact(backend);
+        root = Files.createTempDirectory("fm-tree-ops");
+        tree = root.resolve("tree");
+        copy = root.resolve("copy");
+    }
+
+    // every call gets the whole tree, and no copy left over from the previous one
+    @Setup(Level.Invocation)
+    public void buildTree() throws Exception {
+        Trees.delete(copy);
+        if (!Files.exists(tree)) {
+            Trees.build(Files.createDirectory(tree), Trees.Shape.BALANCED, files, 16);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        pool.shutdown();
+        Trees.delete(root);
+        emulator.close();
+    }
+
+
+    @Benchmark
+    public void deleteTree() throws Throwable {
+        Kernel.DELETE_TREE.invokeExact(fs, tree.toString(), NO_PROGRESS, pool);
+    }
+
+    @Benchmark
+    public void copyTree() throws Throwable {
+        Kernel.COPY_TREE.invokeExact(fs, tree.toString(), copy.toString(), NO_PROGRESS, pool);
+    }
+}
@@ -0,0 +1,123 @@
+package fm.jmh;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Trees
+ * this class builds the directory trees the read benchmarks run on, in a few shapes that stress
+ * different parts of the interface: one wide directory, a long chain of nested directories, and
+ * a balanced tree of many small directories.
+ *
+ * @authors      Richard Quayson & Thomas Quarshie
+ */
+
+final class Trees {
+
+    enum Shape {
+        // every file directly in the root
+        FLAT,
+        // a chain of DEEP_LEVELS nested directories, the files spread evenly along it
+        DEEP,
+        // directories of BALANCED_FANOUT subdirectories down to leaves of about BALANCED_LEAF files
+        BALANCED
+    }
+
+    private static final int DEEP_LEVELS = 64;
+    private static final int BALANCED_FANOUT = 16;
+    private static final int BALANCED_LEAF = 100;
+
+
+    private Trees() {
+    }
+
+
+    /**
+     * build
+     * this method creates a tree of the given shape holding the given number of files.
+     *
+     * @param root the empty directory to build the tree in.
+     * @param shape the shape of the tree.
+     * @param files the number of files to create.
+     * @param fileSize the size of every file in bytes.
+     * @return List<Path> the files created, in creation order.
+     * @throws IOException if the tree cannot be created.
+     */
+
+    static List<Path> build(Path root, Shape shape, int files, int fileSize) throws IOException {
+        byte[] content = new byte[fileSize];
+        List<Path> created = new ArrayList<>(files);
+
+        switch (shape) {
+            case FLAT -> fill(root, 0, files, content, created);
+            case DEEP -> {
+                Path directory = root;
+                int perLevel = Math.max(1, files / DEEP_LEVELS);
+                for (int level = 0; created.size() < files; level++) {
+                    fill(directory, created.size(), Math.min(perLevel, files - created.size()), content, created);
+                    directory = Files.createDirectory(directory.resolve("level-" + level));
+                }
+            }
+            case BALANCED -> balanced(root, files, content, created);
+        }
+        return created;
+    }
+
+    private static void balanced(Path directory, int files, byte[] content, List<Path> created) throws IOException {
+        if (files <= BALANCED_LEAF) {
+            fill(directory, created.size(), files, content, created);
+            return;
+        }
+        int share = (files + BALANCED_FANOUT - 1) / BALANCED_FANOUT;
+        for (int child = 0; child < BALANCED_FANOUT && files > 0; child++) {
+            int count = Math.min(share, files);
+            balanced(Files.createDirectory(directory.resolve("dir-" + child)), count, content, created);
+            files -= count;
+        }
+    }
+
+    private static void fill(Path directory, int first, int count, byte[] content, List<Path> created) throws IOException {
+        for (int i = 0; i < count; i++) {
+            created.add(Files.write(directory.resolve("file-" + (first + i) + ".txt"), content));
+        }
+    }
+
+
+    /**
+     * delete
+     * this method removes a tree, the root included.
+     *
+     * @param root the root of the tree.
+     * @return void
+     * @throws IOException if an entry cannot be removed.
+     */
+
+    static void delete(Path root) throws IOException {
+        if (!Files.exists(root)) {
+            return;
+        }
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                if (e != null) {
+                    throw e;
+                }
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
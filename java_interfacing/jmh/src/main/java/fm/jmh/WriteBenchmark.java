@@ -0,0 +1,83 @@
+package fm.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * WriteBenchmark
+ * this class measures the operations that carry file content to the kernel modules: createFile,
+ * and updateFile in append and overwrite mode, across payload sizes.
+ *
+ * @authors      Richard Quayson & Thomas Quarshie
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WriteBenchmark {
+    private static final int PATHS = 1024;
+
+    // size of the content sent with every request, in characters
+    @Param({"16", "4096", "65536", "1048576"})
+    public int payloadSize;
+
+    private ProcEmulator emulator;
+    private String[] paths;
+    private String payload;
+    private int next;
+
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        emulator = ProcEmulator.install();
+        paths = new String[PATHS];
+        for (int i = 0; i < PATHS; i++) {
+            paths[i] = "/tmp/fm-bench/folder-" + (i % 32) + "/file-" + i + ".txt";
+        }
+        payload = "x".repeat(payloadSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        emulator.close();
+    }
+
+
+    @Benchmark
+    public void createFile() throws Throwable {
+        Kernel.CREATE_FILE.invokeExact(nextPath(), payload);
+    }
+
+    @Benchmark
+    public void updateFileAppend() throws Throwable {
+        Kernel.UPDATE_FILE.invokeExact(nextPath(), payload, 0);
+    }
+
+    @Benchmark
+    public void updateFileOverwrite() throws Throwable {
+        Kernel.UPDATE_FILE.invokeExact(nextPath(), payload, 1);
+    }
+
+
+    private String nextPath() {
+        next = (next + 1) & (PATHS - 1);
+        return paths[next];
+    }
+}